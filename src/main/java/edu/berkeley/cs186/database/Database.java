@@ -13,14 +13,19 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
+import edu.berkeley.cs186.database.index.IndexKey;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.io.MappedDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.memory.EvictionPolicy;
+import edu.berkeley.cs186.database.query.IndexEntryOperator;
+import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.SequentialScanOperator;
 import edu.berkeley.cs186.database.query.SortOperator;
+import edu.berkeley.cs186.database.query.expr.CompiledExpression;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.recovery.ARIESRecoveryManager;
 import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
@@ -35,9 +40,11 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Phaser;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 /**
@@ -89,11 +96,13 @@ public class Database implements AutoCloseable {
     private Table indexMetadata;
     // number of transactions created
     private long numTransactions;
+    // number of transactions committed
+    private final AtomicLong numCommits = new AtomicLong();
 
     // lock manager
     private final LockManager lockManager;
     // disk space manager
-    private final DiskSpaceManager diskSpaceManager;
+    private final DiskSpaceManagerImpl diskSpaceManager;
     // buffer manager
     private final BufferManager bufferManager;
     // recovery manager
@@ -103,10 +112,18 @@ public class Database implements AutoCloseable {
     private int workMem = 1024; // default of 4M
     // number of pages of memory available total
     private int numMemoryPages;
+    // default number of workers to scan tables with in queries
+    private int degreeOfParallelism = 1;
+    // fraction of each leaf that bulk loading an index fills
+    private float indexFillFactor = 0.9f;
+    // threads that the workers of parallel queries run on
+    private final ThreadPool queryThreads = new ThreadPool();
     // active transactions
     private Phaser activeTransactions = new Phaser(0);
     // Statistics about the contents of the database.
     private Map<String, TableStats> stats = new ConcurrentHashMap<>();
+    // In-memory copy of _metadata.tables and _metadata.indices
+    private final CatalogCache catalog = new CatalogCache();
 
     // Names of tables loaded for demo
     private ArrayList<String> demoTables = new ArrayList<>();
@@ -174,10 +191,51 @@ public class Database implements AutoCloseable {
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager,
                     EvictionPolicy policy, boolean useRecoveryManager) {
+        this(fileDir, numMemoryPages, lockManager, () -> policy, 1, useRecoveryManager);
+    }
+
+    /**
+     * Creates a new database with the buffer cache split into several independently
+     * locked pools, which lets concurrent transactions hit the buffer cache in parallel.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policies creates the eviction policy of each buffer pool
+     * @param numBufferPools the number of buffer pools
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    Supplier<EvictionPolicy> policies, int numBufferPools,
+                    boolean useRecoveryManager) {
+        this(fileDir, numMemoryPages, lockManager, policies, numBufferPools, useRecoveryManager, false);
+    }
+
+    /**
+     * Creates a new database, optionally accessing table files through memory
+     * mappings (MappedDiskSpaceManager), which makes page reads much cheaper for
+     * read-mostly workloads.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policies creates the eviction policy of each buffer pool
+     * @param numBufferPools the number of buffer pools
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param memoryMapped whether to memory map the table files
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    Supplier<EvictionPolicy> policies, int numBufferPools,
+                    boolean useRecoveryManager, boolean memoryMapped) {
         boolean initialized = setupDirectory(fileDir);
 
         numTransactions = 0;
         this.numMemoryPages = numMemoryPages;
+        this.queryThreads.setThreadFactory(r -> {
+            Thread t = new Thread(r, "query-worker");
+            t.setDaemon(true);
+            return t;
+        });
         this.lockManager = lockManager;
 
         if (useRecoveryManager) {
@@ -186,9 +244,13 @@ public class Database implements AutoCloseable {
             recoveryManager = new DummyRecoveryManager();
         }
 
-        diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        if (memoryMapped) {
+            diskSpaceManager = new MappedDiskSpaceManager(fileDir, recoveryManager);
+        } else {
+            diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        }
         bufferManager = new BufferManager(diskSpaceManager, recoveryManager, numMemoryPages,
-                policy);
+                policies, numBufferPools);
 
         // create log partition
         if (!initialized) diskSpaceManager.allocPart(0);
@@ -300,6 +362,7 @@ public class Database implements AutoCloseable {
 
         this.bufferManager.close();
         this.diskSpaceManager.close();
+        this.queryThreads.shutdown();
     }
 
     public LockManager getLockManager() {
@@ -324,6 +387,59 @@ public class Database implements AutoCloseable {
         this.workMem = workMem;
     }
 
+    public int getDegreeOfParallelism() {
+        return this.degreeOfParallelism;
+    }
+
+    /**
+     * Sets the default number of workers that queries scan tables with, and
+     * that sorts generate their initial runs with; each worker runs on its own
+     * thread (see QueryPlan.setDegreeOfParallelism).
+     * @param degreeOfParallelism number of workers, or 1 to run queries on the
+     *                            transaction's thread only
+     */
+    public void setDegreeOfParallelism(int degreeOfParallelism) {
+        if (degreeOfParallelism < 1) {
+            throw new IllegalArgumentException("degree of parallelism must be positive");
+        }
+        this.degreeOfParallelism = degreeOfParallelism;
+    }
+
+    public float getIndexFillFactor() {
+        return this.indexFillFactor;
+    }
+
+    /**
+     * Sets the fraction of each leaf of an index that bulk loading fills,
+     * leaving room for later inserts before the leaf splits.
+     * @param indexFillFactor fill factor, in (0, 1]
+     */
+    public void setIndexFillFactor(float indexFillFactor) {
+        if (indexFillFactor <= 0 || indexFillFactor > 1) {
+            throw new IllegalArgumentException("fill factor must be in (0, 1]");
+        }
+        this.indexFillFactor = indexFillFactor;
+    }
+
+    /**
+     * Sets whether page writes are forced to disk one at a time (the default), or
+     * only when the log is flushed (for log pages) and at checkpoints (for data
+     * pages). Deferring syncs lets concurrent commits share one sync of the log.
+     * @param deferSync whether to defer syncing page writes
+     */
+    public void setDeferSync(boolean deferSync) {
+        this.diskSpaceManager.setDeferSync(deferSync);
+    }
+
+    /**
+     * @return average number of times a partition was forced to disk per
+     * committed transaction, or 0 if no transaction has committed yet
+     */
+    public double getSyncsPerCommit() {
+        long commits = this.numCommits.get();
+        return commits == 0 ? 0 : (double) this.diskSpaceManager.getNumSyncs() / commits;
+    }
+
     /**
      * @return Schema for _metadata.tables with fields:
      *   | field name   | field type
@@ -353,6 +469,10 @@ public class Database implements AutoCloseable {
      * 5 | key_schema_typeid   | int
      * 6 | key_schema_typesize | int
      * 7 | height              | int
+     * 8 | is_unique           | bool
+     *
+     * The col_name of an index on several columns is its columns, separated
+     * by commas.
      */
     public Schema getIndexInfoSchema() {
         return new Schema()
@@ -363,7 +483,8 @@ public class Database implements AutoCloseable {
                 .add("root_page_num", Type.longType())
                 .add("key_schema_typeid", Type.intType())
                 .add("key_schema_typesize", Type.intType())
-                .add("height", Type.intType());
+                .add("height", Type.intType())
+                .add("is_unique", Type.boolType());
     }
 
     // a single row of _metadata.tables
@@ -438,20 +559,23 @@ public class Database implements AutoCloseable {
         tableName = normalize(tableName);
         // We'll need shared access to the entry if it exists in order to read it
         LockUtil.ensureSufficientLockHeld(getTableMetadataContext(tableName), LockType.S);
-        for (Pair<RecordId, TableMetadata> p : scanTableMetadata()) {
-            String currName = normalize(p.getSecond().tableName);
-            if (currName.equals(tableName)) return p;
-        }
-        return null;
+        return catalog.snapshot().tables.get(tableName);
     }
 
     // TableMetadata -> Table object
     private Table tableFromMetadata(TableMetadata metadata) {
         String tableName = normalize(metadata.tableName);
+        Catalog snapshot = catalog.snapshot();
+        Table cached = snapshot.tableObjects.get(tableName);
+        if (cached != null && cached.getPartNum() == metadata.partNum) {
+            return cached;
+        }
         LockContext tableContext = getTableContext(tableName);
         long page0 = DiskSpaceManager.getVirtualPageNum(metadata.partNum, 0);
         PageDirectory pd = new PageDirectory(bufferManager, metadata.partNum, page0, (short) 0, tableContext);
-        return new Table(metadata.tableName, metadata.schema, pd, tableContext, stats);
+        Table table = new Table(metadata.tableName, metadata.schema, pd, tableContext, stats);
+        snapshot.tableObjects.put(tableName, table);
+        return table;
     }
 
     /**
@@ -494,15 +618,7 @@ public class Database implements AutoCloseable {
         columnName = normalize(columnName);
         // We'll need shared access to the entry if it exists in order to read it
         LockUtil.ensureSufficientLockHeld(getColumnIndexMetadataContext(tableName, columnName), LockType.S);
-        for (Pair<RecordId, BPlusTreeMetadata> p: scanIndexMetadata()) {
-            BPlusTreeMetadata metadata = p.getSecond();
-            String currTableName = normalize(metadata.getTableName());
-            String currColumnName = normalize(metadata.getColName());
-            if (currTableName.equals(tableName) && currColumnName.equals(columnName)) {
-                return p;
-            }
-        }
-        return null;
+        return catalog.snapshot().columnIndices.get(new Pair<>(tableName, columnName));
     }
 
     /**
@@ -512,26 +628,116 @@ public class Database implements AutoCloseable {
      * if the table does not exist, or if no indices are built on the table.
      */
     private List<Pair<RecordId, BPlusTreeMetadata>> getTableIndicesMetadata(String tableName) {
-        List<Pair<RecordId, BPlusTreeMetadata>> result = new ArrayList<>();
         tableName = normalize(tableName);
         // We'll need shared access to the entry if it exists in order to read it
         LockUtil.ensureSufficientLockHeld(getTableIndexMetadataContext(tableName), LockType.S);
-        for (Pair<RecordId, BPlusTreeMetadata> p: scanIndexMetadata()) {
-            BPlusTreeMetadata metadata = p.getSecond();
-            String currTableName = normalize(metadata.getTableName());
-            if (currTableName.equals(tableName)) {
-                result.add(p);
-            }
-        }
-        return result;
+        List<Pair<RecordId, BPlusTreeMetadata>> indices = catalog.snapshot().tableIndices.get(tableName);
+        return indices == null ? new ArrayList<>() : new ArrayList<>(indices);
     }
 
-    // btree metadata -> btree object
-    private BPlusTree indexFromMetadata(BPlusTreeMetadata metadata) {
+    // btree metadata (of an index on a table with schema `schema`) -> btree object
+    private Index indexFromMetadata(BPlusTreeMetadata metadata, Schema schema) {
         String tableName = normalize(metadata.getTableName());
         String columnName = normalize(metadata.getColName());
         LockContext indexContext = lockManager.databaseContext().childContext(tableName + "." + columnName);
-        return new BPlusTree(bufferManager, metadata, indexContext);
+        Pair<String, String> key = new Pair<>(tableName, columnName);
+        Catalog snapshot = catalog.snapshot();
+        Index cached = snapshot.indexObjects.get(key);
+        if (cached != null && cached.tree.getPartNum() == metadata.getPartNum()) {
+            // Constructing a tree acquires an S lock on it, so we do the same
+            // when handing out a cached one
+            LockUtil.ensureSufficientLockHeld(indexContext, LockType.S);
+            return cached;
+        }
+        Index index = new Index(new BPlusTree(bufferManager, metadata, indexContext), metadata, schema);
+        snapshot.indexObjects.put(key, index);
+        return index;
+    }
+
+    // A BPlusTree, along with what is needed to compute the keys of records
+    // in it, which is worked out once rather than for every record
+    private static class Index {
+        final BPlusTree tree;
+        final IndexKey key;
+        // positions of the columns of the index in the table's schema
+        final int[] columnIndices;
+
+        Index(BPlusTree tree, BPlusTreeMetadata metadata, Schema schema) {
+            List<String> colNames = schema.getFieldNames();
+            List<String> indexColNames = metadata.getColNames();
+            List<Type> types = new ArrayList<>();
+            this.columnIndices = new int[indexColNames.size()];
+            for (int i = 0; i < this.columnIndices.length; ++i) {
+                this.columnIndices[i] = colNames.indexOf(indexColNames.get(i));
+                types.add(schema.getFieldType(this.columnIndices[i]));
+            }
+            this.tree = tree;
+            this.key = new IndexKey(types, metadata.isUnique());
+        }
+
+        // the key of `record`, whose id is `rid`
+        DataBox keyOf(Record record, RecordId rid) {
+            List<DataBox> values = new ArrayList<>(this.columnIndices.length);
+            for (int i : this.columnIndices) {
+                values.add(record.getValue(i));
+            }
+            return this.key.of(values, rid);
+        }
+    }
+
+    // A point-in-time copy of both metadata tables, keyed by normalized names,
+    // along with the Table and BPlusTree (Index) objects built from it
+    private static class Catalog {
+        Map<String, Pair<RecordId, TableMetadata>> tables = new HashMap<>();
+        Map<String, List<Pair<RecordId, BPlusTreeMetadata>>> tableIndices = new HashMap<>();
+        Map<Pair<String, String>, Pair<RecordId, BPlusTreeMetadata>> columnIndices = new HashMap<>();
+        Map<String, Table> tableObjects = new ConcurrentHashMap<>();
+        Map<Pair<String, String>, Index> indexObjects = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Caches the contents of _metadata.tables and _metadata.indices so that
+     * looking up a table or its indices doesn't require scanning and
+     * deserializing every row of both metadata tables. The cache does not
+     * do any locking of its own: callers acquire locks on the metadata
+     * entries exactly as they would before reading the metadata tables.
+     *
+     * Any write to the metadata tables (and any rollback, which may undo
+     * such writes, once the undo is done) must call invalidate(). Each invalidation bumps a version
+     * number, and a snapshot built from a scan that raced with an
+     * invalidation is never installed.
+     */
+    private class CatalogCache {
+        private final AtomicLong version = new AtomicLong();
+        private final AtomicReference<Catalog> current = new AtomicReference<>();
+
+        Catalog snapshot() {
+            Catalog cached = current.get();
+            if (cached != null) return cached;
+
+            long startVersion = version.get();
+            Catalog catalog = new Catalog();
+            for (Pair<RecordId, TableMetadata> p : scanTableMetadata()) {
+                catalog.tables.put(normalize(p.getSecond().tableName), p);
+            }
+            for (Pair<RecordId, BPlusTreeMetadata> p : scanIndexMetadata()) {
+                String tableName = normalize(p.getSecond().getTableName());
+                String columnName = normalize(p.getSecond().getColName());
+                catalog.tableIndices.computeIfAbsent(tableName, k -> new ArrayList<>()).add(p);
+                catalog.columnIndices.put(new Pair<>(tableName, columnName), p);
+            }
+            if (version.get() == startVersion && current.compareAndSet(null, catalog)) {
+                // An invalidation may have slipped in between the version
+                // check and installing the snapshot
+                if (version.get() != startVersion) current.compareAndSet(catalog, null);
+            }
+            return catalog;
+        }
+
+        void invalidate() {
+            version.incrementAndGet();
+            current.set(null);
+        }
     }
 
     // get the lock context for database/_metadata.tables
@@ -602,12 +808,84 @@ public class Database implements AutoCloseable {
         return t;
     }
 
+    /**
+     * Runs the workers of one transaction's parallel queries on the query
+     * worker threads. Shut down when the transaction ends; workers are not
+     * interrupted (which would close the file channels they read pages
+     * through), but are expected to check isShutdown() and stop early.
+     */
+    private class QueryWorkers extends AbstractExecutorService {
+        private int numActive = 0;
+        private volatile boolean shutdown = false;
+
+        @Override
+        public void execute(Runnable worker) {
+            synchronized (this) {
+                if (this.shutdown) {
+                    throw new RejectedExecutionException("transaction has ended");
+                }
+                ++this.numActive;
+            }
+            try {
+                Database.this.queryThreads.execute(() -> {
+                    try {
+                        worker.run();
+                    } finally {
+                        this.finished();
+                    }
+                });
+            } catch (RuntimeException e) {
+                this.finished();
+                throw e;
+            }
+        }
+
+        private synchronized void finished() {
+            if (--this.numActive == 0) {
+                this.notifyAll();
+            }
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            this.shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            this.shutdown();
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return this.shutdown;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return this.shutdown && this.numActive == 0;
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!this.isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+
     private class TransactionContextImpl extends TransactionContext {
         long transNum;
         Map<String, String> aliases;
         Map<String, Table> tempTables;
         long tempTableCounter;
         boolean recoveryTransaction;
+        QueryWorkers queryWorkers;
 
         private TransactionContextImpl(long tNum, boolean recoveryTransaction) {
             this.transNum = tNum;
@@ -615,6 +893,7 @@ public class Database implements AutoCloseable {
             this.tempTables = new HashMap<>();
             this.tempTableCounter = 0;
             this.recoveryTransaction = recoveryTransaction;
+            this.queryWorkers = new QueryWorkers();
         }
 
         @Override
@@ -627,6 +906,16 @@ public class Database implements AutoCloseable {
             return Database.this.getWorkMem();
         }
 
+        @Override
+        public int getDegreeOfParallelism() {
+            return Database.this.getDegreeOfParallelism();
+        }
+
+        @Override
+        public ExecutorService getQueryExecutor() {
+            return this.queryWorkers;
+        }
+
         @Override
         public String createTempTable(Schema schema) {
             String tempTableName = "tempTable" + tempTableCounter++;
@@ -668,6 +957,24 @@ public class Database implements AutoCloseable {
             return getColumnIndexMetadata(tableName, columnName) != null;
         }
 
+        @Override
+        public List<List<String>> getIndexColumns(String tableName) {
+            if (aliases.containsKey(tableName)) tableName = aliases.get(tableName);
+            tableName = normalize(tableName);
+            // Each index's own metadata entry is locked, as by indexExists,
+            // rather than the entries of every index of the table
+            List<Pair<RecordId, BPlusTreeMetadata>> indices = catalog.snapshot().tableIndices.get(tableName);
+            List<List<String>> columns = new ArrayList<>();
+            if (indices == null) return columns;
+            for (Pair<RecordId, BPlusTreeMetadata> p : indices) {
+                String indexName = p.getSecond().getColName();
+                if (getColumnIndexMetadata(tableName, indexName) != null) {
+                    columns.add(p.getSecond().getColNames());
+                }
+            }
+            return columns;
+        }
+
         @Override
         public void updateIndexMetadata(BPlusTreeMetadata metadata) {
             Record updated = metadata.toRecord();
@@ -683,8 +990,9 @@ public class Database implements AutoCloseable {
                 if (currColumnName.equals(columnName) && currTableName.equals(tableName)) {
                     synchronized (indexMetadata) {
                         indexMetadata.updateRecord(rid, updated);
-                        return;
                     }
+                    catalog.invalidate();
+                    return;
                 }
             }
         }
@@ -699,7 +1007,7 @@ public class Database implements AutoCloseable {
             Pair<RecordId, BPlusTreeMetadata> pair = getColumnIndexMetadata(tableName, columnName);
 
             if (pair != null) {
-                BPlusTree tree = indexFromMetadata(pair.getSecond());
+                BPlusTree tree = indexFromMetadata(pair.getSecond(), tab.getSchema()).tree;
                 return tab.recordIterator(tree.scanAll());
             } else {
                 try {
@@ -715,19 +1023,58 @@ public class Database implements AutoCloseable {
         public Iterator<Record> sortedScanFrom(String tableName, String columnName, DataBox startValue) {
             Table tab = getTable(tableName);
             tableName = tab.getName();
-            BPlusTree tree = indexFromMetadata(getColumnIndexMetadata(tableName, columnName).getSecond());
             // Since we'll likely scan multiple pages of records, its better
             // to get an S lock on the whole table up front
             LockUtil.ensureSufficientLockHeld(getTableContext(tableName), LockType.S);
-            return tab.recordIterator(tree.scanGreaterEqual(startValue));
+            return tab.recordIterator(scanIndex(tab, Collections.singletonList(columnName),
+                    Collections.emptyList(), startValue, true, null, false));
         }
 
         @Override
         public Iterator<Record> lookupKey(String tableName, String columnName, DataBox key) {
             Table tab = getTable(tableName);
             tableName = tab.getName();
-            BPlusTree tree = indexFromMetadata(getColumnIndexMetadata(tableName, columnName).getSecond());
-            return tab.recordIterator(tree.scanEqual(key));
+            return tab.recordIterator(scanIndex(tab, Collections.singletonList(columnName),
+                    Collections.emptyList(), key, true, key, true));
+        }
+
+        @Override
+        public Iterator<RecordId> lookupRange(String tableName, String columnName,
+                                              DataBox startValue, boolean startInclusive,
+                                              DataBox stopValue, boolean stopInclusive) {
+            return lookupRange(tableName, Collections.singletonList(columnName), Collections.emptyList(),
+                               startValue, startInclusive, stopValue, stopInclusive);
+        }
+
+        @Override
+        public Iterator<RecordId> lookupRange(String tableName, List<String> columnNames,
+                                              List<DataBox> prefix,
+                                              DataBox startValue, boolean startInclusive,
+                                              DataBox stopValue, boolean stopInclusive) {
+            Table tab = getTable(tableName);
+            tableName = tab.getName();
+            // The records in the range are fetched afterwards, so get an S
+            // lock on the whole table up front as sortedScanFrom does
+            LockUtil.ensureSufficientLockHeld(getTableContext(tableName), LockType.S);
+            return scanIndex(tab, columnNames, prefix, startValue, startInclusive, stopValue, stopInclusive);
+        }
+
+        // scans the index on `columnNames` of `tab`, see IndexKey#scanRange
+        private Iterator<RecordId> scanIndex(Table tab, List<String> columnNames, List<DataBox> prefix,
+                                             DataBox startValue, boolean startInclusive,
+                                             DataBox stopValue, boolean stopInclusive) {
+            String indexName = String.join(",", columnNames);
+            Pair<RecordId, BPlusTreeMetadata> pair = getColumnIndexMetadata(tab.getName(), indexName);
+            if (pair == null) {
+                throw new DatabaseException("no index on " + tab.getName() + "(" + indexName + ")");
+            }
+            Index index = indexFromMetadata(pair.getSecond(), tab.getSchema());
+            return index.key.scanRange(index.tree, prefix, startValue, startInclusive, stopValue, stopInclusive);
+        }
+
+        @Override
+        public Iterator<Record> getRecords(String tableName, Iterator<RecordId> rids) {
+            return getTable(tableName).recordIterator(rids);
         }
 
         @Override
@@ -738,8 +1085,8 @@ public class Database implements AutoCloseable {
         @Override
         public boolean contains(String tableName, String columnName, DataBox key) {
             tableName = aliases.getOrDefault(tableName, tableName);
-            BPlusTree tree = indexFromMetadata(getColumnIndexMetadata(tableName, columnName).getSecond());
-            return tree.get(key).isPresent();
+            return scanIndex(getTable(tableName), Collections.singletonList(columnName),
+                             Collections.emptyList(), key, true, key, true).hasNext();
         }
 
         @Override
@@ -751,13 +1098,10 @@ public class Database implements AutoCloseable {
             }
             RecordId rid = tab.addRecord(record);
             Schema s = tab.getSchema();
-            List<String> colNames = s.getFieldNames();
 
             for (Pair<RecordId, BPlusTreeMetadata> p: getTableIndicesMetadata(tableName)) {
-                BPlusTree tree = indexFromMetadata(p.getSecond());
-                String column = tree.getMetadata().getColName();
-                DataBox key = record.getValue(colNames.indexOf(column));
-                tree.put(key, rid);
+                Index index = indexFromMetadata(p.getSecond(), s);
+                index.tree.put(index.keyOf(record, rid), rid);
             }
             return rid;
         }
@@ -768,13 +1112,10 @@ public class Database implements AutoCloseable {
             tableName = tab.getName();
             Schema s = tab.getSchema();
             Record record = tab.deleteRecord(rid);
-            List<String> colNames = s.getFieldNames();
 
             for (Pair<RecordId, BPlusTreeMetadata> p: getTableIndicesMetadata(tableName)) {
-                BPlusTree tree = indexFromMetadata(p.getSecond());
-                String column = tree.getMetadata().getColName();
-                DataBox key = record.getValue(colNames.indexOf(column));
-                tree.remove(key);
+                Index index = indexFromMetadata(p.getSecond(), s);
+                index.tree.remove(index.keyOf(record, rid));
             }
             return rid;
         }
@@ -791,15 +1132,11 @@ public class Database implements AutoCloseable {
             Schema s = tab.getSchema();
 
             Record old = tab.updateRecord(rid, updated);
-            List<String> colNames = s.getFieldNames();
 
             for (Pair<RecordId, BPlusTreeMetadata> p: getTableIndicesMetadata(tableName)) {
-                BPlusTree tree = indexFromMetadata(p.getSecond());
-                String column = tree.getMetadata().getColName();
-                DataBox oldKey = old.getValue(colNames.indexOf(column));
-                DataBox newKey = updated.getValue(colNames.indexOf(column));
-                tree.remove(oldKey);
-                tree.put(newKey, rid);
+                Index index = indexFromMetadata(p.getSecond(), s);
+                index.tree.remove(index.keyOf(old, rid));
+                index.tree.put(index.keyOf(updated, rid), rid);
             }
             return rid;
         }
@@ -841,8 +1178,7 @@ public class Database implements AutoCloseable {
                 RecordId curRID = recordIds.next();
                 Record cur = getRecord(tableName, curRID);
                 List<DataBox> recordCopy = cur.getValues();
-                DataBox cond = condition.apply(cur);
-                if (!Expression.toBool(cond)) continue;
+                if (!holds(condition, cur)) continue;
                 recordCopy.set(uindex, targetValue.apply(cur));
                 updateRecord(tableName, curRID, new Record(recordCopy));
             }
@@ -878,12 +1214,23 @@ public class Database implements AutoCloseable {
             while(recordIds.hasNext()) {
                 RecordId curRID = recordIds.next();
                 Record cur = getRecord(tableName, curRID);
-                DataBox cond = condition.apply(cur);
-                if (!Expression.toBool(cond)) continue;
+                if (!holds(condition, cur)) continue;
                 deleteRecord(tableName, curRID);
             }
         }
 
+        /**
+         * @return whether a condition of updateRecordWhere or deleteRecordWhere
+         * holds for a record; conditions that are compiled expressions are tested
+         * without boxing their result
+         */
+        private boolean holds(Function<Record, DataBox> condition, Record record) {
+            if (condition instanceof CompiledExpression) {
+                return ((CompiledExpression) condition).test(record);
+            }
+            return Expression.toBool(condition.apply(record));
+        }
+
         @Override
         public Schema getSchema(String tableName) {
             return getTable(tableName).getSchema();
@@ -930,6 +1277,18 @@ public class Database implements AutoCloseable {
 
         @Override
         public void close() {
+            // workers of parallel queries may still be reading pages under
+            // this transaction's locks
+            this.queryWorkers.shutdown();
+            boolean interrupted = false;
+            while (!this.queryWorkers.isTerminated()) {
+                try {
+                    this.queryWorkers.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
             try {
                 // TODO(proj4_part2)
                 List<Lock> lockList = lockManager.getLocks(this);
@@ -984,6 +1343,7 @@ public class Database implements AutoCloseable {
     private class TransactionImpl extends Transaction {
         private long transNum;
         private boolean recoveryTransaction;
+        private boolean rolledBack;
         private TransactionContext transactionContext;
 
         private TransactionImpl(long transNum, boolean recovery) {
@@ -1011,12 +1371,14 @@ public class Database implements AutoCloseable {
         protected void startCommit() {
             transactionContext.deleteAllTempTables();
             recoveryManager.commit(transNum);
+            numCommits.incrementAndGet();
             this.cleanup();
         }
 
         @Override
         protected void startRollback() {
             recoveryManager.abort(transNum);
+            this.rolledBack = true;
             this.cleanup();
         }
 
@@ -1029,6 +1391,12 @@ public class Database implements AutoCloseable {
             if (!this.recoveryTransaction) {
                 recoveryManager.end(transNum);
             }
+            if (this.rolledBack || this.recoveryTransaction) {
+                // Our changes are only undone by end(), and may have included
+                // writes to the metadata tables. This has to happen before our
+                // locks are released, so that no one caches the old rows.
+                catalog.invalidate();
+            }
 
             transactionContext.close();
             activeTransactions.arriveAndDeregister();
@@ -1060,6 +1428,7 @@ public class Database implements AutoCloseable {
             synchronized (tableMetadata) {
                 tableMetadata.addRecord(metadata.toRecord());
             }
+            catalog.invalidate();
         }
 
         @Override
@@ -1085,6 +1454,7 @@ public class Database implements AutoCloseable {
             synchronized(tableMetadata) {
                 metadata = new TableMetadata(tableMetadata.deleteRecord(rid));
             }
+            catalog.invalidate();
             bufferManager.freePart(metadata.partNum);
         }
 
@@ -1099,7 +1469,7 @@ public class Database implements AutoCloseable {
         }
 
         @Override
-        public void createIndex(String tableName, String columnName, boolean bulkLoad) {
+        public void createIndex(String tableName, List<String> columnNames, boolean unique, boolean bulkLoad) {
             if (tableName.contains(".") || tableName.contains(" ") || tableName.length() == 0) {
                 throw new IllegalArgumentException("name of new table may not contain '.' or ' ', or be the empty string");
             }
@@ -1111,42 +1481,71 @@ public class Database implements AutoCloseable {
 
             Schema s = tableMetadata.schema;
             List<String> schemaColNames = s.getFieldNames();
-            List<Type> schemaColType = s.getFieldTypes();
-            if (!schemaColNames.contains(columnName)) {
-                throw new DatabaseException("table " + tableName + " does not have a column " + columnName);
+            List<Type> colTypes = new ArrayList<>();
+            for (String columnName : columnNames) {
+                if (!schemaColNames.contains(columnName)) {
+                    throw new DatabaseException("table " + tableName + " does not have a column " + columnName);
+                }
+                colTypes.add(s.getFieldType(schemaColNames.indexOf(columnName)));
             }
-
-            int columnIndex = schemaColNames.indexOf(columnName);
-            Type colType = schemaColType.get(columnIndex);
+            if (new HashSet<>(columnNames).size() != columnNames.size()) {
+                throw new DatabaseException("columns of an index must be distinct");
+            }
+            String indexName = String.join(",", columnNames);
+            if (indexName.length() > getIndexInfoSchema().getFieldType(1).getSizeInBytes()) {
+                throw new DatabaseException("too many columns in index on " + tableName + "(" + indexName + ")");
+            }
+            Type keyType = new IndexKey(colTypes, unique).getType();
 
             // To create the index we'll need an exclusive lock on its metadata
-            LockUtil.ensureSufficientLockHeld(getColumnIndexMetadataContext(tableName, columnName), LockType.X);
-            Pair<RecordId, BPlusTreeMetadata> pair = getColumnIndexMetadata(tableName, columnName);
+            LockUtil.ensureSufficientLockHeld(getColumnIndexMetadataContext(tableName, indexName), LockType.X);
+            Pair<RecordId, BPlusTreeMetadata> pair = getColumnIndexMetadata(tableName, indexName);
             if (pair != null) {
-                throw new DatabaseException("index already exists on " + tableName + "(" + columnName + ")");
+                throw new DatabaseException("index already exists on " + tableName + "(" + indexName + ")");
             }
 
-            int order = BPlusTree.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, colType);
-            Record indexEntry = new Record(tableName, columnName, order,
+            int order = BPlusTree.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, keyType);
+            if (order < 1) {
+                throw new DatabaseException("keys of index on " + tableName + "(" + indexName + ") are too large");
+            }
+            Record indexEntry = new Record(tableName, indexName, order,
                     diskSpaceManager.allocPart(),
                     diskSpaceManager.INVALID_PAGE_NUM,
-                    colType.getTypeId().ordinal(),
-                    colType.getSizeInBytes(), -1
+                    keyType.getTypeId().ordinal(),
+                    keyType.getSizeInBytes(), -1, unique
             );
             synchronized (indexMetadata) {
                 indexMetadata.addRecord(indexEntry);
             }
+            catalog.invalidate();
             BPlusTreeMetadata metadata = new BPlusTreeMetadata(indexEntry);
-            BPlusTree tree = indexFromMetadata(metadata);
+            Index index = indexFromMetadata(metadata, s);
+            BPlusTree tree = index.tree;
 
             // load data into index
             if (bulkLoad) {
-                throw new UnsupportedOperationException("not implemented");
+                // Sort the entries of the index on their keys, and build the
+                // tree from them from the bottom up
+                QueryOperator entries = new IndexEntryOperator(transactionContext, tableName, keyType,
+                        index::keyOf);
+                Iterator<Record> sorted = new SortOperator(transactionContext, entries, "key").iterator();
+                tree.bulkLoad(new Iterator<Pair<DataBox, RecordId>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return sorted.hasNext();
+                    }
+
+                    @Override
+                    public Pair<DataBox, RecordId> next() {
+                        Record entry = sorted.next();
+                        return new Pair<>(entry.getValue(0), IndexEntryOperator.getRecordId(entry));
+                    }
+                }, getIndexFillFactor());
             } else {
                 Table table = tableFromMetadata(tableMetadata);
                 for (RecordId rid : (Iterable<RecordId>) table::ridIterator) {
                     Record record = table.getRecord(rid);
-                    tree.put(record.getValue(columnIndex), rid);
+                    tree.put(index.keyOf(record, rid), rid);
                 }
             }
         }
@@ -1159,7 +1558,10 @@ public class Database implements AutoCloseable {
             if (pair == null) {
                 throw new DatabaseException("no index on " + tableName + "(" + columnName + ")");
             }
-            indexMetadata.deleteRecord(pair.getFirst());
+            synchronized (indexMetadata) {
+                indexMetadata.deleteRecord(pair.getFirst());
+            }
+            catalog.invalidate();
             bufferManager.freePart(pair.getSecond().getPartNum());
         }
 
@@ -1214,6 +1616,7 @@ public class Database implements AutoCloseable {
         @Override
         public void rollbackToSavepoint(String savepointName) {
             recoveryManager.rollbackToSavepoint(transNum, savepointName);
+            catalog.invalidate();
         }
 
         @Override
@@ -7,6 +7,8 @@ import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
@@ -146,11 +148,35 @@ public abstract class Transaction implements AutoCloseable {
      * be fully implemented. Bulk loading requires Project 3 Part 1 (Joins/Sorting) to be
      * fully implemented as well.
      *
+     * The values of the column must be unique; see the other createIndex for
+     * an index that allows duplicates.
+     *
      * @param tableName name of table to create index for
      * @param columnName name of column to create index on
      * @param bulkLoad whether to bulk load data
      */
-    public abstract void createIndex(String tableName, String columnName, boolean bulkLoad);
+    public void createIndex(String tableName, String columnName, boolean bulkLoad) {
+        createIndex(tableName, Collections.singletonList(columnName), true, bulkLoad);
+    }
+
+    /**
+     * Creates an index on one or more columns. Equivalent to
+     *      CREATE [UNIQUE] INDEX ON tableName (columnNames[0], columnNames[1], ...)
+     * in postgres.
+     *
+     * The index is sorted by the values of the first column, then by the
+     * values of the second column, and so on, so it can be used to scan the
+     * records with given values in the first few columns, and a range of
+     * values in the next column.
+     *
+     * @param tableName name of table to create index for
+     * @param columnNames names of the columns to create the index on
+     * @param unique whether every record has different values in the columns,
+     *               rather than allowing duplicates
+     * @param bulkLoad whether to bulk load data
+     */
+    public abstract void createIndex(String tableName, List<String> columnNames, boolean unique,
+                                     boolean bulkLoad);
 
     /**
      * Drops an index. Equivalent to
@@ -162,6 +188,16 @@ public abstract class Transaction implements AutoCloseable {
      */
     public abstract void dropIndex(String tableName, String columnName);
 
+    /**
+     * Drops an index on one or more columns.
+     *
+     * @param tableName name of table to drop index from
+     * @param columnNames names of the columns of the index, in order
+     */
+    public void dropIndex(String tableName, List<String> columnNames) {
+        dropIndex(tableName, String.join(",", columnNames));
+    }
+
     // DML /////////////////////////////////////////////////////////////////////
 
     /**
@@ -11,8 +11,10 @@ import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
@@ -88,6 +90,18 @@ public abstract class TransactionContext implements AutoCloseable {
      */
     public abstract int getWorkMemSize();
 
+    /**
+     * @return the default number of workers that queries in this transaction
+     * scan tables and sort with (1 if queries do not run in parallel)
+     */
+    public abstract int getDegreeOfParallelism();
+
+    /**
+     * @return the executor that the workers of parallel queries run on. It is
+     * shut down when the transaction ends, and workers should then stop.
+     */
+    public abstract ExecutorService getQueryExecutor();
+
     @Override
     public abstract void close();
 
@@ -128,6 +142,15 @@ public abstract class TransactionContext implements AutoCloseable {
      */
     public abstract boolean indexExists(String tableName, String columnName);
 
+    /**
+     * @param tableName the name of the table
+     * @return the columns of each index on the table, in the order that the
+     * index is sorted by them. The name of an index on several columns, as
+     * passed to indexExists, getTreeOrder and getTreeHeight, is its columns
+     * separated by commas.
+     */
+    public abstract List<List<String>> getIndexColumns(String tableName);
+
     public abstract void updateIndexMetadata(BPlusTreeMetadata metadata);
 
     // Scans ///////////////////////////////////////////////////////////////////
@@ -151,6 +174,37 @@ public abstract class TransactionContext implements AutoCloseable {
      */
     public abstract Iterator<Record> lookupKey(String tableName, String columnName, DataBox key);
 
+    /**
+     * Returns an iterator over the record ids of the records in `tableName`
+     * whose value in `columnName` is between `startValue` and `stopValue`, in
+     * ascending order of those values. The scan of the index on `columnName`
+     * stops at the first value past `stopValue`. Either bound may be null for
+     * a range that is unbounded on that side.
+     */
+    public abstract Iterator<RecordId> lookupRange(String tableName, String columnName,
+                                                   DataBox startValue, boolean startInclusive,
+                                                   DataBox stopValue, boolean stopInclusive);
+
+    /**
+     * Returns an iterator over the record ids of the records in `tableName`
+     * whose values in the first prefix.size() columns of the index on
+     * `columnNames` are equal to `prefix`, and whose value in the next column
+     * is between `startValue` and `stopValue`, in ascending order of their
+     * values in the columns of the index. Either bound may be null for a
+     * range that is unbounded on that side, and both must be null if the
+     * prefix has a value for every column of the index.
+     */
+    public abstract Iterator<RecordId> lookupRange(String tableName, List<String> columnNames,
+                                                   List<DataBox> prefix,
+                                                   DataBox startValue, boolean startInclusive,
+                                                   DataBox stopValue, boolean stopInclusive);
+
+    /**
+     * Returns an iterator over the records in `tableName` with the record ids
+     * in `rids`, in the same order.
+     */
+    public abstract Iterator<Record> getRecords(String tableName, Iterator<RecordId> rids);
+
     /**
      * Returns a backtracking iterator over all of the records in `tableName`.
      */
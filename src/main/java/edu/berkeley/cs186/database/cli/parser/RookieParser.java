@@ -2,6 +2,10 @@
 /* Generated By:JJTree&JavaCC: Do not edit this line. RookieParser.java */
 package edu.berkeley.cs186.database.cli.parser;
 
+import edu.berkeley.cs186.database.common.Pair;
+import java.util.ArrayList;
+import java.util.List;
+
 @SuppressWarnings("all")
 public class RookieParser/*@bgen(jjtree)*/implements RookieParserTreeConstants, RookieParserConstants {/*@bgen(jjtree)*/
   protected JJTRookieParserState jjtree = new JJTRookieParserState();
@@ -351,6 +355,20 @@ if (jjtc000) {
       identifier();
       jj_consume_token(OPEN_PAR);
       column_name();
+      label_5:
+      while (true) {
+        switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+        case COMMA:{
+          ;
+          break;
+          }
+        default:
+          jj_la1[11] = jj_gen;
+          break label_5;
+        }
+        jj_consume_token(COMMA);
+        column_name();
+      }
       jj_consume_token(CLOSE_PAR);
     } catch (Throwable jjte000) {
 if (jjtc000) {
@@ -385,7 +403,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[11] = jj_gen;
+        jj_la1[12] = jj_gen;
         ;
       }
       identifier();
@@ -450,7 +468,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[12] = jj_gen;
+        jj_la1[13] = jj_gen;
         ;
       }
       switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
@@ -462,14 +480,14 @@ if (jjtc000) {
           break;
           }
         default:
-          jj_la1[13] = jj_gen;
+          jj_la1[14] = jj_gen;
           ;
         }
         identifier();
         break;
         }
       default:
-        jj_la1[14] = jj_gen;
+        jj_la1[15] = jj_gen;
         ;
       }
     } catch (Throwable jjte000) {
@@ -505,7 +523,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[15] = jj_gen;
+        jj_la1[16] = jj_gen;
         ;
       }
     } finally {
@@ -530,7 +548,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[16] = jj_gen;
+        jj_la1[17] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -540,7 +558,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[17] = jj_gen;
+        jj_la1[18] = jj_gen;
         ;
       }
     } finally {
@@ -560,7 +578,7 @@ if (jjtc000) {
       identifier();
       jj_consume_token(K_VALUES);
       insert_values();
-      label_5:
+      label_6:
       while (true) {
         switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
         case COMMA:{
@@ -568,8 +586,8 @@ if (jjtc000) {
           break;
           }
         default:
-          jj_la1[18] = jj_gen;
-          break label_5;
+          jj_la1[19] = jj_gen;
+          break label_6;
         }
         jj_consume_token(COMMA);
         insert_values();
@@ -602,7 +620,7 @@ if (jjtc000) {
     try {
       jj_consume_token(OPEN_PAR);
       literal();
-      label_6:
+      label_7:
       while (true) {
         switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
         case COMMA:{
@@ -610,8 +628,8 @@ if (jjtc000) {
           break;
           }
         default:
-          jj_la1[19] = jj_gen;
-          break label_6;
+          jj_la1[20] = jj_gen;
+          break label_7;
         }
         jj_consume_token(COMMA);
         literal();
@@ -656,7 +674,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[20] = jj_gen;
+        jj_la1[21] = jj_gen;
         ;
       }
     } catch (Throwable jjte000) {
@@ -689,7 +707,7 @@ if (jjtc000) {
       case K_WITH:{
         jj_consume_token(K_WITH);
         common_table_expression();
-        label_7:
+        label_8:
         while (true) {
           switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
           case COMMA:{
@@ -697,8 +715,8 @@ if (jjtc000) {
             break;
             }
           default:
-            jj_la1[21] = jj_gen;
-            break label_7;
+            jj_la1[22] = jj_gen;
+            break label_8;
           }
           jj_consume_token(COMMA);
           common_table_expression();
@@ -706,7 +724,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[22] = jj_gen;
+        jj_la1[23] = jj_gen;
         ;
       }
       select_clause();
@@ -714,17 +732,7 @@ if (jjtc000) {
       switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
       case K_WHERE:{
         jj_consume_token(K_WHERE);
-        column_value_comparison();
-        switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
-        case K_AND:{
-          jj_consume_token(K_AND);
-          column_value_comparison();
-          break;
-          }
-        default:
-          jj_la1[23] = jj_gen;
-          ;
-        }
+        expression();
         break;
         }
       default:
@@ -736,7 +744,7 @@ if (jjtc000) {
         jj_consume_token(K_GROUP);
         jj_consume_token(K_BY);
         column_name();
-        label_8:
+        label_9:
         while (true) {
           switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
           case COMMA:{
@@ -745,7 +753,7 @@ if (jjtc000) {
             }
           default:
             jj_la1[25] = jj_gen;
-            break label_8;
+            break label_9;
           }
           jj_consume_token(COMMA);
           column_name();
@@ -805,7 +813,7 @@ if (jjtc000) {
       case OPEN_PAR:{
         jj_consume_token(OPEN_PAR);
         column_name();
-        label_9:
+        label_10:
         while (true) {
           switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
           case COMMA:{
@@ -814,7 +822,7 @@ if (jjtc000) {
             }
           default:
             jj_la1[29] = jj_gen;
-            break label_9;
+            break label_10;
           }
           jj_consume_token(COMMA);
           column_name();
@@ -894,7 +902,7 @@ if (jjtc000) {
       case OPEN_PAR:{
         jj_consume_token(OPEN_PAR);
         column_def();
-        label_10:
+        label_11:
         while (true) {
           switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
           case COMMA:{
@@ -903,7 +911,7 @@ if (jjtc000) {
             }
           default:
             jj_la1[31] = jj_gen;
-            break label_10;
+            break label_11;
           }
           jj_consume_token(COMMA);
           column_def();
@@ -953,6 +961,20 @@ if (jjtc000) {
       identifier();
       jj_consume_token(OPEN_PAR);
       column_name();
+      label_12:
+      while (true) {
+        switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+        case COMMA:{
+          ;
+          break;
+          }
+        default:
+          jj_la1[33] = jj_gen;
+          break label_12;
+        }
+        jj_consume_token(COMMA);
+        column_name();
+      }
       jj_consume_token(CLOSE_PAR);
     } catch (Throwable jjte000) {
 if (jjtc000) {
@@ -990,7 +1012,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[33] = jj_gen;
+        jj_la1[34] = jj_gen;
         ;
       }
 jjtree.closeNodeScope(jjtn000, true);
@@ -1024,7 +1046,7 @@ if (jjtc000) {
     try {
       jj_consume_token(K_SELECT);
       select_column();
-      label_11:
+      label_13:
       while (true) {
         switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
         case COMMA:{
@@ -1032,8 +1054,8 @@ if (jjtc000) {
           break;
           }
         default:
-          jj_la1[34] = jj_gen;
-          break label_11;
+          jj_la1[35] = jj_gen;
+          break label_13;
         }
         jj_consume_token(COMMA);
         select_column();
@@ -1097,7 +1119,7 @@ if (jjtc000) {
     try {
       jj_consume_token(K_FROM);
       aliased_table_name();
-      label_12:
+      label_14:
       while (true) {
         switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
         case K_INNER:
@@ -1106,8 +1128,8 @@ if (jjtc000) {
           break;
           }
         default:
-          jj_la1[35] = jj_gen;
-          break label_12;
+          jj_la1[36] = jj_gen;
+          break label_14;
         }
         joined_table();
       }
@@ -1135,14 +1157,52 @@ if (jjtc000) {
   final public void order_clause() throws ParseException {/*@bgen(jjtree) OrderClause */
  ASTOrderClause jjtn000 = new ASTOrderClause(JJTORDERCLAUSE);
  boolean jjtc000 = true;
- jjtree.openNodeScope(jjtn000);String s;
+ jjtree.openNodeScope(jjtn000);String s; boolean d; List<Pair<String, Boolean>> columns = new ArrayList<Pair<String, Boolean>>();
     try {
       jj_consume_token(K_ORDER);
       jj_consume_token(K_BY);
       s = column_name();
+d = false;
+      switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+      case K_ASC:
+      case K_DESC:{
+        d = sort_order();
+        break;
+        }
+      default:
+        jj_la1[37] = jj_gen;
+        ;
+      }
+columns.add(new Pair<String, Boolean>(s, d));
+      label_15:
+      while (true) {
+        switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+        case COMMA:{
+          ;
+          break;
+          }
+        default:
+          jj_la1[38] = jj_gen;
+          break label_15;
+        }
+        jj_consume_token(COMMA);
+        s = column_name();
+d = false;
+        switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+        case K_ASC:
+        case K_DESC:{
+          d = sort_order();
+          break;
+          }
+        default:
+          jj_la1[39] = jj_gen;
+          ;
+        }
+columns.add(new Pair<String, Boolean>(s, d));
+      }
 jjtree.closeNodeScope(jjtn000, true);
-                                       jjtc000 = false;
-jjtn000.value = s;
+                                                                                                                jjtc000 = false;
+jjtn000.value = columns;
     } catch (Throwable jjte000) {
 if (jjtc000) {
         jjtree.clearNodeScope(jjtn000);
@@ -1164,6 +1224,25 @@ if (jjtc000) {
     }
 }
 
+  final public boolean sort_order() throws ParseException {Token t;
+    switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+    case K_ASC:{
+      t = jj_consume_token(K_ASC);
+      break;
+      }
+    case K_DESC:{
+      t = jj_consume_token(K_DESC);
+      break;
+      }
+    default:
+      jj_la1[40] = jj_gen;
+      jj_consume_token(-1);
+      throw new ParseException();
+    }
+{if ("" != null) return t.kind == K_DESC;}
+    throw new Error("Missing return statement in function");
+}
+
   final public void joined_table() throws ParseException {/*@bgen(jjtree) JoinedTable */
  ASTJoinedTable jjtn000 = new ASTJoinedTable(JJTJOINEDTABLE);
  boolean jjtc000 = true;
@@ -1175,7 +1254,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[36] = jj_gen;
+        jj_la1[41] = jj_gen;
         ;
       }
       jj_consume_token(K_JOIN);
@@ -1192,7 +1271,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[37] = jj_gen;
+        jj_la1[42] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -1232,7 +1311,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[39] = jj_gen;
+        jj_la1[44] = jj_gen;
         if (jj_2_5(3)) {
           t = jj_consume_token(IDENTIFIER);
           jj_consume_token(DOT);
@@ -1257,13 +1336,13 @@ if (jjtc000) {
               break;
               }
             default:
-              jj_la1[38] = jj_gen;
+              jj_la1[43] = jj_gen;
               ;
             }
             break;
             }
           default:
-            jj_la1[40] = jj_gen;
+            jj_la1[45] = jj_gen;
             jj_consume_token(-1);
             throw new ParseException();
           }
@@ -1318,7 +1397,7 @@ jjtn000.value = "*";
         break;
         }
       default:
-        jj_la1[44] = jj_gen;
+        jj_la1[49] = jj_gen;
         if (jj_2_6(2)) {
           t1 = jj_consume_token(IDENTIFIER);
           jj_consume_token(OPEN_PAR);
@@ -1332,7 +1411,7 @@ jjtn000.value = "*";
             break;
             }
           default:
-            jj_la1[41] = jj_gen;
+            jj_la1[46] = jj_gen;
             jj_consume_token(-1);
             throw new ParseException();
           }
@@ -1357,14 +1436,14 @@ jjtn000.value = t1.image + "(" + t2.image + ")";
                 break;
                 }
               default:
-                jj_la1[42] = jj_gen;
+                jj_la1[47] = jj_gen;
                 jj_consume_token(-1);
                 throw new ParseException();
               }
               break;
               }
             default:
-              jj_la1[43] = jj_gen;
+              jj_la1[48] = jj_gen;
               ;
             }
 jjtree.closeNodeScope(jjtn000, true);
@@ -1373,7 +1452,7 @@ jjtn000.value = t2 != null ? t1.image + "." + t2.image : t1.image;
             break;
             }
           default:
-            jj_la1[45] = jj_gen;
+            jj_la1[50] = jj_gen;
             jj_consume_token(-1);
             throw new ParseException();
           }
@@ -1401,7 +1480,7 @@ s += "." + t.image;
         break;
         }
       default:
-        jj_la1[46] = jj_gen;
+        jj_la1[51] = jj_gen;
         ;
       }
 jjtree.closeNodeScope(jjtn000, true);
@@ -1446,7 +1525,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[47] = jj_gen;
+        jj_la1[52] = jj_gen;
         ;
       }
 jjtree.closeNodeScope(jjtn000, true);
@@ -1473,55 +1552,6 @@ if (jjtc000) {
     }
 }
 
-  final public void column_value_comparison() throws ParseException {/*@bgen(jjtree) ColumnValueComparison */
-  ASTColumnValueComparison jjtn000 = new ASTColumnValueComparison(JJTCOLUMNVALUECOMPARISON);
-  boolean jjtc000 = true;
-  jjtree.openNodeScope(jjtn000);
-    try {
-      switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
-      case IDENTIFIER:{
-        column_name();
-        comparison_operator();
-        literal();
-        break;
-        }
-      case PLUS:
-      case MINUS:
-      case FALSE:
-      case TRUE:
-      case NUMERIC_LITERAL:
-      case STRING_LITERAL:{
-        literal();
-        comparison_operator();
-        column_name();
-        break;
-        }
-      default:
-        jj_la1[48] = jj_gen;
-        jj_consume_token(-1);
-        throw new ParseException();
-      }
-    } catch (Throwable jjte000) {
-if (jjtc000) {
-        jjtree.clearNodeScope(jjtn000);
-        jjtc000 = false;
-      } else {
-        jjtree.popNode();
-      }
-      if (jjte000 instanceof RuntimeException) {
-        {if (true) throw (RuntimeException)jjte000;}
-      }
-      if (jjte000 instanceof ParseException) {
-        {if (true) throw (ParseException)jjte000;}
-      }
-      {if (true) throw (Error)jjte000;}
-    } finally {
-if (jjtc000) {
-        jjtree.closeNodeScope(jjtn000, true);
-      }
-    }
-}
-
   final public String numeric_literal() throws ParseException {/*@bgen(jjtree) NumericLiteral */
  ASTNumericLiteral jjtn000 = new ASTNumericLiteral(JJTNUMERICLITERAL);
  boolean jjtc000 = true;
@@ -1541,14 +1571,14 @@ jjtn000.value += t.image;
           break;
           }
         default:
-          jj_la1[49] = jj_gen;
+          jj_la1[53] = jj_gen;
           jj_consume_token(-1);
           throw new ParseException();
         }
         break;
         }
       default:
-        jj_la1[50] = jj_gen;
+        jj_la1[54] = jj_gen;
         ;
       }
       t = jj_consume_token(NUMERIC_LITERAL);
@@ -1619,7 +1649,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[51] = jj_gen;
+        jj_la1[55] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -1689,7 +1719,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[52] = jj_gen;
+        jj_la1[56] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -1720,7 +1750,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[53] = jj_gen;
+        jj_la1[57] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -1746,7 +1776,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[54] = jj_gen;
+        jj_la1[58] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -1772,7 +1802,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[55] = jj_gen;
+        jj_la1[59] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -1802,7 +1832,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[56] = jj_gen;
+        jj_la1[60] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -1833,7 +1863,7 @@ if (jjtc000) {
         break;
         }
       default:
-        jj_la1[57] = jj_gen;
+        jj_la1[61] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -1886,7 +1916,7 @@ if (jjtc000) {
   jjtree.openNodeScope(jjtn000);
     try {
       and_expression();
-      label_13:
+      label_16:
       while (true) {
         switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
         case OR:
@@ -1895,8 +1925,8 @@ if (jjtc000) {
           break;
           }
         default:
-          jj_la1[58] = jj_gen;
-          break label_13;
+          jj_la1[62] = jj_gen;
+          break label_16;
         }
         or_operator();
         and_expression();
@@ -1928,7 +1958,7 @@ if (jjtc000) {
   jjtree.openNodeScope(jjtn000);
     try {
       not_expression();
-      label_14:
+      label_17:
       while (true) {
         switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
         case AND:
@@ -1937,8 +1967,8 @@ if (jjtc000) {
           break;
           }
         default:
-          jj_la1[59] = jj_gen;
-          break label_14;
+          jj_la1[63] = jj_gen;
+          break label_17;
         }
         and_operator();
         not_expression();
@@ -1969,7 +1999,7 @@ if (jjtc000) {
   boolean jjtc000 = true;
   jjtree.openNodeScope(jjtn000);
     try {
-      label_15:
+      label_18:
       while (true) {
         switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
         case NOT:
@@ -1978,8 +2008,8 @@ if (jjtc000) {
           break;
           }
         default:
-          jj_la1[60] = jj_gen;
-          break label_15;
+          jj_la1[64] = jj_gen;
+          break label_18;
         }
         not_operator();
       }
@@ -2011,12 +2041,12 @@ if (jjtc000) {
   jjtree.openNodeScope(jjtn000);
     try {
       additive_expression();
-      label_16:
+      label_19:
       while (true) {
         if (jj_2_7(2)) {
           ;
         } else {
-          break label_16;
+          break label_19;
         }
         comparison_operator();
         additive_expression();
@@ -2048,12 +2078,12 @@ if (jjtc000) {
   jjtree.openNodeScope(jjtn000);
     try {
       multiplicative_expression();
-      label_17:
+      label_20:
       while (true) {
         if (jj_2_8(2)) {
           ;
         } else {
-          break label_17;
+          break label_20;
         }
         additive_operator();
         multiplicative_expression();
@@ -2085,12 +2115,12 @@ if (jjtc000) {
   jjtree.openNodeScope(jjtn000);
     try {
       primary_expression();
-      label_18:
+      label_21:
       while (true) {
         if (jj_2_9(2)) {
           ;
         } else {
-          break label_18;
+          break label_21;
         }
         multiplicative_operator();
         primary_expression();
@@ -2152,7 +2182,7 @@ jjtn000.value = t.image;
         case STRING_LITERAL:
         case IDENTIFIER:{
           expression();
-          label_19:
+          label_22:
           while (true) {
             switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
             case COMMA:{
@@ -2160,8 +2190,8 @@ jjtn000.value = t.image;
               break;
               }
             default:
-              jj_la1[61] = jj_gen;
-              break label_19;
+              jj_la1[65] = jj_gen;
+              break label_22;
             }
             jj_consume_token(COMMA);
             expression();
@@ -2169,14 +2199,14 @@ jjtn000.value = t.image;
           break;
           }
         default:
-          jj_la1[62] = jj_gen;
+          jj_la1[66] = jj_gen;
           jj_consume_token(-1);
           throw new ParseException();
         }
         break;
         }
       default:
-        jj_la1[63] = jj_gen;
+        jj_la1[67] = jj_gen;
         ;
       }
       jj_consume_token(CLOSE_PAR);
@@ -2227,7 +2257,7 @@ if (jjtc000) {
           break;
           }
         default:
-          jj_la1[64] = jj_gen;
+          jj_la1[68] = jj_gen;
           jj_consume_token(-1);
           throw new ParseException();
         }
@@ -2349,34 +2379,33 @@ if (jjtc000) {
     finally { jj_save(11, xla); }
   }
 
-  private boolean jj_3_8()
+  private boolean jj_3R_24()
  {
-    if (jj_3R_24()) return true;
-    if (jj_3R_25()) return true;
+    if (jj_scan_token(K_DROP)) return true;
+    if (jj_scan_token(K_TABLE)) return true;
     return false;
   }
 
   private boolean jj_3_9()
  {
-    if (jj_3R_26()) return true;
-    if (jj_3R_27()) return true;
+    if (jj_3R_29()) return true;
+    if (jj_3R_30()) return true;
     return false;
   }
 
-  private boolean jj_3R_21()
+  private boolean jj_3R_37()
  {
-    if (jj_scan_token(K_DROP)) return true;
-    if (jj_scan_token(K_TABLE)) return true;
+    if (jj_scan_token(IDENTIFIER)) return true;
     return false;
   }
 
-  private boolean jj_3R_32()
+  private boolean jj_3R_35()
  {
-    if (jj_3R_24()) return true;
+    if (jj_3R_27()) return true;
     return false;
   }
 
-  private boolean jj_3R_31()
+  private boolean jj_3R_34()
  {
     if (jj_scan_token(OPEN_PAR)) return true;
     return false;
@@ -2384,17 +2413,17 @@ if (jjtc000) {
 
   private boolean jj_3_12()
  {
-    if (jj_3R_30()) return true;
+    if (jj_3R_33()) return true;
     return false;
   }
 
   private boolean jj_3_11()
  {
-    if (jj_3R_29()) return true;
+    if (jj_3R_32()) return true;
     return false;
   }
 
-  private boolean jj_3R_27()
+  private boolean jj_3R_30()
  {
     Token xsp;
     xsp = jj_scanpos;
@@ -2404,32 +2433,26 @@ if (jjtc000) {
     jj_scanpos = xsp;
     if (!jj_3_12()) return false;
     jj_scanpos = xsp;
-    if (!jj_3R_31()) return false;
+    if (!jj_3R_34()) return false;
     jj_scanpos = xsp;
-    if (jj_3R_32()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_20()
- {
-    if (jj_scan_token(K_CREATE)) return true;
-    if (jj_scan_token(K_TABLE)) return true;
+    if (jj_3R_35()) return true;
     return false;
   }
 
   private boolean jj_3_10()
  {
-    if (jj_3R_28()) return true;
+    if (jj_3R_31()) return true;
     return false;
   }
 
-  private boolean jj_3R_34()
+  private boolean jj_3R_23()
  {
-    if (jj_scan_token(IDENTIFIER)) return true;
+    if (jj_scan_token(K_CREATE)) return true;
+    if (jj_scan_token(K_TABLE)) return true;
     return false;
   }
 
-  private boolean jj_3R_22()
+  private boolean jj_3R_25()
  {
     Token xsp;
     xsp = jj_scanpos;
@@ -2453,12 +2476,21 @@ if (jjtc000) {
 
   private boolean jj_3_7()
  {
-    if (jj_3R_22()) return true;
-    if (jj_3R_23()) return true;
+    if (jj_3R_25()) return true;
+    if (jj_3R_26()) return true;
     return false;
   }
 
-  private boolean jj_3R_24()
+  private boolean jj_3R_33()
+ {
+    if (jj_scan_token(IDENTIFIER)) return true;
+    Token xsp;
+    xsp = jj_scanpos;
+    if (jj_3R_38()) jj_scanpos = xsp;
+    return false;
+  }
+
+  private boolean jj_3R_27()
  {
     Token xsp;
     xsp = jj_scanpos;
@@ -2468,54 +2500,45 @@ if (jjtc000) {
     return false;
   }
 
-  private boolean jj_3R_33()
+  private boolean jj_3_6()
  {
-    if (jj_3R_36()) return true;
+    if (jj_scan_token(IDENTIFIER)) return true;
+    if (jj_scan_token(OPEN_PAR)) return true;
     return false;
   }
 
-  private boolean jj_3R_30()
+  private boolean jj_3R_36()
  {
-    if (jj_scan_token(IDENTIFIER)) return true;
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_3R_35()) jj_scanpos = xsp;
+    if (jj_3R_39()) return true;
     return false;
   }
 
-  private boolean jj_3R_29()
+  private boolean jj_3R_32()
  {
-    if (jj_3R_34()) return true;
+    if (jj_3R_37()) return true;
     if (jj_scan_token(OPEN_PAR)) return true;
     return false;
   }
 
   private boolean jj_3_4()
  {
-    if (jj_3R_21()) return true;
+    if (jj_3R_24()) return true;
     return false;
   }
 
   private boolean jj_3_3()
  {
-    if (jj_3R_20()) return true;
-    return false;
-  }
-
-  private boolean jj_3_6()
- {
-    if (jj_scan_token(IDENTIFIER)) return true;
-    if (jj_scan_token(OPEN_PAR)) return true;
+    if (jj_3R_23()) return true;
     return false;
   }
 
-  private boolean jj_3R_25()
+  private boolean jj_3R_28()
  {
-    if (jj_3R_27()) return true;
+    if (jj_3R_30()) return true;
     return false;
   }
 
-  private boolean jj_3R_26()
+  private boolean jj_3R_29()
  {
     Token xsp;
     xsp = jj_scanpos;
@@ -2527,13 +2550,13 @@ if (jjtc000) {
     return false;
   }
 
-  private boolean jj_3R_28()
+  private boolean jj_3R_31()
  {
     Token xsp;
     xsp = jj_scanpos;
-    if (!jj_scan_token(69)) return false;
+    if (!jj_scan_token(71)) return false;
     jj_scanpos = xsp;
-    if (!jj_3R_33()) return false;
+    if (!jj_3R_36()) return false;
     jj_scanpos = xsp;
     if (!jj_scan_token(24)) return false;
     jj_scanpos = xsp;
@@ -2541,60 +2564,67 @@ if (jjtc000) {
     return false;
   }
 
-  private boolean jj_3R_38()
+  private boolean jj_3_5()
  {
-    if (jj_scan_token(MINUS)) return true;
+    if (jj_scan_token(IDENTIFIER)) return true;
+    if (jj_scan_token(DOT)) return true;
+    if (jj_scan_token(STAR)) return true;
     return false;
   }
 
-  private boolean jj_3R_23()
+  private boolean jj_3R_41()
  {
-    if (jj_3R_25()) return true;
+    if (jj_scan_token(MINUS)) return true;
     return false;
   }
 
-  private boolean jj_3_5()
+  private boolean jj_3R_38()
  {
-    if (jj_scan_token(IDENTIFIER)) return true;
     if (jj_scan_token(DOT)) return true;
-    if (jj_scan_token(STAR)) return true;
     return false;
   }
 
-  private boolean jj_3R_35()
+  private boolean jj_3R_26()
  {
-    if (jj_scan_token(DOT)) return true;
+    if (jj_3R_28()) return true;
     return false;
   }
 
-  private boolean jj_3R_37()
+  private boolean jj_3R_40()
  {
     Token xsp;
     xsp = jj_scanpos;
     if (!jj_scan_token(13)) return false;
     jj_scanpos = xsp;
-    if (jj_3R_38()) return true;
+    if (jj_3R_41()) return true;
     return false;
   }
 
-  private boolean jj_3R_36()
+  private boolean jj_3R_39()
  {
     Token xsp;
     xsp = jj_scanpos;
-    if (jj_3R_37()) jj_scanpos = xsp;
+    if (jj_3R_40()) jj_scanpos = xsp;
     if (jj_scan_token(NUMERIC_LITERAL)) return true;
     return false;
   }
 
   private boolean jj_3_2()
  {
-    if (jj_3R_21()) return true;
+    if (jj_3R_24()) return true;
     return false;
   }
 
   private boolean jj_3_1()
  {
-    if (jj_3R_20()) return true;
+    if (jj_3R_23()) return true;
+    return false;
+  }
+
+  private boolean jj_3_8()
+ {
+    if (jj_3R_27()) return true;
+    if (jj_3R_28()) return true;
     return false;
   }
 
@@ -2609,7 +2639,7 @@ if (jjtc000) {
   private Token jj_scanpos, jj_lastpos;
   private int jj_la;
   private int jj_gen;
-  final private int[] jj_la1 = new int[65];
+  final private int[] jj_la1 = new int[69];
   static private int[] jj_la1_0;
   static private int[] jj_la1_1;
   static private int[] jj_la1_2;
@@ -2619,13 +2649,13 @@ if (jjtc000) {
 	   jj_la1_init_2();
 	}
 	private static void jj_la1_init_0() {
-	   jj_la1_0 = new int[] {0x20,0x20,0xd0000000,0x20,0x10000000,0x0,0xc0000000,0x10000000,0x0,0xc0000000,0x20,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x200,0x200,0x0,0x200,0x10000000,0x0,0x0,0x200,0x0,0x0,0x0,0x200,0x80,0x200,0x20000080,0x80,0x200,0x0,0x0,0x180000,0x20000000,0x400,0x3806080,0x400,0x400,0x40,0x400,0x0,0x40,0x20000000,0x1806000,0x6000,0x6000,0x1806000,0x7f8000,0x4000000,0x8000000,0x2000000,0x1c00,0x6000,0x8000000,0x4000000,0x2000000,0x200,0x3806480,0x3806480,0x6080,};
+	   jj_la1_0 = new int[] {0x20,0x20,0xd0000000,0x20,0x10000000,0x0,0xc0000000,0x10000000,0x0,0xc0000000,0x20,0x200,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x200,0x200,0x0,0x200,0x10000000,0x0,0x200,0x0,0x0,0x0,0x200,0x80,0x200,0x20000080,0x200,0x80,0x200,0x0,0x0,0x200,0x0,0x0,0x0,0x180000,0x20000000,0x400,0x3806080,0x400,0x400,0x40,0x400,0x0,0x40,0x20000000,0x6000,0x6000,0x1806000,0x7f8000,0x4000000,0x8000000,0x2000000,0x1c00,0x6000,0x8000000,0x4000000,0x2000000,0x200,0x3806480,0x3806480,0x6080,};
 	}
 	private static void jj_la1_init_1() {
-	   jj_la1_1 = new int[] {0x0,0x0,0x1b71800a,0x0,0x8,0x8000,0x1b710002,0x8,0x8000,0x1b610002,0x0,0x1000000,0x800000,0x1000000,0x4000000,0x800000,0x600000,0x800000,0x0,0x0,0x100,0x0,0x0,0x200,0x100,0x0,0x1000,0x0,0x4000,0x0,0x0,0x0,0x0,0x0,0x0,0x60,0x20,0x0,0x0,0x0,0x800,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x200,0x400,0x800,0x0,0x0,0x400,0x200,0x800,0x0,0x800,0x800,0x0,};
+	   jj_la1_1 = new int[] {0x0,0x0,0x1b71800a,0x0,0x8,0x8000,0x1b710002,0x8,0x8000,0x1b610002,0x0,0x0,0x1000000,0x800000,0x1000000,0x4000000,0x800000,0x600000,0x800000,0x0,0x0,0x100,0x0,0x0,0x100,0x0,0x1000,0x0,0x4000,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x60,0x0,0x0,0x0,0x0,0x20,0x0,0x0,0x0,0x800,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x200,0x400,0x800,0x0,0x0,0x400,0x200,0x800,0x0,0x800,0x800,0x0,};
 	}
 	private static void jj_la1_init_2() {
-	   jj_la1_2 = new int[] {0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x1,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x62,0x40,0x40,0x0,0x0,0x40,0x0,0x0,0x62,0x0,0x0,0x22,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x62,0x62,0x0,};
+	   jj_la1_2 = new int[] {0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x1,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x6,0x0,0x6,0x6,0x0,0x0,0x0,0x0,0x188,0x100,0x100,0x0,0x0,0x100,0x0,0x0,0x0,0x0,0x88,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x188,0x188,0x0,};
 	}
   final private JJCalls[] jj_2_rtns = new JJCalls[12];
   private boolean jj_rescan = false;
@@ -2642,7 +2672,7 @@ if (jjtc000) {
 	 token = new Token();
 	 jj_ntk = -1;
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 69; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2658,7 +2688,7 @@ if (jjtc000) {
 	 jj_ntk = -1;
 	 jjtree.reset();
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 69; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2669,7 +2699,7 @@ if (jjtc000) {
 	 token = new Token();
 	 jj_ntk = -1;
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 69; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2689,7 +2719,7 @@ if (jjtc000) {
 	 jj_ntk = -1;
 	 jjtree.reset();
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 69; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2699,7 +2729,7 @@ if (jjtc000) {
 	 token = new Token();
 	 jj_ntk = -1;
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 69; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2710,7 +2740,7 @@ if (jjtc000) {
 	 jj_ntk = -1;
 	 jjtree.reset();
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 69; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2840,12 +2870,12 @@ if (jjtc000) {
   /** Generate ParseException. */
   public ParseException generateParseException() {
 	 jj_expentries.clear();
-	 boolean[] la1tokens = new boolean[71];
+	 boolean[] la1tokens = new boolean[73];
 	 if (jj_kind >= 0) {
 	   la1tokens[jj_kind] = true;
 	   jj_kind = -1;
 	 }
-	 for (int i = 0; i < 65; i++) {
+	 for (int i = 0; i < 69; i++) {
 	   if (jj_la1[i] == jj_gen) {
 		 for (int j = 0; j < 32; j++) {
 		   if ((jj_la1_0[i] & (1<<j)) != 0) {
@@ -2860,7 +2890,7 @@ if (jjtc000) {
 		 }
 	   }
 	 }
-	 for (int i = 0; i < 71; i++) {
+	 for (int i = 0; i < 73; i++) {
 	   if (la1tokens[i]) {
 		 jj_expentry = new int[1];
 		 jj_expentry[0] = i;
@@ -129,17 +129,21 @@ public interface RookieParserConstants {
   /** RegularExpression Id. */
   int K_ORDER = 64;
   /** RegularExpression Id. */
-  int NUMERIC_LITERAL = 65;
+  int K_ASC = 65;
   /** RegularExpression Id. */
-  int DIGITS = 66;
+  int K_DESC = 66;
   /** RegularExpression Id. */
-  int DIGIT = 67;
+  int NUMERIC_LITERAL = 67;
   /** RegularExpression Id. */
-  int SIGN = 68;
+  int DIGITS = 68;
   /** RegularExpression Id. */
-  int STRING_LITERAL = 69;
+  int DIGIT = 69;
   /** RegularExpression Id. */
-  int IDENTIFIER = 70;
+  int SIGN = 70;
+  /** RegularExpression Id. */
+  int STRING_LITERAL = 71;
+  /** RegularExpression Id. */
+  int IDENTIFIER = 72;
 
   /** Lexical state. */
   int DEFAULT = 0;
@@ -211,6 +215,8 @@ public interface RookieParserConstants {
     "\"plan\"",
     "\"analyze\"",
     "\"order\"",
+    "\"asc\"",
+    "\"desc\"",
     "<NUMERIC_LITERAL>",
     "<DIGITS>",
     "<DIGIT>",
@@ -96,9 +96,6 @@ public class RookieParserDefaultVisitor implements RookieParserVisitor{
   public void visit(ASTAliasedTableName node, Object data){
     defaultVisit(node, data);
   }
-  public void visit(ASTColumnValueComparison node, Object data){
-    defaultVisit(node, data);
-  }
   public void visit(ASTNumericLiteral node, Object data){
     defaultVisit(node, data);
   }
@@ -154,4 +151,4 @@ public class RookieParserDefaultVisitor implements RookieParserVisitor{
     defaultVisit(node, data);
   }
 }
-/* JavaCC - OriginalChecksum=bfc1abc56c56149d14ed9654715639ba (do not edit this line) */
+/* JavaCC - OriginalChecksum=7dcd6b5b3a1c749713724d9761c8f06a (do not edit this line) */
@@ -1,6 +1,9 @@
 /* RookieParserTokenManager.java */
 /* Generated By:JJTree&JavaCC: Do not edit this line. RookieParserTokenManager.java */
 package edu.berkeley.cs186.database.cli.parser;
+import edu.berkeley.cs186.database.common.Pair;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Token Manager. */
 public class RookieParserTokenManager implements RookieParserConstants {
@@ -12,53 +15,53 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
    switch (pos)
    {
       case 0:
-         if ((active0 & 0xfffffffff1800000L) != 0L || (active1 & 0x1L) != 0L)
+         if ((active0 & 0xfffffffff1800000L) != 0L || (active1 & 0x7L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 72;
             return 11;
          }
          if ((active0 & 0x40L) != 0L)
             return 1;
          return -1;
       case 1:
-         if ((active0 & 0x400248020000000L) != 0L || (active1 & 0x1L) != 0L)
+         if ((active0 & 0x400248020000000L) != 0L || (active1 & 0x3L) != 0L)
             return 11;
-         if ((active0 & 0xfbffdb7fd1800000L) != 0L)
+         if ((active0 & 0xfbffdb7fd1800000L) != 0L || (active1 & 0x4L) != 0L)
          {
             if (jjmatchedPos != 1)
             {
-               jjmatchedKind = 70;
+               jjmatchedKind = 72;
                jjmatchedPos = 1;
             }
             return 11;
          }
          return -1;
       case 2:
-         if ((active0 & 0xfbdfd17bd1800000L) != 0L || (active1 & 0x1L) != 0L)
+         if ((active0 & 0xfbdfd17bd1800000L) != 0L || (active1 & 0x5L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 72;
             jjmatchedPos = 2;
             return 11;
          }
-         if ((active0 & 0x200a0400000000L) != 0L)
+         if ((active0 & 0x200a0400000000L) != 0L || (active1 & 0x2L) != 0L)
             return 11;
          return -1;
       case 3:
-         if ((active0 & 0x4001005111000000L) != 0L)
-            return 11;
          if ((active0 & 0xbbded12ac0800000L) != 0L || (active1 & 0x1L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 72;
             jjmatchedPos = 3;
             return 11;
          }
+         if ((active0 & 0x4001005111000000L) != 0L || (active1 & 0x4L) != 0L)
+            return 11;
          return -1;
       case 4:
          if ((active0 & 0x201a512000800000L) != 0L || (active1 & 0x1L) != 0L)
             return 11;
          if ((active0 & 0x9bc4800ac0000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 72;
             jjmatchedPos = 4;
             return 11;
          }
@@ -66,7 +69,7 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
       case 5:
          if ((active0 & 0x9b80000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 72;
             jjmatchedPos = 5;
             return 11;
          }
@@ -76,7 +79,7 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
       case 6:
          if ((active0 & 0x380000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 72;
             jjmatchedPos = 6;
             return 11;
          }
@@ -88,25 +91,25 @@ private final int jjStopStringLiteralDfa_0(int pos, long active0, long active1){
             return 11;
          if ((active0 & 0x180000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 72;
             jjmatchedPos = 7;
             return 11;
          }
          return -1;
       case 8:
+         if ((active0 & 0x100000000000000L) != 0L)
+            return 11;
          if ((active0 & 0x80000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 72;
             jjmatchedPos = 8;
             return 11;
          }
-         if ((active0 & 0x100000000000000L) != 0L)
-            return 11;
          return -1;
       case 9:
          if ((active0 & 0x80000000000000L) != 0L)
          {
-            jjmatchedKind = 70;
+            jjmatchedKind = 72;
             jjmatchedPos = 9;
             return 11;
          }
@@ -163,7 +166,7 @@ private int jjMoveStringLiteralDfa0_0(){
          return jjMoveStringLiteralDfa1_0(0x40000L, 0x0L);
       case 65:
       case 97:
-         return jjMoveStringLiteralDfa1_0(0x8000020020000000L, 0x0L);
+         return jjMoveStringLiteralDfa1_0(0x8000020020000000L, 0x2L);
       case 66:
       case 98:
          return jjMoveStringLiteralDfa1_0(0x10200000000000L, 0x0L);
@@ -172,7 +175,7 @@ private int jjMoveStringLiteralDfa0_0(){
          return jjMoveStringLiteralDfa1_0(0x40800000000000L, 0x0L);
       case 68:
       case 100:
-         return jjMoveStringLiteralDfa1_0(0x1000040000000L, 0x0L);
+         return jjMoveStringLiteralDfa1_0(0x1000040000000L, 0x4L);
       case 69:
       case 101:
          return jjMoveStringLiteralDfa1_0(0x1020000000000000L, 0x0L);
@@ -258,7 +261,7 @@ private int jjMoveStringLiteralDfa1_0(long active0, long active1){
          return jjMoveStringLiteralDfa2_0(active0, 0x106000000800000L, active1, 0L);
       case 69:
       case 101:
-         return jjMoveStringLiteralDfa2_0(active0, 0x810000c40000000L, active1, 0L);
+         return jjMoveStringLiteralDfa2_0(active0, 0x810000c40000000L, active1, 0x4L);
       case 72:
       case 104:
          return jjMoveStringLiteralDfa2_0(active0, 0x10000000000L, active1, 0L);
@@ -292,8 +295,11 @@ private int jjMoveStringLiteralDfa1_0(long active0, long active1){
       case 83:
       case 115:
          if ((active0 & 0x20000000L) != 0L)
-            return jjStartNfaWithStates_0(1, 29, 11);
-         break;
+         {
+            jjmatchedKind = 29;
+            jjmatchedPos = 1;
+         }
+         return jjMoveStringLiteralDfa2_0(active0, 0L, active1, 0x2L);
       case 85:
       case 117:
          return jjMoveStringLiteralDfa2_0(active0, 0x2000000000000000L, active1, 0L);
@@ -330,6 +336,11 @@ private int jjMoveStringLiteralDfa2_0(long old0, long active0, long old1, long a
       case 66:
       case 98:
          return jjMoveStringLiteralDfa3_0(active0, 0x2000000000000L, active1, 0L);
+      case 67:
+      case 99:
+         if ((active1 & 0x2L) != 0L)
+            return jjStartNfaWithStates_0(2, 65, 11);
+         break;
       case 68:
       case 100:
          if ((active0 & 0x20000000000L) != 0L)
@@ -363,7 +374,7 @@ private int jjMoveStringLiteralDfa2_0(long old0, long active0, long old1, long a
          return jjMoveStringLiteralDfa3_0(active0, 0x1000000000000000L, active1, 0L);
       case 83:
       case 115:
-         return jjMoveStringLiteralDfa3_0(active0, 0x80000000L, active1, 0L);
+         return jjMoveStringLiteralDfa3_0(active0, 0x80000000L, active1, 0x4L);
       case 84:
       case 116:
          if ((active0 & 0x400000000L) != 0L)
@@ -395,6 +406,11 @@ private int jjMoveStringLiteralDfa3_0(long old0, long active0, long old1, long a
       case 65:
       case 97:
          return jjMoveStringLiteralDfa4_0(active0, 0x800200000000L, active1, 0L);
+      case 67:
+      case 99:
+         if ((active1 & 0x4L) != 0L)
+            return jjStartNfaWithStates_0(3, 66, 11);
+         break;
       case 69:
       case 101:
          if ((active0 & 0x1000000L) != 0L)
@@ -720,8 +736,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 0:
                   if ((0x3ff000000000000L & l) != 0L)
                   {
-                     if (kind > 65)
-                        kind = 65;
+                     if (kind > 67)
+                        kind = 67;
                      { jjCheckNAddStates(0, 3); }
                   }
                   else if (curChar == 34)
@@ -734,8 +750,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 1:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 67)
+                     kind = 67;
                   { jjCheckNAddTwoStates(1, 2); }
                   break;
                case 3:
@@ -745,8 +761,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 4:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 67)
+                     kind = 67;
                   { jjCheckNAdd(4); }
                   break;
                case 5:
@@ -763,14 +779,14 @@ private int jjMoveNfa_0(int startState, int curPos)
                      jjstateSet[jjnewStateCnt++] = 7;
                   break;
                case 9:
-                  if (curChar == 39 && kind > 69)
-                     kind = 69;
+                  if (curChar == 39 && kind > 71)
+                     kind = 71;
                   break;
                case 11:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 70)
-                     kind = 70;
+                  if (kind > 72)
+                     kind = 72;
                   jjstateSet[jjnewStateCnt++] = 11;
                   break;
                case 12:
@@ -790,8 +806,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                      jjstateSet[jjnewStateCnt++] = 14;
                   break;
                case 16:
-                  if (curChar == 34 && kind > 70)
-                     kind = 70;
+                  if (curChar == 34 && kind > 72)
+                     kind = 72;
                   break;
                case 18:
                   if ((0xffffffffffffdbffL & l) != 0L)
@@ -804,29 +820,29 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 25:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 67)
+                     kind = 67;
                   { jjCheckNAddStates(0, 3); }
                   break;
                case 26:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 67)
+                     kind = 67;
                   { jjCheckNAddStates(15, 17); }
                   break;
                case 27:
                   if (curChar != 46)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 67)
+                     kind = 67;
                   { jjCheckNAddTwoStates(28, 29); }
                   break;
                case 28:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 67)
+                     kind = 67;
                   { jjCheckNAddTwoStates(28, 29); }
                   break;
                case 30:
@@ -836,15 +852,15 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 31:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 65)
-                     kind = 65;
+                  if (kind > 67)
+                     kind = 67;
                   { jjCheckNAdd(31); }
                   break;
                case 32:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 66)
-                     kind = 66;
+                  if (kind > 68)
+                     kind = 68;
                   { jjCheckNAdd(32); }
                   break;
                default : break;
@@ -861,8 +877,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 0:
                   if ((0x7fffffe87fffffeL & l) != 0L)
                   {
-                     if (kind > 70)
-                        kind = 70;
+                     if (kind > 72)
+                        kind = 72;
                      { jjCheckNAdd(11); }
                   }
                   else if (curChar == 91)
@@ -881,8 +897,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 11:
                   if ((0x7fffffe87fffffeL & l) == 0L)
                      break;
-                  if (kind > 70)
-                     kind = 70;
+                  if (kind > 72)
+                     kind = 72;
                   { jjCheckNAdd(11); }
                   break;
                case 13:
@@ -905,8 +921,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                      jjstateSet[jjnewStateCnt++] = 19;
                   break;
                case 21:
-                  if (curChar == 96 && kind > 70)
-                     kind = 70;
+                  if (curChar == 96 && kind > 72)
+                     kind = 72;
                   break;
                case 22:
                   if (curChar == 91)
@@ -917,8 +933,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                      { jjCheckNAddTwoStates(23, 24); }
                   break;
                case 24:
-                  if (curChar == 93 && kind > 70)
-                     kind = 70;
+                  if (curChar == 93 && kind > 72)
+                     kind = 72;
                   break;
                case 29:
                   if ((0x2000000020L & l) != 0L)
@@ -977,7 +993,7 @@ public static final String[] jjstrLiteralImages = {
 "\74\76", null, null, "\41", "\46\46", "\174\174", null, null, null, null, null, null, 
 null, null, null, null, null, null, null, null, null, null, null, null, null, null, 
 null, null, null, null, null, null, null, null, null, null, null, null, null, null, 
-null, null, null, null, null, null, null, null, null, };
+null, null, null, null, null, null, null, null, null, null, null, };
 protected Token jjFillToken()
 {
    final Token t;
@@ -1193,10 +1209,10 @@ public static final String[] lexStateNames = {
 public static final int[] jjnewLexState = {
    -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
    -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
-   -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
+   -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
 };
 static final long[] jjtoToken = {
-   0xffffffffffffffe1L, 0x67L, 
+   0xffffffffffffffe1L, 0x19fL, 
 };
 static final long[] jjtoSkip = {
    0x1eL, 0x0L, 
@@ -33,25 +33,24 @@ public interface RookieParserTreeConstants
   public int JJTCOLUMNNAME = 27;
   public int JJTIDENTIFIER = 28;
   public int JJTALIASEDTABLENAME = 29;
-  public int JJTCOLUMNVALUECOMPARISON = 30;
-  public int JJTNUMERICLITERAL = 31;
-  public int JJTINTEGERLITERAL = 32;
-  public int JJTLITERAL = 33;
-  public int JJTCOMPARISONOPERATOR = 34;
-  public int JJTOROPERATOR = 35;
-  public int JJTANDOPERATOR = 36;
-  public int JJTNOTOPERATOR = 37;
-  public int JJTMULTIPLICATIVEOPERATOR = 38;
-  public int JJTADDITIVEOPERATOR = 39;
-  public int JJTEXPRESSION = 40;
-  public int JJTOREXPRESSION = 41;
-  public int JJTANDEXPRESSION = 42;
-  public int JJTNOTEXPRESSION = 43;
-  public int JJTCOMPARISONEXPRESSION = 44;
-  public int JJTADDITIVEEXPRESSION = 45;
-  public int JJTMULTIPLICATIVEEXPRESSION = 46;
-  public int JJTFUNCTIONCALLEXPRESSION = 47;
-  public int JJTPRIMARYEXPRESSION = 48;
+  public int JJTNUMERICLITERAL = 30;
+  public int JJTINTEGERLITERAL = 31;
+  public int JJTLITERAL = 32;
+  public int JJTCOMPARISONOPERATOR = 33;
+  public int JJTOROPERATOR = 34;
+  public int JJTANDOPERATOR = 35;
+  public int JJTNOTOPERATOR = 36;
+  public int JJTMULTIPLICATIVEOPERATOR = 37;
+  public int JJTADDITIVEOPERATOR = 38;
+  public int JJTEXPRESSION = 39;
+  public int JJTOREXPRESSION = 40;
+  public int JJTANDEXPRESSION = 41;
+  public int JJTNOTEXPRESSION = 42;
+  public int JJTCOMPARISONEXPRESSION = 43;
+  public int JJTADDITIVEEXPRESSION = 44;
+  public int JJTMULTIPLICATIVEEXPRESSION = 45;
+  public int JJTFUNCTIONCALLEXPRESSION = 46;
+  public int JJTPRIMARYEXPRESSION = 47;
 
   public String[] jjtNodeName = {
     "SQLStatementList",
@@ -84,7 +83,6 @@ public interface RookieParserTreeConstants
     "ColumnName",
     "Identifier",
     "AliasedTableName",
-    "ColumnValueComparison",
     "NumericLiteral",
     "IntegerLiteral",
     "Literal",
@@ -105,4 +103,4 @@ public interface RookieParserTreeConstants
     "PrimaryExpression",
   };
 }
-/* JavaCC - OriginalChecksum=7454a2bc0c1d9ffa919482951677c36d (do not edit this line) */
+/* JavaCC - OriginalChecksum=1e51a3662aaf0c891889077039378601 (do not edit this line) */
@@ -33,7 +33,6 @@ public interface RookieParserVisitor
   public void visit(ASTColumnName node, Object data);
   public void visit(ASTIdentifier node, Object data);
   public void visit(ASTAliasedTableName node, Object data);
-  public void visit(ASTColumnValueComparison node, Object data);
   public void visit(ASTNumericLiteral node, Object data);
   public void visit(ASTIntegerLiteral node, Object data);
   public void visit(ASTLiteral node, Object data);
@@ -53,4 +52,4 @@ public interface RookieParserVisitor
   public void visit(ASTFunctionCallExpression node, Object data);
   public void visit(ASTPrimaryExpression node, Object data);
 }
-/* JavaCC - OriginalChecksum=b2a80acec93a79482d81c9c81b82256e (do not edit this line) */
+/* JavaCC - OriginalChecksum=ba1d18af73127f1b5e8b368495c63d11 (do not edit this line) */
@@ -5,15 +5,18 @@ import edu.berkeley.cs186.database.cli.parser.ASTColumnName;
 import edu.berkeley.cs186.database.cli.parser.ASTIdentifier;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 class CreateIndexStatementVisitor extends StatementVisitor {
     public String tableName;
-    public String columnName;
+    public List<String> columnNames = new ArrayList<>();
 
     @Override
     public void execute(Transaction transaction, PrintStream out) {
-        transaction.createIndex(tableName, columnName, false);
-        out.printf("CREATE INDEX ON %s (%s)\n", tableName, columnName);
+        // Like CREATE INDEX in SQL, the index allows duplicate values
+        transaction.createIndex(tableName, columnNames, false, false);
+        out.printf("CREATE INDEX ON %s (%s)\n", tableName, String.join(", ", columnNames));
     }
 
     @Override
@@ -23,11 +26,11 @@ class CreateIndexStatementVisitor extends StatementVisitor {
 
     @Override
     public void visit(ASTColumnName node, Object data) {
-        this.columnName = (String) node.jjtGetValue();
+        this.columnNames.add((String) node.jjtGetValue());
     }
 
     @Override
     public StatementType getType() {
         return StatementType.CREATE_INDEX;
     }
-}
\ No newline at end of file
+}
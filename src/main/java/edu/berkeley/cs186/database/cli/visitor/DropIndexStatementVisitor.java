@@ -5,14 +5,16 @@ import edu.berkeley.cs186.database.cli.parser.ASTColumnName;
 import edu.berkeley.cs186.database.cli.parser.ASTIdentifier;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 class DropIndexStatementVisitor extends StatementVisitor {
     public String tableName;
-    public String columnName;
+    public List<String> columnNames = new ArrayList<>();
 
     @Override
     public void visit(ASTColumnName node, Object data) {
-        this.columnName = (String) node.jjtGetValue();
+        this.columnNames.add((String) node.jjtGetValue());
     }
 
     @Override
@@ -23,8 +25,8 @@ class DropIndexStatementVisitor extends StatementVisitor {
     @Override
     public void execute(Transaction transaction, PrintStream out) {
         try {
-            transaction.dropIndex(tableName, columnName);
-            out.printf("DROP INDEX %s(%s)\n", tableName, columnName);
+            transaction.dropIndex(tableName, columnNames);
+            out.printf("DROP INDEX %s(%s)\n", tableName, String.join(", ", columnNames));
         } catch (Exception e) {
             out.println(e.getMessage());
             out.println("Failed to execute DROP INDEX.");
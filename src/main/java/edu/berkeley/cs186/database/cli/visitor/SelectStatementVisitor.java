@@ -4,8 +4,6 @@ import edu.berkeley.cs186.database.Transaction;
 import edu.berkeley.cs186.database.cli.PrettyPrinter;
 import edu.berkeley.cs186.database.cli.parser.*;
 import edu.berkeley.cs186.database.common.Pair;
-import edu.berkeley.cs186.database.common.PredicateOperator;
-import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.query.expr.ExpressionVisitor;
@@ -26,13 +24,12 @@ class SelectStatementVisitor extends StatementVisitor {
     List<String> tableAliases = new ArrayList<>();
     List<String> joinedTableLeftCols = new ArrayList<>();
     List<String> joinedTableRightCols = new ArrayList<>();
-    List<PredicateOperator> predicateOperators = new ArrayList<>();
-    List<String> predicateColumns = new ArrayList<>();
-    List<DataBox> predicateValues = new ArrayList<>();
+    List<Expression> predicates = new ArrayList<>();
     List<String> groupByColumns = new ArrayList<>();
     List<Pair<String, String>> contextAliases = new ArrayList<>();
     List<CommonTableExpressionVisitor> withExpressions = new ArrayList<>();
-    String orderColumnName;
+    List<String> orderColumnNames = new ArrayList<>();
+    List<Boolean> orderDescending = new ArrayList<>();
     int limit = -1;
     int offset = 0;
 
@@ -63,12 +60,8 @@ class SelectStatementVisitor extends StatementVisitor {
                 joinedTableRightCols.get(i-1)
             );
         }
-        for(int i = 0; i < predicateColumns.size(); i++) {
-            query.select(
-                predicateColumns.get(i),
-                predicateOperators.get(i),
-                predicateValues.get(i)
-            );
+        for (Expression predicate : predicates) {
+            query.select(predicate);
         }
         ArrayList<String> expandedColumns = new ArrayList<>();
         ArrayList<Expression> expandedFunctions = new ArrayList<>();
@@ -119,8 +112,8 @@ class SelectStatementVisitor extends StatementVisitor {
         if (groupByColumns.size() > 0) {
             query.groupBy(groupByColumns);
         }
-        if (orderColumnName != null) {
-            query.sort(orderColumnName);
+        if (orderColumnNames.size() > 0) {
+            query.sort(orderColumnNames, orderDescending);
         }
         query.limit(limit, offset);
         for (CommonTableExpressionVisitor visitor: this.withExpressions) {
@@ -168,6 +161,11 @@ class SelectStatementVisitor extends StatementVisitor {
         ExpressionVisitor visitor = new ExpressionVisitor();
         node.jjtAccept(visitor, data);
         Expression exp = visitor.build();
+        if (node.jjtGetParent() instanceof ASTSelectStatement) {
+            // the WHERE clause, as opposed to a column of the SELECT clause
+            this.predicates.add(exp);
+            return;
+        }
         this.selectFunctions.add(exp);
         this.selectColumns.add(exp.toString());
     }
@@ -188,15 +186,6 @@ class SelectStatementVisitor extends StatementVisitor {
         else this.tableAliases.add(names[0]);
     }
 
-    @Override
-    public void visit(ASTColumnValueComparison node, Object data) {
-        ColumnValueComparisonVisitor visitor = new ColumnValueComparisonVisitor();
-        node.jjtAccept(visitor, node);
-        predicateColumns.add(visitor.columnName);
-        predicateOperators.add(visitor.op);
-        predicateValues.add(visitor.value);
-    }
-
     @Override
     public void visit(ASTLimitClause node, Object data) {
         this.limit = (int) node.jjtGetValue();
@@ -204,7 +193,13 @@ class SelectStatementVisitor extends StatementVisitor {
 
     @Override
     public void visit(ASTOrderClause node, Object data) {
-        this.orderColumnName = (String) node.jjtGetValue();
+        // the parser sets the value of an order clause to its (column, descending) pairs
+        @SuppressWarnings("unchecked")
+        List<Pair<String, Boolean>> columns = (List<Pair<String, Boolean>>) node.jjtGetValue();
+        for (Pair<String, Boolean> column : columns) {
+            this.orderColumnNames.add(column.getFirst());
+            this.orderDescending.add(column.getSecond());
+        }
     }
 
     @Override
@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.cli.parser.ASTColumnName;
 import edu.berkeley.cs186.database.cli.parser.ASTExpression;
 import edu.berkeley.cs186.database.cli.parser.ASTIdentifier;
 import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.query.expr.CompiledExpression;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.query.expr.ExpressionVisitor;
 import edu.berkeley.cs186.database.table.Schema;
@@ -53,8 +54,8 @@ public class UpdateStatementVisitor extends StatementVisitor {
             transaction.update(
                     this.tableName,
                     this.updateColumnName,
-                    exprFunc::evaluate,
-                    condFunc::evaluate
+                    CompiledExpression.compile(exprFunc),
+                    CompiledExpression.compile(condFunc)
             );
             out.println("UPDATE");
         } catch (Exception e) {
@@ -0,0 +1,77 @@
+package edu.berkeley.cs186.database.common;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+
+/**
+ * A Bloom filter over data boxes: a set that may report values that were never
+ * added as present (with a probability that depends on its size and the number
+ * of values added), but never reports added values as absent.
+ *
+ * Values are hashed with HashFunc.hashDataBox, so two data boxes are treated
+ * as the same value exactly when their hashBytes() are the same.
+ */
+public class BloomFilter {
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+
+    /**
+     * @param numBits number of bits in the filter (rounded up to a multiple of 64)
+     * @param numHashes number of bits set for each value
+     */
+    public BloomFilter(int numBits, int numHashes) {
+        if (numBits <= 0 || numHashes <= 0) {
+            throw new IllegalArgumentException("bloom filter needs at least one bit and one hash");
+        }
+        this.bits = new long[(numBits + 63) / 64];
+        this.numBits = this.bits.length * 64;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Creates a Bloom filter with the number of bits and hashes that give the
+     * target false positive rate for the expected number of values, using at
+     * most maxBits bits.
+     */
+    public static BloomFilter create(int expectedValues, double falsePositiveRate, int maxBits) {
+        expectedValues = Math.max(1, expectedValues);
+        double ln2 = Math.log(2);
+        double numBits = -expectedValues * Math.log(falsePositiveRate) / (ln2 * ln2);
+        numBits = Math.max(64, Math.min(numBits, maxBits));
+        int numHashes = (int) Math.round(numBits / expectedValues * ln2);
+        return new BloomFilter((int) numBits, Math.max(1, Math.min(numHashes, 16)));
+    }
+
+    public int getNumBits() {
+        return this.numBits;
+    }
+
+    public void add(DataBox value) {
+        int h1 = HashFunc.hashDataBox(value, 1);
+        int h2 = HashFunc.hashDataBox(value, 2);
+        for (int i = 0; i < this.numHashes; ++i) {
+            int bit = this.bitIndex(h1 + i * h2);
+            this.bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if value was definitely not added, true if it might have been
+     */
+    public boolean mightContain(DataBox value) {
+        int h1 = HashFunc.hashDataBox(value, 1);
+        int h2 = HashFunc.hashDataBox(value, 2);
+        for (int i = 0; i < this.numHashes; ++i) {
+            int bit = this.bitIndex(h1 + i * h2);
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int bitIndex(int hash) {
+        int bit = hash % this.numBits;
+        return bit < 0 ? bit + this.numBits : bit;
+    }
+}
@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.databox;
 
+import java.util.Arrays;
+
 public class ByteArrayDataBox extends DataBox {
     byte[] bytes;
 
@@ -25,10 +27,45 @@ public class ByteArrayDataBox extends DataBox {
         return this.bytes;
     }
 
+    /**
+     * Byte arrays are compared lexicographically, as unsigned bytes, so that
+     * keys encoded to preserve the order of their values (see
+     * index.IndexKey) sort in that order.
+     */
     @Override
     public int compareTo(DataBox other) {
-        throw new RuntimeException("Cannot compare byte arrays");
+        if (!(other instanceof ByteArrayDataBox)) {
+            String err = String.format("Invalid comparison between %s and %s.",
+                                       toString(), other.toString());
+            throw new IllegalArgumentException(err);
+        }
+        return compare(this.bytes, ((ByteArrayDataBox) other).bytes);
+    }
+
+    /**
+     * Compares two byte arrays lexicographically as unsigned bytes.
+     */
+    public static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; ++i) {
+            int cmp = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ByteArrayDataBox)) return false;
+        return Arrays.equals(this.bytes, ((ByteArrayDataBox) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.bytes);
     }
+
     @Override
     public String toString() {
         return "byte_array";
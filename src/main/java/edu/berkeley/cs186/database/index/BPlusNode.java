@@ -93,7 +93,10 @@ abstract class BPlusNode {
      *   leaf0                  leaf3
      *
      * When a leaf splits, it returns the first entry in the right node as the
-     * split key. In this example, 3 is the split key. After leaf0 splits, inner
+     * split key. In this example, 3 is the split key. (Leaves with string or
+     * byte array keys instead return the shortest key that separates the two
+     * nodes, and split where both halves fit on their pages if 2d + 1 keys
+     * don't fit on one; see SlottedNode.) After leaf0 splits, inner
      * inserts the new key and child pointer into itself and hits case 1 (i.e. it
      * does not overflow). The tree looks like this:
      *
@@ -217,6 +220,89 @@ abstract class BPlusNode {
     /** Get the page on which this node is persisted. */
     abstract Page getPage();
 
+    // In-page access //////////////////////////////////////////////////////////
+    /**
+     * Returns the page number of the leaf on which `key` may reside when
+     * queried from the node on page `pageNum`, like get. The inner nodes on
+     * the way down are searched in place on their pages (see
+     * InnerNode.findChild) rather than being loaded with fromBytes.
+     */
+    static long findLeaf(BPlusTreeMetadata metadata, BufferManager bufferManager,
+                         LockContext treeContext, long pageNum, DataBox key) {
+        while (true) {
+            Page page = bufferManager.fetchPageShared(treeContext, pageNum);
+            try {
+                Buffer buf = page.getBuffer();
+                if (isLeaf(buf)) {
+                    return pageNum;
+                }
+                pageNum = InnerNode.findChild(metadata, buf, key);
+            } finally {
+                page.unpin();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the node serialized in `buf` is full, i.e. whether
+     * putting one more key into it might split it.
+     */
+    static boolean isFull(BPlusTreeMetadata metadata, Buffer buf) {
+        boolean leaf = isLeaf(buf);
+        int n = leaf ? LeafNode.numEntries(buf) : InnerNode.numKeys(buf);
+        if (n >= 2 * metadata.getOrder()) {
+            return true;
+        }
+        return SlottedNode.isSlotted(metadata.getKeySchema()) &&
+               SlottedNode.isFull(buf, leaf, n, metadata.getKeySchema());
+    }
+
+    /** Returns whether the node serialized in `buf` is a leaf. */
+    static boolean isLeaf(Buffer buf) {
+        return buf.get(0) == (byte) 1;
+    }
+
+    /**
+     * Compares the key serialized at offset `offset` of `buf` with `key`, which
+     * must be of the tree's key type. Numeric, boolean and byte array keys are
+     * compared without deserializing the key on the page.
+     */
+    static int compareKey(Buffer buf, int offset, DataBox key) {
+        switch (key.type().getTypeId()) {
+            case BOOL:
+                return Boolean.compare(buf.get(offset) == (byte) 1, key.getBool());
+            case INT:
+                return Integer.compare(buf.getInt(offset), key.getInt());
+            case LONG:
+                return Long.compare(buf.getLong(offset), key.getLong());
+            case FLOAT:
+                return Float.compare(buf.getFloat(offset), key.getFloat());
+            case BYTE_ARRAY: {
+                byte[] bytes = key.toBytes();
+                for (int i = 0; i < bytes.length; ++i) {
+                    int cmp = Integer.compare(buf.get(offset + i) & 0xFF, bytes[i] & 0xFF);
+                    if (cmp != 0) return cmp;
+                }
+                return 0;
+            }
+            default:
+                return DataBox.fromBytes(buf.position(offset), key.type()).compareTo(key);
+        }
+    }
+
+    /**
+     * Moves the `length` bytes at offset `from` of `buf` to offset `to`. The
+     * two ranges may overlap.
+     */
+    static void moveBytes(Buffer buf, int from, int to, int length) {
+        if (length <= 0 || from == to) {
+            return;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes, from, length);
+        buf.put(bytes, to, length);
+    }
+
     // Pretty Printing /////////////////////////////////////////////////////////
     /**
      * S-expressions (or sexps) are a compact way of encoding nested tree-like
@@ -255,7 +341,7 @@ abstract class BPlusNode {
      */
     public static BPlusNode fromBytes(BPlusTreeMetadata metadata, BufferManager bufferManager,
                                       LockContext treeContext, long pageNum) {
-        Page p = bufferManager.fetchPage(treeContext, pageNum);
+        Page p = bufferManager.fetchPageShared(treeContext, pageNum);
         try {
             Buffer buf = p.getBuffer();
             byte b = buf.get();
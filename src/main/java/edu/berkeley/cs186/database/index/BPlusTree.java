@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.index;
 
 import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
@@ -9,6 +10,7 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.RecordId;
 
 import javax.xml.crypto.Data;
@@ -50,6 +52,22 @@ import java.util.*;
  *   fromDisk.get(new IntDataBox(0)); // Optional.empty()
  *   fromDisk.get(new IntDataBox(1)); // Optional.of(RecordId(1, 1))
  *   fromDisk.get(new IntDataBox(2)); // Optional.of(RecordId(2, 2))
+ *
+ * A tree may be used by many threads at once. Nodes are protected by the
+ * latches of the pages they are on, and every operation goes down the tree
+ * with latch crabbing: the latch on a child is acquired before the latch on
+ * its parent is released, so a concurrent split can never move a key out of
+ * the path an operation is on. Lookups and scans only take shared latches,
+ * so they never block each other. An insert first goes down with shared
+ * latches and only latches its leaf exclusively; if the leaf is full, it
+ * goes down again with exclusive latches, and releases the latches above
+ * every node that has room for another key, so that only the part of the
+ * path that the split changes stays latched. Removes never rebalance, so
+ * they only ever latch their leaf exclusively.
+ *
+ * The root always stays on the same page, so that it can be latched like
+ * any other node: when the root splits, its contents are moved to a new page
+ * and the root page becomes the new inner node above them.
  */
 public class BPlusTree {
     // Buffer manager
@@ -58,9 +76,6 @@ public class BPlusTree {
     // B+ tree metadata
     private BPlusTreeMetadata metadata;
 
-    // root of the B+ tree
-    private BPlusNode root;
-
     // lock context for the B+ tree
     private LockContext lockContext;
 
@@ -113,10 +128,7 @@ public class BPlusTree {
         this.lockContext = lockContext;
         this.metadata = metadata;
 
-        if (this.metadata.getRootPageNum() != DiskSpaceManager.INVALID_PAGE_NUM) {
-            this.root = BPlusNode.fromBytes(this.metadata, bufferManager, lockContext,
-                    this.metadata.getRootPageNum());
-        } else {
+        if (this.metadata.getRootPageNum() == DiskSpaceManager.INVALID_PAGE_NUM) {
             // We're creating the root, which means we need exclusive access
             // on the tree
             LockUtil.ensureSufficientLockHeld(lockContext, LockType.X);
@@ -124,7 +136,10 @@ public class BPlusTree {
             List<DataBox> keys = new ArrayList<>();
             List<RecordId> rids = new ArrayList<>();
             Optional<Long> rightSibling = Optional.empty();
-            this.updateRoot(new LeafNode(this.metadata, bufferManager, keys, rids, rightSibling, lockContext));
+            LeafNode root = new LeafNode(this.metadata, bufferManager, keys, rids, rightSibling, lockContext);
+            metadata.setRootPageNum(root.getPage().getPageNum());
+            metadata.incrementHeight();
+            updateMetadata();
         }
     }
 
@@ -147,8 +162,13 @@ public class BPlusTree {
         LockUtil.ensureSufficientLockHeld(lockContext, LockType.NL);
 
         // TODO(proj2): implement
-        LeafNode currNode = this.root.get(key);
-        return currNode.getKey(key);
+        // Search each node in place on its page, rather than loading it
+        Page page = latchLeaf(key, false);
+        try {
+            return LeafNode.getKey(metadata, page.getBuffer(), key);
+        } finally {
+            page.unpin();
+        }
     }
 
     /**
@@ -240,54 +260,118 @@ public class BPlusTree {
         return retTree;
     }
 
+    /**
+     * Returns an iterator over the RecordIds stored in the B+ tree whose keys
+     * are between `start` and `stop`, in ascending order of their keys. The
+     * scan starts at the leaf that `start` would be in and stops at the first
+     * key past `stop`, rather than going on to the last leaf. Either bound may
+     * be null for a range that is unbounded on that side.
+     *
+     *   // Insert some values into a tree.
+     *   tree.put(new IntDataBox(2), new RecordId(2, (short) 2));
+     *   tree.put(new IntDataBox(5), new RecordId(5, (short) 5));
+     *   tree.put(new IntDataBox(4), new RecordId(4, (short) 4));
+     *   tree.put(new IntDataBox(1), new RecordId(1, (short) 1));
+     *   tree.put(new IntDataBox(3), new RecordId(3, (short) 3));
+     *
+     *   Iterator<RecordId> iter = tree.scanRange(new IntDataBox(2), false,
+     *                                            new IntDataBox(4), true);
+     *   iter.next(); // RecordId(3, 3)
+     *   iter.next(); // RecordId(4, 4)
+     *   iter.next(); // NoSuchElementException
+     *
+     * @param start the lowest key to return, or null to start at the first key
+     * @param startInclusive whether a key equal to `start` is returned
+     * @param stop the highest key to return, or null to scan to the last key
+     * @param stopInclusive whether a key equal to `stop` is returned
+     */
+    public Iterator<RecordId> scanRange(DataBox start, boolean startInclusive,
+                                        DataBox stop, boolean stopInclusive) {
+        if (start != null) typecheck(start);
+        if (stop != null) typecheck(stop);
+        LockUtil.ensureSufficientLockHeld(lockContext, LockType.NL);
+
+        return new BPlusTreeIterator(start, startInclusive, stop, stopInclusive);
+    }
+
     // Iterator ////////////////////////////////////////////////////////////////
     private class BPlusTreeIterator implements Iterator<RecordId> {
         // TODO(proj2): Add whatever fields and constructors you want here.
+        // the current leaf, or null until the first leaf is read
         LeafNode leaf;
         int index;
+        // the page of the first leaf, and the key to start at (or null to
+        // start at the first key)
+        long firstPageNum;
+        DataBox start;
+        boolean startInclusive;
+        // the key to stop at, or null to scan to the last leaf
+        DataBox stop;
+        boolean stopInclusive;
 
         public BPlusTreeIterator() {
-            leaf = root.getLeftmostLeaf();
-            index = 0;
+            this(null, false, null, false);
         }
 
         public BPlusTreeIterator(DataBox key) {
-            leaf = root.get(key);
-            index = InnerNode.numLessThan(key, leaf.getKeys());
+            this(key, true, null, false);
+        }
+
+        public BPlusTreeIterator(DataBox start, boolean startInclusive, DataBox stop, boolean stopInclusive) {
+            // Only the inner nodes are read here; the first leaf is read by
+            // the first call to hasNext. Leaves are read through right
+            // sibling pointers without holding a latch in between: entries
+            // that a split moves out of a leaf only ever move right, so none
+            // are skipped.
+            this.firstPageNum = findLeafPageNum(start);
+            this.start = start;
+            this.startInclusive = startInclusive;
+            this.stop = stop;
+            this.stopInclusive = stopInclusive;
+        }
+
+        private void readFirstLeaf() {
+            // The page is an inner node if the tree grew in the meantime
+            BPlusNode node = BPlusNode.fromBytes(metadata, bufferManager, lockContext, firstPageNum);
+            if (start == null) {
+                leaf = node.getLeftmostLeaf();
+                index = 0;
+            } else {
+                leaf = node.get(start);
+                index = startInclusive ? InnerNode.numLessThan(start, leaf.getKeys())
+                                       : InnerNode.numLessThanEqual(start, leaf.getKeys());
+            }
         }
 
         @Override
         public boolean hasNext() {
             // TODO(proj2): implement
-            if (leaf.getRids().isEmpty()) {
-                return false;
+            if (leaf == null) {
+                readFirstLeaf();
             }
-
-            else if (leaf.getRightSibling().equals(Optional.empty()) && index + 1 > leaf.getRids().size()) {
-                return false;
+            // move past the end of the leaf (and any empty leaves after it)
+            while (index >= leaf.getRids().size()) {
+                Optional<LeafNode> sibling = leaf.getRightSibling();
+                if (!sibling.isPresent()) {
+                    return false;
+                }
+                leaf = sibling.get();
+                index = 0;
             }
-
-            return true;
+            if (stop == null) {
+                return true;
+            }
+            int cmp = leaf.getKeys().get(index).compareTo(stop);
+            return cmp < 0 || (cmp == 0 && stopInclusive);
         }
 
         @Override
         public RecordId next() {
             // TODO(proj2): implement
-            // If we've reached the last Record ID on the leaf node, then attempt to iterate through next leaf node
-            if (index + 1 > leaf.getRids().size()) {
-                index = 0;
-
-                if (hasNext()) {
-                    leaf = leaf.getRightSibling().get();
-                }
-                else {
-                    throw new NoSuchElementException();
-                }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
-
-            RecordId toReturn = leaf.getRids().get(index);
-            index++;
-            return toReturn;
+            return leaf.getRids().get(index++);
         }
     }
 
@@ -306,68 +390,122 @@ public class BPlusTree {
         LockUtil.ensureSufficientLockHeld(lockContext, LockType.NL);
 
         // TODO(proj2): implement
-        // Note: You should NOT update the root variable directly.
-        // Use the provided updateRoot() helper method to change
-        // the tree's root if the old root splits.
-
-        Optional<Pair<DataBox, Long>> output = root.put(key, rid); // output of the recursive action of inserting a new key
-        if (!output.isPresent()) { //if output is empty, then root doesn't have to split
-            return;
+        // The leaf is usually not full, and then the pair is inserted in place
+        // on its page without loading any node, and without latching any
+        // node but the leaf exclusively.
+        Page page = latchLeaf(key, true);
+        try {
+            if (LeafNode.putInPlace(metadata, page.getBuffer(), key, rid)) {
+                return;
+            }
+        } finally {
+            page.unpin();
         }
-        // if root splits: create new root node
-        Pair<DataBox, Long> val = output.get();
-        List<DataBox> keys = new ArrayList<>(); //create a new list of keys for the new root node
-        keys.add(val.getFirst());
 
-        List<Long> children = new ArrayList<>(); //add the children to the new root node
-        children.add(root.getPage().getPageNum());
-        children.add(val.getSecond());
+        // Otherwise, latch every node that the split may reach exclusively:
+        // going down from the root, the nodes above a node that isn't full
+        // are released, since the split stops at that node. Only the root can
+        // be full and still latched when the leaf is reached.
+        List<Page> latched = new ArrayList<>();
+        boolean rootSplit;
+        try {
+            page = bufferManager.fetchPage(lockContext, metadata.getRootPageNum());
+            latched.add(page);
+            while (true) {
+                Buffer buf = page.getBuffer();
+                if (!BPlusNode.isFull(metadata, buf)) {
+                    for (Page p : latched.subList(0, latched.size() - 1)) {
+                        p.unpin();
+                    }
+                    latched.subList(0, latched.size() - 1).clear();
+                }
+                if (BPlusNode.isLeaf(buf)) {
+                    break;
+                }
+                page = bufferManager.fetchPage(lockContext, InnerNode.findChild(metadata, buf, key));
+                latched.add(page);
+            }
 
-        BPlusNode newRoot = new InnerNode(metadata, bufferManager, keys, children, lockContext);
-        updateRoot(newRoot);
+            long pageNum = latched.get(0).getPageNum();
+            BPlusNode node = BPlusNode.fromBytes(metadata, bufferManager, lockContext, pageNum);
+            Optional<Pair<DataBox, Long>> output = node.put(key, rid); // output of the recursive action of inserting a new key
+            rootSplit = output.isPresent();
+            if (rootSplit) { // the root splits
+                splitRoot(output.get());
+            }
+        } finally {
+            for (Page p : latched) {
+                p.unpin();
+            }
+        }
+        if (rootSplit) {
+            updateMetadata();
+        }
     }
 
     /**
      * Bulk loads data into the B+ tree. Tree should be empty and the data
      * iterator should be in sorted order (by the DataBox key field) and
-     * contain no duplicates (no error checking is done for this).
+     * contain no duplicates.
      *
      * fillFactor specifies the fill factor for leaves only; inner nodes should
      * be filled up to full and split in half exactly like in put.
      *
-     * This method should raise an exception if the tree is not empty at time
-     * of bulk loading. Bulk loading is used when creating a new Index, so think
-     * about what an "empty" tree should look like. If data does not meet the
-     * preconditions (contains duplicates or not in order), the resulting
-     * behavior is undefined. Undefined behavior means you can handle these
-     * cases however you want (or not at all) and you are not required to
-     * write any explicit checks.
-     *
-     * The behavior of this method should be similar to that of InnerNode's
-     * bulkLoad (see comments in BPlusNode.bulkLoad).
+     * This method raises a BPlusTreeException if the tree is not empty at
+     * time of bulk loading. The tree is built from the bottom up: each node
+     * is written once, when it is full, and the leaves are written in order
+     * (see BulkLoader).
      */
     public void bulkLoad(Iterator<Pair<DataBox, RecordId>> data, float fillFactor) {
         // TODO(proj4_integration): Update the following line
         LockUtil.ensureSufficientLockHeld(lockContext, LockType.NL);
 
         // TODO(proj2): implement
-        // Note: You should NOT update the root variable directly.
-        // Use the provided updateRoot() helper method to change
-        // the tree's root if the old root splits.
-        while (data.hasNext()) {
-            Optional<Pair<DataBox, Long>> output = root.bulkLoad(data, fillFactor); // output of the recursive action of inserting a new key
-            if (output.isPresent()) { //if output is empty, then root doesn't have to split
-                // if root splits: create new root node
-                Pair<DataBox, Long> val = output.get();
-                List<DataBox> keys = new ArrayList<>(); //create a new list of keys for the new root node
-                keys.add(val.getFirst());
-
-                List<Long> children = new ArrayList<>(); //add the children to the new root node
-                children.add(root.getPage().getPageNum());
-                children.add(val.getSecond());
-
-                BPlusNode newRoot = new InnerNode(metadata, bufferManager, keys, children, lockContext);
-                updateRoot(newRoot);
+        Page root = bufferManager.fetchPage(lockContext, metadata.getRootPageNum());
+        try {
+            Buffer buf = root.getBuffer();
+            if (metadata.getHeight() != 0 || LeafNode.numEntries(buf) != 0) {
+                throw new BPlusTreeException("cannot bulk load into a tree that isn't empty");
+            }
+        } finally {
+            root.unpin();
+        }
+        append(data, fillFactor);
+    }
+
+    /**
+     * Appends data to the B+ tree, in the same way as bulkLoad, except that
+     * the tree need not be empty: the data must be in sorted order, and every
+     * key in it must be greater than every key already in the tree. New
+     * entries go into the rightmost leaf until it is filled up to the fill
+     * factor, and then into new leaves.
+     *
+     * A BPlusTreeException is raised at the first key that is out of order,
+     * and the entries before it stay in the tree.
+     */
+    public void append(Iterator<Pair<DataBox, RecordId>> data, float fillFactor) {
+        // rewrites the right edge of the tree (and may split the root)
+        LockUtil.ensureSufficientLockHeld(lockContext, LockType.X);
+
+        // The root stays latched exclusively until all of the data is loaded,
+        // which keeps every other operation out of the tree
+        int height = metadata.getHeight();
+        Page root = bufferManager.fetchPage(lockContext, metadata.getRootPageNum());
+        try {
+            BulkLoader loader = new BulkLoader(metadata, bufferManager, lockContext, fillFactor);
+            try {
+                while (data.hasNext()) {
+                    Pair<DataBox, RecordId> entry = data.next();
+                    typecheck(entry.getFirst());
+                    loader.add(entry.getFirst(), entry.getSecond());
+                }
+            } finally {
+                loader.finish();
+            }
+        } finally {
+            root.unpin();
+            if (metadata.getHeight() != height) {
+                updateMetadata();
             }
         }
     }
@@ -389,8 +527,13 @@ public class BPlusTree {
         LockUtil.ensureSufficientLockHeld(lockContext, LockType.NL);
 
         // TODO(proj2): implement
-        root.remove(key);
-        return;
+        // Removes never rebalance the tree, so only the leaf changes
+        Page page = latchLeaf(key, true);
+        try {
+            LeafNode.removeInPlace(metadata, page.getBuffer(), key);
+        } finally {
+            page.unpin();
+        }
     }
 
     // Helpers /////////////////////////////////////////////////////////////////
@@ -401,7 +544,7 @@ public class BPlusTree {
     public String toSexp() {
         // TODO(proj4_integration): Update the following line
         LockUtil.ensureSufficientLockHeld(lockContext, LockType.NL);
-        return root.toSexp();
+        return loadRoot().toSexp();
     }
 
     /**
@@ -423,7 +566,7 @@ public class BPlusTree {
         List<String> strings = new ArrayList<>();
         strings.add("digraph g {" );
         strings.add("  node [shape=record, height=0.1];");
-        strings.add(root.toDot());
+        strings.add(loadRoot().toDot());
         strings.add("}");
         return String.join("\n", strings);
     }
@@ -478,14 +621,114 @@ public class BPlusTree {
         return metadata.getPartNum();
     }
 
+    /** Loads the root of the tree from its page. */
+    private BPlusNode loadRoot() {
+        return BPlusNode.fromBytes(metadata, bufferManager, lockContext, metadata.getRootPageNum());
+    }
+
     /**
-     * Save the new root page number and update the tree's metadata.
-     **/
-    private void updateRoot(BPlusNode newRoot) {
-        this.root = newRoot;
+     * Goes down the tree to the leaf that `key` belongs on, or to the leftmost
+     * leaf if `key` is null, with latch crabbing. The leaf is returned pinned
+     * and latched, exclusively if `exclusive` is set.
+     */
+    private Page latchLeaf(DataBox key, boolean exclusive) {
+        while (true) {
+            Page parent = null;
+            Page page = bufferManager.fetchPageShared(lockContext, metadata.getRootPageNum());
+            while (!BPlusNode.isLeaf(page.getBuffer())) {
+                Buffer buf = page.getBuffer();
+                long child = key == null ? InnerNode.leftmostChild(metadata, buf)
+                                         : InnerNode.findChild(metadata, buf, key);
+                Page childPage = bufferManager.fetchPageShared(lockContext, child);
+                if (parent != null) {
+                    parent.unpin();
+                }
+                parent = page;
+                page = childPage;
+            }
+            if (!exclusive) {
+                if (parent != null) {
+                    parent.unpin();
+                }
+                return page;
+            }
+
+            // A shared latch can't be upgraded, so the leaf is latched again
+            // exclusively. No split can reach the leaf in between, since
+            // its parent is still latched.
+            long pageNum = page.getPageNum();
+            page.unpin();
+            page = bufferManager.fetchPage(lockContext, pageNum);
+            if (parent != null) {
+                parent.unpin();
+                return page;
+            }
+            // The leaf is the root, which may have split in between
+            if (BPlusNode.isLeaf(page.getBuffer())) {
+                return page;
+            }
+            page.unpin();
+        }
+    }
 
-        metadata.setRootPageNum(this.root.getPage().getPageNum());
+    /**
+     * Returns the page number of the leaf that `key` belongs on, or of the
+     * leftmost leaf if `key` is null, going down the tree with latch crabbing
+     * like latchLeaf. The leaf itself isn't read: its parent is found with the
+     * tree's height. If the tree has grown since, the page returned is that
+     * of an inner node above the leaf instead.
+     */
+    private long findLeafPageNum(DataBox key) {
+        Page page = bufferManager.fetchPageShared(lockContext, metadata.getRootPageNum());
+        try {
+            for (int depth = 1; !BPlusNode.isLeaf(page.getBuffer()); ++depth) {
+                Buffer buf = page.getBuffer();
+                long child = key == null ? InnerNode.leftmostChild(metadata, buf)
+                                         : InnerNode.findChild(metadata, buf, key);
+                if (depth >= metadata.getHeight()) {
+                    return child;
+                }
+                Page childPage = bufferManager.fetchPageShared(lockContext, child);
+                page.unpin();
+                page = childPage;
+            }
+            return page.getPageNum();
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Splits the root, given the split key and right node returned by the
+     * root's put or bulkLoad. The contents of the root page (the left node of
+     * the split) are moved to a new page, and the root page is replaced by a
+     * new inner node whose children are the left and right nodes. The root
+     * must be latched exclusively.
+     */
+    private void splitRoot(Pair<DataBox, Long> split) {
+        long rootPageNum = metadata.getRootPageNum();
+        Page root = bufferManager.fetchPage(lockContext, rootPageNum);
+        Page left = bufferManager.fetchNewPage(lockContext, metadata.getPartNum());
+        try {
+            byte[] bytes = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+            root.getBuffer().get(bytes);
+            left.getBuffer().put(bytes);
+        } finally {
+            left.unpin();
+            root.unpin();
+        }
+
+        List<DataBox> keys = Collections.singletonList(split.getFirst());
+        List<Long> children = Arrays.asList(left.getPageNum(), split.getSecond());
+        new InnerNode(metadata, bufferManager, rootPageNum, keys, children, lockContext);
         metadata.incrementHeight();
+    }
+
+    /**
+     * Saves the tree's metadata (its root page number and height). This
+     * acquires locks, so no page of the tree may be latched.
+     **/
+    private void updateMetadata() {
         TransactionContext transaction = TransactionContext.getTransaction();
         if (transaction != null) {
             transaction.updateIndexMetadata(metadata);
@@ -4,18 +4,27 @@ import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.table.Record;
 
+import java.util.Arrays;
+import java.util.List;
+
 /** Metadata about a B+ tree. */
 public class BPlusTreeMetadata {
     // Table for which this B+ tree is for
     private final String tableName;
 
-    // Column that this B+ tree uses as a search key
+    // Column that this B+ tree uses as a search key, or the comma-separated
+    // columns of an index on several columns
     private final String colName;
 
     // B+ trees map keys (of some type) to record ids. This is the type of the
-    // keys.
+    // keys: the type of the column for a unique index on a single column, and
+    // a byte array otherwise (see IndexKey).
     private final Type keySchema;
 
+    // Whether the indexed columns have different values in every record. The
+    // keys of an index that allows duplicates end with the record id.
+    private final boolean unique;
+
     // The order of the tree. Given a tree of order d, its inner nodes store
     // between d and 2d keys and between d+1 and 2d+1 children pointers. Leaf
     // nodes store between d and 2d (key, record id) pairs. Notable exceptions
@@ -28,16 +37,23 @@ public class BPlusTreeMetadata {
     private final int partNum;
 
     // The page number of the root node.
-    private long rootPageNum;
+    private volatile long rootPageNum;
 
-    // The height of this tree.
-    private int height;
+    // The height of this tree. Only changed with the root latched exclusively,
+    // but read without a latch (e.g. when going down the tree), so volatile.
+    private volatile int height;
 
     public BPlusTreeMetadata(String tableName, String colName, Type keySchema, int order, int partNum,
                              long rootPageNum, int height) {
+        this(tableName, colName, keySchema, true, order, partNum, rootPageNum, height);
+    }
+
+    public BPlusTreeMetadata(String tableName, String colName, Type keySchema, boolean unique, int order,
+                             int partNum, long rootPageNum, int height) {
         this.tableName = tableName;
         this.colName = colName;
         this.keySchema = keySchema;
+        this.unique = unique;
         this.order = order;
         this.partNum = partNum;
         this.rootPageNum = rootPageNum;
@@ -54,6 +70,7 @@ public class BPlusTreeMetadata {
         int typeIdIndex = record.getValue(5).getInt();
         int typeSize = record.getValue(6).getInt();
         this.keySchema = new Type(TypeId.values()[typeIdIndex], typeSize);
+        this.unique = record.getValue(8).getBool();
     }
 
     /**
@@ -63,7 +80,7 @@ public class BPlusTreeMetadata {
     public Record toRecord() {
         return new Record(tableName, colName, order, partNum, rootPageNum,
                 keySchema.getTypeId().ordinal(), keySchema.getSizeInBytes(),
-                height
+                height, unique
         );
     }
 
@@ -75,6 +92,14 @@ public class BPlusTreeMetadata {
         return colName;
     }
 
+    /**
+     * @return the columns of the index, in the order that its keys are sorted
+     * by them
+     */
+    public List<String> getColNames() {
+        return Arrays.asList(colName.split(","));
+    }
+
     public String getName() {
         return tableName + "," + colName;
     }
@@ -83,6 +108,10 @@ public class BPlusTreeMetadata {
         return keySchema;
     }
 
+    public boolean isUnique() {
+        return unique;
+    }
+
     public int getOrder() {
         return order;
     }
@@ -104,6 +133,7 @@ public class BPlusTreeMetadata {
     }
 
     void incrementHeight() {
+        // not atomic, but writers are serialized by the root latch
         ++height;
     }
 }
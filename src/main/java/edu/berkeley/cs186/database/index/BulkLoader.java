@@ -0,0 +1,243 @@
+package edu.berkeley.cs186.database.index;
+
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.table.RecordId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Appends entries, in ascending order of their keys, to the right edge of a
+ * B+ tree, building it from the bottom up (see BPlusTree.bulkLoad and
+ * BPlusTree.append).
+ *
+ * The nodes on the right edge of the tree (the rightmost leaf, its parent,
+ * and so on up to the root) are kept in memory while entries are added:
+ * nothing to the left of them changes, and everything that is added goes
+ * into them. When the rightmost leaf has as many entries as the fill factor
+ * allows, it is written out and a new leaf is started, and the separator
+ * between them is added to the rightmost node of the level above. Inner
+ * nodes fill up completely and are then split in half, as in put, with the
+ * left half written out and the right half staying in memory. For string and
+ * byte array keys (see SlottedNode), the fill factor also limits the bytes
+ * that a leaf takes up on its page, and the separators are the shortest keys
+ * between two leaves. Every node is
+ * therefore written once, when it is done, and leaves are written in order
+ * to pages allocated in order.
+ *
+ * The root stays on the same page: a node that is written out before the
+ * tree is finished always goes to a new page, and finish writes the topmost
+ * node to the root page.
+ */
+class BulkLoader {
+    private BPlusTreeMetadata metadata;
+    private BufferManager bufferManager;
+    private LockContext treeContext;
+
+    // The number of entries to put in a leaf
+    private int leafSize;
+
+    // The entries of the rightmost leaf, and its page, or INVALID_PAGE_NUM if
+    // it doesn't have one yet
+    private List<DataBox> leafKeys = new ArrayList<>();
+    private List<RecordId> leafRids = new ArrayList<>();
+    private long leafPageNum = DiskSpaceManager.INVALID_PAGE_NUM;
+
+    // Whether the keys are strings or byte arrays (see SlottedNode), and for
+    // those, the number of bytes that a leaf may take up on its page and the
+    // number of bytes of the keys of the rightmost leaf
+    private boolean slotted;
+    private int leafBytes;
+    private int leafKeysLength;
+
+    // The keys, children and pages of the rightmost inner node of each level,
+    // from the level above the leaves up to the root. The last child of each
+    // node is the rightmost node of the level below, which is only known once
+    // that node has been written out.
+    private List<List<DataBox>> innerKeys = new ArrayList<>();
+    private List<List<Long>> innerChildren = new ArrayList<>();
+    private List<Long> innerPageNums = new ArrayList<>();
+
+    // The largest key in the tree, if there is one
+    private DataBox lastKey;
+
+    /**
+     * Loads the right edge of the tree with metadata `metadata` into memory.
+     * The root of the tree must be latched exclusively, and stay latched until
+     * the loader is finished.
+     */
+    BulkLoader(BPlusTreeMetadata metadata, BufferManager bufferManager, LockContext treeContext,
+               float fillFactor) {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new BPlusTreeException("fill factor must be in (0, 1], not " + fillFactor);
+        }
+        this.metadata = metadata;
+        this.bufferManager = bufferManager;
+        this.treeContext = treeContext;
+        this.leafSize = Math.max(1, Math.round(fillFactor * metadata.getOrder() * 2));
+        this.slotted = SlottedNode.isSlotted(metadata.getKeySchema());
+        this.leafBytes = (int) (fillFactor * BufferManager.EFFECTIVE_PAGE_SIZE);
+
+        // The nodes above the leaf are in order from the root down, and are
+        // reversed once the leaf is reached
+        long pageNum = metadata.getRootPageNum();
+        BPlusNode node = BPlusNode.fromBytes(metadata, bufferManager, treeContext, pageNum);
+        while (node instanceof InnerNode) {
+            InnerNode inner = (InnerNode) node;
+            this.innerKeys.add(new ArrayList<>(inner.getKeys()));
+            this.innerChildren.add(new ArrayList<>(inner.getChildren()));
+            this.innerPageNums.add(pageNum);
+            this.lastKey = inner.getKeys().get(inner.getKeys().size() - 1);
+            pageNum = inner.getChildren().get(inner.getChildren().size() - 1);
+            node = BPlusNode.fromBytes(metadata, bufferManager, treeContext, pageNum);
+        }
+        Collections.reverse(this.innerKeys);
+        Collections.reverse(this.innerChildren);
+        Collections.reverse(this.innerPageNums);
+
+        LeafNode leaf = (LeafNode) node;
+        this.leafKeys.addAll(leaf.getKeys());
+        this.leafRids.addAll(leaf.getRids());
+        this.leafPageNum = pageNum;
+        if (this.slotted) {
+            for (DataBox key : this.leafKeys) {
+                this.leafKeysLength += SlottedNode.toBytes(key).length;
+            }
+        }
+        if (!this.leafKeys.isEmpty()) {
+            this.lastKey = this.leafKeys.get(this.leafKeys.size() - 1);
+        }
+
+        // Whatever node is on the root page is rewritten there by finish
+        if (this.innerPageNums.isEmpty()) {
+            this.leafPageNum = DiskSpaceManager.INVALID_PAGE_NUM;
+        } else {
+            this.innerPageNums.set(this.innerPageNums.size() - 1, DiskSpaceManager.INVALID_PAGE_NUM);
+        }
+    }
+
+    /**
+     * Adds an entry to the tree. Its key must be greater than every key
+     * already in it.
+     */
+    void add(DataBox key, RecordId rid) {
+        if (this.lastKey != null && key.compareTo(this.lastKey) <= 0) {
+            throw new BPlusTreeException(String.format(
+                    "cannot append key %s after key %s", key, this.lastKey));
+        }
+        byte[] bytes = this.slotted ? SlottedNode.toBytes(key) : new byte[0];
+        if (this.isLeafDone(bytes)) {
+            long pageNum = this.pageNumOf(this.leafPageNum);
+            long next = this.allocatePage();
+            new LeafNode(this.metadata, this.bufferManager, pageNum, this.leafKeys, this.leafRids,
+                         Optional.of(next), this.treeContext);
+            DataBox separator = key;
+            if (this.slotted) {
+                separator = SlottedNode.separator(this.metadata.getKeySchema(), this.lastKey, key);
+            }
+            this.leafKeys.clear();
+            this.leafRids.clear();
+            this.leafKeysLength = 0;
+            this.leafPageNum = next;
+            this.addChild(0, pageNum, separator, next);
+        }
+        this.leafKeys.add(key);
+        this.leafRids.add(rid);
+        this.leafKeysLength += bytes.length;
+        this.lastKey = key;
+    }
+
+    /**
+     * Returns whether the rightmost leaf is as full as the fill factor
+     * allows, i.e. whether a key whose bytes on a page are `bytes` (if the
+     * keys are slotted) goes into a new leaf.
+     */
+    private boolean isLeafDone(byte[] bytes) {
+        if (this.leafKeys.size() >= this.leafSize) {
+            return true;
+        }
+        if (!this.slotted || this.leafKeys.isEmpty()) {
+            return false;
+        }
+        // the keys are in order, so their common prefix is that of the first
+        // and last of them
+        byte[] first = SlottedNode.toBytes(this.leafKeys.get(0));
+        int prefixLength = SlottedNode.commonPrefixLength(first, bytes);
+        int size = SlottedNode.leafSize(this.leafKeys.size() + 1, this.leafKeysLength + bytes.length,
+                                        prefixLength);
+        return size > this.leafBytes;
+    }
+
+    /**
+     * Writes out the nodes on the right edge of the tree, and updates the
+     * height in its metadata.
+     */
+    void finish() {
+        int height = this.innerKeys.size();
+        long rootPageNum = this.metadata.getRootPageNum();
+        long pageNum = height == 0 ? rootPageNum : this.leafPageNum;
+        new LeafNode(this.metadata, this.bufferManager, pageNum, this.leafKeys, this.leafRids,
+                     Optional.empty(), this.treeContext);
+        for (int level = 0; level < height; ++level) {
+            List<Long> children = this.innerChildren.get(level);
+            children.set(children.size() - 1, pageNum);
+            pageNum = level == height - 1 ? rootPageNum : this.pageNumOf(this.innerPageNums.get(level));
+            new InnerNode(this.metadata, this.bufferManager, pageNum, this.innerKeys.get(level),
+                          children, this.treeContext);
+        }
+        while (this.metadata.getHeight() < height) {
+            this.metadata.incrementHeight();
+        }
+    }
+
+    /**
+     * Adds `key` and the node on page `right` after it to the rightmost node
+     * of level `level` of inner nodes, whose last child was written out to
+     * page `left`, and splits that node if it is too full.
+     */
+    private void addChild(int level, long left, DataBox key, long right) {
+        if (level == this.innerKeys.size()) {
+            this.innerKeys.add(new ArrayList<>());
+            this.innerChildren.add(new ArrayList<>(Collections.singletonList(left)));
+            this.innerPageNums.add(DiskSpaceManager.INVALID_PAGE_NUM);
+        }
+        List<DataBox> keys = this.innerKeys.get(level);
+        List<Long> children = this.innerChildren.get(level);
+        children.set(children.size() - 1, left);
+        keys.add(key);
+        children.add(right);
+
+        int d = this.metadata.getOrder();
+        if (keys.size() <= 2 * d && (!this.slotted || SlottedNode.fits(false, keys))) {
+            return;
+        }
+        if (this.slotted) {
+            d = SlottedNode.splitIndex(false, keys, d);
+        }
+        long pageNum = this.pageNumOf(this.innerPageNums.get(level));
+        new InnerNode(this.metadata, this.bufferManager, pageNum, keys.subList(0, d),
+                      children.subList(0, d + 1), this.treeContext);
+        DataBox middle = keys.get(d);
+        this.innerKeys.set(level, new ArrayList<>(keys.subList(d + 1, keys.size())));
+        this.innerChildren.set(level, new ArrayList<>(children.subList(d + 1, children.size())));
+        this.innerPageNums.set(level, DiskSpaceManager.INVALID_PAGE_NUM);
+        this.addChild(level + 1, pageNum, middle, DiskSpaceManager.INVALID_PAGE_NUM);
+    }
+
+    // The page of a node that is written out before the tree is finished
+    private long pageNumOf(long pageNum) {
+        return pageNum == DiskSpaceManager.INVALID_PAGE_NUM ? this.allocatePage() : pageNum;
+    }
+
+    private long allocatePage() {
+        Page page = this.bufferManager.fetchNewPage(this.treeContext, this.metadata.getPartNum());
+        page.unpin();
+        return page.getPageNum();
+    }
+}
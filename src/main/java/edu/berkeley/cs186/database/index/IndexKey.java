@@ -0,0 +1,227 @@
+package edu.berkeley.cs186.database.index;
+
+import edu.berkeley.cs186.database.databox.ByteArrayDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.RecordId;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The keys of the B+ tree of an index on one or more columns of a table.
+ *
+ * An index on a single column whose values are unique is keyed by the values
+ * of the column. Every other index is keyed by byte arrays: the values of the
+ * columns of the index, one after the other, followed by the id of the
+ * record if the index allows duplicate values. Each value is encoded so that
+ * comparing two keys byte by byte (see ByteArrayDataBox#compareTo) orders
+ * them by their values in the first column, then by their values in the
+ * second column, and so on, and lastly by their record ids. For example, in
+ * an index on (a, b), the key of a record with a = 1 and b = 2 is less than
+ * the key of a record with a = 1 and b = 3, which is less than the key of a
+ * record with a = 2 and b = 0.
+ *
+ * Strings take up only as many bytes as they have, plus one, so the values
+ * and record id are followed by zero bytes up to the size of the key, which
+ * are not stored in the B+ tree's pages (see SlottedNode).
+ *
+ * The record id makes every key unique, so the B+ tree itself never sees
+ * duplicate keys. The records with the same values in the first few columns
+ * of the index are then the keys of a range, from the lowest key with those
+ * values to the highest, which scanRange scans.
+ */
+public class IndexKey {
+    // The size of an encoded record id: its page number and entry number
+    static final int RID_SIZE = Long.BYTES + Short.BYTES;
+
+    // The types of the columns of the index, in order
+    private final List<Type> columnTypes;
+
+    // Whether every record has different values in the columns of the index
+    private final boolean unique;
+
+    // The type of the keys in the B+ tree
+    private final Type type;
+
+    public IndexKey(List<Type> columnTypes, boolean unique) {
+        if (columnTypes.isEmpty()) {
+            throw new IllegalArgumentException("an index must have at least one column");
+        }
+        this.columnTypes = new ArrayList<>(columnTypes);
+        this.unique = unique;
+        if (this.isPlain()) {
+            this.type = columnTypes.get(0);
+        } else {
+            int size = unique ? 0 : RID_SIZE;
+            for (Type columnType : columnTypes) {
+                if (columnType.getTypeId() == TypeId.BYTE_ARRAY) {
+                    throw new IllegalArgumentException("cannot index byte arrays");
+                }
+                size += columnType.getSizeInBytes();
+                if (columnType.getTypeId() == TypeId.STRING) {
+                    // the null byte at the end of a string
+                    size += 1;
+                }
+            }
+            this.type = Type.byteArrayType(size);
+        }
+    }
+
+    /**
+     * @return the type of the keys in the B+ tree of the index
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return whether the keys are the values of the single column of the
+     * index, rather than encoded byte arrays
+     */
+    public boolean isPlain() {
+        return this.columnTypes.size() == 1 && this.unique;
+    }
+
+    /**
+     * @return the key of the record with id `rid` and the values `values` in
+     * the columns of the index
+     */
+    public DataBox of(List<DataBox> values, RecordId rid) {
+        if (values.size() != this.columnTypes.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "expected %d values, got %d", this.columnTypes.size(), values.size()));
+        }
+        if (this.isPlain()) {
+            return values.get(0);
+        }
+        ByteBuffer buf = this.encode(values);
+        if (!this.unique) {
+            buf.putLong(rid.getPageNum() ^ Long.MIN_VALUE);
+            buf.putShort((short) (rid.getEntryNum() ^ Short.MIN_VALUE));
+        }
+        return new ByteArrayDataBox(buf.array(), this.type.getSizeInBytes());
+    }
+
+    /**
+     * Returns the lowest key (or the highest key, if `high` is true) of any
+     * record whose values in the first values.size() columns of the index
+     * are `values`. Only used for indexes that aren't plain.
+     */
+    DataBox bound(List<DataBox> values, boolean high) {
+        if (values.size() > this.columnTypes.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "expected at most %d values, got %d", this.columnTypes.size(), values.size()));
+        }
+        ByteBuffer buf = this.encode(values);
+        byte[] bytes = buf.array();
+        Arrays.fill(bytes, buf.position(), bytes.length, high ? (byte) 0xFF : (byte) 0);
+        return new ByteArrayDataBox(bytes, bytes.length);
+    }
+
+    /**
+     * Returns an iterator over the record ids of the records whose values in
+     * the first prefix.size() columns of the index are `prefix`, and whose
+     * values in the next column are between `start` and `stop`, in ascending
+     * order of their keys. Either bound may be null for a range that is
+     * unbounded on that side, and both are null if the prefix covers every
+     * column of the index. For a plain index, the prefix must be empty.
+     */
+    public Iterator<RecordId> scanRange(BPlusTree tree, List<DataBox> prefix,
+                                        DataBox start, boolean startInclusive,
+                                        DataBox stop, boolean stopInclusive) {
+        if (this.isPlain()) {
+            if (!prefix.isEmpty()) {
+                throw new IllegalArgumentException("a plain index has no prefix");
+            }
+            return tree.scanRange(start, startInclusive, stop, stopInclusive);
+        }
+        // Keys with a value equal to an exclusive bound are skipped by
+        // starting past the highest of them, or stopping before the lowest.
+        DataBox lower = null;
+        if (start != null) {
+            lower = this.bound(append(prefix, start), !startInclusive);
+        } else if (!prefix.isEmpty()) {
+            lower = this.bound(prefix, false);
+        }
+        DataBox upper = null;
+        if (stop != null) {
+            upper = this.bound(append(prefix, stop), stopInclusive);
+        } else if (!prefix.isEmpty()) {
+            upper = this.bound(prefix, true);
+        }
+        return tree.scanRange(lower, startInclusive || start == null,
+                              upper, stopInclusive || stop == null);
+    }
+
+    /**
+     * @return whether `value` can be compared with the values of a column of
+     * type `type` in a key: it must be of the same type, except that strings
+     * may be of any length up to the length of the column's strings.
+     */
+    public static boolean fits(Type type, DataBox value) {
+        if (value.getTypeId() != type.getTypeId()) return false;
+        if (type.getTypeId() == TypeId.STRING) {
+            return value.getString().length() <= type.getSizeInBytes();
+        }
+        return type.getTypeId() != TypeId.BYTE_ARRAY;
+    }
+
+    private static List<DataBox> append(List<DataBox> prefix, DataBox value) {
+        List<DataBox> values = new ArrayList<>(prefix);
+        values.add(value);
+        return values;
+    }
+
+    /**
+     * Encodes `values`, the values of the first values.size() columns of the
+     * index, into a buffer of the size of a key, positioned after them.
+     */
+    private ByteBuffer encode(List<DataBox> values) {
+        ByteBuffer buf = ByteBuffer.allocate(this.type.getSizeInBytes());
+        for (int i = 0; i < values.size(); ++i) {
+            Type columnType = this.columnTypes.get(i);
+            DataBox value = values.get(i);
+            if (!fits(columnType, value)) {
+                throw new IllegalArgumentException(String.format(
+                        "cannot use %s as a value of type %s", value, columnType));
+            }
+            switch (columnType.getTypeId()) {
+                case BOOL:
+                    buf.put(value.getBool() ? (byte) 1 : (byte) 0);
+                    break;
+                case INT:
+                    // flipping the sign bit orders negative numbers first
+                    buf.putInt(value.getInt() ^ Integer.MIN_VALUE);
+                    break;
+                case LONG:
+                    buf.putLong(value.getLong() ^ Long.MIN_VALUE);
+                    break;
+                case FLOAT: {
+                    // the bits of a negative float are in reverse order
+                    int bits = Float.floatToIntBits(value.getFloat());
+                    buf.putInt(bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE);
+                    break;
+                }
+                case STRING: {
+                    // every character is shifted up by one so that a string
+                    // can end with a null byte, which sorts it before any
+                    // longer string that starts with it
+                    for (byte b : value.getString().getBytes(Charset.forName("ascii"))) {
+                        buf.put((byte) (b + 1));
+                    }
+                    buf.put((byte) 0);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("cannot index " + columnType);
+            }
+        }
+        return buf;
+    }
+}
@@ -9,7 +9,6 @@ import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.RecordId;
 
-import javax.xml.crypto.Data;
 import java.nio.ByteBuffer;
 import java.util.*;
 
@@ -46,6 +45,15 @@ class InnerNode extends BPlusNode {
     private List<DataBox> keys;
     private List<Long> children;
 
+    // The byte offsets, on an inner node's page, of its number of keys and of
+    // its first key. See toBytes for the layout of a page.
+    private static final int NUM_KEYS_OFFSET = 1;
+    private static final int KEYS_OFFSET = 5;
+
+    // The byte offset of the leftmost child of an inner node with string or
+    // byte array keys; see SlottedNode.
+    private static final int LEFTMOST_CHILD_OFFSET = 5;
+
     // Constructors ////////////////////////////////////////////////////////////
     /**
      * Construct a brand new inner node.
@@ -54,10 +62,22 @@ class InnerNode extends BPlusNode {
               List<Long> children, LockContext treeContext) {
         this(metadata, bufferManager, bufferManager.fetchNewPage(treeContext, metadata.getPartNum()),
                 keys, children, treeContext);
+        sync();
     }
 
     /**
-     * Construct an inner node that is persisted to page `page`.
+     * Construct an inner node that replaces whatever node is persisted to
+     * page `pageNum`.
+     */
+    InnerNode(BPlusTreeMetadata metadata, BufferManager bufferManager, long pageNum,
+              List<DataBox> keys, List<Long> children, LockContext treeContext) {
+        this(metadata, bufferManager, bufferManager.fetchPage(treeContext, pageNum),
+                keys, children, treeContext);
+        sync();
+    }
+
+    /**
+     * Construct an inner node that is already persisted to page `page`.
      */
     private InnerNode(BPlusTreeMetadata metadata, BufferManager bufferManager, Page page,
                       List<DataBox> keys, List<Long> children, LockContext treeContext) {
@@ -71,7 +91,6 @@ class InnerNode extends BPlusNode {
             this.page = page;
             this.keys = new ArrayList<>(keys);
             this.children = new ArrayList<>(children);
-            sync();
         } finally {
             page.unpin();
         }
@@ -82,8 +101,9 @@ class InnerNode extends BPlusNode {
     @Override
     public LeafNode get(DataBox key) {
         // TODO(proj2): implement
-        int nodeNum = numLessThanEqual(key, getKeys());
-        return getChild(nodeNum).get(key);
+        long pageNum = children.get(numLessThanEqual(key, getKeys()));
+        pageNum = BPlusNode.findLeaf(metadata, bufferManager, treeContext, pageNum, key);
+        return LeafNode.fromBytes(metadata, bufferManager, treeContext, pageNum);
     }
 
     // See BPlusNode.getLeftmostLeaf.
@@ -112,17 +132,20 @@ class InnerNode extends BPlusNode {
         keys.add(index, vals.getFirst());
         children.add(index + 1, vals.getSecond());
 
-        int order = metadata.getOrder();
-        if (keys.size() <= order * 2) { //return empty if there's space in the current node
-            sync();
+        if (!overflows()) { //return empty if there's space in the current node
+            insertInPlace(index);
             return Optional.empty();
         }
         //if there's no space, split the inner node
-        List<DataBox> Lkeys = keys.subList(0, order);
-        List<Long> Lchildren = children.subList(0, order + 1);
-        List<DataBox> Rkeys = keys.subList(order + 1, 2*order + 1);
-        List<Long> Rchildren = children.subList(order + 1, 2*order + 2);
-        DataBox Mkey = keys.get(order); // doesn't need middle child because it's going to be pushed up
+        int split = metadata.getOrder();
+        if (isSlotted(metadata)) {
+            split = SlottedNode.splitIndex(false, keys, split);
+        }
+        List<DataBox> Lkeys = keys.subList(0, split);
+        List<Long> Lchildren = children.subList(0, split + 1);
+        List<DataBox> Rkeys = keys.subList(split + 1, keys.size());
+        List<Long> Rchildren = children.subList(split + 1, children.size());
+        DataBox Mkey = keys.get(split); // doesn't need middle child because it's going to be pushed up
 
         InnerNode Rnode = new InnerNode(metadata, bufferManager, Rkeys, Rchildren, treeContext); //creates the right node
         Long RnodePage = Rnode.getPage().getPageNum();
@@ -183,7 +206,6 @@ class InnerNode extends BPlusNode {
         // TODO(proj2): implement
         int index = numLessThanEqual(key, getKeys());
         getChild(index).remove(key);
-        sync();
     }
 
     // Helpers /////////////////////////////////////////////////////////////////
@@ -197,21 +219,119 @@ class InnerNode extends BPlusNode {
         return BPlusNode.fromBytes(metadata, bufferManager, treeContext, pageNum);
     }
 
+    /**
+     * Returns whether this inner node has more than 2d keys, or more than fit
+     * on its page.
+     */
+    private boolean overflows() {
+        if (keys.size() > 2 * metadata.getOrder()) {
+            return true;
+        }
+        return isSlotted(metadata) && !SlottedNode.fits(false, keys);
+    }
+
+    private static boolean isSlotted(BPlusTreeMetadata metadata) {
+        return SlottedNode.isSlotted(metadata.getKeySchema());
+    }
+
     private void sync() {
         page.pin();
         try {
-            Buffer b = page.getBuffer();
-            byte[] newBytes = toBytes();
-            byte[] bytes = new byte[newBytes.length];
-            b.get(bytes);
-            if (!Arrays.equals(bytes, newBytes)) {
-                page.getBuffer().put(toBytes());
+            page.getBuffer().put(toBytes());
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Writes the key at `index` and the child at `index + 1`, which were just
+     * inserted, to the page. The keys after the new key are shifted right by
+     * one key, the children after the new child by one key and one child, and
+     * the keys and children before them are left untouched. An inner node
+     * with string or byte array keys is written to the page as a whole if
+     * the key can't be inserted in place (see SlottedNode.insert).
+     */
+    private void insertInPlace(int index) {
+        if (isSlotted(metadata)) {
+            page.pin();
+            try {
+                Buffer buf = page.getBuffer();
+                byte[] child = ByteBuffer.allocate(Long.BYTES).putLong(children.get(index + 1)).array();
+                if (!SlottedNode.insert(buf, NUM_KEYS_OFFSET, index, SlottedNode.toBytes(keys.get(index)),
+                                        child)) {
+                    buf.position(0).put(toBytes());
+                }
+            } finally {
+                page.unpin();
             }
+            return;
+        }
+        int keySize = metadata.getKeySchema().getSizeInBytes();
+        // the number of keys before the insert
+        int n = keys.size() - 1;
+        int keyOffset = KEYS_OFFSET + index * keySize;
+        int childOffset = KEYS_OFFSET + n * keySize + (index + 1) * Long.BYTES;
+        page.pin();
+        try {
+            Buffer buf = page.getBuffer();
+            // the children that come after the new child
+            BPlusNode.moveBytes(buf, childOffset, childOffset + keySize + Long.BYTES,
+                                (n - index) * Long.BYTES);
+            // the keys that come after the new key, and the children that
+            // come before the new child
+            BPlusNode.moveBytes(buf, keyOffset, keyOffset + keySize, childOffset - keyOffset);
+            buf.position(keyOffset).put(keys.get(index).toBytes());
+            buf.putLong(childOffset + keySize, children.get(index + 1));
+            buf.putInt(NUM_KEYS_OFFSET, keys.size());
         } finally {
             page.unpin();
         }
     }
 
+    /**
+     * Returns the page number of the child of the inner node serialized in
+     * `buf` that `key` may reside under, i.e. the child numLessThanEqual(key,
+     * keys) of the node. The keys are binary searched in place, without
+     * deserializing the node.
+     */
+    static long findChild(BPlusTreeMetadata metadata, Buffer buf, DataBox key) {
+        int n = buf.getInt(NUM_KEYS_OFFSET);
+        if (isSlotted(metadata)) {
+            int index = SlottedNode.numLessThan(buf, n, SlottedNode.toBytes(key), true);
+            return index == 0 ? buf.getLong(LEFTMOST_CHILD_OFFSET)
+                              : buf.getLong(SlottedNode.getPayloadOffset(buf, index - 1));
+        }
+        int keySize = metadata.getKeySchema().getSizeInBytes();
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (BPlusNode.compareKey(buf, KEYS_OFFSET + mid * keySize, key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return buf.getLong(KEYS_OFFSET + n * keySize + lo * Long.BYTES);
+    }
+
+    /**
+     * Returns the page number of the leftmost child of the inner node
+     * serialized in `buf`.
+     */
+    static long leftmostChild(BPlusTreeMetadata metadata, Buffer buf) {
+        if (isSlotted(metadata)) {
+            return buf.getLong(LEFTMOST_CHILD_OFFSET);
+        }
+        int keySize = metadata.getKeySchema().getSizeInBytes();
+        return buf.getLong(KEYS_OFFSET + numKeys(buf) * keySize);
+    }
+
+    /** Returns the number of keys of the inner node serialized in `buf`. */
+    static int numKeys(Buffer buf) {
+        return buf.getInt(NUM_KEYS_OFFSET);
+    }
+
     // Just for testing.
     List<DataBox> getKeys() {
         return keys;
@@ -223,9 +343,13 @@ class InnerNode extends BPlusNode {
     }
     /**
      * Returns the largest number d such that the serialization of an InnerNode
-     * with 2d keys will fit on a single page.
+     * with 2d keys will fit on a single page. For string and byte array
+     * keys, see SlottedNode.maxOrder.
      */
     static int maxOrder(short pageSize, Type keySchema) {
+        if (SlottedNode.isSlotted(keySchema)) {
+            return SlottedNode.maxOrder(pageSize, false, keySchema);
+        }
         // A leaf node with n entries takes up the following number of bytes:
         //
         //   1 + 4 + (n * keySize) + ((n + 1) * 8)
@@ -280,27 +404,33 @@ class InnerNode extends BPlusNode {
      * a, b, c).
      */
     static <T extends Comparable<T>> int numLessThanEqual(T x, List<T> ys) {
-        int n = 0;
-        for (T y : ys) {
-            if (y.compareTo(x) <= 0) {
-                ++n;
+        // binary search for the first element greater than x
+        int lo = 0;
+        int hi = ys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ys.get(mid).compareTo(x) <= 0) {
+                lo = mid + 1;
             } else {
-                break;
+                hi = mid;
             }
         }
-        return n;
+        return lo;
     }
 
     static <T extends Comparable<T>> int numLessThan(T x, List<T> ys) {
-        int n = 0;
-        for (T y : ys) {
-            if (y.compareTo(x) < 0) {
-                ++n;
+        // binary search for the first element greater than or equal to x
+        int lo = 0;
+        int hi = ys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ys.get(mid).compareTo(x) < 0) {
+                lo = mid + 1;
             } else {
-                break;
+                hi = mid;
             }
         }
-        return n;
+        return lo;
     }
 
     // Pretty Printing /////////////////////////////////////////////////////////
@@ -381,10 +511,24 @@ class InnerNode extends BPlusNode {
         //
         // represent an inner node with one key (i.e. 1) and two children pointers
         // (i.e. page 3 and page 7).
+        //
+        // The keys and children of an inner node with string or byte array
+        // keys are laid out as described in SlottedNode instead.
 
         // All sizes are in bytes.
         assert (keys.size() <= 2 * metadata.getOrder());
         assert (keys.size() + 1 == children.size());
+        if (isSlotted(metadata)) {
+            ByteBuffer header = ByteBuffer.allocate(LEFTMOST_CHILD_OFFSET + Long.BYTES);
+            header.put((byte) 0);
+            header.putInt(keys.size());
+            header.putLong(children.get(0));
+            List<byte[]> payloads = new ArrayList<>();
+            for (Long child : children.subList(1, children.size())) {
+                payloads.add(ByteBuffer.allocate(Long.BYTES).putLong(child).array());
+            }
+            return SlottedNode.toPage(header.array(), keys, payloads);
+        }
         int isLeafSize = 1;
         int numKeysSize = Integer.BYTES;
         int keysSize = metadata.getKeySchema().getSizeInBytes() * keys.size();
@@ -408,7 +552,7 @@ class InnerNode extends BPlusNode {
      */
     public static InnerNode fromBytes(BPlusTreeMetadata metadata,
                                       BufferManager bufferManager, LockContext treeContext, long pageNum) {
-        Page page = bufferManager.fetchPage(treeContext, pageNum);
+        Page page = bufferManager.fetchPageShared(treeContext, pageNum);
         Buffer buf = page.getBuffer();
 
         byte nodeType = buf.get();
@@ -417,11 +561,19 @@ class InnerNode extends BPlusNode {
         List<DataBox> keys = new ArrayList<>();
         List<Long> children = new ArrayList<>();
         int n = buf.getInt();
-        for (int i = 0; i < n; ++i) {
-            keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
-        }
-        for (int i = 0; i < n + 1; ++i) {
-            children.add(buf.getLong());
+        if (isSlotted(metadata)) {
+            keys.addAll(SlottedNode.getKeys(buf, n, metadata.getKeySchema()));
+            children.add(buf.getLong(LEFTMOST_CHILD_OFFSET));
+            for (int i = 0; i < n; ++i) {
+                children.add(buf.getLong(SlottedNode.getPayloadOffset(buf, i)));
+            }
+        } else {
+            for (int i = 0; i < n; ++i) {
+                keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
+            }
+            for (int i = 0; i < n + 1; ++i) {
+                children.add(buf.getLong());
+            }
         }
         return new InnerNode(metadata, bufferManager, page, keys, children, treeContext);
     }
@@ -9,7 +9,6 @@ import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.RecordId;
 
-import javax.xml.crypto.Data;
 import java.nio.ByteBuffer;
 import java.util.*;
 
@@ -106,6 +105,11 @@ class LeafNode extends BPlusNode {
     // this leaf's right sibling.
     private Optional<Long> rightSibling;
 
+    // The byte offsets, on a leaf's page, of its number of entries and of its
+    // first entry. See toBytes for the layout of a page.
+    private static final int NUM_ENTRIES_OFFSET = 9;
+    private static final int ENTRIES_OFFSET = 13;
+
     // Constructors ////////////////////////////////////////////////////////////
     /**
      * Construct a brand new leaf node. This constructor will fetch a new pinned
@@ -117,10 +121,23 @@ class LeafNode extends BPlusNode {
         this(metadata, bufferManager, bufferManager.fetchNewPage(treeContext, metadata.getPartNum()),
                 keys, rids,
                 rightSibling, treeContext);
+        sync();
+    }
+
+    /**
+     * Construct a leaf node that replaces whatever node is persisted to page
+     * `pageNum`.
+     */
+    LeafNode(BPlusTreeMetadata metadata, BufferManager bufferManager, long pageNum,
+             List<DataBox> keys, List<RecordId> rids, Optional<Long> rightSibling,
+             LockContext treeContext) {
+        this(metadata, bufferManager, bufferManager.fetchPage(treeContext, pageNum),
+                keys, rids, rightSibling, treeContext);
+        sync();
     }
 
     /**
-     * Construct a leaf node that is persisted to page `page`.
+     * Construct a leaf node that is already persisted to page `page`.
      */
     private LeafNode(BPlusTreeMetadata metadata, BufferManager bufferManager, Page page,
                      List<DataBox> keys,
@@ -136,8 +153,6 @@ class LeafNode extends BPlusNode {
             this.keys = new ArrayList<>(keys);
             this.rids = new ArrayList<>(rids);
             this.rightSibling = rightSibling;
-
-            sync();
         } finally {
             page.unpin();
         }
@@ -164,23 +179,33 @@ class LeafNode extends BPlusNode {
     @Override
     public Optional<Pair<DataBox, Long>> put(DataBox key, RecordId rid) {
         // TODO(proj2): implement
-        if (keys.contains(key)) { // checks if there's duplicate keys
+        int index = InnerNode.numLessThanEqual(key, getKeys());
+        if (index > 0 && keys.get(index - 1).equals(key)) { // checks if there's duplicate keys
             throw new BPlusTreeException("Duplicate keys are not allowed");
         }
 
-        int index = InnerNode.numLessThanEqual(key, getKeys());
         keys.add(index, key);
         rids.add(index, rid);
 
-        if (metadata.getOrder() * 2 >= keys.size()) { //case 1
-            sync();
+        if (!overflows()) { //case 1
+            insertInPlace(index);
             return Optional.empty();
         }
         //case 2 (split the node)
-        List<DataBox> Lkeys = keys.subList(0, metadata.getOrder());
-        List<RecordId> Lrids = rids.subList(0, metadata.getOrder());
-        List<DataBox> Rkeys = keys.subList(metadata.getOrder(), 2 * metadata.getOrder() + 1);
-        List<RecordId> Rrids = rids.subList(metadata.getOrder(), 2 * metadata.getOrder() + 1);
+        int split = metadata.getOrder();
+        if (isSlotted(metadata)) {
+            split = SlottedNode.splitIndex(true, keys, split);
+        }
+        List<DataBox> Lkeys = keys.subList(0, split);
+        List<RecordId> Lrids = rids.subList(0, split);
+        List<DataBox> Rkeys = keys.subList(split, keys.size());
+        List<RecordId> Rrids = rids.subList(split, rids.size());
+        // keys with a layout of their own are separated by the shortest key
+        // between the two leaves rather than by the first key on the right
+        DataBox splitKey = Rkeys.get(0);
+        if (isSlotted(metadata)) {
+            splitKey = SlottedNode.separator(metadata.getKeySchema(), Lkeys.get(split - 1), splitKey);
+        }
 
         LeafNode Rnode = new LeafNode(metadata, bufferManager, Rkeys, Rrids, rightSibling, treeContext); //creating right node
         Long RnodePage = Rnode.page.getPageNum();
@@ -189,7 +214,7 @@ class LeafNode extends BPlusNode {
         this.rightSibling = Optional.of(RnodePage);
 
         sync();
-        Pair<DataBox, Long> retPair = new Pair<DataBox, Long>(Rkeys.get(0), RnodePage);
+        Pair<DataBox, Long> retPair = new Pair<DataBox, Long>(splitKey, RnodePage);
         return Optional.of(retPair);
     }
 
@@ -232,22 +257,40 @@ class LeafNode extends BPlusNode {
     @Override
     public void remove(DataBox key) {
         // TODO(proj2): implement
-        if (!keys.contains(key)) {
+        int index = indexOf(key);
+        if (index == -1) {
             return;
         }
 
-        rids.remove(keys.indexOf(key));
-        keys.remove(key);
-        sync();
+        keys.remove(index);
+        rids.remove(index);
+        removeInPlace(index);
     }
 
     // Iterators ///////////////////////////////////////////////////////////////
     /** Return the record id associated with `key`. */
     Optional<RecordId> getKey(DataBox key) {
-        int index = keys.indexOf(key);
+        int index = indexOf(key);
         return index == -1 ? Optional.empty() : Optional.of(rids.get(index));
     }
 
+    /**
+     * Return the record id associated with `key` in the leaf serialized in
+     * `buf`. The keys are binary searched in place, and only the record id
+     * that is found is deserialized.
+     */
+    static Optional<RecordId> getKey(BPlusTreeMetadata metadata, Buffer buf, DataBox key) {
+        int index = numLessThan(metadata, buf, key);
+        if (!hasKeyAt(metadata, buf, index, key)) {
+            return Optional.empty();
+        }
+        if (isSlotted(metadata)) {
+            return Optional.of(RecordId.fromBytes(buf.position(SlottedNode.getPayloadOffset(buf, index))));
+        }
+        int keySize = metadata.getKeySchema().getSizeInBytes();
+        return Optional.of(RecordId.fromBytes(buf.position(entryOffset(metadata, index) + keySize)));
+    }
+
     /**
      * Returns an iterator over the record ids of this leaf in ascending order of
      * their corresponding keys.
@@ -282,22 +325,189 @@ class LeafNode extends BPlusNode {
         return Optional.of(LeafNode.fromBytes(metadata, bufferManager, treeContext, pageNum));
     }
 
+    /** Returns the index of `key` in this leaf, or -1 if it isn't in it. */
+    private int indexOf(DataBox key) {
+        int index = InnerNode.numLessThan(key, keys);
+        return index < keys.size() && keys.get(index).equals(key) ? index : -1;
+    }
+
+    /**
+     * Returns whether this leaf has more than 2d entries, or more than fit on
+     * its page.
+     */
+    private boolean overflows() {
+        if (keys.size() > 2 * metadata.getOrder()) {
+            return true;
+        }
+        return isSlotted(metadata) && !SlottedNode.fits(true, keys);
+    }
+
     /** Serializes this leaf to its page. */
     private void sync() {
         page.pin();
         try {
-            Buffer b = page.getBuffer();
-            byte[] newBytes = toBytes();
-            byte[] bytes = new byte[newBytes.length];
-            b.get(bytes);
-            if (!Arrays.equals(bytes, newBytes)) {
-                page.getBuffer().put(toBytes());
+            page.getBuffer().put(toBytes());
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Writes the entry at `index`, which was just inserted, to the page. See
+     * insertEntry. If it can't be inserted in place, the whole leaf is
+     * written to the page.
+     */
+    private void insertInPlace(int index) {
+        page.pin();
+        try {
+            Buffer buf = page.getBuffer();
+            if (!insertEntry(metadata, buf, index, keys.get(index), rids.get(index))) {
+                buf.position(0).put(toBytes());
             }
         } finally {
             page.unpin();
         }
     }
 
+    /**
+     * Removes the entry that was at `index` from the page. See removeEntry.
+     */
+    private void removeInPlace(int index) {
+        page.pin();
+        try {
+            removeEntry(metadata, page.getBuffer(), index);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    // In-page access //////////////////////////////////////////////////////////
+    // The following methods read and modify a leaf directly on the (pinned)
+    // page that it is serialized on, without deserializing it. Since a leaf's
+    // entries all have the same size, the i-th entry is at a fixed offset, and
+    // the keys can be binary searched in place. Leaves with string and byte
+    // array keys are laid out differently, and are accessed through
+    // SlottedNode instead.
+
+    /**
+     * Inserts (key, rid) into the leaf serialized in `buf`, if it has room for
+     * it. No LeafNode object that has the page loaded sees the change.
+     *
+     * @return false if the leaf is full, or if the entry can't be inserted in
+     * place (see SlottedNode.insert), in which case it is left unchanged
+     * @throws BPlusTreeException if key is already in the leaf
+     */
+    static boolean putInPlace(BPlusTreeMetadata metadata, Buffer buf, DataBox key, RecordId rid) {
+        int index = numLessThan(metadata, buf, key);
+        if (hasKeyAt(metadata, buf, index, key)) {
+            throw new BPlusTreeException("Duplicate keys are not allowed");
+        }
+        if (buf.getInt(NUM_ENTRIES_OFFSET) >= 2 * metadata.getOrder()) {
+            return false;
+        }
+        return insertEntry(metadata, buf, index, key, rid);
+    }
+
+    /**
+     * Removes key and its record id from the leaf serialized in `buf`, or does
+     * nothing if key is not in the leaf.
+     */
+    static void removeInPlace(BPlusTreeMetadata metadata, Buffer buf, DataBox key) {
+        int index = numLessThan(metadata, buf, key);
+        if (hasKeyAt(metadata, buf, index, key)) {
+            removeEntry(metadata, buf, index);
+        }
+    }
+
+    /**
+     * Inserts (key, rid) as the entry at `index` of the leaf serialized in
+     * `buf`. The entries after it are shifted right by one entry, and the
+     * entries before it are left untouched.
+     *
+     * @return false if the leaf is slotted and the entry can't be inserted in
+     * place, in which case it is left unchanged
+     */
+    private static boolean insertEntry(BPlusTreeMetadata metadata, Buffer buf, int index,
+                                       DataBox key, RecordId rid) {
+        if (isSlotted(metadata)) {
+            return SlottedNode.insert(buf, NUM_ENTRIES_OFFSET, index, SlottedNode.toBytes(key),
+                                      rid.toBytes());
+        }
+        int n = buf.getInt(NUM_ENTRIES_OFFSET);
+        int entrySize = entrySize(metadata);
+        int offset = entryOffset(metadata, index);
+        BPlusNode.moveBytes(buf, offset, offset + entrySize, (n - index) * entrySize);
+        buf.position(offset).put(key.toBytes()).put(rid.toBytes());
+        buf.putInt(NUM_ENTRIES_OFFSET, n + 1);
+        return true;
+    }
+
+    /**
+     * Removes the entry at `index` of the leaf serialized in `buf`. The entries
+     * after it are shifted left by one entry, and the entries before it are
+     * left untouched.
+     */
+    private static void removeEntry(BPlusTreeMetadata metadata, Buffer buf, int index) {
+        if (isSlotted(metadata)) {
+            SlottedNode.remove(buf, NUM_ENTRIES_OFFSET, index);
+            return;
+        }
+        int n = buf.getInt(NUM_ENTRIES_OFFSET);
+        int entrySize = entrySize(metadata);
+        int offset = entryOffset(metadata, index);
+        BPlusNode.moveBytes(buf, offset + entrySize, offset, (n - index - 1) * entrySize);
+        buf.putInt(NUM_ENTRIES_OFFSET, n - 1);
+    }
+
+    /** Returns the number of entries of the leaf serialized in `buf`. */
+    static int numEntries(Buffer buf) {
+        return buf.getInt(NUM_ENTRIES_OFFSET);
+    }
+
+    /**
+     * Returns the number of keys in the leaf serialized in `buf` that are less
+     * than `key`.
+     */
+    private static int numLessThan(BPlusTreeMetadata metadata, Buffer buf, DataBox key) {
+        if (isSlotted(metadata)) {
+            return SlottedNode.numLessThan(buf, buf.getInt(NUM_ENTRIES_OFFSET),
+                                           SlottedNode.toBytes(key), false);
+        }
+        int lo = 0;
+        int hi = buf.getInt(NUM_ENTRIES_OFFSET);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (BPlusNode.compareKey(buf, entryOffset(metadata, mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns whether the entry at `index` of the leaf in `buf` has key `key`. */
+    private static boolean hasKeyAt(BPlusTreeMetadata metadata, Buffer buf, int index, DataBox key) {
+        if (isSlotted(metadata)) {
+            return SlottedNode.hasKeyAt(buf, buf.getInt(NUM_ENTRIES_OFFSET), index,
+                                        SlottedNode.toBytes(key));
+        }
+        return index < buf.getInt(NUM_ENTRIES_OFFSET) &&
+                BPlusNode.compareKey(buf, entryOffset(metadata, index), key) == 0;
+    }
+
+    private static boolean isSlotted(BPlusTreeMetadata metadata) {
+        return SlottedNode.isSlotted(metadata.getKeySchema());
+    }
+
+    private static int entrySize(BPlusTreeMetadata metadata) {
+        return metadata.getKeySchema().getSizeInBytes() + RecordId.getSizeInBytes();
+    }
+
+    private static int entryOffset(BPlusTreeMetadata metadata, int index) {
+        return ENTRIES_OFFSET + index * entrySize(metadata);
+    }
+
     // Just for testing.
     List<DataBox> getKeys() {
         return keys;
@@ -310,9 +520,13 @@ class LeafNode extends BPlusNode {
 
     /**
      * Returns the largest number d such that the serialization of a LeafNode
-     * with 2d entries will fit on a single page.
+     * with 2d entries will fit on a single page. For string and byte array
+     * keys, see SlottedNode.maxOrder.
      */
     static int maxOrder(short pageSize, Type keySchema) {
+        if (SlottedNode.isSlotted(keySchema)) {
+            return SlottedNode.maxOrder(pageSize, true, keySchema);
+        }
         // A leaf node with n entries takes up the following number of bytes:
         //
         //   1 + 8 + 4 + n * (keySize + ridSize)
@@ -400,10 +614,25 @@ class LeafNode extends BPlusNode {
         //
         // represent a leaf node with sibling on page 4 and a single (key, rid)
         // pair with key 3 and page id (3, 1).
+        //
+        // The (key, rid) pairs of a leaf with string or byte array keys are
+        // laid out as described in SlottedNode instead.
 
         assert (keys.size() == rids.size());
         assert (keys.size() <= 2 * metadata.getOrder());
 
+        if (isSlotted(metadata)) {
+            ByteBuffer header = ByteBuffer.allocate(ENTRIES_OFFSET);
+            header.put((byte) 1);
+            header.putLong(rightSibling.orElse(-1L));
+            header.putInt(keys.size());
+            List<byte[]> payloads = new ArrayList<>();
+            for (RecordId rid : rids) {
+                payloads.add(rid.toBytes());
+            }
+            return SlottedNode.toPage(header.array(), keys, payloads);
+        }
+
         // All sizes are in bytes.
         int isLeafSize = 1;
         int siblingSize = Long.BYTES;
@@ -433,7 +662,7 @@ class LeafNode extends BPlusNode {
         // Note: LeafNode has two constructors. To implement fromBytes be sure to
         // use the constructor that reuses an existing page instead of fetching a
         // brand new one.
-        Page page = bufferManager.fetchPage(treeContext, pageNum);
+        Page page = bufferManager.fetchPageShared(treeContext, pageNum);
         Buffer buf = page.getBuffer();
 
         byte nodeType = buf.get();
@@ -451,9 +680,16 @@ class LeafNode extends BPlusNode {
         List<RecordId> rids = new ArrayList<>();
         int numPairs = buf.getInt(); // getting the number of pairs this node has
 
-        for (int i = 0; i < numPairs; i++) {
-            keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
-            rids.add(RecordId.fromBytes(buf));
+        if (isSlotted(metadata)) {
+            keys.addAll(SlottedNode.getKeys(buf, numPairs, metadata.getKeySchema()));
+            for (int i = 0; i < numPairs; i++) {
+                rids.add(RecordId.fromBytes(buf.position(SlottedNode.getPayloadOffset(buf, i))));
+            }
+        } else {
+            for (int i = 0; i < numPairs; i++) {
+                keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
+                rids.add(RecordId.fromBytes(buf));
+            }
         }
         LeafNode retNode = new LeafNode(metadata, bufferManager, page, keys, rids, rightSibling, treeContext);
         return retNode;
@@ -0,0 +1,448 @@
+package edu.berkeley.cs186.database.index;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.ByteArrayDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.table.RecordId;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The compressed layout of the leaves and inner nodes of B+ trees whose keys
+ * are strings or byte arrays (see isSlotted). Numeric and boolean keys all
+ * take up the same number of bytes, and their nodes are laid out as arrays
+ * of keys (see LeafNode.toBytes and InnerNode.toBytes). A string or byte
+ * array key, on the other hand, is often much shorter than the size of its
+ * type, and the keys on a page often start with the same bytes, so in this
+ * layout
+ *
+ *   - a key takes up only as many bytes as it has, not counting the trailing
+ *     zero bytes of a byte array (or the null bytes that pad a string),
+ *   - the bytes that every key on a page starts with (their common prefix)
+ *     are stored once per page, and only the rest of each key (its suffix) is
+ *     stored with the key, and
+ *   - the keys of inner nodes are the shortest keys that separate two leaves
+ *     (see separator), rather than the first key of the leaf on the right.
+ *
+ * A node's page starts with a 13 byte header: for a leaf, the same header as
+ * in LeafNode.toBytes, and for an inner node, the literal value 0 (1 byte),
+ * its number n of keys (4 bytes), and its leftmost child (8 bytes). The
+ * header is followed by
+ *
+ *   a. the length p (2 bytes) of the common prefix of the keys,
+ *   b. the offset (2 bytes) at which the heap starts,
+ *   c. the common prefix (p bytes),
+ *   d. n slots (2 bytes each), one per key in ascending order of the keys,
+ *      with the offset of the key's entry in the heap, and
+ *   e. free space, and the heap, which grows down from the end of the page.
+ *
+ * An entry in the heap is the length (2 bytes) of a key's suffix, the suffix,
+ * and the payload of the key: its record id in a leaf, or the child to the
+ * right of it (8 bytes) in an inner node. Since the slots are in order, the
+ * keys can be binary searched on the page, and a key is inserted by adding
+ * its entry to the heap and shifting the slots after it. Removing a key only
+ * removes its slot; the space of its entry is reclaimed the next time the
+ * node is written out as a whole.
+ *
+ * Keys are compared byte by byte as unsigned bytes, with a key that is a
+ * prefix of another first, which orders them the same way as their
+ * DataBox#compareTo.
+ */
+class SlottedNode {
+    // The byte offsets of the fields after the header
+    private static final int PREFIX_LENGTH_OFFSET = 13;
+    private static final int HEAP_START_OFFSET = 15;
+    private static final int PREFIX_OFFSET = 17;
+
+    // The number of bytes of a node that doesn't depend on its keys: the
+    // header, and the length of the prefix and start of the heap
+    private static final int HEADER_SIZE = PREFIX_OFFSET;
+
+    /**
+     * @return whether the nodes of a B+ tree with keys of type `keySchema`
+     * use this layout
+     */
+    static boolean isSlotted(Type keySchema) {
+        TypeId typeId = keySchema.getTypeId();
+        return typeId == TypeId.STRING || typeId == TypeId.BYTE_ARRAY;
+    }
+
+    // Keys ////////////////////////////////////////////////////////////////////
+    /** Returns the bytes of `key` that are stored on a page. */
+    static byte[] toBytes(DataBox key) {
+        if (key.getTypeId() == TypeId.STRING) {
+            return key.getString().getBytes(Charset.forName("ascii"));
+        }
+        byte[] bytes = key.toBytes();
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) {
+            --length;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /** Returns the key of type `keySchema` whose bytes are `bytes`. */
+    static DataBox fromBytes(Type keySchema, byte[] bytes) {
+        int size = keySchema.getSizeInBytes();
+        if (keySchema.getTypeId() == TypeId.STRING) {
+            return new StringDataBox(new String(bytes, Charset.forName("ascii")), size);
+        }
+        return new ByteArrayDataBox(Arrays.copyOf(bytes, size), size);
+    }
+
+    /**
+     * Returns the shortest key that is greater than `left` and less than or
+     * equal to `right`, where left < right. Any key that is less than such a
+     * separator is less than or equal to left, and any key that is greater
+     * than or equal to it is greater than left, so it can take the place of
+     * right as the split key between two leaves. For example, the separator
+     * of "Hammond" and "Hampton" is "Hamp".
+     */
+    static DataBox separator(Type keySchema, DataBox left, DataBox right) {
+        byte[] leftBytes = toBytes(left);
+        byte[] rightBytes = toBytes(right);
+        int length = commonPrefixLength(leftBytes, rightBytes) + 1;
+        return fromBytes(keySchema, Arrays.copyOf(rightBytes, Math.min(length, rightBytes.length)));
+    }
+
+    /**
+     * Compares a[aFrom:aTo] with b[bFrom:bTo] as unsigned bytes, with a
+     * prefix of the other first.
+     */
+    private static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+        int length = Math.min(aTo - aFrom, bTo - bFrom);
+        for (int i = 0; i < length; ++i) {
+            int cmp = Integer.compare(a[aFrom + i] & 0xFF, b[bFrom + i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(aTo - aFrom, bTo - bFrom);
+    }
+
+    /** Returns the number of bytes that a and b start with in common. */
+    static int commonPrefixLength(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < length && a[i] == b[i]) {
+            ++i;
+        }
+        return i;
+    }
+
+    // Sizes ///////////////////////////////////////////////////////////////////
+    private static int payloadSize(boolean leaf) {
+        return leaf ? RecordId.getSizeInBytes() : Long.BYTES;
+    }
+
+    /**
+     * Returns the number of bytes that a key whose suffix has `suffixLength`
+     * bytes takes up: its slot, the length of its suffix, the suffix and its
+     * payload.
+     */
+    private static int entrySize(boolean leaf, int suffixLength) {
+        return Short.BYTES + Short.BYTES + suffixLength + payloadSize(leaf);
+    }
+
+    /**
+     * Returns the number of bytes that a node with the keys `keys`, in
+     * ascending order, takes up on a page. The common prefix of the keys is
+     * the common prefix of the first and last of them.
+     */
+    private static int size(boolean leaf, List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return HEADER_SIZE;
+        }
+        int prefixLength = commonPrefixLength(keys.get(0), keys.get(keys.size() - 1));
+        int size = HEADER_SIZE + prefixLength;
+        for (byte[] key : keys) {
+            size += entrySize(leaf, key.length - prefixLength);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes that a leaf with `numKeys` keys, of
+     * `keysLength` bytes in all and with a common prefix of `prefixLength`
+     * bytes, takes up on a page.
+     */
+    static int leafSize(int numKeys, int keysLength, int prefixLength) {
+        return HEADER_SIZE + prefixLength + numKeys * entrySize(true, 0) + keysLength
+               - numKeys * prefixLength;
+    }
+
+    /**
+     * Returns whether a node with the keys `keys`, in ascending order, fits
+     * on a page.
+     */
+    static boolean fits(boolean leaf, List<DataBox> keys) {
+        return fitsBytes(leaf, toBytes(keys));
+    }
+
+    private static boolean fitsBytes(boolean leaf, List<byte[]> keys) {
+        return size(leaf, keys) <= BufferManager.EFFECTIVE_PAGE_SIZE;
+    }
+
+    /**
+     * Returns the largest number d such that a node with 2d keys may fit on a
+     * page of `pageSize` bytes, or 0 if the page doesn't have room for 4 of
+     * the largest keys of type `keySchema`. Whether a node fits depends on
+     * the size of its keys, and a node with 2d keys or fewer is split when
+     * they don't fit. With room for 4 keys, though, both halves of a split
+     * node always fit.
+     */
+    static int maxOrder(short pageSize, boolean leaf, Type keySchema) {
+        int space = pageSize - HEADER_SIZE;
+        if (keySchema.getSizeInBytes() + 4 * entrySize(leaf, keySchema.getSizeInBytes()) > space) {
+            return 0;
+        }
+        // The smallest keys are those with an empty suffix.
+        return space / entrySize(leaf, 0) / 2;
+    }
+
+    // Splits //////////////////////////////////////////////////////////////////
+    /**
+     * Returns where to split an overflowing node with the keys `keys`, in
+     * ascending order, in a tree of order `order`: the number of keys that
+     * stay in the left node. In an inner node, the key after them moves up
+     * as the split key.
+     *
+     * A node that fits on its page has 2d + 1 keys, and is split at d like a
+     * node of fixed size keys. A node that doesn't fit is split as close to
+     * the middle of its bytes as both halves fit, with their own prefixes.
+     */
+    static int splitIndex(boolean leaf, List<DataBox> keys, int order) {
+        List<byte[]> bytes = toBytes(keys);
+        if (fitsBytes(leaf, bytes)) {
+            return order;
+        }
+        int n = bytes.size();
+        int prefixLength = commonPrefixLength(bytes.get(0), bytes.get(n - 1));
+        int total = 0;
+        for (byte[] key : bytes) {
+            total += entrySize(leaf, key.length - prefixLength);
+        }
+        int middle = 0;
+        for (int size = 0; middle < n && 2 * size < total; ++middle) {
+            size += entrySize(leaf, bytes.get(middle).length - prefixLength);
+        }
+
+        // The right node of a leaf starts at the split, and the right node
+        // of an inner node after it. Neither node may be empty.
+        int lo = 1;
+        int hi = leaf ? n - 1 : n - 2;
+        for (int distance = 0; middle - distance >= lo || middle + distance <= hi; ++distance) {
+            for (int i : new int[] {middle - distance, middle + distance}) {
+                if (i >= lo && i <= hi && fitsBytes(leaf, bytes.subList(0, i)) &&
+                        fitsBytes(leaf, bytes.subList(leaf ? i : i + 1, n))) {
+                    return i;
+                }
+            }
+        }
+        throw new BPlusTreeException("cannot split a node of " + n + " keys into two pages");
+    }
+
+    // Serialization ///////////////////////////////////////////////////////////
+    /**
+     * Returns a page with the 13 byte header `header`, and the keys `keys` in
+     * ascending order with their payloads `payloads`.
+     */
+    static byte[] toPage(byte[] header, List<DataBox> keys, List<byte[]> payloads) {
+        List<byte[]> bytes = toBytes(keys);
+        int n = bytes.size();
+        int prefixLength = n == 0 ? 0 : commonPrefixLength(bytes.get(0), bytes.get(n - 1));
+
+        ByteBuffer buf = ByteBuffer.allocate(BufferManager.EFFECTIVE_PAGE_SIZE);
+        buf.put(header);
+        buf.putShort((short) prefixLength);
+        buf.position(PREFIX_OFFSET);
+        if (n > 0) {
+            buf.put(bytes.get(0), 0, prefixLength);
+        }
+        int heapStart = BufferManager.EFFECTIVE_PAGE_SIZE;
+        for (int i = 0; i < n; ++i) {
+            byte[] key = bytes.get(i);
+            int suffixLength = key.length - prefixLength;
+            heapStart -= Short.BYTES + suffixLength + payloads.get(i).length;
+            buf.putShort(PREFIX_OFFSET + prefixLength + i * Short.BYTES, (short) heapStart);
+            buf.putShort(heapStart, (short) suffixLength);
+            buf.position(heapStart + Short.BYTES);
+            buf.put(key, prefixLength, suffixLength);
+            buf.put(payloads.get(i));
+        }
+        buf.putShort(HEAP_START_OFFSET, (short) heapStart);
+        return buf.array();
+    }
+
+    /**
+     * Returns the keys of type `keySchema` of the node serialized in `buf`,
+     * which has `n` keys.
+     */
+    static List<DataBox> getKeys(Buffer buf, int n, Type keySchema) {
+        byte[] prefix = getPrefix(buf);
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            int offset = getEntryOffset(buf, prefix.length, i);
+            byte[] suffix = new byte[buf.getShort(offset)];
+            buf.position(offset + Short.BYTES).get(suffix);
+            byte[] key = Arrays.copyOf(prefix, prefix.length + suffix.length);
+            System.arraycopy(suffix, 0, key, prefix.length, suffix.length);
+            keys.add(fromBytes(keySchema, key));
+        }
+        return keys;
+    }
+
+    // In-page access //////////////////////////////////////////////////////////
+    /**
+     * Returns the offset of the payload of key `index` of the node serialized
+     * in `buf`.
+     */
+    static int getPayloadOffset(Buffer buf, int index) {
+        int offset = getEntryOffset(buf, getPrefixLength(buf), index);
+        return offset + Short.BYTES + buf.getShort(offset);
+    }
+
+    /**
+     * Returns the number of keys of the node serialized in `buf`, which has
+     * `n` keys, that are less than `key` (or less than or equal to `key`, if
+     * `orEqual` is true).
+     */
+    static int numLessThan(Buffer buf, int n, byte[] key, boolean orEqual) {
+        byte[] prefix = getPrefix(buf);
+        // A key that doesn't start with the prefix is less than or greater
+        // than all of the node's keys.
+        int cmp = compare(prefix, 0, prefix.length, key, 0, Math.min(prefix.length, key.length));
+        if (cmp != 0) {
+            return cmp < 0 ? n : 0;
+        }
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            cmp = compareSuffix(buf, prefix.length, mid, key);
+            if (cmp < 0 || (orEqual && cmp == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns whether key `index` of the node serialized in `buf`, which has
+     * `n` keys, is `key`.
+     */
+    static boolean hasKeyAt(Buffer buf, int n, int index, byte[] key) {
+        if (index >= n) {
+            return false;
+        }
+        int prefixLength = getPrefixLength(buf);
+        if (key.length < prefixLength) {
+            return false;
+        }
+        byte[] prefix = getPrefix(buf);
+        return compare(prefix, 0, prefixLength, key, 0, prefixLength) == 0 &&
+               compareSuffix(buf, prefixLength, index, key) == 0;
+    }
+
+    /**
+     * Inserts `key` and its payload `payload` as key `index` of the node
+     * serialized in `buf`, which has `n` keys, and whose number of keys is
+     * at offset `numKeysOffset`. The node is left unchanged if the key
+     * doesn't start with its prefix, or if there isn't enough free space
+     * for it, in which case the node has to be written out as a whole.
+     *
+     * @return whether the key was inserted
+     */
+    static boolean insert(Buffer buf, int numKeysOffset, int index, byte[] key, byte[] payload) {
+        int n = buf.getInt(numKeysOffset);
+        int prefixLength = getPrefixLength(buf);
+        if (key.length < prefixLength ||
+                compare(getPrefix(buf), 0, prefixLength, key, 0, prefixLength) != 0) {
+            return false;
+        }
+        int slotsEnd = PREFIX_OFFSET + prefixLength + n * Short.BYTES;
+        int suffixLength = key.length - prefixLength;
+        int heapStart = buf.getShort(HEAP_START_OFFSET) - (Short.BYTES + suffixLength + payload.length);
+        if (heapStart < slotsEnd + Short.BYTES) {
+            return false;
+        }
+        buf.putShort(heapStart, (short) suffixLength);
+        buf.position(heapStart + Short.BYTES).put(Arrays.copyOfRange(key, prefixLength, key.length))
+                                             .put(payload);
+        int slot = PREFIX_OFFSET + prefixLength + index * Short.BYTES;
+        BPlusNode.moveBytes(buf, slot, slot + Short.BYTES, slotsEnd - slot);
+        buf.putShort(slot, (short) heapStart);
+        buf.putShort(HEAP_START_OFFSET, (short) heapStart);
+        buf.putInt(numKeysOffset, n + 1);
+        return true;
+    }
+
+    /**
+     * Removes key `index` of the node serialized in `buf`, whose number of
+     * keys is at offset `numKeysOffset`.
+     */
+    static void remove(Buffer buf, int numKeysOffset, int index) {
+        int n = buf.getInt(numKeysOffset);
+        int slot = PREFIX_OFFSET + getPrefixLength(buf) + index * Short.BYTES;
+        BPlusNode.moveBytes(buf, slot + Short.BYTES, slot, (n - index - 1) * Short.BYTES);
+        buf.putInt(numKeysOffset, n - 1);
+    }
+
+    /**
+     * Returns whether putting a key of type `keySchema` into the node
+     * serialized in `buf`, which has `n` keys, might not fit on its page.
+     * A key at either end of the node may share less of the prefix than the
+     * node's keys, so this assumes that none of them share any of it.
+     */
+    static boolean isFull(Buffer buf, boolean leaf, int n, Type keySchema) {
+        int prefixLength = getPrefixLength(buf);
+        int heapSize = BufferManager.EFFECTIVE_PAGE_SIZE - buf.getShort(HEAP_START_OFFSET);
+        int size = HEADER_SIZE + n * (Short.BYTES + prefixLength) + heapSize
+                   + entrySize(leaf, keySchema.getSizeInBytes());
+        return size > BufferManager.EFFECTIVE_PAGE_SIZE;
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private static List<byte[]> toBytes(List<DataBox> keys) {
+        List<byte[]> bytes = new ArrayList<>(keys.size());
+        for (DataBox key : keys) {
+            bytes.add(toBytes(key));
+        }
+        return bytes;
+    }
+
+    private static int getPrefixLength(Buffer buf) {
+        return buf.getShort(PREFIX_LENGTH_OFFSET);
+    }
+
+    private static byte[] getPrefix(Buffer buf) {
+        byte[] prefix = new byte[getPrefixLength(buf)];
+        buf.position(PREFIX_OFFSET).get(prefix);
+        return prefix;
+    }
+
+    private static int getEntryOffset(Buffer buf, int prefixLength, int index) {
+        return buf.getShort(PREFIX_OFFSET + prefixLength + index * Short.BYTES);
+    }
+
+    /**
+     * Compares the suffix of key `index` of the node serialized in `buf` with
+     * the bytes of `key` after the prefix.
+     */
+    private static int compareSuffix(Buffer buf, int prefixLength, int index, byte[] key) {
+        int offset = getEntryOffset(buf, prefixLength, index);
+        byte[] suffix = new byte[buf.getShort(offset)];
+        buf.position(offset + Short.BYTES).get(suffix);
+        return compare(suffix, 0, suffix.length, key, prefixLength, key.length);
+    }
+}
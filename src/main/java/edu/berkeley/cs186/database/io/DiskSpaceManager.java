@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.io;
 
+import java.nio.ByteBuffer;
+
 public interface DiskSpaceManager extends AutoCloseable {
     short PAGE_SIZE = 4096; // size of a page in bytes
     long INVALID_PAGE_NUM = -1L; // a page number that is always invalid
@@ -65,6 +67,41 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void writePage(long page, byte[] buf);
 
+    /**
+     * Reads in several pages at once. Pages of the same partition that are stored
+     * next to each other are read with a single system call, so this should be
+     * preferred over repeated calls to readPage when reading many pages. Pages are
+     * read directly into the buffers, which may be direct buffers.
+     *
+     * @param pages numbers of pages to be read
+     * @param bufs output buffers to be filled with the pages, one per page - each
+     *             with a capacity of a page; their positions and limits are ignored
+     */
+    void readPages(long[] pages, ByteBuffer[] bufs);
+
+    /**
+     * Writes to several pages at once. Pages of the same partition that are stored
+     * next to each other are written with a single system call, and each partition
+     * is forced to disk at most once.
+     *
+     * @param pages numbers of pages to be written
+     * @param bufs buffers that contain the new page data, one per page - each with
+     *             a capacity of a page; their positions and limits are ignored
+     */
+    void writePages(long[] pages, ByteBuffer[] bufs);
+
+    /**
+     * Forces all writes made to a partition so far to disk.
+     *
+     * @param partNum partition number to sync
+     */
+    void sync(int partNum);
+
+    /**
+     * Forces all writes made to any partition so far to disk.
+     */
+    void syncAll();
+
     /**
      * Checks if a page is allocated
      *
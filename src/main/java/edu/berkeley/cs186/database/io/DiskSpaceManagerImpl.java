@@ -5,10 +5,16 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -44,6 +50,12 @@ import java.util.concurrent.locks.ReentrantLock;
  * - the second header page follows
  * - the next 32K pages are data pages managed by the second header page
  * - etc.
+ *
+ * By default, every page write is forced to disk (fsync) before it returns. With deferred syncing
+ * enabled, page writes are only handed to the OS, and are forced by calls to sync/syncAll. The log
+ * manager syncs the log partition whenever it flushes the log, so the log still reaches disk before
+ * any data page whose changes it describes (write-ahead logging), and concurrent log flushes share a
+ * single fsync (group commit). Data partitions are synced at checkpoints and when the manager closes.
  */
 public class DiskSpaceManagerImpl implements DiskSpaceManager {
     static final int MAX_HEADER_PAGES = PAGE_SIZE / 2; // 2 bytes per header page
@@ -64,6 +76,12 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
     // recovery manager
     private RecoveryManager recoveryManager;
 
+    // Whether page writes are left for sync/syncAll to force to disk.
+    private volatile boolean deferSync;
+
+    // Number of times a partition was forced to disk.
+    private AtomicLong numSyncs;
+
     /**
      * Initialize the disk space manager using the given directory. Creates the directory
      * if not present.
@@ -76,6 +94,8 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         this.partInfo = new HashMap<>();
         this.partNumCounter = new AtomicInteger(0);
         this.managerLock = new ReentrantLock();
+        this.deferSync = false;
+        this.numSyncs = new AtomicLong();
 
         File dir = new File(dbDir);
         if (!dir.exists()) {
@@ -98,7 +118,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 int fileNum = Integer.parseInt(f.getName());
                 maxFileNum = Math.max(maxFileNum, fileNum);
 
-                PartitionHandle pi = new PartitionHandle(fileNum, recoveryManager);
+                PartitionHandle pi = this.createPartitionHandle(fileNum, recoveryManager);
                 pi.open(dbDir + "/" + f.getName());
                 this.partInfo.put(fileNum, pi);
             }
@@ -106,8 +126,16 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    /**
+     * Creates the handle for a partition, before it is opened. Called from the constructor.
+     */
+    PartitionHandle createPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        return new PartitionHandle(partNum, recoveryManager);
+    }
+
     @Override
     public void close() {
+        this.syncAll();
         for (Map.Entry<Integer, PartitionHandle> part : this.partInfo.entrySet()) {
             try {
                 part.getValue().close();
@@ -137,7 +165,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 throw new IllegalStateException("partition number " + partNum + " already exists");
             }
 
-            pi = new PartitionHandle(partNum, recoveryManager);
+            pi = this.createPartitionHandle(partNum, recoveryManager);
             this.partInfo.put(partNum, pi);
 
             pi.partitionLock.lock();
@@ -208,7 +236,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         try {
             int pageNum = pi.allocPage();
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
+            this.writePage(pi, pageNum, new byte[PAGE_SIZE]);
             return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
@@ -234,7 +262,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         try {
             pi.allocPage(headerIndex, pageIndex);
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
+            this.writePage(pi, pageNum, new byte[PAGE_SIZE]);
             return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
@@ -304,7 +332,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
             this.managerLock.unlock();
         }
         try {
-            pi.writePage(pageNum, buf);
+            this.writePage(pi, pageNum, buf);
         } catch (IOException e) {
             throw new PageException("could not write partition " + partNum + ": " + e.getMessage());
         } finally {
@@ -312,6 +340,75 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    @Override
+    public void readPages(long[] pages, ByteBuffer[] bufs) {
+        this.doPages(pages, bufs, false);
+    }
+
+    @Override
+    public void writePages(long[] pages, ByteBuffer[] bufs) {
+        this.doPages(pages, bufs, true);
+    }
+
+    // Reads or writes several pages, a partition at a time, with the pages of each
+    // partition in order so that adjacent pages can be read or written together.
+    private void doPages(long[] pages, ByteBuffer[] bufs, boolean write) {
+        String op = write ? "writePages" : "readPages";
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException(op + " expects one buffer per page");
+        }
+        for (ByteBuffer buf : bufs) {
+            if (buf.capacity() != PAGE_SIZE) {
+                throw new IllegalArgumentException(op + " expects page-sized buffers");
+            }
+        }
+        Integer[] order = new Integer[pages.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> pages[i]));
+
+        for (int start = 0, end; start < order.length; start = end) {
+            int partNum = DiskSpaceManager.getPartNum(pages[order[start]]);
+            end = start + 1;
+            while (end < order.length && DiskSpaceManager.getPartNum(pages[order[end]]) == partNum) {
+                ++end;
+            }
+            int[] pageNums = new int[end - start];
+            ByteBuffer[] partBufs = new ByteBuffer[end - start];
+            for (int i = start; i < end; ++i) {
+                pageNums[i - start] = DiskSpaceManager.getPageNum(pages[order[i]]);
+                // own position and limit, covering the whole page
+                partBufs[i - start] = bufs[order[i]].duplicate();
+                partBufs[i - start].clear();
+            }
+
+            this.managerLock.lock();
+            PartitionHandle pi;
+            try {
+                pi = getPartInfo(partNum);
+                pi.partitionLock.lock();
+            } finally {
+                this.managerLock.unlock();
+            }
+            try {
+                if (write) {
+                    boolean force = !this.deferSync;
+                    pi.writePages(pageNums, partBufs, force);
+                    if (force) {
+                        this.numSyncs.incrementAndGet();
+                    }
+                } else {
+                    pi.readPages(pageNums, partBufs);
+                }
+            } catch (IOException e) {
+                throw new PageException("could not " + (write ? "write" : "read") + " partition " + partNum + ": " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
     @Override
     public boolean pageAllocated(long page) {
         int partNum = DiskSpaceManager.getPartNum(page);
@@ -331,6 +428,72 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    // Writes a page, forcing it to disk unless syncs are deferred. Assumes that
+    // the partition lock is held.
+    private void writePage(PartitionHandle pi, int pageNum, byte[] buf) throws IOException {
+        boolean force = !this.deferSync;
+        pi.writePage(pageNum, buf, force);
+        if (force) {
+            this.numSyncs.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void sync(int partNum) {
+        this.managerLock.lock();
+        PartitionHandle pi;
+        try {
+            pi = getPartInfo(partNum);
+        } finally {
+            this.managerLock.unlock();
+        }
+        try {
+            if (pi.sync()) {
+                this.numSyncs.incrementAndGet();
+            }
+        } catch (IOException e) {
+            throw new PageException("could not sync partition " + partNum + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void syncAll() {
+        List<Integer> partNums;
+        this.managerLock.lock();
+        try {
+            partNums = new ArrayList<>(this.partInfo.keySet());
+        } finally {
+            this.managerLock.unlock();
+        }
+        for (int partNum : partNums) {
+            try {
+                this.sync(partNum);
+            } catch (NoSuchElementException e) {
+                // partition was freed in the meantime
+            }
+        }
+    }
+
+    /**
+     * Sets whether page writes are forced to disk immediately (the default), or
+     * left for sync/syncAll. Pending writes are synced when switching back to
+     * immediate mode.
+     * @param deferSync whether to defer syncing page writes
+     */
+    public void setDeferSync(boolean deferSync) {
+        this.deferSync = deferSync;
+        if (!deferSync) {
+            this.syncAll();
+        }
+    }
+
+    /**
+     * @return number of times a partition has been forced to disk
+     */
+    public long getNumSyncs() {
+        return this.numSyncs.get();
+    }
+
     // Gets PartInfo, throws exception if not found.
     private PartitionHandle getPartInfo(int partNum) {
         PartitionHandle pi = this.partInfo.get(partNum);
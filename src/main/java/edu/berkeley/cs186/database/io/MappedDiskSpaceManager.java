@@ -0,0 +1,29 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+/**
+ * A disk space manager that stores partitions the same way as DiskSpaceManagerImpl,
+ * but reads and writes data pages through memory mappings of the partition files
+ * (see MappedPartitionHandle), so that page reads and writes are memory copies
+ * instead of system calls.
+ *
+ * Durability is unchanged: writes are forced (now per mapped segment) before they
+ * return, or at calls to sync/syncAll when syncs are deferred.
+ */
+public class MappedDiskSpaceManager extends DiskSpaceManagerImpl {
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     */
+    public MappedDiskSpaceManager(String dbDir, RecoveryManager recoveryManager) {
+        super(dbDir, recoveryManager);
+    }
+
+    @Override
+    PartitionHandle createPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        return new MappedPartitionHandle(partNum, recoveryManager);
+    }
+}
@@ -0,0 +1,109 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static edu.berkeley.cs186.database.io.DiskSpaceManager.PAGE_SIZE;
+
+/**
+ * Partition handle whose data pages are read and written through memory mappings
+ * of the partition's OS file, rather than with a system call per read or write.
+ *
+ * The file is mapped in fixed-size segments, which are mapped the first time a page
+ * in them is accessed; mapping a segment past the end of the file extends the file,
+ * so partition files grow a segment at a time. Master and header pages are still
+ * written through the file channel. Forcing the partition forces every segment
+ * written to since the last force, and then the file itself.
+ */
+class MappedPartitionHandle extends PartitionHandle {
+    // Size of a mapped segment: 1024 pages (4MB).
+    static final long SEGMENT_SIZE = 1024L * PAGE_SIZE;
+
+    // Mapped segments, indexed by offset / SEGMENT_SIZE (null if not mapped yet).
+    // Replaced (under the partition lock) when it grows, so that forcing the
+    // partition can read it without the partition lock.
+    private volatile MappedByteBuffer[] segments;
+
+    // Indices of segments written to since they were last forced.
+    private final Set<Integer> dirtySegments;
+
+    MappedPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        super(partNum, recoveryManager);
+        this.segments = new MappedByteBuffer[0];
+        this.dirtySegments = ConcurrentHashMap.newKeySet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.partitionLock.lock();
+        try {
+            // The mappings stay valid until they are garbage collected, but must
+            // not be used once the file is closed.
+            this.segments = new MappedByteBuffer[0];
+            this.dirtySegments.clear();
+            super.close();
+        } finally {
+            this.partitionLock.unlock();
+        }
+    }
+
+    @Override
+    void readData(long offset, ByteBuffer[] bufs, int start, int end) throws IOException {
+        for (int i = start; i < end; ++i, offset += PAGE_SIZE) {
+            bufs[i].put(this.pageSlice(offset));
+        }
+    }
+
+    @Override
+    void writeData(long offset, ByteBuffer[] bufs, int start, int end) throws IOException {
+        for (int i = start; i < end; ++i, offset += PAGE_SIZE) {
+            this.pageSlice(offset).put(bufs[i]);
+            this.dirtySegments.add((int) (offset / SEGMENT_SIZE));
+        }
+    }
+
+    @Override
+    void forceData() throws IOException {
+        MappedByteBuffer[] segments = this.segments;
+        for (Integer index : this.dirtySegments) {
+            // removed before forcing, so that a write during the force marks it again
+            this.dirtySegments.remove(index);
+            if (index < segments.length && segments[index] != null) {
+                segments[index].force();
+            }
+        }
+        super.forceData();
+    }
+
+    /**
+     * Returns a view of a data page in its mapped segment, mapping the segment
+     * if needed. Assumes that the partition lock is held.
+     * @param offset offset in OS file of the page
+     * @return buffer covering the page
+     */
+    private ByteBuffer pageSlice(long offset) throws IOException {
+        int index = (int) (offset / SEGMENT_SIZE);
+        MappedByteBuffer[] segments = this.segments;
+        if (index >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(index + 1, segments.length * 2));
+        }
+        if (segments[index] == null) {
+            segments[index] = this.fileChannel.map(FileChannel.MapMode.READ_WRITE,
+                                                   index * SEGMENT_SIZE, SEGMENT_SIZE);
+            this.segments = segments;
+        }
+        // duplicate, so that concurrent forces never see a moving position
+        ByteBuffer slice = segments[index].duplicate();
+        int position = (int) (offset % SEGMENT_SIZE);
+        slice.position(position);
+        slice.limit(position + PAGE_SIZE);
+        return slice;
+    }
+}
@@ -21,9 +21,18 @@ class PartitionHandle implements AutoCloseable {
     // Lock on the partition.
     ReentrantLock partitionLock;
 
+    // Lock held while forcing the partition to disk; threads waiting on it may
+    // find that their writes were covered by the force of the thread holding it.
+    private ReentrantLock syncLock;
+
+    // Number of writes to the file, and how many of those are known to be on disk.
+    // Writes are counted under the partition lock.
+    private long numWrites;
+    private volatile long numSyncedWrites;
+
     // Underlying OS file/file channel.
     private RandomAccessFile file;
-    private FileChannel fileChannel;
+    FileChannel fileChannel;
 
     // Contents of the master page of this partition
     // Ideally would be an unsigned short array but Java doesn't have unsigned types
@@ -42,6 +51,7 @@ class PartitionHandle implements AutoCloseable {
         this.masterPage = new int[MAX_HEADER_PAGES];
         this.headerPages = new byte[MAX_HEADER_PAGES][];
         this.partitionLock = new ReentrantLock();
+        this.syncLock = new ReentrantLock();
         this.recoveryManager = recoveryManager;
         this.partNum = partNum;
     }
@@ -239,27 +249,179 @@ class PartitionHandle implements AutoCloseable {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.read(b, PartitionHandle.dataPageOffset(pageNum));
+        this.readData(PartitionHandle.dataPageOffset(pageNum), new ByteBuffer[] {ByteBuffer.wrap(buf)}, 0, 1);
     }
 
     /**
      * Writes to a data page. Assumes that the partition lock is held.
      * @param pageNum data page number to write to
      * @param buf input buffer with new contents of page - assumed to be page size
+     * @param force whether to force the write to disk before returning; otherwise
+     *              the write is only guaranteed to be on disk after a call to sync
      */
-    void writePage(int pageNum, byte[] buf) throws IOException {
+    void writePage(int pageNum, byte[] buf, boolean force) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.write(b, PartitionHandle.dataPageOffset(pageNum));
-        this.fileChannel.force(false);
+        this.writeData(PartitionHandle.dataPageOffset(pageNum), new ByteBuffer[] {ByteBuffer.wrap(buf)}, 0, 1);
+        ++this.numWrites;
+        if (force) {
+            this.forceData();
+            this.numSyncedWrites = this.numWrites;
+        }
 
         long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         recoveryManager.diskIOHook(vpn);
     }
 
+    /**
+     * Reads in several data pages. Pages whose data pages are adjacent in the file
+     * are read in together, with one scattering read per run of pages. Assumes
+     * that the partition lock is held.
+     * @param pageNums data page numbers to read in, in increasing order
+     * @param bufs output buffers to be filled with the pages - assumed to have a page
+     *             remaining
+     */
+    void readPages(int[] pageNums, ByteBuffer[] bufs) throws IOException {
+        this.checkAllocated(pageNums);
+        for (int start = 0, end; start < pageNums.length; start = end) {
+            end = this.endOfRun(pageNums, start);
+            this.readData(PartitionHandle.dataPageOffset(pageNums[start]), bufs, start, end);
+        }
+    }
+
+    /**
+     * Writes to several data pages. Pages whose data pages are adjacent in the file
+     * are written together, with one gathering write per run of pages, and the
+     * file is forced at most once. Assumes that the partition lock is held.
+     * @param pageNums data page numbers to write to, in increasing order
+     * @param bufs input buffers with new contents of pages - assumed to have a page
+     *             remaining
+     * @param force whether to force the writes to disk before returning; otherwise
+     *              the writes are only guaranteed to be on disk after a call to sync
+     */
+    void writePages(int[] pageNums, ByteBuffer[] bufs, boolean force) throws IOException {
+        this.checkAllocated(pageNums);
+        for (int start = 0, end; start < pageNums.length; start = end) {
+            end = this.endOfRun(pageNums, start);
+            this.writeData(PartitionHandle.dataPageOffset(pageNums[start]), bufs, start, end);
+        }
+        this.numWrites += pageNums.length;
+        if (force && pageNums.length > 0) {
+            this.forceData();
+            this.numSyncedWrites = this.numWrites;
+        }
+
+        for (int pageNum : pageNums) {
+            long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
+            recoveryManager.diskIOHook(vpn);
+        }
+    }
+
+    /**
+     * Reads consecutive data pages from the file. Assumes that the partition lock is held.
+     * @param offset offset in OS file of the first page
+     * @param bufs output buffers, of which bufs[start..end) are filled
+     */
+    void readData(long offset, ByteBuffer[] bufs, int start, int end) throws IOException {
+        if (end - start == 1) {
+            this.fileChannel.read(bufs[start], offset);
+            return;
+        }
+        this.fileChannel.position(offset);
+        long remaining = (long) (end - start) * PAGE_SIZE;
+        while (remaining > 0) {
+            long n = this.fileChannel.read(bufs, start, end - start);
+            if (n < 0) {
+                // past the end of the file; same as a single page read, which leaves the buffer alone
+                break;
+            }
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Writes consecutive data pages to the file. Assumes that the partition lock is held.
+     * @param offset offset in OS file of the first page
+     * @param bufs input buffers, of which bufs[start..end) are written
+     */
+    void writeData(long offset, ByteBuffer[] bufs, int start, int end) throws IOException {
+        if (end - start == 1) {
+            this.fileChannel.write(bufs[start], offset);
+            return;
+        }
+        this.fileChannel.position(offset);
+        long remaining = (long) (end - start) * PAGE_SIZE;
+        while (remaining > 0) {
+            remaining -= this.fileChannel.write(bufs, start, end - start);
+        }
+    }
+
+    /**
+     * Forces the file to disk.
+     */
+    void forceData() throws IOException {
+        this.fileChannel.force(false);
+    }
+
+    // Checks that all pages are allocated before any I/O is done.
+    private void checkAllocated(int[] pageNums) {
+        for (int pageNum : pageNums) {
+            if (this.isNotAllocatedPage(pageNum)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+        }
+    }
+
+    // Returns the end (exclusive) of the run of pages starting at pageNums[start]
+    // that are stored next to each other in the file. Data pages on either side of
+    // a header page are not.
+    private int endOfRun(int[] pageNums, int start) {
+        int end = start + 1;
+        while (end < pageNums.length && PartitionHandle.dataPageOffset(pageNums[end])
+                == PartitionHandle.dataPageOffset(pageNums[end - 1]) + PAGE_SIZE) {
+            ++end;
+        }
+        return end;
+    }
+
+    /**
+     * Forces all writes made to the partition so far to disk. Must be called
+     * without the partition lock held, so that writes can continue while the
+     * force is in progress. Concurrent calls are coalesced: a caller that
+     * finds its writes already forced by another caller returns immediately.
+     *
+     * @return whether this call forced the file (false if there was nothing to force)
+     */
+    boolean sync() throws IOException {
+        long target = this.getNumWrites();
+        if (this.numSyncedWrites >= target) {
+            return false;
+        }
+        this.syncLock.lock();
+        try {
+            if (this.numSyncedWrites >= target) {
+                return false;
+            }
+            // everything written up to now is covered by this force
+            long covered = this.getNumWrites();
+            this.forceData();
+            this.numSyncedWrites = Math.max(this.numSyncedWrites, covered);
+            return true;
+        } finally {
+            this.syncLock.unlock();
+        }
+    }
+
+    private long getNumWrites() {
+        this.partitionLock.lock();
+        try {
+            return this.numWrites;
+        } finally {
+            this.partitionLock.unlock();
+        }
+    }
+
     /**
      * Checks if page number is for an unallocated data page
      * @param pageNum data page number
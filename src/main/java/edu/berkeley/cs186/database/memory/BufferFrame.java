@@ -1,35 +1,118 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * Buffer frame.
+ *
+ * Pinning and latching are separate: the pin count only keeps the frame from
+ * being evicted, while the latch controls access to the frame's contents.
+ * Any number of threads may hold the latch in shared mode, but only one may
+ * hold it in exclusive mode. A thread holding the exclusive latch may also
+ * acquire it in shared mode, but a thread holding only the shared latch may
+ * not upgrade to exclusive (it will deadlock).
+ *
+ * The frame also keeps a version number that changes every time the exclusive
+ * latch is acquired or released, which allows optimistic reads: take a stamp
+ * with tryOptimisticRead(), read without holding the latch across reads, and
+ * call validate(stamp) to check that no writer got in the way.
  */
 abstract class BufferFrame {
+    // Source of the upper 32 bits of each frame's version, so that stamps
+    // from different frame objects never compare equal.
+    private static final AtomicLong epochs = new AtomicLong();
+
     Object tag = null;
-    private int pinCount = 0;
+    private final AtomicInteger pinCount = new AtomicInteger();
+    private final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
+    // Odd while the exclusive latch is held.
+    private final AtomicLong version = new AtomicLong(epochs.incrementAndGet() << 32);
 
     /**
      * Pin buffer frame; cannot be evicted while pinned. A "hit" happens when the
      * buffer frame gets pinned.
      */
     void pin() {
-        ++pinCount;
+        pinCount.incrementAndGet();
     }
 
     /**
      * Unpin buffer frame.
      */
     void unpin() {
-        if (!isPinned()) {
+        if (pinCount.getAndUpdate(c -> c > 0 ? c - 1 : c) <= 0) {
             throw new IllegalStateException("cannot unpin unpinned frame");
         }
-        --pinCount;
     }
 
     /**
      * @return whether this frame is pinned
      */
     boolean isPinned() {
-        return pinCount > 0;
+        return pinCount.get() > 0;
+    }
+
+    /**
+     * Acquires the latch on this frame. The frame should be pinned first.
+     * @param exclusive whether to acquire the latch in exclusive (write) mode
+     *                  rather than shared (read) mode
+     */
+    void latch(boolean exclusive) {
+        if (exclusive) {
+            latch.writeLock().lock();
+            if (latch.getWriteHoldCount() == 1) {
+                version.incrementAndGet();
+            }
+        } else {
+            latch.readLock().lock();
+        }
+    }
+
+    /**
+     * Acquires the latch on this frame in shared mode, if it is not held in
+     * exclusive mode. The frame should be pinned first.
+     * @return whether the latch was acquired
+     */
+    boolean tryLatchShared() {
+        return latch.readLock().tryLock();
+    }
+
+    /**
+     * Releases one hold of the latch by the current thread. Shared holds are
+     * released before exclusive ones, which matches the only legal nesting
+     * (shared inside exclusive).
+     */
+    void unlatch() {
+        if (latch.getReadHoldCount() > 0) {
+            latch.readLock().unlock();
+        } else if (latch.isWriteLockedByCurrentThread()) {
+            if (latch.getWriteHoldCount() == 1) {
+                version.incrementAndGet();
+            }
+            latch.writeLock().unlock();
+        } else {
+            throw new IllegalStateException("cannot unlatch frame that is not latched");
+        }
+    }
+
+    /**
+     * @return a stamp for an optimistic read of this frame, or 0 if the frame
+     * is currently latched exclusively
+     */
+    long tryOptimisticRead() {
+        long stamp = version.get();
+        return (stamp & 1) == 0 ? stamp : 0;
+    }
+
+    /**
+     * @param stamp stamp returned by tryOptimisticRead
+     * @return whether the frame is still valid and has not been latched
+     * exclusively since the stamp was taken
+     */
+    boolean validate(long stamp) {
+        return stamp != 0 && isValid() && version.get() == stamp;
     }
 
     /**
@@ -10,15 +10,34 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 /**
  * Implementation of a buffer manager, with configurable page replacement policies.
- * Data is stored in page-sized byte arrays, and returned in a Frame object specific
- * to the page loaded (evicting and loading a new page into the frame will result in
- * a new Frame object, with the same underlying byte array), with old Frame objects
- * backed by the same byte array marked as invalid.
+ * Data is stored in page-sized buffers sliced from an off-heap arena (see FrameArena),
+ * and returned in a Frame object specific to the page loaded (evicting and loading a
+ * new page into the frame will result in a new Frame object, with the same underlying
+ * buffer), with old Frame objects backed by the same buffer marked as invalid.
+ *
+ * The frames may be split between several sub-pools, with pages assigned to
+ * sub-pools by hashing their page number. Each sub-pool has its own page table,
+ * free list, eviction policy and lock, so that requests for pages in different
+ * sub-pools never contend with each other.
+ *
+ * Optionally, a page cleaner (see startCleaner) writes out dirty pages in the background
+ * before the eviction policy gets to them, so that a miss rarely has to wait for its
+ * victim to be written out, and read-ahead (see startReadAhead) loads pages in the
+ * background ahead of sequential scans.
  */
 public class BufferManager implements AutoCloseable {
     // We reserve 36 bytes on each page for bookkeeping for recovery
@@ -29,29 +48,90 @@ public class BufferManager implements AutoCloseable {
     // Effective page size available to users of buffer manager.
     public static final short EFFECTIVE_PAGE_SIZE = (short) (DiskSpaceManager.PAGE_SIZE - RESERVED_SPACE);
 
-    // Buffer frames
-    private Frame[] frames;
+    // Sub-pools of buffer frames
+    private SubPool[] pools;
 
     // Reference to the disk space manager underneath this buffer manager instance.
     private DiskSpaceManager diskSpaceManager;
 
-    // Map of page number to frame index
-    private Map<Long, Integer> pageToFrame;
+    // Recovery manager
+    private RecoveryManager recoveryManager;
 
-    // Lock on buffer manager
-    private ReentrantLock managerLock;
+    // Count of number of I/Os
+    private AtomicLong numIOs = new AtomicLong();
 
-    // Eviction policy
-    private EvictionPolicy evictionPolicy;
+    // How often the page cleaner checks each sub-pool, in milliseconds
+    private static final long CLEANER_INTERVAL_MS = 10;
 
-    // Index of first free frame
-    private int firstFreeIndex;
+    // Page cleaner threads, or null if the page cleaner is not running
+    private volatile ScheduledExecutorService cleaner;
 
-    // Recovery manager
-    private RecoveryManager recoveryManager;
+    // Set when the page cleaner is being stopped. Cleaner threads are never
+    // interrupted, since an interrupt during a write closes the partition's channel.
+    private volatile boolean cleanerStopping;
 
-    // Count of number of I/Os
-    private long numIOs = 0;
+    // Fraction of each sub-pool's frames that the page cleaner keeps clean
+    private double cleanFraction;
+
+    // Number of consecutive pages that must be fetched before reading ahead
+    private static final int READ_AHEAD_TRIGGER = 2;
+
+    // Threads loading prefetched pages, or null if read-ahead is not running
+    private volatile ExecutorService prefetcher;
+
+    // Set when read-ahead is being stopped (prefetch threads are not interrupted
+    // either, for the same reason as cleaner threads)
+    private volatile boolean prefetcherStopping;
+
+    // Number of pages to read ahead of a sequential scan
+    private int readAheadWindow;
+
+    // Most recent run of consecutive page fetches in each partition
+    private final Map<Integer, SequentialRun> sequentialRuns = new ConcurrentHashMap<>();
+
+    private static class SequentialRun {
+        long lastPageNum = DiskSpaceManager.INVALID_PAGE_NUM;
+        int length = 0;
+        long prefetchedUpTo = DiskSpaceManager.INVALID_PAGE_NUM;
+    }
+
+    /**
+     * A sub-pool of buffer frames. Frame indices are local to the sub-pool.
+     */
+    private class SubPool {
+        // Buffer frames
+        Frame[] frames;
+
+        // Map of page number to frame index
+        PageTable pageToFrame;
+
+        // Lock on the sub-pool
+        ReentrantLock poolLock;
+
+        // Eviction policy
+        EvictionPolicy evictionPolicy;
+
+        // Index of first free frame
+        int firstFreeIndex;
+
+        // Whether a cleaning pass has been requested but has not started yet
+        AtomicBoolean cleanRequested = new AtomicBoolean();
+
+        // Dirty frames that have been evicted but are still being written out, by
+        // page number; their pages must not be read back in until they are written
+        Map<Long, Frame> writingOut = new ConcurrentHashMap<>();
+
+        SubPool(FrameArena arena, int firstPage, int numFrames, EvictionPolicy evictionPolicy) {
+            this.frames = new Frame[numFrames];
+            for (int i = 0; i < numFrames; ++i) {
+                this.frames[i] = new Frame(this, arena.page(firstPage + i), i + 1);
+            }
+            this.firstFreeIndex = 0;
+            this.pageToFrame = new PageTable(numFrames);
+            this.poolLock = new ReentrantLock();
+            this.evictionPolicy = evictionPolicy;
+        }
+    }
 
     /**
      * Buffer frame, containing information about the loaded page, wrapped around the
@@ -61,22 +141,26 @@ public class BufferManager implements AutoCloseable {
     class Frame extends BufferFrame {
         private static final int INVALID_INDEX = Integer.MIN_VALUE;
 
-        byte[] contents;
+        ByteBuffer contents;
+        private final SubPool pool;
         private int index;
         private long pageNum;
-        private boolean dirty;
+        private volatile boolean dirty;
+        // Guards changes to the frame's state (pinning, invalidation), but is
+        // only ever held briefly: access to the contents goes through the latch.
         private ReentrantLock frameLock;
         private boolean logPage;
 
-        Frame(byte[] contents, int nextFree) {
-            this(contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM);
+        Frame(SubPool pool, ByteBuffer contents, int nextFree) {
+            this(pool, contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM);
         }
 
         Frame(Frame frame) {
-            this(frame.contents, frame.index, frame.pageNum);
+            this(frame.pool, frame.contents, frame.index, frame.pageNum);
         }
 
-        Frame(byte[] contents, int index, long pageNum) {
+        Frame(SubPool pool, ByteBuffer contents, int index, long pageNum) {
+            this.pool = pool;
             this.contents = contents;
             this.index = index;
             this.pageNum = pageNum;
@@ -88,26 +172,20 @@ public class BufferManager implements AutoCloseable {
 
         /**
          * Pin buffer frame; cannot be evicted while pinned. A "hit" happens when the
-         * buffer frame gets pinned.
+         * buffer frame gets pinned. Pinning does not latch the frame.
          */
         @Override
         public void pin() {
             this.frameLock.lock();
+            try {
+                if (!this.isValid()) {
+                    throw new IllegalStateException("pinning invalidated frame");
+                }
 
-            if (!this.isValid()) {
-                throw new IllegalStateException("pinning invalidated frame");
+                super.pin();
+            } finally {
+                this.frameLock.unlock();
             }
-
-            super.pin();
-        }
-
-        /**
-         * Unpin buffer frame.
-         */
-        @Override
-        public void unpin() {
-            super.unpin();
-            this.frameLock.unlock();
         }
 
         /**
@@ -143,8 +221,8 @@ public class BufferManager implements AutoCloseable {
             if (isFreed()) {
                 throw new IllegalStateException("cannot free free frame");
             }
-            int nextFreeIndex = firstFreeIndex;
-            firstFreeIndex = this.index;
+            int nextFreeIndex = pool.firstFreeIndex;
+            pool.firstFreeIndex = this.index;
             this.index = ~nextFreeIndex;
         }
 
@@ -152,8 +230,8 @@ public class BufferManager implements AutoCloseable {
             if (!isFreed()) {
                 throw new IllegalStateException("cannot unfree used frame");
             }
-            int index = firstFreeIndex;
-            firstFreeIndex = ~this.index;
+            int index = pool.firstFreeIndex;
+            pool.firstFreeIndex = ~this.index;
             this.index = index;
         }
 
@@ -171,23 +249,30 @@ public class BufferManager implements AutoCloseable {
         @Override
         void flush() {
             this.frameLock.lock();
-            super.pin();
             try {
                 if (!this.isValid()) {
                     return;
                 }
+                super.pin();
+            } finally {
+                this.frameLock.unlock();
+            }
+            // Writers hold the latch exclusively, so a shared latch is enough to
+            // get a consistent image of the page.
+            this.latch(false);
+            try {
                 if (!this.dirty) {
                     return;
                 }
                 if (!this.logPage) {
                     recoveryManager.pageFlushHook(this.getPageLSN());
                 }
-                BufferManager.this.diskSpaceManager.writePage(pageNum, contents);
+                BufferManager.this.diskSpaceManager.writePages(new long[] {pageNum}, new ByteBuffer[] {contents});
                 BufferManager.this.incrementIOs();
                 this.dirty = false;
             } finally {
+                this.unlatch();
                 super.unpin();
-                this.frameLock.unlock();
             }
         }
 
@@ -200,13 +285,14 @@ public class BufferManager implements AutoCloseable {
         @Override
         void readBytes(short position, short num, byte[] buf) {
             this.pin();
+            this.latch(false);
             try {
-                if (!this.isValid()) {
-                    throw new IllegalStateException("reading from invalid buffer frame");
-                }
-                System.arraycopy(this.contents, position + dataOffset(), buf, 0, num);
-                BufferManager.this.evictionPolicy.hit(this);
+                ByteBuffer src = this.contents.duplicate();
+                src.position(position + dataOffset());
+                src.get(buf, 0, num);
+                this.hit();
             } finally {
+                this.unlatch();
                 this.unpin();
             }
         }
@@ -220,10 +306,8 @@ public class BufferManager implements AutoCloseable {
         @Override
         void writeBytes(short position, short num, byte[] buf) {
             this.pin();
+            this.latch(true);
             try {
-                if (!this.isValid()) {
-                    throw new IllegalStateException("writing to invalid buffer frame");
-                }
                 int offset = position + dataOffset();
                 TransactionContext transaction = TransactionContext.getTransaction();
                 if (transaction != null && !logPage) {
@@ -231,21 +315,43 @@ public class BufferManager implements AutoCloseable {
                     for (Pair<Integer, Integer> range : changedRanges) {
                         int start = range.getFirst();
                         int len = range.getSecond();
-                        byte[] before = Arrays.copyOfRange(contents, start + offset, start + offset + len);
+                        byte[] before = new byte[len];
+                        ByteBuffer src = contents.duplicate();
+                        src.position(start + offset);
+                        src.get(before);
                         byte[] after = Arrays.copyOfRange(buf, start, start + len);
                         long pageLSN = recoveryManager.logPageWrite(transaction.getTransNum(), pageNum, (short) (start + position), before,
                                        after);
                         this.setPageLSN(pageLSN);
                     }
                 }
-                System.arraycopy(buf, 0, this.contents, offset, num);
+                ByteBuffer dst = this.contents.duplicate();
+                dst.position(offset);
+                dst.put(buf, 0, num);
                 this.dirty = true;
-                BufferManager.this.evictionPolicy.hit(this);
+                this.hit();
             } finally {
+                this.unlatch();
                 this.unpin();
             }
         }
 
+        /**
+         * Tells the eviction policy that this frame was used. Eviction policies are
+         * only called under the sub-pool lock, which threads holding it may wait
+         * on our latch for (e.g. evictAll), so the hit is skipped if the sub-pool
+         * is busy: this only makes the policy's idea of recent use less exact.
+         */
+        private void hit() {
+            if (pool.poolLock.tryLock()) {
+                try {
+                    pool.evictionPolicy.hit(this);
+                } finally {
+                    pool.poolLock.unlock();
+                }
+            }
+        }
+
         /**
          * Requests a valid Frame object for the page (if invalid, a new Frame object is returned).
          * Page is pinned on return.
@@ -261,10 +367,10 @@ public class BufferManager implements AutoCloseable {
                     this.pin();
                     return this;
                 }
-                return BufferManager.this.fetchPageFrame(this.pageNum);
             } finally {
                 this.frameLock.unlock();
             }
+            return BufferManager.this.fetchPageFrame(this.pageNum);
         }
 
         @Override
@@ -278,7 +384,7 @@ public class BufferManager implements AutoCloseable {
 
         @Override
         long getPageLSN() {
-            return ByteBuffer.wrap(this.contents).getLong(8);
+            return this.contents.getLong(8);
         }
 
         @Override
@@ -307,7 +413,7 @@ public class BufferManager implements AutoCloseable {
                     ranges.add(new Pair<>(startIndex, maxRange));
                     startIndex = -1;
                     skip = -1;
-                } else if (buf[i] == contents[offset + i] && startIndex >= 0) {
+                } else if (buf[i] == contents.get(offset + i) && startIndex >= 0) {
                     if (skip > BufferManager.RESERVED_SPACE) {
                         ranges.add(new Pair<>(startIndex, i - startIndex - skip));
                         startIndex = -1;
@@ -315,7 +421,7 @@ public class BufferManager implements AutoCloseable {
                     } else {
                         ++skip;
                     }
-                } else if (buf[i] != contents[offset + i]) {
+                } else if (buf[i] != contents.get(offset + i)) {
                     if (startIndex < 0) {
                         startIndex = i;
                     }
@@ -329,7 +435,7 @@ public class BufferManager implements AutoCloseable {
         }
 
         void setPageLSN(long pageLSN) {
-            ByteBuffer.wrap(this.contents).putLong(8, pageLSN);
+            this.contents.putLong(8, pageLSN);
         }
 
         private short dataOffset() {
@@ -342,7 +448,7 @@ public class BufferManager implements AutoCloseable {
     }
 
     /**
-     * Creates a new buffer manager.
+     * Creates a new buffer manager with a single pool of frames.
      *
      * @param diskSpaceManager the underlying disk space manager
      * @param bufferSize size of buffer (in pages)
@@ -350,42 +456,242 @@ public class BufferManager implements AutoCloseable {
      */
     public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
                          int bufferSize, EvictionPolicy evictionPolicy) {
-        this.frames = new Frame[bufferSize];
-        for (int i = 0; i < bufferSize; ++i) {
-            this.frames[i] = new Frame(new byte[DiskSpaceManager.PAGE_SIZE], i + 1);
+        this(diskSpaceManager, recoveryManager, bufferSize, () -> evictionPolicy, 1);
+    }
+
+    /**
+     * Creates a new buffer manager with the frames split between several sub-pools.
+     * A page can only be loaded into a frame of its own sub-pool, so a sub-pool
+     * may run out of unpinned frames while others still have some.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicies creates the eviction policy for each sub-pool
+     * @param numPools number of sub-pools (at most bufferSize)
+     */
+    public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                         int bufferSize, Supplier<EvictionPolicy> evictionPolicies, int numPools) {
+        if (numPools < 1 || numPools > bufferSize) {
+            throw new IllegalArgumentException("invalid number of buffer pools: " + numPools);
+        }
+        FrameArena arena = new FrameArena(bufferSize);
+        this.pools = new SubPool[numPools];
+        for (int i = 0, firstPage = 0; i < numPools; ++i) {
+            int numFrames = bufferSize / numPools + (i < bufferSize % numPools ? 1 : 0);
+            this.pools[i] = new SubPool(arena, firstPage, numFrames, evictionPolicies.get());
+            firstPage += numFrames;
         }
-        this.firstFreeIndex = 0;
         this.diskSpaceManager = diskSpaceManager;
-        this.pageToFrame = new HashMap<>();
-        this.managerLock = new ReentrantLock();
-        this.evictionPolicy = evictionPolicy;
         this.recoveryManager = recoveryManager;
     }
 
-    @Override
-    public void close() {
-        this.managerLock.lock();
+    /**
+     * Starts the page cleaner, which periodically writes out the dirty pages among
+     * the frames that each sub-pool's eviction policy would evict next, in order of
+     * page number. Pages are written through the usual flush path, so the log is
+     * flushed up to a page's pageLSN before the page is written.
+     *
+     * @param numThreads number of cleaner threads
+     * @param cleanFraction fraction (0 to 1] of each sub-pool's frames, next in line
+     *                      for eviction, to keep clean
+     */
+    public synchronized void startCleaner(int numThreads, double cleanFraction) {
+        if (numThreads < 1 || cleanFraction <= 0 || cleanFraction > 1) {
+            throw new IllegalArgumentException("invalid page cleaner configuration");
+        }
+        if (this.cleaner != null) {
+            throw new IllegalStateException("page cleaner already running");
+        }
+        this.cleanFraction = cleanFraction;
+        this.cleanerStopping = false;
+        this.cleaner = Executors.newScheduledThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "page-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        for (SubPool pool : this.pools) {
+            this.cleaner.scheduleWithFixedDelay(() -> this.cleanPool(pool), CLEANER_INTERVAL_MS,
+                    CLEANER_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the page cleaner, waiting for any cleaning in progress to finish.
+     * Does nothing if the page cleaner is not running.
+     */
+    public synchronized void stopCleaner() {
+        if (this.cleaner == null) {
+            return;
+        }
+        this.cleanerStopping = true;
+        this.cleaner.shutdown();
         try {
-            for (Frame frame : this.frames) {
-                frame.frameLock.lock();
+            this.cleaner.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.cleaner = null;
+    }
+
+    /**
+     * Asks the page cleaner to clean a sub-pool now, rather than at its next
+     * scheduled pass. Does nothing if the page cleaner is not running.
+     */
+    private void requestCleaning(SubPool pool) {
+        ScheduledExecutorService cleaner = this.cleaner;
+        if (cleaner != null && pool.cleanRequested.compareAndSet(false, true)) {
+            try {
+                cleaner.execute(() -> this.cleanPool(pool));
+            } catch (RejectedExecutionException e) {
+                // cleaner was stopped in the meantime
+                pool.cleanRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes out the dirty pages among the next frames to be evicted from a sub-pool.
+     */
+    private void cleanPool(SubPool pool) {
+        pool.cleanRequested.set(false);
+        if (this.cleanerStopping) {
+            return;
+        }
+        int target = (int) Math.ceil(pool.frames.length * this.cleanFraction);
+        List<Frame> dirtyFrames = new ArrayList<>();
+        pool.poolLock.lock();
+        try {
+            for (BufferFrame frame : pool.evictionPolicy.upcomingVictims(pool.frames, target)) {
+                Frame f = (Frame) frame;
+                if (f.isValid() && f.dirty) {
+                    dirtyFrames.add(f);
+                }
+            }
+        } finally {
+            pool.poolLock.unlock();
+        }
+        if (!this.flushFrames(dirtyFrames)) {
+            // Some page (or its partition) may have been freed since we picked it;
+            // a failure to clean one page must not stop the cleaner.
+            for (Frame frame : dirtyFrames) {
+                if (this.cleanerStopping) {
+                    return;
+                }
                 try {
-                    if (frame.isPinned()) {
-                        throw new IllegalStateException("closing buffer manager but frame still pinned");
-                    }
-                    if (!frame.isValid()) {
-                        continue;
-                    }
-                    evictionPolicy.cleanup(frame);
-                    frame.invalidate();
-                } finally {
-                    frame.frameLock.unlock();
+                    frame.flush();
+                } catch (RuntimeException e) {
+                    // see above
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes out dirty frames with a single call to the disk space manager, so that
+     * pages next to each other on disk are written together. Frames that are invalid
+     * or currently latched exclusively are skipped: they are either gone, or being
+     * changed and about to be dirtied again.
+     *
+     * @param frames frames to flush
+     * @return false if the write failed, in which case no frame was marked clean
+     */
+    private boolean flushFrames(List<Frame> frames) {
+        List<Frame> latched = new ArrayList<>();
+        try {
+            for (Frame frame : frames) {
+                try {
+                    frame.pin();
+                } catch (IllegalStateException e) {
+                    continue;
+                }
+                // Never wait for a latch while holding others, since a writer may
+                // be waiting for one of ours while holding the one we want.
+                if (!frame.tryLatchShared()) {
+                    frame.unpin();
+                    continue;
+                }
+                if (!frame.dirty) {
+                    frame.unlatch();
+                    frame.unpin();
+                    continue;
+                }
+                latched.add(frame);
+            }
+            if (latched.isEmpty()) {
+                return true;
+            }
+            long maxPageLSN = -1;
+            long[] pageNums = new long[latched.size()];
+            ByteBuffer[] bufs = new ByteBuffer[latched.size()];
+            for (int i = 0; i < pageNums.length; ++i) {
+                Frame frame = latched.get(i);
+                if (!frame.logPage) {
+                    maxPageLSN = Math.max(maxPageLSN, frame.getPageLSN());
                 }
+                pageNums[i] = frame.pageNum;
+                bufs[i] = frame.contents;
+            }
+            // WAL: one flush of the log covers every page written here
+            if (maxPageLSN >= 0) {
+                recoveryManager.pageFlushHook(maxPageLSN);
             }
+            this.diskSpaceManager.writePages(pageNums, bufs);
+            for (Frame frame : latched) {
+                this.incrementIOs();
+                frame.dirty = false;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            return false;
         } finally {
-            this.managerLock.unlock();
+            for (Frame frame : latched) {
+                frame.unlatch();
+                frame.unpin();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        this.stopCleaner();
+        this.stopReadAhead();
+        for (SubPool pool : this.pools) {
+            pool.poolLock.lock();
+            try {
+                for (Frame frame : pool.frames) {
+                    frame.frameLock.lock();
+                    try {
+                        if (frame.isPinned()) {
+                            throw new IllegalStateException("closing buffer manager but frame still pinned");
+                        }
+                        if (!frame.isValid()) {
+                            continue;
+                        }
+                        pool.evictionPolicy.cleanup(frame);
+                        frame.invalidate();
+                    } finally {
+                        frame.frameLock.unlock();
+                    }
+                }
+            } finally {
+                pool.poolLock.unlock();
+            }
         }
     }
 
+    /**
+     * @param pageNum page number
+     * @return the sub-pool that the page is loaded into
+     */
+    private SubPool poolFor(long pageNum) {
+        if (this.pools.length == 1) {
+            return this.pools[0];
+        }
+        // Mix the bits so that consecutive pages spread across the sub-pools.
+        long hash = pageNum * 0x9E3779B97F4A7C15L;
+        return this.pools[(int) ((hash >>> 32) % this.pools.length)];
+    }
+
     /**
      * Fetches a buffer frame with data for the specified page. Reuses existing
      * buffer frame if page already loaded in memory. Pins the buffer frame.
@@ -395,69 +701,404 @@ public class BufferManager implements AutoCloseable {
      * @return buffer frame with specified page loaded
      */
     Frame fetchPageFrame(long pageNum) {
-        this.managerLock.lock();
-        Frame newFrame;
-        Frame evictedFrame;
-        // figure out what frame to load data to, and update manager state
-        try {
-            if (!this.diskSpaceManager.pageAllocated(pageNum)) {
-                throw new PageException("page " + pageNum + " not allocated");
-            }
-            if (this.pageToFrame.containsKey(pageNum)) {
-                newFrame = this.frames[this.pageToFrame.get(pageNum)];
-                newFrame.pin();
-                return newFrame;
-            }
-            // prioritize free frames over eviction
-            if (this.firstFreeIndex < this.frames.length) {
-                evictedFrame = this.frames[this.firstFreeIndex];
-                evictedFrame.setUsed();
-            } else {
-                evictedFrame = (Frame) evictionPolicy.evict(frames);
-                this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
-                evictionPolicy.cleanup(evictedFrame);
+        return this.fetchPageFrame(pageNum, false);
+    }
+
+    /**
+     * Fetches a buffer frame with data for the specified page, as above. When
+     * prefetching, the page is only loaded if it is not loaded yet and there is
+     * a free frame or a clean frame to evict, and the frame is not pinned.
+     *
+     * @param pageNum page number
+     * @param prefetch whether the page is being prefetched
+     * @return buffer frame with specified page loaded, or null if prefetching
+     * and the page was not loaded
+     */
+    private Frame fetchPageFrame(long pageNum, boolean prefetch) {
+        SubPool pool = this.poolFor(pageNum);
+        while (true) {
+            Frame loadedFrame;
+            Pair<Frame, Frame> reserved;
+            Frame writingOut = null;
+            pool.poolLock.lock();
+            try {
+                // Pages are removed from the page table when freed, so a page that is
+                // loaded must be allocated, and we only need to ask the disk space
+                // manager on a miss.
+                int loadedIndex = pool.pageToFrame.get(pageNum);
+                if (loadedIndex >= 0) {
+                    if (prefetch) {
+                        return null;
+                    }
+                    loadedFrame = pool.frames[loadedIndex];
+                    reserved = null;
+                } else {
+                    loadedFrame = null;
+                    reserved = null;
+                    if (prefetch || (writingOut = pool.writingOut.get(pageNum)) == null) {
+                        reserved = this.reserveFrame(pool, pageNum, prefetch);
+                        if (reserved == null) {
+                            return null;
+                        }
+                    }
+                }
+            } finally {
+                pool.poolLock.unlock();
             }
-            int frameIndex = evictedFrame.index;
-            newFrame = this.frames[frameIndex] = new Frame(evictedFrame.contents, frameIndex, pageNum);
-            evictionPolicy.init(newFrame);
+            if (writingOut != null) {
+                // the frame lock is held until the page has been written out
+                writingOut.frameLock.lock();
+                writingOut.frameLock.unlock();
+                continue;
+            }
+            if (reserved != null) {
+                this.releaseEvicted(reserved.getSecond());
+                this.readFrames(Collections.singletonList(reserved.getFirst()), prefetch);
+                return reserved.getFirst();
+            }
+            // Pinned outside of the sub-pool lock, since the frame lock may be held
+            // while the page is read in; the frame may be evicted in the meantime,
+            // in which case we look the page up again.
+            try {
+                loadedFrame.pin();
+                return loadedFrame;
+            } catch (IllegalStateException e) {
+                // evicted between lookup and pin
+            }
+        }
+    }
 
+    /**
+     * Assigns a frame to a page that is not loaded, and adds it to the page table;
+     * the page still has to be read in (see readFrames). Must be called with the
+     * sub-pool's lock held.
+     *
+     * @param pool sub-pool of the page
+     * @param pageNum page number
+     * @param prefetch whether the page is being prefetched (in which case no
+     *                 dirty frame is evicted)
+     * @return the new frame, pinned, and the frame it replaces, which must be
+     * released with releaseEvicted; both have their frame lock held. Null if
+     * prefetching and the page cannot be loaded cheaply, or is still being
+     * written out (see SubPool.writingOut).
+     */
+    private Pair<Frame, Frame> reserveFrame(SubPool pool, long pageNum, boolean prefetch) {
+        if (prefetch && pool.writingOut.containsKey(pageNum)) {
+            return null;
+        }
+        if (!this.diskSpaceManager.pageAllocated(pageNum)) {
+            if (prefetch) {
+                return null;
+            }
+            throw new PageException("page " + pageNum + " not allocated");
+        }
+        Frame evictedFrame;
+        // prioritize free frames over eviction
+        if (pool.firstFreeIndex < pool.frames.length) {
+            evictedFrame = pool.frames[pool.firstFreeIndex];
+            evictedFrame.setUsed();
             evictedFrame.frameLock.lock();
-            newFrame.frameLock.lock();
-
-            this.pageToFrame.put(pageNum, frameIndex);
-        } finally {
-            this.managerLock.unlock();
+        } else {
+            evictedFrame = prefetch ? this.lockCleanVictim(pool) : this.lockVictim(pool);
+            if (evictedFrame == null) {
+                return null;
+            }
+            pool.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
+            pool.evictionPolicy.cleanup(evictedFrame);
+            if (evictedFrame.dirty) {
+                // written out by releaseEvicted, after the sub-pool lock is released
+                pool.writingOut.put(evictedFrame.pageNum, evictedFrame);
+                // the cleaner is falling behind
+                this.requestCleaning(pool);
+            }
         }
-        // flush evicted frame
+        int frameIndex = evictedFrame.index;
+        Frame newFrame = pool.frames[frameIndex] = new Frame(pool, evictedFrame.contents, frameIndex, pageNum);
+        pool.evictionPolicy.init(newFrame);
+
+        newFrame.frameLock.lock();
+        // pinned before the sub-pool lock is released, so that it cannot be chosen for eviction
+        newFrame.pin();
+
+        pool.pageToFrame.put(pageNum, frameIndex);
+        return new Pair<>(newFrame, evictedFrame);
+    }
+
+    /**
+     * Flushes and invalidates a frame replaced by reserveFrame, and releases its frame lock.
+     */
+    private void releaseEvicted(Frame evictedFrame) {
         try {
             evictedFrame.invalidate();
         } finally {
+            // removed before the frame lock is released, so that threads that
+            // waited for the lock find the page written out
+            evictedFrame.pool.writingOut.remove(evictedFrame.pageNum, evictedFrame);
             evictedFrame.frameLock.unlock();
         }
-        // read new page into frame
+    }
+
+    /**
+     * Reads in the pages of frames returned by reserveFrame, with a single call to
+     * the disk space manager, and releases their frame locks.
+     *
+     * @param frames reserved frames
+     * @param unpin whether to unpin the frames once their pages are read
+     */
+    private void readFrames(List<Frame> frames, boolean unpin) {
+        if (frames.isEmpty()) {
+            return;
+        }
+        long[] pageNums = new long[frames.size()];
+        ByteBuffer[] bufs = new ByteBuffer[frames.size()];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = frames.get(i).pageNum;
+            bufs[i] = frames.get(i).contents;
+        }
+        boolean success = false;
         try {
-            newFrame.pageNum = pageNum;
-            newFrame.pin();
-            BufferManager.this.diskSpaceManager.readPage(pageNum, newFrame.contents);
-            this.incrementIOs();
-            return newFrame;
-        } catch (PageException e) {
-            newFrame.unpin();
-            throw e;
+            this.diskSpaceManager.readPages(pageNums, bufs);
+            for (int i = 0; i < pageNums.length; ++i) {
+                this.incrementIOs();
+            }
+            success = true;
         } finally {
-            newFrame.frameLock.unlock();
+            for (Frame frame : frames) {
+                if (unpin || !success) {
+                    frame.unpin();
+                }
+                frame.frameLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Picks a frame to evict and locks it. Pinning a frame no longer holds its
+     * frame lock, so the frame may have been pinned between the eviction policy
+     * choosing it and us locking it; if so, we ask the policy again. Must be
+     * called with the sub-pool's lock held.
+     *
+     * @param pool sub-pool to evict from
+     * @return unpinned frame to evict, with its frame lock held
+     */
+    private Frame lockVictim(SubPool pool) {
+        while (true) {
+            Frame victim = (Frame) pool.evictionPolicy.evict(pool.frames);
+            victim.frameLock.lock();
+            if (!victim.isPinned()) {
+                return victim;
+            }
+            victim.frameLock.unlock();
         }
     }
 
     /**
-     * Fetches the specified page, with a loaded and pinned buffer frame.
+     * Picks a frame to evict for a prefetch and locks it, but only if it can be
+     * evicted without writing it out first. Must be called with the sub-pool's
+     * lock held.
+     *
+     * @param pool sub-pool to evict from
+     * @return clean, unpinned frame to evict, with its frame lock held, or null
+     */
+    private Frame lockCleanVictim(SubPool pool) {
+        Frame victim;
+        try {
+            victim = (Frame) pool.evictionPolicy.evict(pool.frames);
+        } catch (IllegalStateException e) {
+            // everything pinned
+            return null;
+        }
+        if (!victim.frameLock.tryLock()) {
+            return null;
+        }
+        if (victim.isPinned() || victim.dirty) {
+            victim.frameLock.unlock();
+            return null;
+        }
+        return victim;
+    }
+
+    /**
+     * Starts reading ahead: pages passed to prefetch are loaded in the background,
+     * and so are the next pages of a partition when its pages are fetched in order.
+     * Pages are only read ahead into free frames or frames that can be evicted
+     * without being written out, and are not marked as used until they are fetched.
+     *
+     * @param numThreads number of threads loading pages
+     * @param window number of pages to read ahead of a sequential scan
+     */
+    public synchronized void startReadAhead(int numThreads, int window) {
+        if (numThreads < 1 || window < 1) {
+            throw new IllegalArgumentException("invalid read-ahead configuration");
+        }
+        if (this.prefetcher != null) {
+            throw new IllegalStateException("read-ahead already running");
+        }
+        this.readAheadWindow = window;
+        this.prefetcherStopping = false;
+        this.prefetcher = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "page-prefetcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Stops reading ahead, waiting for pages being loaded to finish loading. Does
+     * nothing if read-ahead is not running.
+     */
+    public synchronized void stopReadAhead() {
+        if (this.prefetcher == null) {
+            return;
+        }
+        this.prefetcherStopping = true;
+        this.prefetcher.shutdown();
+        try {
+            this.prefetcher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.prefetcher = null;
+        this.sequentialRuns.clear();
+    }
+
+    /**
+     * @return whether read-ahead is running
+     */
+    public boolean isReadingAhead() {
+        return this.prefetcher != null;
+    }
+
+    /**
+     * Hints that the given pages will be fetched soon, so that they can be loaded
+     * in the background (in the given order). Does nothing if read-ahead is not
+     * running. Pages that are not allocated are skipped.
+     *
+     * @param pageNums page numbers of pages to load
+     */
+    public void prefetch(List<Long> pageNums) {
+        ExecutorService prefetcher = this.prefetcher;
+        if (prefetcher == null || pageNums.isEmpty()) {
+            return;
+        }
+        try {
+            prefetcher.execute(() -> this.loadPages(pageNums));
+        } catch (RejectedExecutionException e) {
+            // read-ahead was stopped in the meantime
+        }
+    }
+
+    /**
+     * Loads the given pages that can be loaded cheaply (see fetchPageFrame), reading
+     * them in with a single call to the disk space manager, so that contiguous pages
+     * are read together.
+     *
+     * @param pageNums page numbers of pages to load
+     */
+    private void loadPages(List<Long> pageNums) {
+        List<Frame> reserved = new ArrayList<>();
+        for (long pageNum : pageNums) {
+            if (this.prefetcherStopping) {
+                break;
+            }
+            SubPool pool = this.poolFor(pageNum);
+            // Threads holding a sub-pool lock may wait on the frame locks we hold for
+            // reserved frames (e.g. evictAll), so once we hold any, we skip pages whose
+            // sub-pool is busy rather than wait for it.
+            if (reserved.isEmpty()) {
+                pool.poolLock.lock();
+            } else if (!pool.poolLock.tryLock()) {
+                continue;
+            }
+            Pair<Frame, Frame> frames = null;
+            try {
+                if (pool.pageToFrame.get(pageNum) < 0) {
+                    frames = this.reserveFrame(pool, pageNum, true);
+                }
+            } catch (RuntimeException e) {
+                // only a hint: the page (or its partition) may not exist
+                // anymore, in which case whoever fetches it will find out
+            } finally {
+                pool.poolLock.unlock();
+            }
+            if (frames != null) {
+                // the evicted frame is clean, so this does not write anything
+                this.releaseEvicted(frames.getSecond());
+                reserved.add(frames.getFirst());
+            }
+        }
+        try {
+            this.readFrames(reserved, true);
+        } catch (RuntimeException e) {
+            // see above
+        }
+    }
+
+    /**
+     * Records that a page was fetched, and reads ahead if the page continues a
+     * sequential run of fetches in its partition.
+     *
+     * @param pageNum page number of fetched page
+     */
+    private void detectSequential(long pageNum) {
+        if (this.prefetcher == null) {
+            return;
+        }
+        SequentialRun run = this.sequentialRuns.computeIfAbsent(DiskSpaceManager.getPartNum(pageNum),
+                k -> new SequentialRun());
+        List<Long> toFetch = null;
+        synchronized (run) {
+            if (pageNum == run.lastPageNum + 1) {
+                ++run.length;
+            } else if (pageNum != run.lastPageNum) {
+                run.length = 1;
+                run.prefetchedUpTo = pageNum;
+            }
+            run.lastPageNum = pageNum;
+            // read ahead again once the scan is halfway through the last batch
+            if (run.length >= READ_AHEAD_TRIGGER && run.prefetchedUpTo - pageNum <= this.readAheadWindow / 2) {
+                toFetch = new ArrayList<>();
+                for (long p = Math.max(run.prefetchedUpTo, pageNum) + 1; p <= pageNum + this.readAheadWindow; ++p) {
+                    toFetch.add(p);
+                }
+                run.prefetchedUpTo = pageNum + this.readAheadWindow;
+            }
+        }
+        if (toFetch != null) {
+            this.prefetch(toFetch);
+        }
+    }
+
+    /**
+     * Fetches the specified page, with a loaded and pinned buffer frame. The page
+     * is latched exclusively until it is unpinned.
      *
      * @param parentContext lock context of the **parent** of the page being fetched
      * @param pageNum       page number]
      * @return specified page
      */
     public Page fetchPage(LockContext parentContext, long pageNum) {
-        return this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum));
+        Page page = this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum));
+        this.detectSequential(pageNum);
+        page.latch(true);
+        return page;
+    }
+
+    /**
+     * Fetches the specified page, with a loaded and pinned buffer frame. The page
+     * is latched in shared mode until it is unpinned, so other readers of the page
+     * are not blocked. The page must not be written to (or pinned exclusively)
+     * while it is held this way.
+     *
+     * @param parentContext lock context of the **parent** of the page being fetched
+     * @param pageNum       page number
+     * @return specified page
+     */
+    public Page fetchPageShared(LockContext parentContext, long pageNum) {
+        Page page = this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum));
+        this.detectSequential(pageNum);
+        page.latch(false);
+        return page;
     }
 
     /**
@@ -468,16 +1109,12 @@ public class BufferManager implements AutoCloseable {
      */
     Frame fetchNewPageFrame(int partNum) {
         long pageNum = this.diskSpaceManager.allocPage(partNum);
-        this.managerLock.lock();
-        try {
-            return fetchPageFrame(pageNum);
-        } finally {
-            this.managerLock.unlock();
-        }
+        return fetchPageFrame(pageNum);
     }
 
     /**
-     * Fetches a new page, with a loaded and pinned buffer frame.
+     * Fetches a new page, with a loaded and pinned buffer frame. The page is
+     * latched exclusively until it is unpinned.
      *
      * @param parentContext parent lock context of the new page
      * @param partNum       partition number for new page
@@ -485,7 +1122,9 @@ public class BufferManager implements AutoCloseable {
      */
     public Page fetchNewPage(LockContext parentContext, int partNum) {
         Frame newFrame = this.fetchNewPageFrame(partNum);
-        return this.frameToPage(parentContext, newFrame.getPageNum(), newFrame);
+        Page page = this.frameToPage(parentContext, newFrame.getPageNum(), newFrame);
+        page.latch(true);
+        return page;
     }
 
     /**
@@ -496,21 +1135,22 @@ public class BufferManager implements AutoCloseable {
      * @param page page to free
      */
     public void freePage(Page page) {
-        this.managerLock.lock();
+        SubPool pool = this.poolFor(page.getPageNum());
+        pool.poolLock.lock();
         try {
             TransactionContext transaction = TransactionContext.getTransaction();
-            int frameIndex = this.pageToFrame.get(page.getPageNum());
+            int frameIndex = pool.pageToFrame.get(page.getPageNum());
 
-            Frame frame = this.frames[frameIndex];
+            Frame frame = pool.frames[frameIndex];
             if (transaction != null) page.flush();
-            this.pageToFrame.remove(page.getPageNum(), frameIndex);
-            evictionPolicy.cleanup(frame);
+            pool.pageToFrame.remove(page.getPageNum(), frameIndex);
+            pool.evictionPolicy.cleanup(frame);
             frame.setFree();
 
-            this.frames[frameIndex] = new Frame(frame);
+            pool.frames[frameIndex] = new Frame(frame);
             diskSpaceManager.freePage(page.getPageNum());
         } finally {
-            this.managerLock.unlock();
+            pool.poolLock.unlock();
         }
     }
 
@@ -522,22 +1162,31 @@ public class BufferManager implements AutoCloseable {
      * @param partNum partition number to free
      */
     public void freePart(int partNum) {
-        this.managerLock.lock();
+        // Hold every sub-pool's lock (always acquired in the same order), so that no
+        // page of the partition can be loaded until the partition is gone.
+        int locked = 0;
         try {
-            for (int i = 0; i < frames.length; ++i) {
-                Frame frame = frames[i];
-                if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
-                    this.pageToFrame.remove(frame.getPageNum(), i);
-                    evictionPolicy.cleanup(frame);
-                    frame.flush();
-                    frame.setFree();
-                    frames[i] = new Frame(frame);
+            for (SubPool pool : this.pools) {
+                pool.poolLock.lock();
+                ++locked;
+                for (int i = 0; i < pool.frames.length; ++i) {
+                    Frame frame = pool.frames[i];
+                    if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
+                        pool.pageToFrame.remove(frame.getPageNum(), i);
+                        pool.evictionPolicy.cleanup(frame);
+                        frame.flush();
+                        frame.setFree();
+                        pool.frames[i] = new Frame(frame);
+                    }
                 }
             }
 
             diskSpaceManager.freePart(partNum);
+            this.sequentialRuns.remove(partNum);
         } finally {
-            this.managerLock.unlock();
+            for (int i = locked - 1; i >= 0; --i) {
+                this.pools[i].poolLock.unlock();
+            }
         }
     }
 
@@ -547,27 +1196,29 @@ public class BufferManager implements AutoCloseable {
      * @param pageNum page number of page to evict
      */
     public void evict(long pageNum) {
-        managerLock.lock();
+        SubPool pool = this.poolFor(pageNum);
+        pool.poolLock.lock();
         try {
-            if (!pageToFrame.containsKey(pageNum)) {
+            int frameIndex = pool.pageToFrame.get(pageNum);
+            if (frameIndex < 0) {
                 return;
             }
-            evict(pageToFrame.get(pageNum));
+            evict(pool, frameIndex);
         } finally {
-            managerLock.unlock();
+            pool.poolLock.unlock();
         }
     }
 
-    private void evict(int i) {
-        Frame frame = frames[i];
+    private void evict(SubPool pool, int i) {
+        Frame frame = pool.frames[i];
         frame.frameLock.lock();
         try {
             if (frame.isValid() && !frame.isPinned()) {
-                this.pageToFrame.remove(frame.pageNum, frame.index);
-                evictionPolicy.cleanup(frame);
+                pool.pageToFrame.remove(frame.pageNum, frame.index);
+                pool.evictionPolicy.cleanup(frame);
 
-                frames[i] = new Frame(frame.contents, this.firstFreeIndex);
-                this.firstFreeIndex = i;
+                pool.frames[i] = new Frame(pool, frame.contents, pool.firstFreeIndex);
+                pool.firstFreeIndex = i;
 
                 frame.invalidate();
             }
@@ -580,11 +1231,27 @@ public class BufferManager implements AutoCloseable {
      * Calls evict on every frame in sequence.
      */
     public void evictAll() {
-        for (int i = 0; i < frames.length; ++i) {
-            evict(i);
+        for (SubPool pool : this.pools) {
+            pool.poolLock.lock();
+            try {
+                for (int i = 0; i < pool.frames.length; ++i) {
+                    evict(pool, i);
+                }
+            } finally {
+                pool.poolLock.unlock();
+            }
         }
     }
 
+    /**
+     * Forces the pages of a partition that have been written out so far to disk.
+     * Does not write out dirty pages that are still only in the buffer.
+     * @param partNum partition number
+     */
+    public void sync(int partNum) {
+        diskSpaceManager.sync(partNum);
+    }
+
     /**
      * Calls the passed in method with the page number of every loaded page.
      * @param process method to consume page numbers. The first parameter is the page number,
@@ -592,14 +1259,16 @@ public class BufferManager implements AutoCloseable {
      *                (has an unflushed change).
      */
     public void iterPageNums(BiConsumer<Long, Boolean> process) {
-        for (Frame frame : frames) {
-            frame.frameLock.lock();
-            try {
-                if (frame.isValid()) {
-                    process.accept(frame.pageNum, frame.dirty);
+        for (SubPool pool : this.pools) {
+            for (Frame frame : pool.frames) {
+                frame.frameLock.lock();
+                try {
+                    if (frame.isValid()) {
+                        process.accept(frame.pageNum, frame.dirty);
+                    }
+                } finally {
+                    frame.frameLock.unlock();
                 }
-            } finally {
-                frame.frameLock.unlock();
             }
         }
     }
@@ -611,7 +1280,7 @@ public class BufferManager implements AutoCloseable {
      * @return number of I/Os
      */
     public long getNumIOs() {
-        return numIOs;
+        return numIOs.get();
     }
 
     public static boolean logIOs;
@@ -626,7 +1295,7 @@ public class BufferManager implements AutoCloseable {
                 }
             }
         }
-        ++numIOs;
+        numIOs.incrementAndGet();
     }
 
     /**
@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Implementation of clock eviction policy, which works by adding a reference
  * bit to each frame, and running the algorithm.
@@ -58,6 +61,29 @@ public class ClockEvictionPolicy implements EvictionPolicy {
         return evicted;
     }
 
+    /**
+     * Called to find the frames that are likely to be evicted next. Frames with
+     * bit 0 come first, in the order the arm reaches them, followed by frames
+     * with bit 1 (which would be evicted on the arm's second pass).
+     * @param frames Array of all frames (same length every call)
+     * @param count maximum number of frames to return
+     * @return unpinned frames, in the order they would be evicted
+     */
+    @Override
+    public List<BufferFrame> upcomingVictims(BufferFrame[] frames, int count) {
+        List<BufferFrame> victims = new ArrayList<>();
+        for (int pass = 0; pass < 2; ++pass) {
+            Object bit = pass == 0 ? INACTIVE : ACTIVE;
+            for (int i = 0; i < frames.length && victims.size() < count; ++i) {
+                BufferFrame frame = frames[(this.arm + i) % frames.length];
+                if (frame.tag == bit && !frame.isPinned()) {
+                    victims.add(frame);
+                }
+            }
+        }
+        return victims;
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
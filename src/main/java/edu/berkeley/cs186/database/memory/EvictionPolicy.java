@@ -1,7 +1,11 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.List;
+
 /**
- * Interface for eviction policies for the buffer manager.
+ * Interface for eviction policies for the buffer manager. The buffer manager
+ * calls a policy with the lock on the frames' sub-pool held, so policies need
+ * not be thread-safe.
  */
 public interface EvictionPolicy {
     /**
@@ -24,6 +28,15 @@ public interface EvictionPolicy {
      */
     BufferFrame evict(BufferFrame[] frames);
 
+    /**
+     * Called to find the frames that are likely to be evicted next, so that they
+     * can be cleaned ahead of time. Must not change the state of the policy.
+     * @param frames Array of all frames (same length every call)
+     * @param count maximum number of frames to return
+     * @return unpinned frames, in the order they would be evicted
+     */
+    List<BufferFrame> upcomingVictims(BufferFrame[] frames, int count);
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
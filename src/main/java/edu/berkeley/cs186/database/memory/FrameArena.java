@@ -0,0 +1,48 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Off-heap memory for the contents of buffer frames: a few large direct buffers,
+ * sliced into page-sized buffers. Keeping frame contents off-heap means that the
+ * buffer pool, which lives as long as the database, does not take up space in the
+ * (old generation of the) Java heap, and that the disk space manager can read
+ * pages straight into frames without copying them through a heap array.
+ */
+class FrameArena {
+    // Pages per direct buffer (1GB per buffer, which keeps offsets within an int).
+    private static final int PAGES_PER_CHUNK = 1 << 18;
+
+    private final ByteBuffer[] chunks;
+    private final int numPages;
+
+    /**
+     * @param numPages number of pages to allocate
+     */
+    FrameArena(int numPages) {
+        this.numPages = numPages;
+        this.chunks = new ByteBuffer[(numPages + PAGES_PER_CHUNK - 1) / PAGES_PER_CHUNK];
+        for (int i = 0; i < this.chunks.length; ++i) {
+            int chunkPages = Math.min(PAGES_PER_CHUNK, numPages - i * PAGES_PER_CHUNK);
+            this.chunks[i] = ByteBuffer.allocateDirect(chunkPages * DiskSpaceManager.PAGE_SIZE);
+        }
+    }
+
+    /**
+     * @param pageIndex index of page in the arena
+     * @return page-sized buffer for the page, positioned at 0; the buffer shares
+     * its memory with the arena, but has its own position and limit
+     */
+    ByteBuffer page(int pageIndex) {
+        if (pageIndex < 0 || pageIndex >= this.numPages) {
+            throw new IndexOutOfBoundsException("no page " + pageIndex + " in arena");
+        }
+        ByteBuffer chunk = this.chunks[pageIndex / PAGES_PER_CHUNK].duplicate();
+        int offset = (pageIndex % PAGES_PER_CHUNK) * DiskSpaceManager.PAGE_SIZE;
+        chunk.position(offset);
+        chunk.limit(offset + DiskSpaceManager.PAGE_SIZE);
+        return chunk.slice();
+    }
+}
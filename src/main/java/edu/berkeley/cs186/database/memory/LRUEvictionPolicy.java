@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Implementation of LRU eviction policy, which works by creating a
  * doubly-linked list between frames in order of ascending use time.
@@ -79,6 +82,27 @@ public class LRUEvictionPolicy implements EvictionPolicy {
         return frameTag.cur;
     }
 
+    /**
+     * Called to find the frames that are likely to be evicted next: the least
+     * recently used unpinned frames.
+     * @param frames Array of all frames (same length every call)
+     * @param count maximum number of frames to return
+     * @return unpinned frames, in the order they would be evicted
+     */
+    @Override
+    public List<BufferFrame> upcomingVictims(BufferFrame[] frames, int count) {
+        List<BufferFrame> victims = new ArrayList<>();
+        Tag frameTag = this.listHead.next;
+        // bounded by the number of frames, since hits may reorder the list as we walk it
+        for (int i = 0; i < frames.length && frameTag.cur != null && victims.size() < count; ++i) {
+            if (!frameTag.cur.isPinned()) {
+                victims.add(frameTag.cur);
+            }
+            frameTag = frameTag.next;
+        }
+        return victims;
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
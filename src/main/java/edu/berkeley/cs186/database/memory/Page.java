@@ -134,19 +134,64 @@ public class Page {
     }
 
     /**
-     * Loads the page into a frame (if necessary) and pins it.
+     * Loads the page into a frame (if necessary) and pins it. The page is
+     * latched exclusively until it is unpinned.
      */
     public void pin() {
         this.frame = this.frame.requestValidFrame();
+        this.latch(true);
     }
 
     /**
-     * Unpins the frame containing this page. Does not flush immediately.
+     * Loads the page into a frame (if necessary) and pins it. The page is
+     * latched in shared mode until it is unpinned: other threads may read the
+     * page at the same time, but nobody may write to it. A thread that pinned
+     * a page this way must not pin it exclusively until it unpins it.
+     */
+    public void pinShared() {
+        this.frame = this.frame.requestValidFrame();
+        this.latch(false);
+    }
+
+    /**
+     * Unpins the frame containing this page, releasing the latch taken when it
+     * was pinned. Does not flush immediately.
      */
     public void unpin() {
+        this.frame.unlatch();
         this.frame.unpin();
     }
 
+    /**
+     * Latches the (already pinned) frame of this page.
+     * @param exclusive whether to latch in exclusive rather than shared mode
+     */
+    void latch(boolean exclusive) {
+        this.frame.latch(exclusive);
+    }
+
+    /**
+     * Starts an optimistic read of this page. Reads through getBuffer() only
+     * latch the page for the duration of each individual read, so a sequence
+     * of reads is not atomic by itself; validate(stamp) afterwards tells
+     * whether the page was written to (or unloaded) in the meantime, in which
+     * case the reads should be retried.
+     *
+     * @return stamp to pass to validate, or 0 if the page is being written to
+     */
+    public long tryOptimisticRead() {
+        return this.frame.tryOptimisticRead();
+    }
+
+    /**
+     * @param stamp stamp returned by tryOptimisticRead
+     * @return whether the page has not been written to or unloaded since the
+     * stamp was taken
+     */
+    public boolean validate(long stamp) {
+        return this.frame.validate(stamp);
+    }
+
     /**
      * @return the virtual page number of this page
      */
@@ -0,0 +1,132 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Arrays;
+
+/**
+ * Map of page number to frame index used by the buffer manager, implemented as
+ * an open-addressing hash table with linear probing over primitive arrays, so
+ * that lookups do not box page numbers and inserts do not allocate entries.
+ *
+ * A frame holds at most one page, so the table never holds more entries than
+ * there are frames; it is sized for that once, and never grows. Not thread-safe.
+ */
+class PageTable {
+    private static final int EMPTY = -1;
+
+    private final long[] keys;
+    // frame index for each slot, or EMPTY if the slot is unused
+    private final int[] values;
+    private final int mask;
+    private final int capacity;
+    private int size;
+
+    /**
+     * @param capacity maximum number of entries the table will hold
+     */
+    PageTable(int capacity) {
+        // keep the load factor at or below 1/2
+        int slots = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+        this.keys = new long[slots];
+        this.values = new int[slots];
+        Arrays.fill(this.values, EMPTY);
+        this.mask = slots - 1;
+        this.capacity = capacity;
+        this.size = 0;
+    }
+
+    /**
+     * @param pageNum page number
+     * @return frame index of the page, or -1 if the page is not in the table
+     */
+    int get(long pageNum) {
+        int slot = this.find(pageNum);
+        return this.values[slot];
+    }
+
+    /**
+     * @param pageNum page number
+     * @return whether the page is in the table
+     */
+    boolean containsKey(long pageNum) {
+        return this.get(pageNum) != EMPTY;
+    }
+
+    /**
+     * Maps a page to a frame index, replacing any existing mapping for the page.
+     * @param pageNum page number
+     * @param frameIndex frame index (non-negative)
+     */
+    void put(long pageNum, int frameIndex) {
+        if (frameIndex < 0) {
+            throw new IllegalArgumentException("invalid frame index " + frameIndex);
+        }
+        int slot = this.find(pageNum);
+        if (this.values[slot] == EMPTY) {
+            if (this.size == this.capacity) {
+                throw new IllegalStateException("page table full");
+            }
+            ++this.size;
+            this.keys[slot] = pageNum;
+        }
+        this.values[slot] = frameIndex;
+    }
+
+    /**
+     * Removes the mapping for a page, if the page is mapped to the given frame index.
+     * @param pageNum page number
+     * @param frameIndex frame index the page is expected to be mapped to
+     * @return whether the mapping was removed
+     */
+    boolean remove(long pageNum, int frameIndex) {
+        int slot = this.find(pageNum);
+        if (this.values[slot] == EMPTY || this.values[slot] != frameIndex) {
+            return false;
+        }
+        --this.size;
+        // Shift later entries of the probe sequence back into the hole, so that
+        // lookups never need tombstones.
+        int hole = slot;
+        int next = (hole + 1) & this.mask;
+        while (this.values[next] != EMPTY) {
+            int home = slotFor(this.keys[next]);
+            // move the entry if its home slot is not in (hole, next]
+            if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+                this.keys[hole] = this.keys[next];
+                this.values[hole] = this.values[next];
+                hole = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.values[hole] = EMPTY;
+        return true;
+    }
+
+    /**
+     * @return number of pages in the table
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return slot holding the page, or the empty slot where it would be inserted
+     */
+    private int find(long pageNum) {
+        int slot = slotFor(pageNum);
+        while (this.values[slot] != EMPTY && this.keys[slot] != pageNum) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    private int slotFor(long pageNum) {
+        // finalizer of MurmurHash3, to spread out the consecutive page numbers of a partition
+        long h = pageNum;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & this.mask;
+    }
+}
@@ -0,0 +1,234 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a pipeline of operators over a ParallelScanOperator (e.g. selects and
+ * a project) on several workers at once, and gathers their output. Each
+ * worker runs on its own thread and calls batchIterator() on the source of
+ * this operator, so every worker scans its own part of the table and applies
+ * the rest of the pipeline to it; batches are passed to the consumer of this
+ * operator through a bounded queue, in no particular order.
+ *
+ * Operators in the pipeline must therefore support concurrent calls to
+ * batchIterator(), which the batch paths of SelectOperator and ProjectOperator
+ * (without aggregates) do.
+ *
+ * Workers run without a TransactionContext, so nothing they call acquires
+ * locks; instead, the scan is started (and the table S locked) on the
+ * transaction's thread before any worker starts. Under strict two-phase
+ * locking that lock is held until the transaction ends, and the workers run
+ * on the transaction's executor, which the transaction waits for before it
+ * releases its locks.
+ */
+class GatherOperator extends QueryOperator {
+    // number of batches each worker may get ahead of the consumer by
+    private static final int BATCHES_PER_WORKER = 4;
+    // how long a worker waits for room in the queue before checking whether
+    // the consumer has gone away (e.g. under a LIMIT) or the transaction ended
+    private static final long OFFER_TIMEOUT_MS = 100;
+    // put in the queue by each worker once it is done
+    private static final Object DONE = new Object();
+
+    private TransactionContext transaction;
+    private ParallelScanOperator scan;
+    private int numWorkers;
+
+    /**
+     * @param source the pipeline to run on each worker, which must have a
+     *               ParallelScanOperator at the bottom and no joins
+     * @param transaction the transaction containing this operator
+     * @param numWorkers number of workers to run the pipeline on
+     */
+    GatherOperator(QueryOperator source, TransactionContext transaction, int numWorkers) {
+        super(OperatorType.GATHER, source);
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("need at least one worker");
+        }
+        QueryOperator op = source;
+        while (!(op instanceof ParallelScanOperator)) {
+            if (op.isJoin() || op.getSource() == null) {
+                throw new IllegalArgumentException("gather source must be a pipeline over a parallel scan");
+            }
+            op = op.getSource();
+        }
+        this.scan = (ParallelScanOperator) op;
+        this.transaction = transaction;
+        this.numWorkers = numWorkers;
+        this.stats = this.estimateStats();
+    }
+
+    int getNumWorkers() {
+        return this.numWorkers;
+    }
+
+    @Override
+    protected Schema computeSchema() {
+        return this.getSource().getSchema();
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return RecordBatch.records(this.batchIterator());
+    }
+
+    @Override
+    public boolean pushDownRuntimeFilter(RuntimeFilter filter) {
+        return this.getSource().pushDownRuntimeFilter(filter);
+    }
+
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        this.scan.start();
+        return new GatherIterator();
+    }
+
+    @Override
+    public String str() {
+        return "Gather (workers=" + this.numWorkers + ", cost=" + this.estimateIOCost() + ")";
+    }
+
+    @Override
+    public TableStats estimateStats() {
+        return this.getSource().estimateStats();
+    }
+
+    /**
+     * The workers read the same pages that a single scan would, so the I/O
+     * cost is that of the source.
+     */
+    @Override
+    public int estimateIOCost() {
+        return this.getSource().estimateIOCost();
+    }
+
+    /**
+     * Starts the workers, and returns the batches they output.
+     */
+    private class GatherIterator implements Iterator<RecordBatch> {
+        private BlockingQueue<Object> queue;
+        private AtomicReference<Throwable> error;
+        private int numDone;
+        private RecordBatch nextBatch;
+
+        private GatherIterator() {
+            this.queue = new ArrayBlockingQueue<>(numWorkers * BATCHES_PER_WORKER);
+            this.error = new AtomicReference<>();
+            this.numDone = 0;
+            this.nextBatch = null;
+            // workers only hold a weak reference to this iterator, so that they
+            // can tell when it is no longer used
+            WeakReference<GatherIterator> consumer = new WeakReference<>(this);
+            ExecutorService executor = transaction.getQueryExecutor();
+            for (int i = 0; i < numWorkers; ++i) {
+                executor.execute(new Worker(getSource(), executor, this.queue, this.error, consumer));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.nextBatch == null && this.numDone < numWorkers) {
+                Object item = this.take();
+                if (item == DONE) {
+                    ++this.numDone;
+                    Throwable t = this.error.get();
+                    if (t instanceof RuntimeException) throw (RuntimeException) t;
+                    if (t instanceof Error) throw (Error) t;
+                    if (t != null) throw new RuntimeException(t);
+                } else {
+                    this.nextBatch = (RecordBatch) item;
+                }
+            }
+            return this.nextBatch != null;
+        }
+
+        @Override
+        public RecordBatch next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RecordBatch batch = this.nextBatch;
+            this.nextBatch = null;
+            return batch;
+        }
+
+        private Object take() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return this.queue.take();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Runs the pipeline on one worker, putting its output in the queue.
+     */
+    private static class Worker implements Runnable {
+        private QueryOperator pipeline;
+        private ExecutorService executor;
+        private BlockingQueue<Object> queue;
+        private AtomicReference<Throwable> error;
+        private WeakReference<GatherIterator> consumer;
+
+        private Worker(QueryOperator pipeline, ExecutorService executor, BlockingQueue<Object> queue,
+                       AtomicReference<Throwable> error, WeakReference<GatherIterator> consumer) {
+            this.pipeline = pipeline;
+            this.executor = executor;
+            this.queue = queue;
+            this.error = error;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Iterator<RecordBatch> batches = this.pipeline.batchIterator();
+                // stop early if another worker failed, or the transaction ended
+                while (this.error.get() == null && !this.executor.isShutdown() && batches.hasNext()) {
+                    if (!this.put(batches.next())) return;
+                }
+            } catch (Throwable t) {
+                this.error.compareAndSet(null, t);
+            }
+            this.put(DONE);
+        }
+
+        /**
+         * Waits for room in the queue for item.
+         *
+         * @return false if the consumer went away (or the transaction ended) first
+         */
+        private boolean put(Object item) {
+            try {
+                while (!this.queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (this.consumer.get() == null || this.executor.isShutdown()) return false;
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -49,6 +50,68 @@ class GroupByOperator extends QueryOperator {
         return new GroupByIterator();
     }
 
+    /**
+     * Returns the records of each group a batch at a time, with an empty batch
+     * between the batches of different groups (in place of the marker records
+     * of iterator()). A batch never holds records of more than one group.
+     */
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        Iterator<String> tableNames = this.partition().values().iterator();
+        return new Iterator<RecordBatch>() {
+            private Iterator<RecordBatch> groupIterator = null;
+
+            @Override
+            public boolean hasNext() {
+                return tableNames.hasNext() || (this.groupIterator != null && this.groupIterator.hasNext());
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!this.hasNext()) throw new NoSuchElementException();
+                if (this.groupIterator != null && this.groupIterator.hasNext()) {
+                    return this.groupIterator.next();
+                }
+                boolean first = this.groupIterator == null;
+                this.groupIterator = transaction.getTable(tableNames.next()).batchIterator();
+                if (first) return this.groupIterator.next();
+                return new RecordBatch(getSchema(), 0);
+            }
+        };
+    }
+
+    /**
+     * Reads the source a batch at a time, and adds each record to a temporary
+     * table for its group.
+     *
+     * @return map from the values of the group by columns of each group to the
+     * name of its temporary table
+     */
+    private Map<Record, String> partition() {
+        Iterator<RecordBatch> sourceIterator = this.getSource().batchIterator();
+        Map<Record, String> hashGroupTempTables = new HashMap<>();
+        while (sourceIterator.hasNext()) {
+            RecordBatch batch = sourceIterator.next();
+            int[] rows = batch.getSelection();
+            for (int i = 0; i < batch.getNumSelected(); ++i) {
+                List<DataBox> values = new ArrayList<>();
+                for (int index: groupByColumnIndices) {
+                    values.add(batch.getValue(rows[i], index));
+                }
+                Record key = new Record(values);
+                String tableName;
+                if (hashGroupTempTables.containsKey(key)) {
+                    tableName = hashGroupTempTables.get(key);
+                } else {
+                    tableName = this.transaction.createTempTable(this.getSource().getSchema());
+                    hashGroupTempTables.put(key, tableName);
+                }
+                this.transaction.addRecord(tableName, batch.getRecord(rows[i]));
+            }
+        }
+        return hashGroupTempTables;
+    }
+
     @Override
     protected Schema computeSchema() {
         return this.getSource().getSchema();
@@ -94,27 +157,9 @@ class GroupByOperator extends QueryOperator {
         private Iterator<Record> recordIterator;
 
         private GroupByIterator() {
-            Iterator<Record> sourceIterator = GroupByOperator.this.getSource().iterator();
-            this.hashGroupTempTables = new HashMap<>();
+            this.hashGroupTempTables = GroupByOperator.this.partition();
             this.currCount = 0;
             this.recordIterator = null;
-            while (sourceIterator.hasNext()) {
-                Record record = sourceIterator.next();
-                List<DataBox> values = new ArrayList<>();
-                for (int index: groupByColumnIndices) {
-                    values.add(record.getValue(index));
-                }
-                Record key = new Record(values);
-                String tableName;
-                if (this.hashGroupTempTables.containsKey(key)) {
-                    tableName = this.hashGroupTempTables.get(key);;
-                } else {
-                    tableName = GroupByOperator.this.transaction.createTempTable(
-                            GroupByOperator.this.getSource().getSchema());
-                    this.hashGroupTempTables.put(key, tableName);
-                }
-                GroupByOperator.this.transaction.addRecord(tableName, record);
-            }
             this.tableNames = hashGroupTempTables.values().iterator();
         }
 
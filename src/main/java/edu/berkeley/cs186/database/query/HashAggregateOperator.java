@@ -0,0 +1,379 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.HashFunc;
+import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.query.disk.Partition;
+import edu.berkeley.cs186.database.query.disk.Run;
+import edu.berkeley.cs186.database.query.expr.Expression;
+import edu.berkeley.cs186.database.table.PageDirectory;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.Histogram;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.*;
+
+/**
+ * Computes a GROUP BY query by hashing, as an alternative to a GroupByOperator
+ * followed by a ProjectOperator: produces the same records as that pair of
+ * operators, in no particular order.
+ *
+ * Every group in memory has its own copy of the aggregates of the query (see
+ * Expression.copy), which are updated as the records of the group are read,
+ * so records do not need to be grouped together first. Besides a page to
+ * read records with and a page to write out groups with, the B - 2 pages of
+ * memory are split between a hash table of groups and a page for each
+ * partition on disk, like in hybrid hash join: the number of partitions is
+ * the fewest for which each partition's groups are expected to fit in memory
+ * in the next pass. Once the table is full, records of groups that are not in
+ * it are written to the partitions, and each partition is aggregated
+ * recursively after the groups in memory are output. Every pass outputs at
+ * least the groups that fit in memory, so unlike grace hash join this cannot
+ * fail on skewed inputs.
+ */
+class HashAggregateOperator extends QueryOperator {
+    // Rough number of bytes used by the aggregate state of one expression.
+    private static final int AGGREGATE_SIZE = 32;
+
+    private TransactionContext transaction;
+    private List<String> outputColumns;
+    private List<Expression> expressions;
+    private List<String> groupByColumns;
+    private int[] groupByColumnIndices;
+    private int numBuffers;
+    private Run aggregatedRecords;
+
+    /**
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param columns names of the output columns
+     * @param expressions expressions to evaluate for each group, one for each
+     *                    output column, or null to parse them from the names
+     *                    of the output columns
+     * @param groupByColumns the columns to group on
+     */
+    HashAggregateOperator(QueryOperator source,
+                          TransactionContext transaction,
+                          List<String> columns,
+                          List<Expression> expressions,
+                          List<String> groupByColumns) {
+        super(OperatorType.GROUP_BY);
+        this.transaction = transaction;
+        this.outputColumns = columns;
+        if (expressions == null) {
+            expressions = new ArrayList<>();
+            for (String column: columns) {
+                expressions.add(Expression.fromString(column));
+            }
+        }
+        this.expressions = expressions;
+        this.numBuffers = transaction.getWorkMemSize();
+        this.source = source;
+
+        Schema sourceSchema = source.getSchema();
+        this.groupByColumns = new ArrayList<>();
+        this.groupByColumnIndices = new int[groupByColumns.size()];
+        for (int i = 0; i < groupByColumns.size(); ++i) {
+            String column = sourceSchema.matchFieldName(groupByColumns.get(i));
+            this.groupByColumns.add(column);
+            this.groupByColumnIndices[i] = sourceSchema.findField(column);
+        }
+        Schema schema = new Schema();
+        for (int i = 0; i < columns.size(); ++i) {
+            expressions.get(i).setSchema(sourceSchema);
+            schema.add(columns.get(i), expressions.get(i).getType());
+        }
+        this.outputSchema = schema;
+        this.aggregatedRecords = null;
+        this.stats = this.estimateStats();
+    }
+
+    @Override
+    public boolean isGroupBy() {
+        return true;
+    }
+
+    @Override
+    protected Schema computeSchema() {
+        return this.outputSchema;
+    }
+
+    @Override
+    public boolean materialized() {
+        return true;
+    }
+
+    @Override
+    public BacktrackingIterator<Record> backtrackingIterator() {
+        if (this.aggregatedRecords == null) {
+            this.aggregatedRecords = new Run(this.transaction, this.getSchema());
+            this.run(() -> this.getSource().iterator(), this.estimateNumGroups(), 1);
+        }
+        return this.aggregatedRecords.iterator();
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return this.backtrackingIterator();
+    }
+
+    @Override
+    public String str() {
+        String columns = "(" + String.join(", ", this.outputColumns) + ")";
+        String groupBy = "(" + String.join(", ", this.groupByColumns) + ")";
+        return "Hash Aggregate (cost=" + this.estimateIOCost() + ")" +
+                "\n\tcolumns: " + columns +
+                "\n\tgroup by: " + groupBy;
+    }
+
+    /**
+     * There is one output record per group, see estimateNumGroups.
+     */
+    @Override
+    public TableStats estimateStats() {
+        return this.getSource().estimateStats().copyWithGroupBy(this.getSchema(), this.estimateNumGroups());
+    }
+
+    /**
+     * The source is read once. Records of groups that do not fit in memory are
+     * written to and read from partitions on each further pass, and each pass
+     * handles about as many times more groups as there are partitions.
+     */
+    @Override
+    public int estimateIOCost() {
+        int sourceCost = this.getSource().estimateIOCost();
+        int numPages = this.getSource().estimateStats().getNumPages();
+        double numGroups = this.estimateNumGroups();
+        int numPartitions = this.numPartitions(numGroups);
+        double groupsInMemory = this.maxGroupsInMemory(numPartitions);
+        if (numGroups <= groupsInMemory) return sourceCost;
+        double spilledPages = numPages * (1 - groupsInMemory / numGroups);
+        double numPasses = Math.ceil(Math.log(numGroups / groupsInMemory) / Math.log(Math.max(2, numPartitions)));
+        return (int) Math.min(Integer.MAX_VALUE, sourceCost + 2 * Math.ceil(spilledPages) * Math.max(1, numPasses));
+    }
+
+    /**
+     * Estimates the number of groups from the number of distinct values of the
+     * group by columns in the source's histograms, if they have any.
+     */
+    private int estimateNumGroups() {
+        TableStats sourceStats = this.getSource().estimateStats();
+        int numRecords = sourceStats.getNumRecords();
+        List<Histogram> histograms = sourceStats.getHistograms();
+        long numGroups = 1;
+        for (int index: this.groupByColumnIndices) {
+            int numDistinct = index < histograms.size() ? histograms.get(index).getNumDistinct() : 0;
+            if (numDistinct <= 0) return numRecords;
+            numGroups = Math.min(numRecords, numGroups * numDistinct);
+        }
+        return (int) numGroups;
+    }
+
+    /**
+     * @return number of bytes a group takes up in memory: its first record (to
+     * evaluate the non-aggregate expressions on) and its aggregates
+     */
+    private int groupSize() {
+        int numAggregates = 0;
+        for (Expression expression: this.expressions) {
+            if (expression.hasAgg()) ++numAggregates;
+        }
+        return Math.max(1, this.getSource().getSchema().getSizeInBytes() + numAggregates * AGGREGATE_SIZE);
+    }
+
+    /**
+     * @return number of pages shared by the group table and the partitions
+     */
+    private int memoryPages() {
+        return Math.max(1, this.numBuffers - 2);
+    }
+
+    /**
+     * @param numGroups estimated number of groups among the records to aggregate
+     * @return number of partitions (each taking up a page of memory) to write the
+     * records of groups that do not fit in memory to: the fewest for which each
+     * partition's groups are expected to fit in memory in the next pass. There is
+     * always at least one, in case there are more groups than estimated.
+     */
+    private int numPartitions(double numGroups) {
+        int memoryPages = this.memoryPages();
+        if (memoryPages <= 2) return 1;
+        double groupPages = numGroups * this.groupSize() / PageDirectory.EFFECTIVE_PAGE_SIZE;
+        // With p partitions, memoryPages - p pages of groups stay in memory, and
+        // each partition's groups must fit in memoryPages - 1 pages next pass.
+        int numPartitions = (int) Math.ceil((groupPages - memoryPages) / (memoryPages - 2));
+        return Math.max(1, Math.min(numPartitions, memoryPages - 1));
+    }
+
+    /**
+     * @return number of groups that fit in the memory left over by the
+     * partitions
+     */
+    private int maxGroupsInMemory(int numPartitions) {
+        long memory = (long) Math.max(1, this.memoryPages() - numPartitions) * PageDirectory.EFFECTIVE_PAGE_SIZE;
+        return (int) Math.max(1, memory / this.groupSize());
+    }
+
+    /**
+     * Aggregates the groups of the records that fit in memory, and outputs them
+     * to this.aggregatedRecords; then partitions the records of the other
+     * groups, and aggregates each partition in a further pass.
+     *
+     * @param records records to aggregate
+     * @param numGroups estimated number of groups among the records
+     * @param pass the current pass (used to pick a hash function)
+     */
+    private void run(Iterable<Record> records, double numGroups, int pass) {
+        int numPartitions = this.numPartitions(numGroups);
+        GroupTable groups = new GroupTable(this.maxGroupsInMemory(numPartitions));
+        Partition[] partitions = null;
+        for (Record record: records) {
+            Record key = this.getKey(record);
+            Group group = groups.get(key);
+            if (group == null && !groups.isFull()) {
+                group = new Group(record);
+                groups.put(key, group);
+            }
+            if (group != null) {
+                group.update(record);
+                continue;
+            }
+            if (partitions == null) {
+                partitions = new Partition[numPartitions];
+                for (int i = 0; i < partitions.length; ++i) {
+                    partitions[i] = new Partition(this.transaction, this.getSource().getSchema());
+                }
+            }
+            int partitionNum = HashFunc.hashRecord(key, pass) % partitions.length;
+            if (partitionNum < 0) partitionNum += partitions.length; // hash might be negative
+            partitions[partitionNum].add(record);
+        }
+        for (Group group: groups.groups()) {
+            this.aggregatedRecords.add(group.evaluate());
+        }
+        if (partitions == null) return;
+        int recordsPerPage = Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE,
+                this.getSource().getSchema());
+        for (Partition partition: partitions) {
+            int numPages = partition.getNumPages();
+            if (numPages > 0) {
+                // every record of the partition may be in a group of its own
+                this.run(partition, (double) numPages * recordsPerPage, pass + 1);
+            }
+        }
+    }
+
+    private Record getKey(Record record) {
+        List<DataBox> values = new ArrayList<>(this.groupByColumnIndices.length);
+        for (int index: this.groupByColumnIndices) {
+            values.add(record.getValue(index));
+        }
+        return new Record(values);
+    }
+
+    /**
+     * A group in memory: its first record, and a copy of each expression with an
+     * aggregate.
+     */
+    private class Group {
+        private Record base;
+        private Expression[] aggregates;
+
+        private Group(Record base) {
+            this.base = base;
+            this.aggregates = new Expression[expressions.size()];
+            for (int i = 0; i < expressions.size(); ++i) {
+                if (expressions.get(i).hasAgg()) {
+                    this.aggregates[i] = expressions.get(i).copy();
+                }
+            }
+        }
+
+        private void update(Record record) {
+            for (Expression aggregate: this.aggregates) {
+                if (aggregate != null) aggregate.update(record);
+            }
+        }
+
+        /**
+         * @return the output record of this group; the GROUP BY values (and
+         * anything else not aggregated) come from the group's first record
+         */
+        private Record evaluate() {
+            List<DataBox> values = new ArrayList<>(expressions.size());
+            for (int i = 0; i < expressions.size(); ++i) {
+                Expression expression = this.aggregates[i] == null ? expressions.get(i) : this.aggregates[i];
+                values.add(expression.evaluate(this.base));
+            }
+            return new Record(values);
+        }
+    }
+
+    /**
+     * Map of group key to group, implemented as an open-addressing hash table
+     * with linear probing, holding up to a fixed number of groups.
+     */
+    private class GroupTable {
+        private final Record[] keys;
+        private final Group[] values;
+        private final List<Group> groups;
+        private final int mask;
+        private final int capacity;
+
+        private GroupTable(int capacity) {
+            // keep the load factor at or below 1/2
+            int slots = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+            this.keys = new Record[slots];
+            this.values = new Group[slots];
+            this.groups = new ArrayList<>();
+            this.mask = slots - 1;
+            this.capacity = capacity;
+        }
+
+        private boolean isFull() {
+            return this.groups.size() == this.capacity;
+        }
+
+        /**
+         * @return the group with the given key, or null if it is not in the table
+         */
+        private Group get(Record key) {
+            return this.values[this.find(key)];
+        }
+
+        private void put(Record key, Group group) {
+            if (this.isFull()) throw new IllegalStateException("group table full");
+            int slot = this.find(key);
+            if (this.values[slot] != null) throw new IllegalStateException("group already in table");
+            this.keys[slot] = key;
+            this.values[slot] = group;
+            this.groups.add(group);
+        }
+
+        /**
+         * @return groups in the table, in the order they were added
+         */
+        private List<Group> groups() {
+            return this.groups;
+        }
+
+        /**
+         * @return slot holding the key, or the empty slot where it would be inserted
+         */
+        private int find(Record key) {
+            int h = key.hashCode();
+            // spread out the bits of the hash, which linear probing uses the low bits of
+            h ^= (h >>> 16);
+            h *= 0x85ebca6b;
+            h ^= (h >>> 13);
+            int slot = h & this.mask;
+            while (this.keys[slot] != null && !this.keys[slot].equals(key)) {
+                slot = (slot + 1) & this.mask;
+            }
+            return slot;
+        }
+    }
+}
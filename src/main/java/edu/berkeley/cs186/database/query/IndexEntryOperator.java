@@ -0,0 +1,98 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.LongDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+
+/**
+ * Scans a table for the entries of an index on it: for each record of the
+ * table, a record (key, page_num, entry_num) of the record's key in the
+ * index and its record id. Sorting these on their keys (see
+ * SortOperator) gives the entries of the index in the order that its B+ tree
+ * is bulk loaded in.
+ */
+public class IndexEntryOperator extends QueryOperator {
+    private TransactionContext transaction;
+    private String tableName;
+    private Type keyType;
+    private BiFunction<Record, RecordId, DataBox> keyOf;
+
+    /**
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to scan
+     * @param keyType the type of the keys of the index
+     * @param keyOf the key in the index of a record with a given record id
+     */
+    public IndexEntryOperator(TransactionContext transaction, String tableName, Type keyType,
+                              BiFunction<Record, RecordId, DataBox> keyOf) {
+        super(OperatorType.INDEX_ENTRIES);
+        this.transaction = transaction;
+        this.tableName = tableName;
+        this.keyType = keyType;
+        this.keyOf = keyOf;
+        this.setOutputSchema(this.computeSchema());
+    }
+
+    /**
+     * @return the record id in an entry output by this operator
+     */
+    public static RecordId getRecordId(Record entry) {
+        return new RecordId(entry.getValue(1).getLong(), (short) entry.getValue(2).getInt());
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        Table table = this.transaction.getTable(this.tableName);
+        Iterator<RecordId> rids = table.ridIterator();
+        return new Iterator<Record>() {
+            @Override
+            public boolean hasNext() {
+                return rids.hasNext();
+            }
+
+            @Override
+            public Record next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordId rid = rids.next();
+                DataBox key = keyOf.apply(table.getRecord(rid), rid);
+                return new Record(key, new LongDataBox(rid.getPageNum()), new IntDataBox(rid.getEntryNum()));
+            }
+        };
+    }
+
+    @Override
+    protected Schema computeSchema() {
+        return new Schema()
+                .add("key", this.keyType)
+                .add("page_num", Type.longType())
+                .add("entry_num", Type.intType());
+    }
+
+    @Override
+    public String str() {
+        return "Index Entries of " + this.tableName + " (cost=" + this.estimateIOCost() + ")";
+    }
+
+    @Override
+    public TableStats estimateStats() {
+        return this.transaction.getStats(this.tableName);
+    }
+
+    @Override
+    public int estimateIOCost() {
+        return this.transaction.getNumDataPages(this.tableName);
+    }
+}
@@ -0,0 +1,145 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Accesses a table through the indexes on several of its columns at once, for
+ * a conjunction of predicates on different indexed columns, e.g.
+ * `a = 1 AND b >= 5 AND b < 10`. The ids of the records in the range of each
+ * index are read from the index, and only the records whose ids are in every
+ * range are fetched, in the order of their ids (and so of their pages).
+ * Records that satisfy some of the predicates but not all of them are never
+ * read from the table.
+ *
+ * The record ids of the first range are kept in memory, and the ids of each
+ * later range only narrow them down, so the most selective range is read
+ * first.
+ */
+class IndexIntersectionOperator extends QueryOperator {
+    private TransactionContext transaction;
+    private String tableName;
+    // the ranges to intersect, with the fewest estimated records first
+    private List<IndexRange> ranges;
+    // runtime filters pushed down by joins above this scan
+    private List<RuntimeFilter> runtimeFilters;
+
+    /**
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param ranges ranges of at least two different indexed columns
+     */
+    IndexIntersectionOperator(TransactionContext transaction,
+                              String tableName,
+                              List<IndexRange> ranges) {
+        super(OperatorType.INDEX_SCAN);
+        if (ranges.size() < 2) {
+            throw new IllegalArgumentException("need at least two ranges to intersect");
+        }
+        this.transaction = transaction;
+        this.tableName = tableName;
+        this.runtimeFilters = new CopyOnWriteArrayList<>();
+        this.setOutputSchema(this.computeSchema());
+
+        this.ranges = new ArrayList<>(ranges);
+        this.ranges.sort(Comparator.comparingInt(this::estimateCount));
+        this.stats = this.estimateStats();
+    }
+
+    @Override
+    public boolean isIndexScan() {
+        return true;
+    }
+
+    @Override
+    public String str() {
+        List<String> ranges = new ArrayList<>();
+        for (IndexRange range : this.ranges) ranges.add(range.toString());
+        String str = String.format("Index Intersection for %s on %s (cost=%d)",
+                String.join(", ", ranges), this.tableName, this.estimateIOCost());
+        for (RuntimeFilter filter : this.runtimeFilters) {
+            str += "\n\t" + filter;
+        }
+        return str;
+    }
+
+    /**
+     * Estimates the statistics of the records in every range, assuming that
+     * the columns are uncorrelated.
+     */
+    @Override
+    public TableStats estimateStats() {
+        TableStats stats = this.transaction.getStats(this.tableName);
+        for (IndexRange range : this.ranges) {
+            stats = range.filter(stats, this.getSchema());
+        }
+        return stats;
+    }
+
+    /**
+     * The leaves of each index that hold the range are read, as by an index
+     * scan, and then each record in the intersection is fetched. Since the
+     * records are fetched in the order of their ids, no page is read more
+     * than once.
+     */
+    @Override
+    public int estimateIOCost() {
+        long cost = 0;
+        for (IndexRange range : this.ranges) {
+            int height = this.transaction.getTreeHeight(this.tableName, range.getIndexName());
+            int order = this.transaction.getTreeOrder(this.tableName, range.getIndexName());
+            // leaf nodes are assumed to be 75% full, as for an index scan
+            cost += height + (long) Math.ceil(this.estimateCount(range) / (1.5 * order));
+        }
+        TableStats stats = this.getStats();
+        int numPages = this.transaction.getStats(this.tableName).getNumPages();
+        cost += Math.min(stats.getNumRecords(), numPages);
+        return (int) Math.min(cost, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the estimated number of records in a range
+     */
+    private int estimateCount(IndexRange range) {
+        return range.estimateCount(this.transaction.getStats(this.tableName), this.getSchema());
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        Set<RecordId> rids = null;
+        for (IndexRange range : this.ranges) {
+            Set<RecordId> inRange = new HashSet<>();
+            Iterator<RecordId> iterator = range.scan(this.transaction, this.tableName);
+            while (iterator.hasNext()) {
+                RecordId rid = iterator.next();
+                if (rids == null || rids.contains(rid)) inRange.add(rid);
+            }
+            rids = inRange;
+            if (rids.isEmpty()) break;
+        }
+        List<RecordId> sorted = new ArrayList<>(rids);
+        Collections.sort(sorted);
+        Iterator<Record> records = this.transaction.getRecords(this.tableName, sorted.iterator());
+        for (RuntimeFilter filter : this.runtimeFilters) {
+            records = filter.apply(records);
+        }
+        return records;
+    }
+
+    @Override
+    public boolean pushDownRuntimeFilter(RuntimeFilter filter) {
+        this.runtimeFilters.add(filter);
+        return true;
+    }
+
+    @Override
+    public Schema computeSchema() {
+        return this.transaction.getFullyQualifiedSchema(this.tableName);
+    }
+}
@@ -0,0 +1,214 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.Histogram;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A range of values of an indexed column, built up from the selection
+ * predicates on that column. For example, `a >= 10` and `a < 20` make the
+ * range 10 <= a < 20, and `a = 5` makes the range 5 <= a <= 5. A scan of the
+ * index over a range starts at the lower bound and stops at the upper bound,
+ * rather than going on to the end of the index and filtering.
+ *
+ * For an index on several columns, the range is on one of its columns, and
+ * the values of the columns before it are fixed: on an index on (a, b, c),
+ * `a = 1 AND b >= 10 AND b < 20` makes the range 10 <= b < 20 with the
+ * prefix a = 1. A scan of the index over the range starts at the first key
+ * with a = 1 and b >= 10, and stops at the first key with a = 1 and b >= 20.
+ */
+class IndexRange {
+    // The columns of the index, the values of the columns before the range's
+    // column, and the range's column, which is the column after them
+    private List<String> indexColumns;
+    private List<DataBox> prefix;
+    private String columnName;
+    // The bounds of the range, or null if it is unbounded on that side
+    private DataBox lower;
+    private boolean lowerInclusive;
+    private DataBox upper;
+    private boolean upperInclusive;
+
+    /**
+     * Creates a range of all of the values of a column.
+     */
+    IndexRange(String columnName) {
+        this(Collections.singletonList(columnName), Collections.emptyList());
+    }
+
+    /**
+     * Creates a range of all of the values of a column of an index on several
+     * columns, among the records whose values in the columns before it are
+     * `prefix`.
+     */
+    IndexRange(List<String> indexColumns, List<DataBox> prefix) {
+        if (prefix.size() >= indexColumns.size()) {
+            throw new IllegalArgumentException("the prefix must leave a column for the range");
+        }
+        this.indexColumns = new ArrayList<>(indexColumns);
+        this.prefix = new ArrayList<>(prefix);
+        this.columnName = indexColumns.get(prefix.size());
+    }
+
+    /**
+     * @return the column that the range is on
+     */
+    String getColumnName() {
+        return this.columnName;
+    }
+
+    /**
+     * @return the name of the index, as passed to TransactionContext#getTreeHeight
+     */
+    String getIndexName() {
+        return String.join(",", this.indexColumns);
+    }
+
+    /**
+     * Narrows this range to the values that also satisfy `column operator
+     * value`.
+     *
+     * @return false if the predicate can't be part of the range (!=, or a
+     * value of a different type than the bounds so far), in which case the
+     * range is unchanged
+     */
+    boolean add(PredicateOperator operator, DataBox value) {
+        DataBox bound = this.lower != null ? this.lower : this.upper;
+        if (bound != null && bound.getTypeId() != value.getTypeId()) return false;
+        switch (operator) {
+            case EQUALS:
+                this.narrowLower(value, true);
+                this.narrowUpper(value, true);
+                return true;
+            case LESS_THAN:
+                this.narrowUpper(value, false);
+                return true;
+            case LESS_THAN_EQUALS:
+                this.narrowUpper(value, true);
+                return true;
+            case GREATER_THAN:
+                this.narrowLower(value, false);
+                return true;
+            case GREATER_THAN_EQUALS:
+                this.narrowLower(value, true);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void narrowLower(DataBox value, boolean inclusive) {
+        if (this.lower != null) {
+            int cmp = value.compareTo(this.lower);
+            // the current bound is at least as tight
+            if (cmp < 0 || (cmp == 0 && (inclusive || !this.lowerInclusive))) return;
+        }
+        this.lower = value;
+        this.lowerInclusive = inclusive;
+    }
+
+    private void narrowUpper(DataBox value, boolean inclusive) {
+        if (this.upper != null) {
+            int cmp = value.compareTo(this.upper);
+            // the current bound is at least as tight
+            if (cmp > 0 || (cmp == 0 && (inclusive || !this.upperInclusive))) return;
+        }
+        this.upper = value;
+        this.upperInclusive = inclusive;
+    }
+
+    /**
+     * @return the predicates that make up this range: a single equality if
+     * both bounds are the same value, and otherwise one predicate for each
+     * bound
+     */
+    List<Pair<PredicateOperator, DataBox>> getPredicates() {
+        List<Pair<PredicateOperator, DataBox>> predicates = new ArrayList<>();
+        if (this.lower != null && this.upper != null && this.lowerInclusive && this.upperInclusive
+                && this.lower.compareTo(this.upper) == 0) {
+            predicates.add(new Pair<>(PredicateOperator.EQUALS, this.lower));
+            return predicates;
+        }
+        if (this.lower != null) {
+            predicates.add(new Pair<>(this.lowerInclusive ? PredicateOperator.GREATER_THAN_EQUALS
+                                                          : PredicateOperator.GREATER_THAN, this.lower));
+        }
+        if (this.upper != null) {
+            predicates.add(new Pair<>(this.upperInclusive ? PredicateOperator.LESS_THAN_EQUALS
+                                                          : PredicateOperator.LESS_THAN, this.upper));
+        }
+        return predicates;
+    }
+
+    /**
+     * @return the ids of the records in the range, in ascending order of their
+     * values in the column, read from the index on the column
+     */
+    Iterator<RecordId> scan(TransactionContext transaction, String tableName) {
+        return transaction.lookupRange(tableName, this.indexColumns, this.prefix,
+                                       this.lower, this.lowerInclusive,
+                                       this.upper, this.upperInclusive);
+    }
+
+    /**
+     * @return an estimate of the histogram of the column's values after
+     * filtering them to this range
+     */
+    Histogram filter(Histogram histogram) {
+        for (Pair<PredicateOperator, DataBox> p : this.getPredicates()) {
+            histogram = histogram.copyWithPredicate(p.getFirst(), p.getSecond());
+        }
+        return histogram;
+    }
+
+    /**
+     * @return an estimate of the statistics of a table with schema `schema`
+     * after filtering its records to those in this range
+     */
+    TableStats filter(TableStats stats, Schema schema) {
+        for (int i = 0; i < this.prefix.size(); ++i) {
+            int columnIndex = schema.findField(this.indexColumns.get(i));
+            stats = stats.copyWithPredicate(columnIndex, PredicateOperator.EQUALS, this.prefix.get(i));
+        }
+        int columnIndex = schema.findField(this.columnName);
+        for (Pair<PredicateOperator, DataBox> p : this.getPredicates()) {
+            stats = stats.copyWithPredicate(columnIndex, p.getFirst(), p.getSecond());
+        }
+        return stats;
+    }
+
+    /**
+     * @return an estimate of the number of records in this range, in a table
+     * with statistics `stats` and schema `schema`
+     */
+    int estimateCount(TableStats stats, Schema schema) {
+        if (this.prefix.isEmpty()) {
+            Histogram histogram = stats.getHistograms().get(schema.findField(this.columnName));
+            return this.filter(histogram).getCount();
+        }
+        return this.filter(stats, schema).getNumRecords();
+    }
+
+    @Override
+    public String toString() {
+        List<String> predicates = new ArrayList<>();
+        for (int i = 0; i < this.prefix.size(); ++i) {
+            predicates.add(this.indexColumns.get(i) + PredicateOperator.EQUALS.toSymbol() + this.prefix.get(i));
+        }
+        for (Pair<PredicateOperator, DataBox> p : this.getPredicates()) {
+            predicates.add(this.columnName + p.getFirst().toSymbol() + p.getSecond());
+        }
+        if (predicates.isEmpty()) return this.columnName;
+        return String.join(", ", predicates);
+    }
+}
@@ -10,16 +10,16 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 class IndexScanOperator extends QueryOperator {
     private TransactionContext transaction;
     private String tableName;
     private String columnName;
-    private PredicateOperator predicate;
-    private DataBox value;
+    private IndexRange range;
 
-    private int columnIndex;
+    // runtime filters pushed down by joins above this scan
+    private List<RuntimeFilter> runtimeFilters;
 
     /**
      * An index scan operator.
@@ -33,17 +33,39 @@ class IndexScanOperator extends QueryOperator {
                       String columnName,
                       PredicateOperator predicate,
                       DataBox value) {
+        this(transaction, tableName, rangeOf(columnName, predicate, value));
+    }
+
+    /**
+     * An index scan operator over a range of values of the indexed column,
+     * which stops at the end of the range.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param range the range of values of the column the index is on (or of
+     *              a column of an index on several columns)
+     */
+    IndexScanOperator(TransactionContext transaction,
+                      String tableName,
+                      IndexRange range) {
         super(OperatorType.INDEX_SCAN);
         this.tableName = tableName;
         this.transaction = transaction;
-        this.columnName = columnName;
-        this.predicate = predicate;
-        this.value = value;
+        this.columnName = range.getColumnName();
+        this.range = range;
+        this.runtimeFilters = new CopyOnWriteArrayList<>();
         this.setOutputSchema(this.computeSchema());
-        this.columnIndex = this.getSchema().findField(columnName);
         this.stats = this.estimateStats();
     }
 
+    private static IndexRange rangeOf(String columnName, PredicateOperator predicate, DataBox value) {
+        IndexRange range = new IndexRange(columnName);
+        if (!range.add(predicate, value)) {
+            throw new IllegalArgumentException("Cannot scan an index for " + predicate.toSymbol());
+        }
+        return range;
+    }
+
     @Override
     public boolean isIndexScan() {
         return true;
@@ -51,9 +73,12 @@ class IndexScanOperator extends QueryOperator {
 
     @Override
     public String str() {
-        return String.format("Index Scan for %s%s%s on %s (cost=%d)",
-            this.columnName, this.predicate.toSymbol(), this.value, this.tableName,
-            this.estimateIOCost());
+        String str = String.format("Index Scan for %s on %s (cost=%d)",
+            this.range, this.tableName, this.estimateIOCost());
+        for (RuntimeFilter filter : this.runtimeFilters) {
+            str += "\n\t" + filter;
+        }
+        return str;
     }
 
     /**
@@ -68,27 +93,39 @@ class IndexScanOperator extends QueryOperator {
     @Override
     public TableStats estimateStats() {
         TableStats stats = this.transaction.getStats(this.tableName);
-        return stats.copyWithPredicate(this.columnIndex,
-                                       this.predicate,
-                                       this.value);
+        return this.range.filter(stats, this.getSchema());
     }
 
     @Override
     public int estimateIOCost() {
-        int height = transaction.getTreeHeight(tableName, columnName);
-        int order = transaction.getTreeOrder(tableName, columnName);
+        int height = transaction.getTreeHeight(tableName, range.getIndexName());
+        int order = transaction.getTreeOrder(tableName, range.getIndexName());
         TableStats tableStats = transaction.getStats(tableName);
 
-        int count = tableStats.getHistograms().get(columnIndex).copyWithPredicate(predicate,
-                    value).getCount();
+        int count = this.range.estimateCount(tableStats, this.getSchema());
         // 2 * order entries/leaf node, but leaf nodes are 50-100% full; we use a fill factor of
         // 75% as a rough estimate
         return (int) (height + Math.ceil(count / (1.5 * order)) + count);
     }
 
+    /**
+     * Reads the record ids in the range from the index, starting at the lower
+     * bound and stopping at the upper bound, and fetches their records.
+     */
     @Override
     public Iterator<Record> iterator() {
-        return new IndexScanIterator();
+        Iterator<Record> records = this.transaction.getRecords(this.tableName,
+                this.range.scan(this.transaction, this.tableName));
+        for (RuntimeFilter filter : this.runtimeFilters) {
+            records = filter.apply(records);
+        }
+        return records;
+    }
+
+    @Override
+    public boolean pushDownRuntimeFilter(RuntimeFilter filter) {
+        this.runtimeFilters.add(filter);
+        return true;
     }
 
     @Override
@@ -100,83 +137,4 @@ class IndexScanOperator extends QueryOperator {
     public List<String> sortedBy() {
         return Collections.singletonList(this.columnName);
     }
-
-    /**
-     * An implementation of Iterator that provides an iterator interface for this operator.
-     */
-    private class IndexScanIterator implements Iterator<Record> {
-        private Iterator<Record> sourceIterator;
-        private Record nextRecord;
-
-        private IndexScanIterator() {
-            this.nextRecord = null;
-            if (IndexScanOperator.this.predicate == PredicateOperator.EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.lookupKey(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-            } else if (IndexScanOperator.this.predicate == PredicateOperator.LESS_THAN ||
-                       IndexScanOperator.this.predicate == PredicateOperator.LESS_THAN_EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScan(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName);
-            } else if (IndexScanOperator.this.predicate == PredicateOperator.GREATER_THAN) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-                while (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-
-                    if (r.getValue(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) > 0) {
-                        this.nextRecord = r;
-                        break;
-                    }
-                }
-            } else if (IndexScanOperator.this.predicate == PredicateOperator.GREATER_THAN_EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-            }
-        }
-
-        /**
-         * @return true if this iterator has another record to yield, otherwise
-         * false
-         */
-        @Override
-        public boolean hasNext() {
-            if (this.nextRecord != null) return true;
-            if (!this.sourceIterator.hasNext()) return false;
-            Record r = this.sourceIterator.next();
-            if (predicate == PredicateOperator.LESS_THAN) {
-                if (r.getValue(columnIndex).compareTo(value) < 0) {
-                    this.nextRecord = r;
-                }
-            } else if (predicate == PredicateOperator.LESS_THAN_EQUALS) {
-                if (r.getValue(columnIndex).compareTo(value) <= 0) {
-                    this.nextRecord = r;
-                }
-            } else  {
-                this.nextRecord = r;
-            }
-            return this.nextRecord != null;
-        }
-
-        /**
-         * @return the next record from this iterator
-         * @throws NoSuchElementException if there are no more records to yield
-         */
-        @Override
-        public Record next() {
-            if (this.hasNext()) {
-                Record r = this.nextRecord;
-                this.nextRecord = null;
-                return r;
-            }
-            throw new NoSuchElementException();
-        }
-    }
 }
@@ -2,8 +2,12 @@ package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.Histogram;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 public abstract class JoinOperator extends QueryOperator {
@@ -13,7 +17,8 @@ public abstract class JoinOperator extends QueryOperator {
         BNLJ,
         SORTMERGE,
         SHJ,
-        GHJ
+        GHJ,
+        HHJ
     }
     protected JoinType joinType;
 
@@ -103,8 +108,8 @@ public abstract class JoinOperator extends QueryOperator {
      */
     @Override
     public TableStats estimateStats() {
-        TableStats leftStats = this.leftSource.estimateStats();
-        TableStats rightStats = this.rightSource.estimateStats();
+        TableStats leftStats = this.leftSource.getStats();
+        TableStats rightStats = this.rightSource.getStats();
         return leftStats.copyWithJoin(this.leftColumnIndex,
                 rightStats,
                 this.rightColumnIndex);
@@ -124,6 +129,14 @@ public abstract class JoinOperator extends QueryOperator {
         return this.rightSource;
     }
 
+    /**
+     * @return the records of a source operator, which are read from it a batch
+     * at a time (see QueryOperator.batchIterator)
+     */
+    protected static Iterable<Record> batchedRecords(QueryOperator source) {
+        return () -> RecordBatch.records(source.batchIterator());
+    }
+
     /**
      * @return the transaction context this operator is being executed within
      */
@@ -165,6 +178,40 @@ public abstract class JoinOperator extends QueryOperator {
 
     // Helpers /////////////////////////////////////////////////////////////////
 
+    /**
+     * Creates a runtime filter on the join column of the right source, to be
+     * built from the join values of the left source. The filter is sized for
+     * the estimated number of distinct left join values, and takes at most
+     * numBuffers pages of memory.
+     *
+     * @return the filter, or null if the join columns are not of a type whose
+     * equal values always hash the same (floats: 0.0 and -0.0 are equal), or
+     * are of different types
+     */
+    protected RuntimeFilter createRuntimeFilter(int numBuffers) {
+        TypeId leftType = this.leftSource.getSchema().getFieldType(this.leftColumnIndex).getTypeId();
+        TypeId rightType = this.rightSource.getSchema().getFieldType(this.rightColumnIndex).getTypeId();
+        if (leftType != rightType || leftType == TypeId.FLOAT || leftType == TypeId.BYTE_ARRAY) {
+            return null;
+        }
+        TableStats leftStats = this.leftSource.estimateStats();
+        int expectedValues = leftStats.getNumRecords();
+        if (this.leftColumnIndex < leftStats.getHistograms().size()) {
+            Histogram histogram = leftStats.getHistograms().get(this.leftColumnIndex);
+            if (histogram.getNumDistinct() > 0) {
+                expectedValues = Math.min(expectedValues, histogram.getNumDistinct());
+            }
+        }
+        int maxBits = (int) Math.min((long) Math.max(1, numBuffers) * PageDirectory.EFFECTIVE_PAGE_SIZE * 8,
+                                     Integer.MAX_VALUE);
+        if (expectedValues == 0) {
+            // no statistics for the left source: size the filter for as many
+            // values as it can hold
+            expectedValues = maxBits / 10;
+        }
+        return new RuntimeFilter(this.rightColumnName, this.rightColumnIndex, expectedValues, maxBits);
+    }
+
     /**
      * @return 0 if leftRecord and rightRecord match on their join values,
      * a negative value if leftRecord's join value is less than rightRecord's
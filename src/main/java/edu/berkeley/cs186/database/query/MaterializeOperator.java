@@ -29,7 +29,7 @@ public class MaterializeOperator extends SequentialScanOperator {
 
     @Override
     public String str() {
-        return "Materialize (cost: " + this.estimateIOCost() + ")";
+        return "Materialize (cost: " + this.estimateIOCost() + ")" + this.runtimeFiltersStr();
     }
 
     @Override
@@ -0,0 +1,113 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Table;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A sequential scan whose data pages are shared out among the workers of a
+ * GatherOperator. Every call to batchIterator() (one per worker) returns the
+ * records of a different subset of the data pages: workers take morsels of
+ * MORSEL_SIZE consecutive data pages at a time from a shared cursor, so a
+ * worker that gets ahead (or has pages that are already in memory) ends up
+ * scanning more of the table than the others.
+ *
+ * Before the workers start, start() must be called on the transaction's
+ * thread, which locks the table and hands out the pages of the table from the
+ * beginning. Workers have no TransactionContext, so they acquire no locks of
+ * their own: the S lock on the table covers every page of it, and is held
+ * until the transaction ends, by which point the workers have been stopped.
+ */
+class ParallelScanOperator extends SequentialScanOperator {
+    // number of consecutive data pages that a worker takes at a time
+    static final int MORSEL_SIZE = 8;
+
+    private TransactionContext transaction;
+    private volatile Morsels morsels;
+
+    ParallelScanOperator(TransactionContext transaction, String tableName) {
+        super(transaction, tableName);
+        this.transaction = transaction;
+        this.morsels = null;
+    }
+
+    /**
+     * Starts a scan of the table, to be shared by the next calls to batchIterator().
+     * Must be called on the transaction's thread, before any worker starts.
+     */
+    void start() {
+        Table table = this.transaction.getTable(this.getTableName());
+        // acquires an S lock on the table on behalf of the transaction, which
+        // the pages read by the workers (which lock nothing) are under
+        this.morsels = new Morsels(table, table.getDataPageNums());
+    }
+
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        Morsels morsels = this.morsels;
+        if (morsels == null) {
+            throw new IllegalStateException("parallel scan not started");
+        }
+        return this.applyRuntimeFilters(morsels.table.batchIterator(morsels.pageNums()));
+    }
+
+    @Override
+    public String str() {
+        return "Parallel Seq Scan on " + this.getTableName() + " (cost=" + this.estimateIOCost() + ")" +
+               this.runtimeFiltersStr();
+    }
+
+    /**
+     * The data pages of a scan, and how far workers have gotten through them.
+     */
+    private static class Morsels {
+        private Table table;
+        private List<Long> pageNums;
+        private AtomicInteger nextMorsel;
+
+        private Morsels(Table table, List<Long> pageNums) {
+            this.table = table;
+            this.pageNums = pageNums;
+            this.nextMorsel = new AtomicInteger();
+        }
+
+        /**
+         * @return an iterator over the page numbers of the morsels one worker
+         * takes, each taken when the previous one is used up
+         */
+        private Iterator<Long> pageNums() {
+            return new Iterator<Long>() {
+                private int next = 0;
+                private int end = 0;
+                private boolean done = false;
+
+                @Override
+                public boolean hasNext() {
+                    if (this.next == this.end && !this.done) {
+                        long start = (long) nextMorsel.getAndIncrement() * MORSEL_SIZE;
+                        if (start >= pageNums.size()) {
+                            this.done = true;
+                            return false;
+                        }
+                        this.next = (int) start;
+                        this.end = Math.min(this.next + MORSEL_SIZE, pageNums.size());
+                    }
+                    return !this.done;
+                }
+
+                @Override
+                public Long next() {
+                    if (!this.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return pageNums.get(this.next++);
+                }
+            };
+        }
+    }
+}
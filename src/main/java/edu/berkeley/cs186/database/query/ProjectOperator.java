@@ -1,8 +1,10 @@
 package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.query.expr.CompiledExpression;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -22,6 +24,11 @@ public class ProjectOperator extends QueryOperator {
     // expression corresponds to one of the column names in outputColumns.
     private List<Expression> expressions;
 
+    // The expressions, compiled. Only set if none of the expressions have an
+    // aggregate, which must be evaluated by the interpreter since it carries
+    // state from one record to the next.
+    private List<CompiledExpression> compiledExpressions;
+
     /**
      * Creates a new ProjectOperator that reads tuples from source and filters
      * out columns. Optionally computes an aggregate if it is specified.
@@ -66,7 +73,13 @@ public class ProjectOperator extends QueryOperator {
         for (int i = 0; i < expressions.size(); i++) {
             hasAgg |= expressions.get(i).hasAgg();
         }
-        if (!hasAgg) return;
+        if (!hasAgg) {
+            this.compiledExpressions = new ArrayList<>();
+            for (Expression expression: expressions) {
+                this.compiledExpressions.add(CompiledExpression.compile(expression));
+            }
+            return;
+        }
 
         for (int i = 0; i < expressions.size(); i++) {
             Set<Integer> dependencyIndices = new HashSet<>();
@@ -89,6 +102,13 @@ public class ProjectOperator extends QueryOperator {
     @Override
     public boolean isProject() { return true; }
 
+    /**
+     * @return whether any of the expressions has an aggregate
+     */
+    boolean hasAggregates() {
+        return this.compiledExpressions == null;
+    }
+
     @Override
     protected Schema computeSchema() {
         return this.outputSchema;
@@ -99,6 +119,51 @@ public class ProjectOperator extends QueryOperator {
         return new ProjectIterator();
     }
 
+    /**
+     * Columns are copied from the source batches without boxing; other expressions
+     * are compiled and evaluated on each selected row. Aggregates are computed a record at a
+     * time, since the source (a GroupByOperator) separates groups with markers.
+     */
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        boolean hasAgg = false;
+        for (Expression expression: expressions) {
+            hasAgg |= expression.hasAgg();
+        }
+        if (hasAgg || groupByColumns.size() > 0) {
+            return super.batchIterator();
+        }
+        Iterator<RecordBatch> sourceIterator = this.getSource().batchIterator();
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return sourceIterator.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                RecordBatch in = sourceIterator.next();
+                RecordBatch out = new RecordBatch(outputSchema, in.getNumSelected());
+                int[] rows = in.getSelection();
+                for (int i = 0; i < in.getNumSelected(); ++i) {
+                    out.addRow();
+                }
+                for (int j = 0; j < expressions.size(); ++j) {
+                    CompiledExpression expression = compiledExpressions.get(j);
+                    int column = expression.getExpression().getColumnIndex();
+                    for (int i = 0; i < in.getNumSelected(); ++i) {
+                        if (column >= 0) {
+                            out.copyValue(in, rows[i], column, i, j);
+                        } else {
+                            expression.evaluate(in, rows[i], out, i, j);
+                        }
+                    }
+                }
+                return out;
+            }
+        };
+    }
+
     @Override
     public String str() {
         String columns = "(" + String.join(", ", this.outputColumns) + ")";
@@ -138,7 +203,7 @@ public class ProjectOperator extends QueryOperator {
             Record curr = this.sourceIterator.next();
             if (!this.hasAgg && groupByColumns.size() == 0 ) {
                 List<DataBox> newValues = new ArrayList<>();
-                for (Expression f: expressions) {
+                for (CompiledExpression f: compiledExpressions) {
                     newValues.add(f.evaluate(curr));
                 }
                 return new Record(newValues);
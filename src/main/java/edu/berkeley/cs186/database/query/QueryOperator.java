@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.common.iterator.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -28,7 +29,10 @@ public abstract class QueryOperator implements Iterable<Record> {
         GROUP_BY,
         SORT,
         LIMIT,
-        MATERIALIZE
+        MATERIALIZE,
+        GATHER,
+        TOP_N,
+        INDEX_ENTRIES
     }
 
     private OperatorType type;
@@ -109,6 +113,19 @@ public abstract class QueryOperator implements Iterable<Record> {
         return Collections.emptyList();
     }
 
+    /**
+     * Pushes a runtime filter on a column of this operator's output down to the
+     * scan that reads the column from a table, so that records the filter
+     * rejects are dropped as early as possible. Operators that output the
+     * records of their source with the same columns pass the filter on to it.
+     *
+     * @return true if the filter was pushed down to a scan, false if the caller
+     * must apply it itself
+     */
+    public boolean pushDownRuntimeFilter(RuntimeFilter filter) {
+        return false;
+    }
+
     /**
      * @return the source operator from which this operator draws records from
      */
@@ -151,6 +168,17 @@ public abstract class QueryOperator implements Iterable<Record> {
      */
     public abstract Iterator<Record> iterator();
 
+    /**
+     * Operators that can process records a batch at a time override this, and
+     * should call batchIterator() on their sources; by default, the records of
+     * iterator() are put into batches.
+     *
+     * @return an iterator over the output records of this operator, as batches
+     */
+    public Iterator<RecordBatch> batchIterator() {
+        return RecordBatch.batches(this.iterator(), this.getSchema());
+    }
+
     /**
      * @return true if the records of this query operator are materialized in a
      * table.
@@ -220,6 +248,18 @@ public abstract class QueryOperator implements Iterable<Record> {
      */
     public abstract TableStats estimateStats();
 
+    /**
+     * Operators estimate their statistics when they are created. Operators
+     * built on top of this one should use these rather than estimating them
+     * again, which would redo the estimates of every operator below.
+     *
+     * @return the estimated TableStats of this operator
+     */
+    public TableStats getStats() {
+        if (this.stats == null) this.stats = this.estimateStats();
+        return this.stats;
+    }
+
     /**
      * Estimates the IO cost of executing this query operator.
      *
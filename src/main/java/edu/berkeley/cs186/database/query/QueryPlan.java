@@ -1,11 +1,16 @@
 package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.index.IndexKey;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.query.join.BNLJOperator;
+import edu.berkeley.cs186.database.query.join.HHJOperator;
 import edu.berkeley.cs186.database.query.join.SNLJOperator;
+import edu.berkeley.cs186.database.query.join.SortMergeOperator;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 
@@ -35,14 +40,19 @@ public class QueryPlan {
     private Map<String, String> cteAliases;
     // A list of objects representing selection predicates (WHERE clause)
     private List<SelectPredicate> selectPredicates;
+    // Selection predicates that aren't a comparison of a column with a value
+    private List<ExpressionPredicate> expressionPredicates;
     // A list of columns to group by (GROUP BY clause)
     private List<String> groupByColumns;
-    // Column to sort on
-    private String sortColumn;
+    // Columns to sort on (ORDER BY clause), and whether each is descending
+    private List<String> sortColumns;
+    private List<Boolean> sortDescending;
     // A limit to the number of records yielded (LIMIT clause)
     private int limit;
     // An offset to the records yielded (OFFSET clause)
     private int offset;
+    // Number of workers to scan tables with
+    private int degreeOfParallelism;
 
     /**
      * Creates a new QueryPlan within `transaction` with base table
@@ -82,9 +92,11 @@ public class QueryPlan {
         this.projectFunctions = null;
         this.joinPredicates = new ArrayList<>();
         this.selectPredicates = new ArrayList<>();
+        this.expressionPredicates = new ArrayList<>();
         this.groupByColumns = new ArrayList<>();
         this.limit = -1;
         this.offset = 0;
+        this.degreeOfParallelism = transaction.getDegreeOfParallelism();
 
         // This will be set after calling execute()
         this.finalOperator = null;
@@ -94,6 +106,22 @@ public class QueryPlan {
         return this.finalOperator;
     }
 
+    /**
+     * Sets the number of workers that sequential scans, and the selects and
+     * projects on them, are run on by execute(). Each worker runs on its own
+     * thread and scans part of the table; their output is gathered by a
+     * GatherOperator, which shows up in the plan (e.g. in EXPLAIN).
+     *
+     * @param degreeOfParallelism number of workers, or 1 to run the query on
+     *                            the current thread only
+     */
+    public void setDegreeOfParallelism(int degreeOfParallelism) {
+        if (degreeOfParallelism < 1) {
+            throw new IllegalArgumentException("degree of parallelism must be positive");
+        }
+        this.degreeOfParallelism = degreeOfParallelism;
+    }
+
     /**
      * @param column the name of an ambiguous column that we want to determine
      *               the table of.
@@ -141,12 +169,15 @@ public class QueryPlan {
         for (JoinPredicate predicate: this.joinPredicates)
             result.append(String.format("    %s\n", predicate));
         // WHERE clause
-        if (selectPredicates.size() > 0) {
+        if (selectPredicates.size() > 0 || expressionPredicates.size() > 0) {
             result.append("WHERE\n");
             List<String> predicates = new ArrayList<>();
             for (SelectPredicate predicate: this.selectPredicates) {
                 predicates.add(predicate.toString());
             }
+            for (ExpressionPredicate predicate: this.expressionPredicates) {
+                predicates.add(predicate.toString());
+            }
             result.append("   ").append(String.join(" AND\n   ", predicates));
             result.append("\n");
         }
@@ -190,6 +221,48 @@ public class QueryPlan {
         }
     }
 
+    /**
+     * Represents a selection predicate that isn't a comparison of a column
+     * with a value, along with the tables whose columns it uses. Some examples:
+     *   table1.a + table1.b > 10
+     *   table1.a < table2.b
+     *   table1.a = 1 OR table1.b = 2
+     */
+    private class ExpressionPredicate {
+        Expression expression;
+        Set<String> tables;
+
+        ExpressionPredicate(Expression expression) {
+            this.expression = expression;
+            this.tables = new HashSet<>();
+            for (String column : expression.getDependencies()) {
+                if (column.contains(".")) this.tables.add(column.split("\\.")[0]);
+                else this.tables.add(resolveColumn(column));
+            }
+            // a predicate without any columns is checked on the base table
+            if (this.tables.isEmpty()) this.tables.add(tableNames.get(0));
+        }
+
+        /**
+         * @return the set of tables the predicate uses, as a bitmask over
+         * tableNames
+         */
+        int getTableSet() {
+            int tableSet = 0;
+            for (String table : this.tables) {
+                int i = tableNames.indexOf(table);
+                if (i < 0) throw new IllegalArgumentException("Unknown table `" + table + "`");
+                tableSet |= 1 << i;
+            }
+            return tableSet;
+        }
+
+        @Override
+        public String toString() {
+            return this.expression.toString();
+        }
+    }
+
     /**
      * Represents an equijoin in the query plan. Some examples:
      *   INNER JOIN rightTable ON leftTable.leftColumn = rightTable.rightColumn
@@ -282,45 +355,88 @@ public class QueryPlan {
             if (this.finalOperator == null) throw new RuntimeException(
                     "Can't add Project onto null finalOperator."
             );
-            if (this.projectFunctions == null) {
-                this.finalOperator = new ProjectOperator(
-                        this.finalOperator,
-                        this.projectColumns,
-                        this.groupByColumns
-                );
-            } else {
-                this.finalOperator = new ProjectOperator(
-                        this.finalOperator,
-                        this.projectColumns,
-                        this.projectFunctions,
-                        this.groupByColumns
+            this.finalOperator = newProject(this.finalOperator);
+            QueryOperator source = this.finalOperator.getSource();
+            if (source instanceof GatherOperator && !((ProjectOperator) this.finalOperator).hasAggregates()) {
+                // run the projection on the workers too
+                this.finalOperator = new GatherOperator(
+                        newProject(source.getSource()),
+                        this.transaction,
+                        ((GatherOperator) source).getNumWorkers()
                 );
             }
         }
     }
 
+    private ProjectOperator newProject(QueryOperator source) {
+        if (this.projectFunctions == null) {
+            return new ProjectOperator(
+                    source,
+                    this.projectColumns,
+                    this.groupByColumns
+            );
+        }
+        return new ProjectOperator(
+                source,
+                this.projectColumns,
+                this.projectFunctions,
+                this.groupByColumns
+        );
+    }
+
     // Sort ////////////////////////////////////////////////////////////////////
     /**
      * Add a sort operator to the query plan on the given column.
      */
     public void sort(String sortColumn) {
         if (sortColumn == null) throw new UnsupportedOperationException("Only one sort column supported");
-        this.sortColumn = sortColumn;
+        this.sort(Collections.singletonList(sortColumn), Collections.singletonList(false));
+    }
+
+    /**
+     * Add a sort operator to the query plan on the given columns, most
+     * significant first. Later columns break ties between earlier ones.
+     *
+     * @param sortColumns the columns to sort on
+     * @param descending for each column, whether it is sorted in descending
+     *                   order
+     */
+    public void sort(List<String> sortColumns, List<Boolean> descending) {
+        if (sortColumns.isEmpty() || sortColumns.size() != descending.size()) {
+            throw new IllegalArgumentException("need a sort order for each of at least one sort column");
+        }
+        this.sortColumns = new ArrayList<>(sortColumns);
+        this.sortDescending = new ArrayList<>(descending);
     }
 
     /**
      * Sets the final operator to a sort operator if a sort was specified and
-     * the final operator isn't already sorted.
+     * the final operator isn't already sorted. If a limit was specified too,
+     * only the records up to the limit (and offset) are needed, so a top-n
+     * operator is used instead.
      */
     private void addSort() {
-        if (this.sortColumn == null) return;
-        if (this.finalOperator.sortedBy().contains(sortColumn.toLowerCase())) {
+        if (this.sortColumns == null) return;
+        // operators only report being sorted on a single ascending column
+        if (this.sortColumns.size() == 1 && !this.sortDescending.get(0) &&
+                this.finalOperator.sortedBy().contains(this.sortColumns.get(0).toLowerCase())) {
             return; // already sorted
         }
+        if (this.limit >= 0) {
+            this.finalOperator = new TopNOperator(
+                    this.transaction,
+                    this.finalOperator,
+                    this.sortColumns,
+                    this.sortDescending,
+                    (int) Math.min((long) this.limit + this.offset, Integer.MAX_VALUE)
+            );
+            return;
+        }
         this.finalOperator = new SortOperator(
                 this.transaction,
                 this.finalOperator,
-                this.sortColumn
+                this.sortColumns,
+                this.sortDescending
         );
     }
 
@@ -373,6 +489,31 @@ public class QueryPlan {
         this.selectPredicates.add(new SelectPredicate(column, operator, d));
     }
 
+    /**
+     * Add select operators for a boolean expression, such as the WHERE clause
+     * of a query typed at the command line. The expression is split into its
+     * conjuncts. Each conjunct that compares a column with a value is added
+     * as by select(column, operator, value), so that it can be used to scan
+     * an index, and every other conjunct is checked as soon as all of the
+     * tables it uses have been joined.
+     *
+     * @param predicate the expression that records must satisfy
+     */
+    public void select(Expression predicate) {
+        if (predicate.hasAgg()) {
+            throw new UnsupportedOperationException("Aggregates are not allowed in the WHERE clause");
+        }
+        for (Expression conjunct : predicate.toCNF()) {
+            Expression.ColumnComparison comparison = conjunct.toColumnComparison();
+            if (comparison != null) {
+                this.selectPredicates.add(new SelectPredicate(
+                        comparison.columnName, comparison.operator, comparison.value));
+            } else {
+                this.expressionPredicates.add(new ExpressionPredicate(conjunct));
+            }
+        }
+    }
+
     /**
      * For each selection predicate:
      * - creates a project operator with the final operator as its source
@@ -388,6 +529,9 @@ public class QueryPlan {
                     predicate.value
             );
         }
+        for (ExpressionPredicate predicate : this.expressionPredicates) {
+            this.finalOperator = new SelectOperator(this.finalOperator, predicate.expression.copy());
+        }
     }
 
     // Group By ////////////////////////////////////////////////////////////////
@@ -427,6 +571,33 @@ public class QueryPlan {
         }
     }
 
+    /**
+     * Adds the group by and project operators of the query. A query with both a
+     * GROUP BY and a projection is computed with either a GroupByOperator and a
+     * ProjectOperator, or a HashAggregateOperator, whichever has the lower
+     * estimated cost.
+     */
+    private void addGroupByAndProject() {
+        if (this.groupByColumns.isEmpty() || this.projectColumns.isEmpty()) {
+            addGroupBy();
+            addProject();
+            return;
+        }
+        QueryOperator source = this.finalOperator;
+        addGroupBy();
+        addProject();
+        QueryOperator hashAggregate = new HashAggregateOperator(
+                source,
+                this.transaction,
+                this.projectColumns,
+                this.projectFunctions,
+                this.groupByColumns
+        );
+        if (hashAggregate.estimateIOCost() < this.finalOperator.estimateIOCost()) {
+            this.finalOperator = hashAggregate;
+        }
+    }
+
     // Join ////////////////////////////////////////////////////////////////////
 
     /**
@@ -527,22 +698,65 @@ public class QueryPlan {
         return result;
     }
 
+    /**
+     * Builds the range of an index on several columns of the given table
+     * that the select predicates allow: the values of as many of its leading
+     * columns as have an equality predicate are fixed, and the range is on the
+     * next column, e.g. `a = 1 AND b = 2 AND c > 5` on an index on (a, b, c, d)
+     * fixes a and b, and scans c > 5. If every column but the last has an
+     * equality predicate, the range is on the last column.
+     *
+     * @param indexColumns the columns of the index, in order
+     * @return the range and the indices of the predicates in
+     * this.selectPredicates that make it up, or null if no predicate narrows
+     * the range
+     */
+    private Pair<IndexRange, Set<Integer>> getPrefixRange(String table, List<String> indexColumns) {
+        Schema schema = this.transaction.getSchema(table);
+        Set<Integer> used = new HashSet<>();
+        List<DataBox> prefix = new ArrayList<>();
+        while (prefix.size() < indexColumns.size() - 1) {
+            String column = indexColumns.get(prefix.size());
+            Type type = schema.getFieldType(schema.findField(column));
+            int equality = -1;
+            for (int i = 0; i < this.selectPredicates.size() && equality < 0; i++) {
+                SelectPredicate p = this.selectPredicates.get(i);
+                if (p.tableName.equals(table) && p.column.equalsIgnoreCase(column) &&
+                        p.operator == PredicateOperator.EQUALS && IndexKey.fits(type, p.value)) {
+                    equality = i;
+                }
+            }
+            if (equality < 0) break;
+            prefix.add(this.selectPredicates.get(equality).value);
+            used.add(equality);
+        }
+        IndexRange range = new IndexRange(indexColumns, prefix);
+        String column = range.getColumnName();
+        Type type = schema.getFieldType(schema.findField(column));
+        for (int i = 0; i < this.selectPredicates.size(); i++) {
+            SelectPredicate p = this.selectPredicates.get(i);
+            if (!p.tableName.equals(table) || !p.column.equalsIgnoreCase(column)) continue;
+            if (IndexKey.fits(type, p.value) && range.add(p.operator, p.value)) used.add(i);
+        }
+        if (used.isEmpty()) return null;
+        return new Pair<>(range, used);
+    }
+
     /**
      * Applies all eligible select predicates to a given source, except for the
-     * predicate at index except. The purpose of except is because there might
-     * be one select predicate that was already used for an index scan, so
-     * there's no point applying it again. A select predicate is represented as
-     * an element in this.selectPredicates. `except` corresponds to the index
-     * of the predicate in that list.
+     * predicates in except. The purpose of except is because there might be
+     * select predicates that were already used for an index scan, so there's
+     * no point applying them again. A select predicate is represented as an
+     * element in this.selectPredicates. `except` holds the indices of the
+     * predicates in that list.
      *
      * @param source a source operator to apply the selections to
-     * @param except the index of a selection to skip. You can use the value -1
-     *               if you don't want to skip anything.
+     * @param except the indices of selections to skip
      * @return a new query operator after select predicates have been applied
      */
-    private QueryOperator addEligibleSelections(QueryOperator source, int except) {
+    private QueryOperator addEligibleSelections(QueryOperator source, Set<Integer> except) {
         for (int i = 0; i < this.selectPredicates.size(); i++) {
-            if (i == except) continue;
+            if (except.contains(i)) continue;
             SelectPredicate curr = this.selectPredicates.get(i);
             try {
                 String colName = source.getSchema().matchFieldName(curr.tableName + "." + curr.column);
@@ -556,50 +770,155 @@ public class QueryPlan {
         return source;
     }
 
+    /**
+     * Applies the expression predicates that can be checked on the output of
+     * a join of two sets of tables, but not on either input: those that use
+     * only tables in the union of the sets, and tables from both of them. The
+     * sets are bitmasks over this.tableNames; for a single table access,
+     * pass the table as the left set and 0 as the right set.
+     *
+     * @param source a source operator to apply the selections to
+     * @return a new query operator after the predicates have been applied
+     */
+    private QueryOperator addExpressionSelections(QueryOperator source, int leftSet, int rightSet) {
+        int tableSet = leftSet | rightSet;
+        for (ExpressionPredicate predicate : this.expressionPredicates) {
+            int predicateSet = predicate.getTableSet();
+            if ((predicateSet & ~tableSet) != 0) continue;
+            boolean onInput = rightSet != 0 &&
+                    ((predicateSet & ~leftSet) == 0 || (predicateSet & ~rightSet) == 0);
+            if (onInput) continue;
+            source = new SelectOperator(source, predicate.expression.copy());
+        }
+        return source;
+    }
+
     /**
      * Finds the lowest cost QueryOperator that accesses the given table. First
      * determine the cost of a sequential scan for the given table. Then for
      * every index that can be used on that table, determine the cost of an
-     * index scan. Keep track of the minimum cost operation and push down
-     * eligible select predicates.
+     * index scan over the range of values allowed by all of the predicates on
+     * the index's column (so `a >= 10 AND a < 20` is a single scan from 10 to
+     * 20), and for predicates on several indexed columns, the cost of
+     * intersecting the record ids of their ranges. An index on several
+     * columns is scanned for the values of its leading columns fixed by
+     * equality predicates, and a range of the next column (see
+     * getPrefixRange). Keep track of the minimum cost operation and push
+     * down eligible select predicates.
      *
-     * If an index scan was chosen, exclude the redundant select predicate when
-     * pushing down selects. This method will be called during the first pass of
-     * the search algorithm to determine the most efficient way to access each
-     * table.
+     * If an index scan was chosen, exclude the predicates of its ranges when
+     * pushing down selects. This method will be called during the first pass
+     * of the search algorithm to determine the most efficient way to access
+     * each table.
      *
      * @return a QueryOperator that has the lowest cost of scanning the given
-     * table which is either a SequentialScanOperator or an IndexScanOperator
-     * nested within any possible pushed down select operators. Ties for the
-     * minimum cost operator can be broken arbitrarily.
+     * table which is either a SequentialScanOperator, an IndexScanOperator or
+     * an IndexIntersectionOperator nested within any possible pushed down
+     * select operators. Ties for the minimum cost operator can be broken
+     * arbitrarily.
      */
     public QueryOperator minCostSingleAccess(String table) {
         QueryOperator minOp = new SequentialScanOperator(this.transaction, table);
-        // TODO(proj3_part2): implement
-        int val = -100000;
         int min = minOp.estimateIOCost(); // gets the minimum io cost of minOp
-        List<Integer> colIndices = getEligibleIndexColumns(table);
-        for (int index : colIndices) {
+        Set<Integer> used = Collections.emptySet();
+
+        // the range of each indexed column, and the predicates that make it up
+        Map<String, IndexRange> ranges = new LinkedHashMap<>();
+        Map<String, Set<Integer>> rangePredicates = new HashMap<>();
+        for (int index : getEligibleIndexColumns(table)) {
             SelectPredicate pred = this.selectPredicates.get(index);
-            QueryOperator query = new IndexScanOperator(this.transaction, table, pred.column, pred.operator, pred.value);
-            int indexIO = query.estimateIOCost(); // gets the index of the IO of the query plan
+            String column = pred.column.toLowerCase();
+            IndexRange range = ranges.computeIfAbsent(column, c -> new IndexRange(pred.column));
+            if (range.add(pred.operator, pred.value)) {
+                rangePredicates.computeIfAbsent(column, c -> new HashSet<>()).add(index);
+            }
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<String, IndexRange> entry : ranges.entrySet()) {
+            QueryOperator query = new IndexScanOperator(this.transaction, table, entry.getValue());
+            counts.put(entry.getKey(), query.getStats().getNumRecords());
+            int indexIO = query.estimateIOCost();
             if (min > indexIO) {
-                val = index;
                 minOp = query;
                 min = indexIO;
+                used = rangePredicates.get(entry.getKey());
             }
         }
-        minOp = addEligibleSelections(minOp, val);
+
+        for (List<String> indexColumns : this.transaction.getIndexColumns(table)) {
+            // indexes on a single column were handled above
+            if (indexColumns.size() < 2) continue;
+            Pair<IndexRange, Set<Integer>> prefixRange = getPrefixRange(table, indexColumns);
+            if (prefixRange == null) continue;
+            QueryOperator query = new IndexScanOperator(this.transaction, table, prefixRange.getFirst());
+            int indexIO = query.estimateIOCost();
+            if (min > indexIO) {
+                minOp = query;
+                min = indexIO;
+                used = prefixRange.getSecond();
+            }
+        }
+
+        // intersect the ranges of the 2, 3, ... most selective indexed columns
+        List<String> columns = new ArrayList<>(ranges.keySet());
+        columns.sort(Comparator.comparingInt(counts::get));
+        for (int n = 2; n <= columns.size(); ++n) {
+            List<IndexRange> intersected = new ArrayList<>();
+            Set<Integer> predicates = new HashSet<>();
+            for (String column : columns.subList(0, n)) {
+                intersected.add(ranges.get(column));
+                predicates.addAll(rangePredicates.get(column));
+            }
+            QueryOperator query = new IndexIntersectionOperator(this.transaction, table, intersected);
+            int intersectionIO = query.estimateIOCost();
+            if (min > intersectionIO) {
+                minOp = query;
+                min = intersectionIO;
+                used = predicates;
+            }
+        }
+        minOp = addEligibleSelections(minOp, used);
+        minOp = addExpressionSelections(minOp, 1 << this.tableNames.indexOf(table), 0);
 
         return minOp;
     }
 
+    /**
+     * If this query runs on more than one worker and the given access to a
+     * table is a sequential scan (with selects on it), replaces the scan with
+     * a parallel scan and gathers the output of the workers.
+     *
+     * @param access an operator returned by minCostSingleAccess
+     * @return the operator to access the table with
+     */
+    private QueryOperator addGather(QueryOperator access) {
+        if (this.degreeOfParallelism <= 1) return access;
+        SelectOperator lowestSelect = null;
+        QueryOperator scan = access;
+        while (scan.isSelect()) {
+            lowestSelect = (SelectOperator) scan;
+            scan = scan.getSource();
+        }
+        if (scan.getType() != QueryOperator.OperatorType.SEQ_SCAN) return access;
+        String table = ((SequentialScanOperator) scan).getTableName();
+        QueryOperator parallelScan = new ParallelScanOperator(this.transaction, table);
+        if (lowestSelect == null) {
+            access = parallelScan;
+        } else {
+            lowestSelect.setSource(parallelScan);
+        }
+        return new GatherOperator(access, this.transaction, this.degreeOfParallelism);
+    }
+
     // Task 6: Join Selection //////////////////////////////////////////////////
 
     /**
      * Given a join predicate between left and right operators, finds the lowest
-     * cost join operator out of join types in JoinOperator.JoinType. By default
-     * only considers SNLJ and BNLJ to prevent dependencies on GHJ, Sort and SMJ.
+     * cost join operator out of join types in JoinOperator.JoinType. Considers
+     * SNLJ, BNLJ and HHJ; SHJ and GHJ can fail on some inputs, and SMJ is only
+     * worth considering along with the orders its inputs are sorted in (see
+     * minCostJoinTree).
      *
      * Reminder: Your implementation does not need to consider cartesian products
      * and does not need to keep track of interesting orders.
@@ -615,6 +934,7 @@ public class QueryPlan {
         List<QueryOperator> allJoins = new ArrayList<>();
         allJoins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
         allJoins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new HHJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
         for (QueryOperator join : allJoins) {
             int joinCost = join.estimateIOCost();
             if (joinCost < minimumCost) {
@@ -721,43 +1041,255 @@ public class QueryPlan {
         return minOp;
     }
 
+    // Join Enumeration ////////////////////////////////////////////////////////
+
+    /**
+     * A plan for joining a set of tables, along with its estimated cost.
+     */
+    private static class CostedPlan {
+        private QueryOperator operator;
+        private int cost;
+
+        private CostedPlan(QueryOperator operator) {
+            this.operator = operator;
+            this.cost = operator.estimateIOCost();
+        }
+    }
+
+    /**
+     * The cheapest plans found so far for joining a set of tables: the
+     * cheapest plan overall, and for each interesting order, the cheapest plan
+     * whose output is sorted on it. A column is an interesting order for a set
+     * of tables if it is on one side of a join predicate between a table in
+     * the set and a table outside it, since a sort-merge join on that
+     * predicate doesn't have to sort the plan's output again.
+     */
+    private static class JoinPlans {
+        private CostedPlan cheapest;
+        private Map<String, CostedPlan> sorted = new HashMap<>();
+        private Set<String> interestingOrders;
+
+        private JoinPlans(Set<String> interestingOrders) {
+            this.interestingOrders = interestingOrders;
+        }
+
+        private void add(QueryOperator operator) {
+            CostedPlan plan = new CostedPlan(operator);
+            if (this.cheapest == null || plan.cost < this.cheapest.cost) this.cheapest = plan;
+            for (String column : operator.sortedBy()) {
+                String order = column.toLowerCase();
+                if (!this.interestingOrders.contains(order)) continue;
+                CostedPlan prev = this.sorted.get(order);
+                if (prev == null || plan.cost < prev.cost) this.sorted.put(order, plan);
+            }
+        }
+
+        /**
+         * @return the plans to use as an input sorted on a column: the
+         * cheapest plan overall (which may have to be sorted), and the
+         * cheapest plan already sorted on the column, if there is one
+         */
+        private List<QueryOperator> sortedOn(String column) {
+            List<QueryOperator> plans = new ArrayList<>();
+            plans.add(this.cheapest.operator);
+            CostedPlan sorted = this.sorted.get(column.toLowerCase());
+            if (sorted != null && sorted != this.cheapest) plans.add(sorted.operator);
+            return plans;
+        }
+    }
+
     /**
-     * Generates an optimized QueryPlan based on the System R cost-based query
-     * optimizer.
+     * Finds the lowest cost tree of joins over all of the tables in the query,
+     * including bushy trees, by dynamic programming over the join graph: the
+     * graph with a node for each table and an edge for each join predicate.
+     * Only connected sets of tables are ever joined (no cartesian products),
+     * and each way of splitting a connected set into two connected sets that
+     * are joined by a predicate is considered once, following the DPccp
+     * enumeration of Moerkotte and Neumann. The cheapest plans for each set of
+     * tables, along with their costs, are kept in a memo and reused by every
+     * larger set containing it.
+     *
+     * @return the lowest cost join tree, with each table accessed as by
+     * minCostSingleAccess
+     */
+    private QueryOperator minCostJoinTree() {
+        int numTables = this.tableNames.size();
+        if (numTables > Integer.SIZE - 1) {
+            throw new UnsupportedOperationException("Too many tables in query");
+        }
+        int[] neighbors = new int[numTables];
+        for (JoinPredicate predicate : this.joinPredicates) {
+            int left = this.tableNames.indexOf(predicate.leftTable);
+            int right = this.tableNames.indexOf(predicate.rightTable);
+            if (left < 0 || right < 0 || left == right) continue;
+            neighbors[left] |= 1 << right;
+            neighbors[right] |= 1 << left;
+        }
+
+        Map<Integer, JoinPlans> memo = new HashMap<>();
+        for (int i = 0; i < numTables; ++i) {
+            JoinPlans plans = new JoinPlans(this.interestingOrders(1 << i));
+            plans.add(addGather(minCostSingleAccess(this.tableNames.get(i))));
+            memo.put(1 << i, plans);
+        }
+
+        // both sides of a pair are joined before the union of the pair is
+        List<int[]> pairs = new ArrayList<>();
+        for (int i = numTables - 1; i >= 0; --i) {
+            this.emitCsg(1 << i, neighbors, pairs);
+            this.enumerateCsgRec(1 << i, (1 << (i + 1)) - 1, neighbors, pairs);
+        }
+        pairs.sort(Comparator.comparingInt(pair -> Integer.bitCount(pair[0] | pair[1])));
+        for (int[] pair : pairs) {
+            int union = pair[0] | pair[1];
+            JoinPlans plans = memo.get(union);
+            if (plans == null) {
+                plans = new JoinPlans(this.interestingOrders(union));
+                memo.put(union, plans);
+            }
+            this.addJoinPlans(plans, pair[0], memo.get(pair[0]), pair[1], memo.get(pair[1]));
+            this.addJoinPlans(plans, pair[1], memo.get(pair[1]), pair[0], memo.get(pair[0]));
+        }
+
+        JoinPlans all = memo.get((1 << numTables) - 1);
+        if (all == null) {
+            throw new IllegalArgumentException("Join predicates do not connect all of the tables");
+        }
+        return all.cheapest.operator;
+    }
+
+    /**
+     * Adds the plans for joining the tables in two sets, with the first set
+     * on the left, to the plans of their union. Expression predicates that
+     * use tables on both sides are checked on the output of each join.
+     */
+    private void addJoinPlans(JoinPlans plans, int leftSet, JoinPlans left, int rightSet, JoinPlans right) {
+        List<QueryOperator> joins = new ArrayList<>();
+        for (JoinPredicate predicate : this.joinPredicates) {
+            String leftColumn, rightColumn;
+            if (this.inSet(predicate.leftTable, leftSet) && this.inSet(predicate.rightTable, rightSet)) {
+                leftColumn = predicate.leftColumn;
+                rightColumn = predicate.rightColumn;
+            } else if (this.inSet(predicate.rightTable, leftSet) && this.inSet(predicate.leftTable, rightSet)) {
+                leftColumn = predicate.rightColumn;
+                rightColumn = predicate.leftColumn;
+            } else {
+                continue;
+            }
+            QueryOperator leftOp = left.cheapest.operator;
+            QueryOperator rightOp = right.cheapest.operator;
+            // nested loop joins materialize their right input as soon as they
+            // are created, so only joins of a single table are materialized
+            // while planning
+            if (rightOp.materialized() || Integer.bitCount(rightSet) == 1) {
+                joins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+                joins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+            }
+            joins.add(new HHJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+            for (QueryOperator sortedLeft : left.sortedOn(leftColumn)) {
+                for (QueryOperator sortedRight : right.sortedOn(rightColumn)) {
+                    // a right input that is already sorted is materialized too
+                    boolean sorted = sortedRight.sortedBy().contains(
+                            sortedRight.getSchema().matchFieldName(rightColumn));
+                    if (sorted && !sortedRight.materialized() && Integer.bitCount(rightSet) > 1) continue;
+                    joins.add(new SortMergeOperator(sortedLeft, sortedRight, leftColumn, rightColumn, this.transaction));
+                }
+            }
+        }
+        for (QueryOperator join : joins) {
+            plans.add(this.addExpressionSelections(join, leftSet, rightSet));
+        }
+    }
+
+    /**
+     * @return the interesting orders of a set of tables (see JoinPlans), in
+     * lower case
+     */
+    private Set<String> interestingOrders(int tableSet) {
+        Set<String> orders = new HashSet<>();
+        for (JoinPredicate predicate : this.joinPredicates) {
+            boolean left = this.inSet(predicate.leftTable, tableSet);
+            boolean right = this.inSet(predicate.rightTable, tableSet);
+            if (left && !right) orders.add(predicate.leftColumn.toLowerCase());
+            if (right && !left) orders.add(predicate.rightColumn.toLowerCase());
+        }
+        return orders;
+    }
+
+    private boolean inSet(String table, int tableSet) {
+        int i = this.tableNames.indexOf(table);
+        return i >= 0 && (tableSet & (1 << i)) != 0;
+    }
+
+    /**
+     * @return the tables adjacent to a set of tables in the join graph, not
+     * including the tables in the set
+     */
+    private static int neighborhood(int tableSet, int[] neighbors) {
+        int result = 0;
+        for (int rest = tableSet; rest != 0; rest &= rest - 1) {
+            result |= neighbors[Integer.numberOfTrailingZeros(rest)];
+        }
+        return result & ~tableSet;
+    }
+
+    /**
+     * Emits every connected set of tables that contains a connected set and
+     * tables outside of an excluded set, along with each of its complements.
+     */
+    private void enumerateCsgRec(int tableSet, int excluded, int[] neighbors, List<int[]> pairs) {
+        int n = neighborhood(tableSet, neighbors) & ~excluded;
+        for (int subset = n; subset != 0; subset = (subset - 1) & n) {
+            this.emitCsg(tableSet | subset, neighbors, pairs);
+        }
+        for (int subset = n; subset != 0; subset = (subset - 1) & n) {
+            this.enumerateCsgRec(tableSet | subset, excluded | n, neighbors, pairs);
+        }
+    }
+
+    /**
+     * Emits a pair for each connected complement of a connected set of tables:
+     * a connected set of tables adjacent to the set, all of whose tables come
+     * after the set's first table.
+     */
+    private void emitCsg(int tableSet, int[] neighbors, List<int[]> pairs) {
+        int first = Integer.numberOfTrailingZeros(tableSet);
+        int excluded = tableSet | ((1 << (first + 1)) - 1);
+        int n = neighborhood(tableSet, neighbors) & ~excluded;
+        for (int i = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(n); i >= 0; --i) {
+            if ((n & (1 << i)) == 0) continue;
+            pairs.add(new int[]{tableSet, 1 << i});
+            this.enumerateCmpRec(tableSet, 1 << i, excluded | (n & ((1 << (i + 1)) - 1)), neighbors, pairs);
+        }
+    }
+
+    /**
+     * Emits a pair for each connected complement of a connected set of tables
+     * that extends a connected complement with tables outside of an excluded
+     * set.
+     */
+    private void enumerateCmpRec(int tableSet, int complement, int excluded, int[] neighbors, List<int[]> pairs) {
+        int n = neighborhood(complement, neighbors) & ~excluded;
+        for (int subset = n; subset != 0; subset = (subset - 1) & n) {
+            pairs.add(new int[]{tableSet, complement | subset});
+        }
+        for (int subset = n; subset != 0; subset = (subset - 1) & n) {
+            this.enumerateCmpRec(tableSet, complement | subset, excluded | n, neighbors, pairs);
+        }
+    }
+
+    /**
+     * Generates an optimized QueryPlan based on a cost-based query optimizer:
+     * the cheapest way to access each table is found as in System R, and the
+     * cheapest tree of joins over them is found by minCostJoinTree.
      *
      * @return an iterator of records that is the result of this query
      */
     public Iterator<Record> execute() {
         this.transaction.setAliasMap(this.aliases);
-        // TODO(proj3_part2): implement
-        // Pass 1: For each table, find the lowest cost QueryOperator to access
-        // the table. Construct a mapping of each table name to its lowest cost
-        // operator.
-        //
-        // Pass i: On each pass, use the results from the previous pass to find
-        // the lowest cost joins with each table from pass 1. Repeat until all
-        // tables have been joined.
-        //
-        // Set the final operator to the lowest cost operator from the last
-        // pass, add group by, project, sort and limit operators, and return an
-        // iterator over the final operator.
-        // return this.executeNaive(); // TODO(proj3_part2): Replace this!
-        Map<Set<String>, QueryOperator> map = new HashMap<>();
-        Set<String> set;
-        Iterator<Record> retIt;
-        for (String table : tableNames) { // pass 1
-            set = new HashSet<>();
-            set.add(table);
-            QueryOperator temp = minCostSingleAccess(table);
-            map.put(set, minCostSingleAccess(table));
-        }
-        Map<Set<String>, QueryOperator> map2 = new HashMap<>(map);
-        for (int i = 0; i < tableNames.size() - 1; i++) { // pass i
-            map2 = minCostJoins(map2, map);
-        }
-        finalOperator = minCostOperator(map2);
-        addGroupBy();
-        addProject();
+        finalOperator = minCostJoinTree();
+        addGroupByAndProject();
+        addSort();
         addLimit();
         return finalOperator.iterator();
     }
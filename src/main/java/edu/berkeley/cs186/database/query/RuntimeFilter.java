@@ -0,0 +1,154 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.common.BloomFilter;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A filter on the join column of the probe side of a join, built at runtime
+ * from the join values of the build side: a probe record whose join value is
+ * not among them cannot have a match, and can be dropped before it is
+ * partitioned, sorted or materialized by the join.
+ *
+ * The filter is a Bloom filter, so a few records without matches get through.
+ * Until the entire build side has been added and finish() is called, the
+ * filter lets every record through, so it is safe to apply it early.
+ *
+ * The filter is pushed down to the scan under the probe side (see
+ * QueryOperator.pushDownRuntimeFilter), so it refers to a column by its index
+ * in the output of the probe side, which operators it is pushed through must
+ * not change.
+ */
+public class RuntimeFilter {
+    // target rate of records without matches that get through the filter
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private String columnName;
+    private int columnIndex;
+    private BloomFilter building;
+    private volatile BloomFilter filter;
+
+    /**
+     * @param columnName name of the probe column, for EXPLAIN
+     * @param columnIndex index of the probe column in the output of the probe side
+     * @param expectedValues expected number of distinct values on the build side
+     * @param maxBits maximum size of the filter in bits
+     */
+    public RuntimeFilter(String columnName, int columnIndex, int expectedValues, int maxBits) {
+        this.columnName = columnName;
+        this.columnIndex = columnIndex;
+        this.building = BloomFilter.create(expectedValues, FALSE_POSITIVE_RATE, maxBits);
+        this.filter = null;
+    }
+
+    public int getColumnIndex() {
+        return this.columnIndex;
+    }
+
+    /**
+     * Adds a join value of the build side.
+     */
+    public void add(DataBox value) {
+        if (this.filter != null) {
+            throw new IllegalStateException("runtime filter already built");
+        }
+        this.building.add(value);
+    }
+
+    /**
+     * Starts filtering, once every join value of the build side has been added.
+     */
+    public void finish() {
+        this.filter = this.building;
+    }
+
+    public boolean isBuilt() {
+        return this.filter != null;
+    }
+
+    /**
+     * @return false if no record on the build side has the value, true if some
+     * record might (or if the filter has not been built yet)
+     */
+    public boolean mightMatch(DataBox value) {
+        BloomFilter filter = this.filter;
+        return filter == null || filter.mightContain(value);
+    }
+
+    public boolean mightMatch(Record record) {
+        return this.mightMatch(record.getValue(this.columnIndex));
+    }
+
+    /**
+     * Unselects the rows of a batch that the filter rejects.
+     */
+    public void apply(RecordBatch batch) {
+        BloomFilter filter = this.filter;
+        if (filter == null) return;
+        int[] rows = batch.getSelection();
+        int n = 0;
+        for (int i = 0; i < batch.getNumSelected(); ++i) {
+            if (filter.mightContain(batch.getValue(rows[i], this.columnIndex))) rows[n++] = rows[i];
+        }
+        batch.setNumSelected(n);
+    }
+
+    /**
+     * @return the records of the iterator that the filter does not reject
+     */
+    public Iterator<Record> apply(Iterator<Record> records) {
+        return new Iterator<Record>() {
+            private Record nextRecord = null;
+
+            @Override
+            public boolean hasNext() {
+                while (this.nextRecord == null && records.hasNext()) {
+                    Record record = records.next();
+                    if (mightMatch(record)) this.nextRecord = record;
+                }
+                return this.nextRecord != null;
+            }
+
+            @Override
+            public Record next() {
+                if (!this.hasNext()) throw new NoSuchElementException();
+                Record record = this.nextRecord;
+                this.nextRecord = null;
+                return record;
+            }
+        };
+    }
+
+    /**
+     * @param records records of the build side
+     * @param buildColumnIndex index of the join column in the records
+     * @return the same records; each one's join value is added to the filter as
+     * it is read, and the filter is finished once they have all been read
+     */
+    public Iterator<Record> build(Iterator<Record> records, int buildColumnIndex) {
+        return new Iterator<Record>() {
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = records.hasNext();
+                if (!hasNext && !isBuilt()) finish();
+                return hasNext;
+            }
+
+            @Override
+            public Record next() {
+                Record record = records.next();
+                add(record.getValue(buildColumnIndex));
+                return record;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "runtime filter on " + this.columnName;
+    }
+}
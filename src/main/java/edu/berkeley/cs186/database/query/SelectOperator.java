@@ -2,7 +2,11 @@ package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.query.expr.CompiledExpression;
+import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -15,6 +19,12 @@ public class SelectOperator extends QueryOperator {
     private PredicateOperator operator;
     private DataBox value;
 
+    // The predicate as a compiled expression, used to filter records a record
+    // at a time, or null if the predicate is checked by SelectIterator itself.
+    // For a select on an arbitrary expression, this is the expression, and
+    // the column, operator and value are unused.
+    private CompiledExpression predicate;
+
     /**
      * Creates a new SelectOperator that pulls from source and only returns tuples for which the
      * predicate is satisfied.
@@ -34,10 +44,52 @@ public class SelectOperator extends QueryOperator {
 
         this.columnIndex = this.getSchema().findField(columnName);
         this.columnName = this.getSchema().getFieldName(columnIndex);
+        this.predicate = this.compilePredicate();
 
         this.stats = this.estimateStats();
     }
 
+    /**
+     * Creates a new SelectOperator that pulls from source and only returns
+     * tuples for which a boolean expression is true, for predicates that
+     * aren't a comparison of a column with a value, e.g. `a + b > 10`,
+     * `a < b` or `a = 1 OR b = 2`.
+     *
+     * @param source the source of this operator
+     * @param predicate the expression to evaluate on each record
+     */
+    public SelectOperator(QueryOperator source, Expression predicate) {
+        super(OperatorType.SELECT, source);
+        this.columnIndex = -1;
+        predicate.setSchema(this.getSchema());
+        this.predicate = CompiledExpression.compile(predicate);
+
+        this.stats = this.estimateStats();
+    }
+
+    /**
+     * Compiles the predicate, when comparing the column to the value with a
+     * comparison expression is the same as SelectIterator's check. It is for
+     * int, long, bool and string values of the same type; equality of data boxes
+     * of different types, or of floats, is not the same as their comparison
+     * being 0.
+     */
+    private CompiledExpression compilePredicate() {
+        TypeId columnType = this.getSchema().getFieldType(this.columnIndex).getTypeId();
+        if (columnType != this.value.getTypeId()) {
+            return null;
+        }
+        switch (columnType) {
+            case INT: case LONG: case BOOL: case STRING: break;
+            default: return null;
+        }
+        Expression expression = Expression.compare(this.operator.toSymbol(),
+                                                   Expression.column(this.columnName),
+                                                   Expression.literal(this.value));
+        expression.setSchema(this.getSchema());
+        return CompiledExpression.compile(expression);
+    }
+
     @Override
     public boolean isSelect() {
         return true;
@@ -50,18 +102,27 @@ public class SelectOperator extends QueryOperator {
 
     @Override
     public String str() {
+        if (this.operator == null) {
+            return String.format("Select %s (cost=%d)",
+                    this.predicate.getExpression(), this.estimateIOCost());
+        }
         return String.format("Select %s%s%s (cost=%d)",
                 this.columnName, this.operator.toSymbol(), this.value, this.estimateIOCost());
     }
 
     /**
-     * Estimates the table statistics for the result of executing this query operator.
+     * Estimates the table statistics for the result of executing this query
+     * operator. There are no estimates for selects on arbitrary expressions,
+     * which are assumed to keep every record.
      *
      * @return estimated TableStats
      */
     @Override
     public TableStats estimateStats() {
         TableStats stats = this.getSource().estimateStats();
+        if (this.operator == null) {
+            return stats;
+        }
         return stats.copyWithPredicate(this.columnIndex,
                                        this.operator,
                                        this.value);
@@ -75,6 +136,111 @@ public class SelectOperator extends QueryOperator {
     @Override
     public Iterator<Record> iterator() { return new SelectIterator(); }
 
+    @Override
+    public boolean pushDownRuntimeFilter(RuntimeFilter filter) {
+        return this.getSource().pushDownRuntimeFilter(filter);
+    }
+
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        Iterator<RecordBatch> sourceIterator = this.getSource().batchIterator();
+        return new Iterator<RecordBatch>() {
+            private RecordBatch nextBatch = null;
+
+            @Override
+            public boolean hasNext() {
+                while (this.nextBatch == null && sourceIterator.hasNext()) {
+                    RecordBatch batch = sourceIterator.next();
+                    filter(batch);
+                    if (batch.getNumSelected() > 0) {
+                        this.nextBatch = batch;
+                    }
+                }
+                return this.nextBatch != null;
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = this.nextBatch;
+                this.nextBatch = null;
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Unselects the rows of a batch that do not satisfy the predicate. Int, long
+     * and float columns compared with a value of the same type are compared
+     * without boxing.
+     */
+    private void filter(RecordBatch batch) {
+        int[] rows = batch.getSelection();
+        int numSelected = batch.getNumSelected();
+        int n = 0;
+        if (this.operator == null) {
+            for (int i = 0; i < numSelected; ++i) {
+                if (this.predicate.test(batch.getRecord(rows[i]))) rows[n++] = rows[i];
+            }
+            batch.setNumSelected(n);
+            return;
+        }
+        TypeId columnType = this.getSchema().getFieldType(this.columnIndex).getTypeId();
+        if (columnType == TypeId.INT && this.value.getTypeId() == TypeId.INT) {
+            int[] column = batch.getInts(this.columnIndex);
+            int v = this.value.getInt();
+            for (int i = 0; i < numSelected; ++i) {
+                if (this.matches(Integer.compare(column[rows[i]], v))) rows[n++] = rows[i];
+            }
+        } else if (columnType == TypeId.LONG && this.value.getTypeId() == TypeId.LONG) {
+            long[] column = batch.getLongs(this.columnIndex);
+            long v = this.value.getLong();
+            for (int i = 0; i < numSelected; ++i) {
+                if (this.matches(Long.compare(column[rows[i]], v))) rows[n++] = rows[i];
+            }
+        } else if (columnType == TypeId.FLOAT && this.value.getTypeId() == TypeId.FLOAT
+                   && this.operator != PredicateOperator.EQUALS && this.operator != PredicateOperator.NOT_EQUALS) {
+            // (equality of float data boxes is ==, not Float.compare, so it takes the general path)
+            float[] column = batch.getFloats(this.columnIndex);
+            float v = this.value.getFloat();
+            for (int i = 0; i < numSelected; ++i) {
+                if (this.matches(Float.compare(column[rows[i]], v))) rows[n++] = rows[i];
+            }
+        } else {
+            for (int i = 0; i < numSelected; ++i) {
+                DataBox d = batch.getValue(rows[i], this.columnIndex);
+                boolean match;
+                if (this.operator == PredicateOperator.EQUALS) {
+                    match = d.equals(this.value);
+                } else if (this.operator == PredicateOperator.NOT_EQUALS) {
+                    match = !d.equals(this.value);
+                } else {
+                    match = this.matches(d.compareTo(this.value));
+                }
+                if (match) rows[n++] = rows[i];
+            }
+        }
+        batch.setNumSelected(n);
+    }
+
+    /**
+     * @param cmp result of comparing a column value to the value of the predicate
+     * @return whether the predicate holds
+     */
+    private boolean matches(int cmp) {
+        switch (this.operator) {
+            case EQUALS: return cmp == 0;
+            case NOT_EQUALS: return cmp != 0;
+            case LESS_THAN: return cmp < 0;
+            case LESS_THAN_EQUALS: return cmp <= 0;
+            case GREATER_THAN: return cmp > 0;
+            case GREATER_THAN_EQUALS: return cmp >= 0;
+            default: return false;
+        }
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
@@ -99,6 +265,13 @@ public class SelectOperator extends QueryOperator {
             }
             while (this.sourceIterator.hasNext()) {
                 Record r = this.sourceIterator.next();
+                if (predicate != null) {
+                    if (predicate.test(r)) {
+                        this.nextRecord = r;
+                        return true;
+                    }
+                    continue;
+                }
                 switch (SelectOperator.this.operator) {
                 case EQUALS:
                     if (r.getValue(SelectOperator.this.columnIndex).equals(value)) {
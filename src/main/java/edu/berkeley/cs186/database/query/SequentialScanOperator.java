@@ -3,14 +3,20 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class SequentialScanOperator extends QueryOperator {
     private TransactionContext transaction;
     private String tableName;
+    // runtime filters pushed down by joins above this scan
+    private List<RuntimeFilter> runtimeFilters;
 
     /**
      * Creates a new SequentialScanOperator that provides an iterator on all
@@ -33,6 +39,7 @@ public class SequentialScanOperator extends QueryOperator {
         super(type);
         this.transaction = transaction;
         this.tableName = tableName;
+        this.runtimeFilters = new CopyOnWriteArrayList<>();
         this.setOutputSchema(this.computeSchema());
 
         this.stats = this.estimateStats();
@@ -49,7 +56,72 @@ public class SequentialScanOperator extends QueryOperator {
 
     @Override
     public Iterator<Record> iterator() {
-        return this.backtrackingIterator();
+        Iterator<Record> records = this.backtrackingIterator();
+        for (RuntimeFilter filter : this.runtimeFilters) {
+            records = filter.apply(records);
+        }
+        return records;
+    }
+
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        return this.applyRuntimeFilters(this.transaction.getTable(tableName).batchIterator());
+    }
+
+    /**
+     * Only iterator() and batchIterator() apply the filters, since joins that
+     * need to backtrack over their inputs do not push filters down to them.
+     */
+    @Override
+    public boolean pushDownRuntimeFilter(RuntimeFilter filter) {
+        this.runtimeFilters.add(filter);
+        return true;
+    }
+
+    /**
+     * @return the batches, with the rows that the runtime filters pushed down
+     * to this scan reject unselected, and batches with no rows left skipped
+     */
+    protected Iterator<RecordBatch> applyRuntimeFilters(Iterator<RecordBatch> batches) {
+        if (this.runtimeFilters.isEmpty()) return batches;
+        return new Iterator<RecordBatch>() {
+            private RecordBatch nextBatch = null;
+
+            @Override
+            public boolean hasNext() {
+                while (this.nextBatch == null && batches.hasNext()) {
+                    RecordBatch batch = batches.next();
+                    for (RuntimeFilter filter : runtimeFilters) {
+                        filter.apply(batch);
+                    }
+                    if (batch.getNumSelected() > 0) {
+                        this.nextBatch = batch;
+                    }
+                }
+                return this.nextBatch != null;
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = this.nextBatch;
+                this.nextBatch = null;
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * @return the EXPLAIN lines for the runtime filters pushed down to this scan
+     */
+    protected String runtimeFiltersStr() {
+        StringBuilder s = new StringBuilder();
+        for (RuntimeFilter filter : this.runtimeFilters) {
+            s.append("\n\t").append(filter);
+        }
+        return s.toString();
     }
 
     @Override
@@ -67,7 +139,8 @@ public class SequentialScanOperator extends QueryOperator {
 
     @Override
     public String str() {
-        return "Seq Scan on " + this.tableName + " (cost=" + this.estimateIOCost() + ")";
+        return "Seq Scan on " + this.tableName + " (cost=" + this.estimateIOCost() + ")" +
+               this.runtimeFiltersStr();
     }
 
     @Override
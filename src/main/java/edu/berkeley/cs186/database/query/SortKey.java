@@ -0,0 +1,199 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The columns that records are sorted on, each in ascending or descending
+ * order, with later columns breaking ties between earlier ones.
+ *
+ * Besides comparing records directly, a sort key can encode the sort columns
+ * of a record as a normalized key: a byte string such that comparing the
+ * normalized keys of two records as unsigned bytes (see compareKeys) orders
+ * them the same way as comparing their values. Sorting by normalized keys
+ * avoids comparing data boxes (and dispatching on their types) over and over.
+ *
+ * Values are encoded as follows, with all of the bytes of a value inverted if
+ * its column is sorted in descending order:
+ *   - booleans as one byte, 0 or 1
+ *   - ints and longs as big-endian two's complement with the sign bit flipped
+ *   - floats as their IEEE 754 bits, big-endian, with the sign bit flipped if
+ *     it is not set and every bit flipped if it is (this orders floats the
+ *     way Float.compare does)
+ *   - strings as one byte c + 1 for each char c below 0x7E, and 0x7F followed
+ *     by the two bytes of the char otherwise, ending with a 0 byte (so that a
+ *     string sorts before any longer string it is a prefix of)
+ *   - byte arrays (which all have the length of their column) as their bytes
+ */
+public class SortKey {
+    private List<Integer> columnIndices;
+    private List<String> columnNames;
+    private List<Boolean> descending;
+
+    /**
+     * @param schema the schema of the records to sort
+     * @param columnNames the names of the columns to sort on, most significant first
+     * @param descending for each column, whether it is sorted in descending order
+     */
+    public SortKey(Schema schema, List<String> columnNames, List<Boolean> descending) {
+        if (columnNames.isEmpty() || columnNames.size() != descending.size()) {
+            throw new IllegalArgumentException("need a sort order for each of at least one sort column");
+        }
+        this.columnIndices = new ArrayList<>();
+        this.columnNames = new ArrayList<>();
+        for (String columnName : columnNames) {
+            int index = schema.findField(columnName);
+            this.columnIndices.add(index);
+            this.columnNames.add(schema.getFieldName(index));
+        }
+        this.descending = new ArrayList<>(descending);
+    }
+
+    /**
+     * A sort key on a single column in ascending order.
+     */
+    public SortKey(Schema schema, String columnName) {
+        this(schema, Collections.singletonList(columnName), Collections.singletonList(false));
+    }
+
+    /**
+     * @return the (fully qualified) names of the sort columns
+     */
+    public List<String> getColumnNames() {
+        return this.columnNames;
+    }
+
+    /**
+     * @return the columns that records sorted on this key are sorted by, in
+     * the sense of QueryOperator.sortedBy: the first sort column, if it is in
+     * ascending order
+     */
+    public List<String> sortedBy() {
+        if (this.descending.get(0)) return Collections.emptyList();
+        return Collections.singletonList(this.columnNames.get(0));
+    }
+
+    /**
+     * @return a comparator that compares records on their values in the sort
+     * columns
+     */
+    public Comparator<Record> comparator() {
+        return (r1, r2) -> {
+            for (int i = 0; i < this.columnIndices.size(); ++i) {
+                int index = this.columnIndices.get(i);
+                int cmp = r1.getValue(index).compareTo(r2.getValue(index));
+                if (cmp != 0) return this.descending.get(i) ? -cmp : cmp;
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * @return the normalized key of a record
+     */
+    public byte[] normalize(Record record) {
+        KeyBuilder key = new KeyBuilder();
+        for (int i = 0; i < this.columnIndices.size(); ++i) {
+            int start = key.length;
+            key.append(record.getValue(this.columnIndices.get(i)));
+            if (this.descending.get(i)) key.invert(start);
+        }
+        return Arrays.copyOf(key.bytes, key.length);
+    }
+
+    /**
+     * A normalized key, as it is being encoded.
+     */
+    private static class KeyBuilder {
+        private byte[] bytes = new byte[16];
+        private int length = 0;
+
+        private void append(DataBox value) {
+            switch (value.getTypeId()) {
+                case BOOL:
+                    this.write(value.getBool() ? 1 : 0);
+                    break;
+                case INT:
+                    this.writeInt(value.getInt() ^ Integer.MIN_VALUE);
+                    break;
+                case LONG:
+                    long l = value.getLong() ^ Long.MIN_VALUE;
+                    this.writeInt((int) (l >>> 32));
+                    this.writeInt((int) l);
+                    break;
+                case FLOAT:
+                    int bits = Float.floatToIntBits(value.getFloat());
+                    this.writeInt(bits ^ ((bits >> 31) | Integer.MIN_VALUE));
+                    break;
+                case STRING:
+                    String s = value.getString();
+                    for (int i = 0; i < s.length(); ++i) {
+                        char c = s.charAt(i);
+                        if (c < 0x7E) {
+                            this.write(c + 1);
+                        } else {
+                            this.write(0x7F);
+                            this.write(c >>> 8);
+                            this.write(c);
+                        }
+                    }
+                    this.write(0);
+                    break;
+                case BYTE_ARRAY:
+                    for (byte b : value.toBytes()) this.write(b);
+                    break;
+                default:
+                    throw new RuntimeException("Cannot compare " + value.type());
+            }
+        }
+
+        private void write(int b) {
+            if (this.length == this.bytes.length) this.bytes = Arrays.copyOf(this.bytes, 2 * this.length);
+            this.bytes[this.length++] = (byte) b;
+        }
+
+        private void writeInt(int i) {
+            this.write(i >>> 24);
+            this.write(i >>> 16);
+            this.write(i >>> 8);
+            this.write(i);
+        }
+
+        /**
+         * Inverts the bytes written since start.
+         */
+        private void invert(int start) {
+            for (int i = start; i < this.length; ++i) this.bytes[i] = (byte) ~this.bytes[i];
+        }
+    }
+
+    /**
+     * Compares two normalized keys as strings of unsigned bytes.
+     */
+    public static int compareKeys(byte[] key1, byte[] key2) {
+        int n = Math.min(key1.length, key2.length);
+        for (int i = 0; i < n; ++i) {
+            int cmp = (key1[i] & 0xFF) - (key2[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return key1.length - key2.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < this.columnNames.size(); ++i) {
+            if (i > 0) s.append(", ");
+            s.append(this.columnNames.get(i));
+            if (this.descending.get(i)) s.append(" DESC");
+        }
+        return s.toString();
+    }
+}
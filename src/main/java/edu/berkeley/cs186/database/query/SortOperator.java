@@ -1,38 +1,63 @@
 package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.TransactionContext;
-import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.query.disk.Run;
+import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+/**
+ * Sorts the records of its source with an external merge sort on a sort key
+ * of one or more columns, each in ascending or descending order. Records are
+ * compared by their normalized keys (see SortKey) rather than by their values.
+ *
+ * Pass 0 generates sorted runs by replacement selection: the records in
+ * memory are kept in a heap, and each record taken from the heap is replaced
+ * by the next record of the source, which joins the current run if it is no
+ * smaller than the record just written out, and the next run otherwise. On
+ * random input this produces runs of about twice the number of records that
+ * fit in memory. If the transaction runs queries on more than one worker,
+ * pass 0 instead reads B pages at a time and splits each block across the
+ * workers, which sort their share in parallel; the sorted pieces are then
+ * merged into a run.
+ *
+ * Runs are merged B - 1 at a time with a loser tree, which replays a single
+ * path of log(B - 1) comparisons to find each next record.
+ */
 public class SortOperator extends QueryOperator {
     protected Comparator<Record> comparator;
     private TransactionContext transaction;
     private Run sortedRecords;
     private int numBuffers;
-    private int sortColumnIndex;
-    private String sortColumnName;
+    private SortKey sortKey;
+    // filter built from the records as they are read from the source, if any
+    private RuntimeFilter runtimeFilter;
+    private int runtimeFilterColumnIndex;
 
     public SortOperator(TransactionContext transaction, QueryOperator source,
                         String columnName) {
+        this(transaction, source, Collections.singletonList(columnName), Collections.singletonList(false));
+    }
+
+    /**
+     * @param columnNames the columns to sort on, most significant first
+     * @param descending for each column, whether it is sorted in descending order
+     */
+    public SortOperator(TransactionContext transaction, QueryOperator source,
+                        List<String> columnNames, List<Boolean> descending) {
         super(OperatorType.SORT, source);
         this.transaction = transaction;
         this.numBuffers = this.transaction.getWorkMemSize();
-        this.sortColumnIndex = getSchema().findField(columnName);
-        this.sortColumnName = getSchema().getFieldName(this.sortColumnIndex);
-        this.comparator = new RecordComparator();
-    }
-
-    private class RecordComparator implements Comparator<Record> {
-        @Override
-        public int compare(Record r1, Record r2) {
-            return r1.getValue(sortColumnIndex).compareTo(r2.getValue(sortColumnIndex));
-        }
+        this.sortKey = new SortKey(getSchema(), columnNames, descending);
+        this.comparator = this.sortKey.comparator();
     }
 
     @Override
@@ -60,12 +85,32 @@ public class SortOperator extends QueryOperator {
 
     @Override
     public List<String> sortedBy() {
-        return Collections.singletonList(sortColumnName);
+        return this.sortKey.sortedBy();
     }
 
     @Override
     public boolean materialized() { return true; }
 
+    @Override
+    public boolean pushDownRuntimeFilter(RuntimeFilter filter) {
+        // only the records read after the filter is pushed down are filtered
+        return this.sortedRecords == null && this.getSource().pushDownRuntimeFilter(filter);
+    }
+
+    /**
+     * Builds a runtime filter from the values in a column of the source's
+     * records as they are read to be sorted, and finishes it once they have
+     * all been read.
+     *
+     * @return false if the records have already been sorted
+     */
+    public boolean buildRuntimeFilter(RuntimeFilter filter, int columnIndex) {
+        if (this.sortedRecords != null) return false;
+        this.runtimeFilter = filter;
+        this.runtimeFilterColumnIndex = columnIndex;
+        return true;
+    }
+
     @Override
     public BacktrackingIterator<Record> backtrackingIterator() {
         if (this.sortedRecords == null) this.sortedRecords = sort();
@@ -79,74 +124,58 @@ public class SortOperator extends QueryOperator {
 
     /**
      * Returns a Run containing records from the input iterator in sorted order.
-     * You're free to use an in memory sort over all the records using one of
-     * Java's built-in sorting methods.
      *
      * @return a single sorted run containing all the records from the input
      * iterator
      */
     public Run sortRun(Iterator<Record> records) {
-        // TODO(proj3_part1): implement
-        List<Record> recordList = new ArrayList<>();
+        List<KeyedRecord> keyedRecords = new ArrayList<>();
         while (records.hasNext()) {
-            recordList.add(records.next());
+            keyedRecords.add(new KeyedRecord(this.sortKey, records.next()));
         }
-        Collections.sort(recordList, comparator);
-        return makeRun(recordList);
+        keyedRecords.sort(KeyedRecord.ORDER);
+        Run run = makeRun();
+        for (KeyedRecord keyedRecord : keyedRecords) run.add(keyedRecord.record);
+        return run;
     }
 
     /**
      * Given a list of sorted runs, returns a new run that is the result of
-     * merging the input runs. You should use a Priority Queue (java.util.PriorityQueue)
-     * to determine which record should be should be added to the output run
-     * next.
-     *
-     * You are NOT allowed to have more than runs.size() records in your
-     * priority queue at a given moment. It is recommended that your Priority
-     * Queue hold Pair<Record, Integer> objects where a Pair (r, i) is the
-     * Record r with the smallest value you are sorting on currently unmerged
-     * from run i. `i` can be useful to locate which record to add to the queue
-     * next after the smallest element is removed.
+     * merging the input runs with a loser tree, which holds the next unmerged
+     * record of each run.
      *
      * @return a single sorted run obtained by merging the input runs
      */
     public Run mergeSortedRuns(List<Run> runs) {
         assert (runs.size() <= this.numBuffers - 1);
-        // TODO(proj3_part1): implement
-        PriorityQueue<Pair<Record, Integer>> pq = new PriorityQueue<>(new RecordPairComparator());
-        List<Iterator<Record>> runIters = new ArrayList<>(runs.size());
-        List<Record> recordList = new ArrayList<>();
-        for (int i = 0; i < runs.size(); i++) {
-            Iterator<Record> runIter = runs.get(i).iterator();
-            if (runIter.hasNext()) {
-                runIters.add(runIter);
-                pq.offer(new Pair<>(runIter.next(), i));
-            }
-        }
-        while (!pq.isEmpty()) {
-            Pair<Record, Integer> pair = pq.poll();
-            int i = pair.getSecond();
-            Record record = pair.getFirst();
-            recordList.add(record);
-            Iterator<Record> runIter = runIters.get(i);
-            if (runIter.hasNext()) {
-                pq.offer(new Pair<>(runIter.next(), i));
-            }
+        List<Iterator<KeyedRecord>> sources = new ArrayList<>(runs.size());
+        for (Run run : runs) {
+            Iterator<Record> runIter = run.iterator();
+            sources.add(new Iterator<KeyedRecord>() {
+                @Override
+                public boolean hasNext() {
+                    return runIter.hasNext();
+                }
+
+                @Override
+                public KeyedRecord next() {
+                    return new KeyedRecord(sortKey, runIter.next());
+                }
+            });
         }
-        Run retRun = makeRun(recordList);
-        return retRun;
+        return this.merge(sources);
     }
 
     /**
-     * Compares the two (record, integer) pairs based only on the record
-     * component using the default comparator. You may find this useful for
-     * implementing mergeSortedRuns.
+     * @return a new run with the records of the sorted sources, merged with a
+     * loser tree
      */
-    private class RecordPairComparator implements Comparator<Pair<Record, Integer>> {
-        @Override
-        public int compare(Pair<Record, Integer> o1, Pair<Record, Integer> o2) {
-            return SortOperator.this.comparator.compare(o1.getFirst(), o2.getFirst());
-        }
+    private Run merge(List<Iterator<KeyedRecord>> sources) {
+        Run run = makeRun();
+        if (sources.isEmpty()) return run;
+        LoserTree tree = new LoserTree(sources);
+        while (tree.hasNext()) run.add(tree.next().record);
+        return run;
     }
 
     /**
@@ -173,25 +202,126 @@ public class SortOperator extends QueryOperator {
 
     /**
      * Does an external merge sort over the records of the source operator.
-     * You may find the getBlockIterator method of the QueryOperator class useful
-     * here to create your initial set of sorted runs.
      *
      * @return a single run containing all of the source operator's records in
      * sorted order.
      */
     public Run sort() {
         // Iterator over the records of the relation we want to sort
-        Iterator<Record> sourceIterator = getSource().iterator();
-
-        // TODO(proj3_part1): implement
-        List<Run> initialRuns = new ArrayList<>();
         Iterator<Record> sourceIter = getSource().iterator();
-        while (sourceIter.hasNext()) {
-            Iterator<Record> blockIter = getBlockIterator(sourceIter, getSource().getSchema(), numBuffers);
-            Run run = sortRun(blockIter);
-            initialRuns.add(run);
+        if (this.runtimeFilter != null) {
+            sourceIter = this.runtimeFilter.build(sourceIter, this.runtimeFilterColumnIndex);
+        }
+
+        List<Run> runs = generateRuns(sourceIter);
+        // the source may be empty (e.g. once a runtime filter is applied to it)
+        if (runs.isEmpty()) return makeRun();
+        while (runs.size() > 1) {
+            runs = mergePass(runs);
         }
-        return mergePass(initialRuns).get(0);
+        return runs.get(0);
+    }
+
+    /**
+     * Generates the sorted runs of pass 0: by replacement selection if the
+     * transaction runs queries on a single worker, and by sorting blocks of B
+     * pages across the workers otherwise.
+     *
+     * @return the sorted runs, in the order they were generated
+     */
+    public List<Run> generateRuns(Iterator<Record> records) {
+        int numWorkers = this.transaction.getDegreeOfParallelism();
+        if (numWorkers > 1) return this.parallelRuns(records, numWorkers);
+        return this.replacementSelectionRuns(records);
+    }
+
+    /**
+     * Generates the sorted runs of pass 0 by replacement selection, with as
+     * many records in memory as fit in B pages.
+     *
+     * @return the sorted runs, in the order they were generated
+     */
+    private List<Run> replacementSelectionRuns(Iterator<Record> records) {
+        int capacity = this.numBuffers * this.getRecordsPerPage();
+        // records of the current run come before records of the next run
+        PriorityQueue<KeyedRecord> heap = new PriorityQueue<>(capacity,
+                Comparator.<KeyedRecord>comparingInt(r -> r.runNumber).thenComparing(KeyedRecord.ORDER));
+        while (heap.size() < capacity && records.hasNext()) {
+            heap.add(new KeyedRecord(this.sortKey, records.next()));
+        }
+
+        List<Run> runs = new ArrayList<>();
+        Run run = null;
+        int runNumber = -1;
+        while (!heap.isEmpty()) {
+            KeyedRecord smallest = heap.poll();
+            if (smallest.runNumber != runNumber) {
+                run = makeRun();
+                runs.add(run);
+                runNumber = smallest.runNumber;
+            }
+            run.add(smallest.record);
+            if (records.hasNext()) {
+                KeyedRecord next = new KeyedRecord(this.sortKey, records.next());
+                // a record smaller than the one just written out has to wait
+                // for the next run
+                next.runNumber = KeyedRecord.ORDER.compare(next, smallest) < 0 ? runNumber + 1 : runNumber;
+                heap.add(next);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Generates the sorted runs of pass 0 a block of B pages at a time, with
+     * the records of each block split across the workers to be sorted in
+     * parallel. Runs are written out by the calling thread, since they are
+     * tables of the transaction.
+     *
+     * @return the sorted runs, one for each block
+     */
+    private List<Run> parallelRuns(Iterator<Record> records, int numWorkers) {
+        ExecutorService executor = this.transaction.getQueryExecutor();
+        List<Run> runs = new ArrayList<>();
+        while (records.hasNext()) {
+            List<Record> block = new ArrayList<>();
+            getBlockIterator(records, getSchema(), this.numBuffers).forEachRemaining(block::add);
+            int pieceSize = (block.size() + numWorkers - 1) / numWorkers;
+            List<Future<List<KeyedRecord>>> pieces = new ArrayList<>();
+            for (int start = 0; start < block.size(); start += pieceSize) {
+                List<Record> piece = block.subList(start, Math.min(start + pieceSize, block.size()));
+                pieces.add(executor.submit(() -> {
+                    List<KeyedRecord> keyedRecords = new ArrayList<>(piece.size());
+                    for (Record record : piece) keyedRecords.add(new KeyedRecord(this.sortKey, record));
+                    keyedRecords.sort(KeyedRecord.ORDER);
+                    return keyedRecords;
+                }));
+            }
+            List<Iterator<KeyedRecord>> sources = new ArrayList<>();
+            for (Future<List<KeyedRecord>> piece : pieces) {
+                sources.add(getPiece(piece).iterator());
+            }
+            runs.add(this.merge(sources));
+        }
+        return runs;
+    }
+
+    private static List<KeyedRecord> getPiece(Future<List<KeyedRecord>> piece) {
+        try {
+            return piece.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private int getRecordsPerPage() {
+        return Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, getSchema());
     }
 
     /**
@@ -210,5 +340,97 @@ public class SortOperator extends QueryOperator {
         run.addAll(records);
         return run;
     }
-}
 
+    /**
+     * A record along with its normalized key.
+     */
+    private static class KeyedRecord {
+        private static final Comparator<KeyedRecord> ORDER = (r1, r2) -> SortKey.compareKeys(r1.key, r2.key);
+
+        private byte[] key;
+        private Record record;
+        // the run the record goes to, during replacement selection
+        private int runNumber;
+
+        private KeyedRecord(SortKey sortKey, Record record) {
+            this.key = sortKey.normalize(record);
+            this.record = record;
+        }
+    }
+
+    /**
+     * Merges sorted sources of records. Leaf k + i of the tree is source i
+     * (for k sources), and each internal node holds the source that lost the
+     * comparison there, with the overall winner held at node 0. Taking the
+     * winner's record only changes the comparisons on the path from its leaf
+     * to the root, so they are replayed against the losers on that path.
+     * Exhausted sources lose to every other source, and ties go to the source
+     * with the lower index.
+     */
+    private static class LoserTree implements Iterator<KeyedRecord> {
+        private List<Iterator<KeyedRecord>> sources;
+        private KeyedRecord[] heads;
+        private int[] tree;
+
+        private LoserTree(List<Iterator<KeyedRecord>> sources) {
+            int k = sources.size();
+            this.sources = sources;
+            this.heads = new KeyedRecord[k];
+            for (int i = 0; i < k; ++i) this.advance(i);
+            this.tree = new int[k];
+            this.tree[0] = this.build(1);
+        }
+
+        /**
+         * Fills in the losers of the subtree rooted at a node.
+         *
+         * @return the winner of the subtree
+         */
+        private int build(int node) {
+            int k = this.heads.length;
+            if (node >= k) return node - k;
+            int left = this.build(2 * node);
+            int right = this.build(2 * node + 1);
+            if (this.beats(left, right)) {
+                this.tree[node] = right;
+                return left;
+            }
+            this.tree[node] = left;
+            return right;
+        }
+
+        private boolean beats(int i, int j) {
+            if (this.heads[i] == null) return false;
+            if (this.heads[j] == null) return true;
+            int cmp = KeyedRecord.ORDER.compare(this.heads[i], this.heads[j]);
+            return cmp < 0 || (cmp == 0 && i < j);
+        }
+
+        private void advance(int i) {
+            Iterator<KeyedRecord> source = this.sources.get(i);
+            this.heads[i] = source.hasNext() ? source.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.heads[this.tree[0]] != null;
+        }
+
+        @Override
+        public KeyedRecord next() {
+            if (!this.hasNext()) throw new NoSuchElementException();
+            int winner = this.tree[0];
+            KeyedRecord result = this.heads[winner];
+            this.advance(winner);
+            for (int node = (winner + this.heads.length) / 2; node > 0; node /= 2) {
+                if (this.beats(this.tree[node], winner)) {
+                    int loser = winner;
+                    winner = this.tree[node];
+                    this.tree[node] = loser;
+                }
+            }
+            this.tree[0] = winner;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.iterator.ArrayBacktrackingIterator;
+import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
+import edu.berkeley.cs186.database.query.disk.Run;
+import edu.berkeley.cs186.database.table.PageDirectory;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.*;
+
+/**
+ * Outputs the first n records of the source in sorted order, for a sort that
+ * is followed by a limit (ORDER BY ... LIMIT). Unlike a SortOperator, only
+ * the n smallest records seen so far are kept, so the source is read once and
+ * nothing is written out as long as n records fit in memory.
+ *
+ * When n records fit in B pages, they are kept in a heap. Otherwise, the
+ * source is read B pages at a time; each block is sorted in memory and merged
+ * into a run of the n smallest records so far, and once the run is full,
+ * records that are no smaller than its last record are skipped without being
+ * added to a block.
+ */
+public class TopNOperator extends QueryOperator {
+    private TransactionContext transaction;
+    private Comparator<Record> comparator;
+    private int numBuffers;
+    private int n;
+    private SortKey sortKey;
+    // the first n records, once they have been found
+    private List<Record> topRecords;
+    private Run topRun;
+
+    /**
+     * @param n the number of records to output (the limit plus the offset)
+     */
+    public TopNOperator(TransactionContext transaction, QueryOperator source,
+                        String columnName, int n) {
+        this(transaction, source, Collections.singletonList(columnName), Collections.singletonList(false), n);
+    }
+
+    /**
+     * @param columnNames the columns to sort on, most significant first
+     * @param descending for each column, whether it is sorted in descending order
+     * @param n the number of records to output (the limit plus the offset)
+     */
+    public TopNOperator(TransactionContext transaction, QueryOperator source,
+                        List<String> columnNames, List<Boolean> descending, int n) {
+        super(OperatorType.TOP_N, source);
+        if (n < 0) {
+            throw new IllegalArgumentException("negative number of records for top-n");
+        }
+        this.transaction = transaction;
+        this.numBuffers = this.transaction.getWorkMemSize();
+        this.n = n;
+        this.sortKey = new SortKey(getSchema(), columnNames, descending);
+        this.comparator = this.sortKey.comparator();
+        this.stats = this.estimateStats();
+    }
+
+    @Override
+    public Schema computeSchema() {
+        return getSource().getSchema();
+    }
+
+    @Override
+    public TableStats estimateStats() {
+        return getSource().estimateStats();
+    }
+
+    /**
+     * Nothing is written out when n records fit in memory. Otherwise, each
+     * block of B pages is merged with the run of the first n records so far,
+     * reading the run and writing it back out.
+     */
+    @Override
+    public int estimateIOCost() {
+        int sourceCost = getSource().estimateIOCost();
+        if (this.fitsInMemory()) return sourceCost;
+        int numPages = getSource().estimateStats().getNumPages();
+        int numRunPages = (int) Math.ceil((double) this.n / this.getRecordsPerPage());
+        double numBlocks = Math.ceil(numPages / (double) this.numBuffers);
+        return (int) Math.min(sourceCost + 2 * numBlocks * numRunPages, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public String str() {
+        return "Top-N Sort (n=" + this.n + ", cost=" + this.estimateIOCost() + ")";
+    }
+
+    @Override
+    public List<String> sortedBy() {
+        return this.sortKey.sortedBy();
+    }
+
+    @Override
+    public boolean materialized() { return true; }
+
+    @Override
+    public BacktrackingIterator<Record> backtrackingIterator() {
+        if (this.topRecords == null && this.topRun == null) {
+            if (this.fitsInMemory()) {
+                this.topRecords = this.heapTopN();
+            } else {
+                this.topRun = this.blockTopN();
+            }
+        }
+        if (this.topRun != null) return this.topRun.iterator();
+        return new ArrayBacktrackingIterator<>(this.topRecords);
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return backtrackingIterator();
+    }
+
+    /**
+     * @return the first n records of the source in sorted order, found by
+     * keeping the n smallest records seen so far in a max-heap
+     */
+    private List<Record> heapTopN() {
+        List<Record> result = new ArrayList<>();
+        if (this.n == 0) return result;
+        PriorityQueue<Record> heap = new PriorityQueue<>(this.n, this.comparator.reversed());
+        for (Record record : getSource()) {
+            if (heap.size() < this.n) {
+                heap.add(record);
+            } else if (this.comparator.compare(record, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(record);
+            }
+        }
+        result.addAll(heap);
+        result.sort(this.comparator);
+        return result;
+    }
+
+    /**
+     * @return a run of the first n records of the source in sorted order,
+     * found by merging each block of B pages into a run of the n smallest
+     * records so far
+     */
+    private Run blockTopN() {
+        Run top = new Run(this.transaction, getSchema());
+        // the last record of the run, once the run has n records
+        Record cutoff = null;
+        int blockSize = this.numBuffers * this.getRecordsPerPage();
+        Iterator<Record> sourceIterator = getSource().iterator();
+        while (sourceIterator.hasNext()) {
+            List<Record> block = new ArrayList<>();
+            while (block.size() < blockSize && sourceIterator.hasNext()) {
+                Record record = sourceIterator.next();
+                if (cutoff == null || this.comparator.compare(record, cutoff) < 0) block.add(record);
+            }
+            if (block.isEmpty()) continue;
+            block.sort(this.comparator);
+
+            // merge the block into the run, keeping the first n records
+            Run merged = new Run(this.transaction, getSchema());
+            int numMerged = 0;
+            Iterator<Record> topIterator = top.iterator();
+            Record topRecord = topIterator.hasNext() ? topIterator.next() : null;
+            int i = 0;
+            while (numMerged < this.n && (topRecord != null || i < block.size())) {
+                Record next;
+                if (i == block.size() ||
+                        (topRecord != null && this.comparator.compare(topRecord, block.get(i)) <= 0)) {
+                    next = topRecord;
+                    topRecord = topIterator.hasNext() ? topIterator.next() : null;
+                } else {
+                    next = block.get(i++);
+                }
+                merged.add(next);
+                ++numMerged;
+                if (numMerged == this.n) cutoff = next;
+            }
+            top = merged;
+        }
+        return top;
+    }
+
+    private boolean fitsInMemory() {
+        return (long) this.numBuffers * this.getRecordsPerPage() >= this.n;
+    }
+
+    private int getRecordsPerPage() {
+        return Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, getSchema());
+    }
+}
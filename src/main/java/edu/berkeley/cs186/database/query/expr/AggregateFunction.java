@@ -243,6 +243,12 @@ abstract class AggregateFunction extends Expression {
             }
         }
 
+        @Override
+        protected void copySubexpressions() {
+            this.maxAgg = (MaxAggregateFunction) this.maxAgg.copy();
+            this.minAgg = (MinAggregateFunction) this.minAgg.copy();
+        }
+
         @Override
         public void update(Record record) {
             this.maxAgg.update(record);
@@ -467,6 +473,11 @@ abstract class AggregateFunction extends Expression {
             }
         }
 
+        @Override
+        protected void copySubexpressions() {
+            this.sumAgg = (SumAggregateFunction) this.sumAgg.copy();
+        }
+
         @Override
         public void update(Record record) {
             this.sumAgg.update(record);
@@ -604,6 +615,11 @@ abstract class AggregateFunction extends Expression {
             }
         }
 
+        @Override
+        protected void copySubexpressions() {
+            this.varAgg = (VarianceAggregateFunction) this.varAgg.copy();
+        }
+
         @Override
         public void update(Record record) {
             this.varAgg.update(record);
@@ -15,6 +15,10 @@ class Column extends Expression {
         this.col = null;
     }
 
+    public String getColumnName() {
+        return this.columnName;
+    }
+
     @Override
     public void setSchema(Schema schema) {
         super.setSchema(schema);
@@ -31,6 +35,11 @@ class Column extends Expression {
         return record.getValue(this.col);
     }
 
+    @Override
+    public int getColumnIndex() {
+        return this.col;
+    }
+
     @Override
     protected OperationPriority priority() {
         return OperationPriority.ATOMIC;
@@ -0,0 +1,473 @@
+package edu.berkeley.cs186.database.query.expr;
+
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * An expression compiled into a tree of method handles, which the JVM
+ * specializes and inlines like ordinary code once the expression is hot.
+ *
+ * Expression.evaluate walks the expression tree and allocates a DataBox for
+ * every intermediate value. A compiled expression instead reads int, long,
+ * float and bool columns as primitives and passes primitives from one
+ * operation to the next, so testing a predicate (see test) does not allocate
+ * at all, and evaluating an expression only allocates its result.
+ *
+ * Comparisons, AND, OR, NOT, arithmetic, negation, FLOOR and CEIL are
+ * compiled. Any other subexpression (string functions, ROUND, aggregates, ...)
+ * is evaluated by the interpreter, as a leaf of the compiled tree. Either way,
+ * a compiled expression returns the same values, and throws the same errors,
+ * as Expression.evaluate.
+ *
+ * The schema of an expression must be set before it is compiled:
+ *
+ *   expression.setSchema(schema);
+ *   CompiledExpression compiled = CompiledExpression.compile(expression);
+ *   if (compiled.test(record)) ...
+ */
+public class CompiledExpression implements Function<Record, DataBox> {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    // Parameters of the method handles of an expression compiled for records,
+    // and for rows of batches.
+    private static final Class<?>[] RECORD_INPUT = {Record.class};
+    private static final Class<?>[] BATCH_INPUT = {RecordBatch.class, int.class};
+
+    private static final MethodHandle RECORD_GET_VALUE;
+    private static final MethodHandle BATCH_GET_RECORD;
+    private static final MethodHandle EVALUATE;
+    private static final MethodHandle COMPARE_TO;
+
+    static {
+        try {
+            RECORD_GET_VALUE = LOOKUP.findVirtual(Record.class, "getValue", methodType(DataBox.class, int.class));
+            BATCH_GET_RECORD = LOOKUP.findVirtual(RecordBatch.class, "getRecord", methodType(Record.class, int.class));
+            EVALUATE = LOOKUP.findVirtual(Expression.class, "evaluate", methodType(DataBox.class, Record.class));
+            COMPARE_TO = LOOKUP.findVirtual(Comparable.class, "compareTo", methodType(int.class, Object.class))
+                    .asType(methodType(int.class, DataBox.class, DataBox.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Expression expression;
+    // (Record)DataBox
+    private final MethodHandle evaluator;
+    // (Record)boolean
+    private final MethodHandle predicate;
+    // (RecordBatch, int)T, where T is int, long, float, boolean or DataBox
+    private final MethodHandle batchEvaluator;
+
+    private CompiledExpression(Expression expression) {
+        this.expression = expression;
+        Compiler recordCompiler = new Compiler(RECORD_INPUT);
+        MethodHandle root = recordCompiler.compile(expression);
+        this.evaluator = recordCompiler.box(root);
+        this.predicate = recordCompiler.toBoolean(root);
+        this.batchEvaluator = new Compiler(BATCH_INPUT).compile(expression);
+    }
+
+    /**
+     * @param expression expression to compile, whose schema is set
+     * @return the compiled expression
+     */
+    public static CompiledExpression compile(Expression expression) {
+        return new CompiledExpression(expression);
+    }
+
+    /**
+     * @return the expression that was compiled
+     */
+    public Expression getExpression() {
+        return this.expression;
+    }
+
+    /**
+     * Equivalent to getExpression().evaluate(record).
+     */
+    public DataBox evaluate(Record record) {
+        try {
+            return (DataBox) this.evaluator.invokeExact(record);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public DataBox apply(Record record) {
+        return this.evaluate(record);
+    }
+
+    /**
+     * Equivalent to Expression.toBool(getExpression().evaluate(record)), but
+     * does not allocate.
+     */
+    public boolean test(Record record) {
+        try {
+            return (boolean) this.predicate.invokeExact(record);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Evaluates the expression on a row of a batch, and stores the value in a
+     * row of another batch, without boxing it if the expression is of type int,
+     * long, float or bool.
+     *
+     * @param in batch to evaluate the expression on
+     * @param row row of `in` to evaluate the expression on
+     * @param out batch to store the value in
+     * @param outRow row of `out` to store the value in
+     * @param column column of `out` to store the value in, of the expression's type
+     */
+    public void evaluate(RecordBatch in, int row, RecordBatch out, int outRow, int column) {
+        MethodHandle h = this.batchEvaluator;
+        try {
+            Class<?> type = h.type().returnType();
+            if (type == int.class) {
+                out.getInts(column)[outRow] = (int) h.invokeExact(in, row);
+            } else if (type == long.class) {
+                out.getLongs(column)[outRow] = (long) h.invokeExact(in, row);
+            } else if (type == float.class) {
+                out.getFloats(column)[outRow] = (float) h.invokeExact(in, row);
+            } else if (type == boolean.class) {
+                out.getBools(column)[outRow] = (boolean) h.invokeExact(in, row);
+            } else {
+                out.setValue(outRow, column, (DataBox) h.invokeExact(in, row));
+            }
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        // method handles of the tree do not throw checked exceptions
+        throw new RuntimeException(t);
+    }
+
+    /**
+     * Compiles expressions into method handles taking the given input, that
+     * return an int, long, float, boolean or DataBox: int, long, float and bool
+     * values are passed as primitives, and other values as DataBoxes.
+     */
+    private static class Compiler {
+        private final Class<?>[] input;
+
+        Compiler(Class<?>[] input) {
+            this.input = input;
+        }
+
+        MethodHandle compile(Expression e) {
+            if (e instanceof Column) return this.column(e.getColumnIndex(), e.getType().getTypeId());
+            if (e instanceof Literal) return this.literal(((Literal) e).data);
+            if (e instanceof Expression.LessThanExpression) return this.comparison(e, "lessThan");
+            if (e instanceof Expression.LessThanEqualExpression) return this.comparison(e, "lessThanEqual");
+            if (e instanceof Expression.GreaterThanExpression) return this.comparison(e, "greaterThan");
+            if (e instanceof Expression.GreaterThanEqualExpression) return this.comparison(e, "greaterThanEqual");
+            if (e instanceof Expression.EqualExpression) return this.comparison(e, "equal");
+            if (e instanceof Expression.UnequalExpression) return this.comparison(e, "unequal");
+            if (e instanceof Expression.AndExpression) return this.junction(e.children, false);
+            if (e instanceof Expression.OrExpression) return this.junction(e.children, true);
+            if (e instanceof Expression.NotExpression) {
+                return MethodHandles.filterReturnValue(this.toBoolean(this.compile(e.children.get(0))),
+                                                       helper("not", boolean.class, boolean.class));
+            }
+            if (e instanceof Expression.ArithmeticExpression) {
+                return this.arithmetic(e, ((Expression.ArithmeticExpression) e).ops);
+            }
+            if (e instanceof Expression.NegateExpression) {
+                Class<?> type = kind(e.getType().getTypeId());
+                return MethodHandles.filterReturnValue(this.convert(this.compile(e.children.get(0)), type),
+                                                       helper("negate", type, type));
+            }
+            if (e instanceof NamedFunction.FloorFunction || e instanceof NamedFunction.CeilFunction) {
+                String name = e instanceof NamedFunction.FloorFunction ? "floor" : "ceil";
+                return MethodHandles.filterReturnValue(this.convert(this.compile(e.children.get(0)), float.class),
+                                                       helper(name, long.class, float.class));
+            }
+            return this.interpreted(e);
+        }
+
+        private MethodHandle column(int index, TypeId type) {
+            if (this.input == RECORD_INPUT) {
+                MethodHandle value = MethodHandles.insertArguments(RECORD_GET_VALUE, 1, index);
+                if (kind(type) == DataBox.class) return value;
+                return MethodHandles.filterReturnValue(value, unboxer(type));
+            }
+            // (RecordBatch)T[] from the column, then (T[], int)T for the row
+            Class<?> arrayType;
+            String getter;
+            switch (type) {
+                case INT: arrayType = int[].class; getter = "getInts"; break;
+                case LONG: arrayType = long[].class; getter = "getLongs"; break;
+                case FLOAT: arrayType = float[].class; getter = "getFloats"; break;
+                case BOOL: arrayType = boolean[].class; getter = "getBools"; break;
+                default: arrayType = DataBox[].class; getter = "getDataBoxes"; break;
+            }
+            MethodHandle array = MethodHandles.insertArguments(
+                    find(RecordBatch.class, getter, methodType(arrayType, int.class)), 1, index);
+            return MethodHandles.filterArguments(MethodHandles.arrayElementGetter(arrayType), 0, array);
+        }
+
+        private MethodHandle literal(DataBox d) {
+            Object value;
+            switch (d.getTypeId()) {
+                case INT: value = d.getInt(); break;
+                case LONG: value = d.getLong(); break;
+                case FLOAT: value = d.getFloat(); break;
+                case BOOL: value = d.getBool(); break;
+                default: value = d; break;
+            }
+            return this.constant(kind(d.getTypeId()), value);
+        }
+
+        private MethodHandle constant(Class<?> type, Object value) {
+            return MethodHandles.dropArguments(MethodHandles.constant(type, value), 0, this.input);
+        }
+
+        /**
+         * Evaluates a subexpression with the interpreter.
+         */
+        private MethodHandle interpreted(Expression e) {
+            MethodHandle evaluate = EVALUATE.bindTo(e);
+            if (this.input == RECORD_INPUT) return evaluate;
+            return MethodHandles.collectArguments(evaluate, 0, BATCH_GET_RECORD);
+        }
+
+        /**
+         * Compares the values of the two children of a comparison like
+         * DataBox.compareTo would, then applies a predicate to the result.
+         */
+        private MethodHandle comparison(Expression e, String predicate) {
+            MethodHandle left = this.compile(e.children.get(0));
+            MethodHandle right = this.compile(e.children.get(1));
+            Class<?> l = left.type().returnType();
+            Class<?> r = right.type().returnType();
+            MethodHandle compare;
+            if (l == int.class && r == int.class) {
+                compare = helper("compare", int.class, int.class, int.class);
+            } else if ((l == int.class || l == long.class) && (r == int.class || r == long.class)) {
+                compare = helper("compare", int.class, long.class, long.class);
+            } else if (l == float.class && r == float.class) {
+                compare = helper("compare", int.class, float.class, float.class);
+            } else if (isNumeric(l) && isNumeric(r)) {
+                // a float and an int or long: the other value is converted to a float
+                compare = helper("compareMixed", int.class, float.class, float.class);
+            } else if (l == boolean.class && r == boolean.class) {
+                compare = helper("compare", int.class, boolean.class, boolean.class);
+            } else {
+                compare = COMPARE_TO;
+            }
+            MethodType types = compare.type();
+            MethodHandle cmp = this.combine(compare,
+                                            this.convert(left, types.parameterType(0)),
+                                            this.convert(right, types.parameterType(1)));
+            return MethodHandles.filterReturnValue(cmp, helper(predicate, boolean.class, int.class));
+        }
+
+        /**
+         * AND (or OR, if `or` is set) of children, short circuited.
+         */
+        private MethodHandle junction(List<Expression> children, boolean or) {
+            MethodHandle result = this.constant(boolean.class, !or);
+            for (int i = children.size() - 1; i >= 0; --i) {
+                MethodHandle child = this.toBoolean(this.compile(children.get(i)));
+                result = or ? MethodHandles.guardWithTest(child, this.constant(boolean.class, true), result)
+                            : MethodHandles.guardWithTest(child, result, this.constant(boolean.class, false));
+            }
+            return result;
+        }
+
+        private MethodHandle arithmetic(Expression e, List<Character> ops) {
+            Class<?> type = kind(e.getType().getTypeId());
+            MethodHandle result = this.convert(this.compile(e.children.get(0)), type);
+            for (int i = 1; i < e.children.size(); ++i) {
+                String name;
+                switch (ops.get(i - 1)) {
+                    case '+': name = "add"; break;
+                    case '-': name = "subtract"; break;
+                    case '*': name = "multiply"; break;
+                    case '/': name = "divide"; break;
+                    case '%': name = "remainder"; break;
+                    default: return this.interpreted(e);
+                }
+                MethodHandle child = this.convert(this.compile(e.children.get(i)), type);
+                result = this.combine(helper(name, type, type, type), result, child);
+            }
+            return result;
+        }
+
+        /**
+         * @param op method handle of type (A, B)C
+         * @param a method handle of type (input)A
+         * @param b method handle of type (input)B
+         * @return method handle of type (input)C that applies `op` to the results
+         * of `a` and `b`, evaluated in that order
+         */
+        private MethodHandle combine(MethodHandle op, MethodHandle a, MethodHandle b) {
+            int n = this.input.length;
+            MethodHandle h = MethodHandles.collectArguments(op, 0, a);
+            h = MethodHandles.collectArguments(h, n, b);
+            int[] reorder = new int[2 * n];
+            for (int i = 0; i < 2 * n; ++i) {
+                reorder[i] = i % n;
+            }
+            return MethodHandles.permuteArguments(h, methodType(op.type().returnType(), this.input), reorder);
+        }
+
+        /**
+         * Converts the result of a method handle the way Expression.toInt,
+         * toLong and toFloat would, or boxes it if `type` is DataBox.
+         */
+        private MethodHandle convert(MethodHandle h, Class<?> type) {
+            Class<?> from = h.type().returnType();
+            if (from == type) return h;
+            if (type == DataBox.class) return this.box(h);
+            if (from == DataBox.class) {
+                String name = type == int.class ? "toInt" : type == long.class ? "toLong" : "toFloat";
+                return MethodHandles.filterReturnValue(h, find(Expression.class, name, methodType(type, DataBox.class)));
+            }
+            if (from == boolean.class) {
+                h = MethodHandles.filterReturnValue(h, helper("toInt", int.class, boolean.class));
+            }
+            // widening conversions from int and long
+            return h.asType(h.type().changeReturnType(type));
+        }
+
+        /**
+         * Converts the result of a method handle the way Expression.toBool would.
+         */
+        MethodHandle toBoolean(MethodHandle h) {
+            Class<?> from = h.type().returnType();
+            if (from == boolean.class) return h;
+            if (from == DataBox.class) {
+                return MethodHandles.filterReturnValue(h, find(Expression.class, "toBool",
+                                                               methodType(boolean.class, DataBox.class)));
+            }
+            return MethodHandles.filterReturnValue(h, helper("toBool", boolean.class, from));
+        }
+
+        /**
+         * Boxes the result of a method handle in a DataBox, if it is a primitive.
+         */
+        MethodHandle box(MethodHandle h) {
+            Class<?> from = h.type().returnType();
+            if (from == DataBox.class) return h;
+            Class<?> boxType;
+            if (from == int.class) boxType = IntDataBox.class;
+            else if (from == long.class) boxType = LongDataBox.class;
+            else if (from == float.class) boxType = FloatDataBox.class;
+            else boxType = BoolDataBox.class;
+            MethodHandle constructor;
+            try {
+                constructor = LOOKUP.findConstructor(boxType, methodType(void.class, from));
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+            return MethodHandles.filterReturnValue(h, constructor.asType(methodType(DataBox.class, from)));
+        }
+
+        private static MethodHandle unboxer(TypeId type) {
+            switch (type) {
+                case INT: return find(DataBox.class, "getInt", methodType(int.class));
+                case LONG: return find(DataBox.class, "getLong", methodType(long.class));
+                case FLOAT: return find(DataBox.class, "getFloat", methodType(float.class));
+                case BOOL: return find(DataBox.class, "getBool", methodType(boolean.class));
+                default: throw new IllegalArgumentException(type + " values are not unboxed");
+            }
+        }
+
+        private static Class<?> kind(TypeId type) {
+            switch (type) {
+                case INT: return int.class;
+                case LONG: return long.class;
+                case FLOAT: return float.class;
+                case BOOL: return boolean.class;
+                default: return DataBox.class;
+            }
+        }
+
+        private static boolean isNumeric(Class<?> type) {
+            return type == int.class || type == long.class || type == float.class;
+        }
+
+        private static MethodHandle find(Class<?> c, String name, MethodType type) {
+            try {
+                if (c == Expression.class) return LOOKUP.findStatic(c, name, type);
+                return LOOKUP.findVirtual(c, name, type);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static MethodHandle helper(String name, Class<?> returnType, Class<?>... parameterTypes) {
+            try {
+                return LOOKUP.findStatic(CompiledExpression.class, name, methodType(returnType, parameterTypes));
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    // Operations of compiled expressions //////////////////////////////////////
+
+    private static int compare(int a, int b) { return Integer.compare(a, b); }
+    private static int compare(long a, long b) { return Long.compare(a, b); }
+    private static int compare(float a, float b) { return Float.compare(a, b); }
+    private static int compare(boolean a, boolean b) { return Boolean.compare(a, b); }
+
+    // how an int or long data box compares to a float data box, and vice versa
+    private static int compareMixed(float a, float b) {
+        if (a == b) return 0;
+        return a > b ? 1 : -1;
+    }
+
+    private static boolean lessThan(int cmp) { return cmp < 0; }
+    private static boolean lessThanEqual(int cmp) { return cmp <= 0; }
+    private static boolean greaterThan(int cmp) { return cmp > 0; }
+    private static boolean greaterThanEqual(int cmp) { return cmp >= 0; }
+    private static boolean equal(int cmp) { return cmp == 0; }
+    private static boolean unequal(int cmp) { return cmp != 0; }
+
+    private static boolean not(boolean a) { return !a; }
+    private static boolean toBool(int a) { return a != 0; }
+    private static boolean toBool(long a) { return a != 0; }
+    private static boolean toBool(float a) { return a != 0.0; }
+    private static int toInt(boolean a) { return a ? 1 : 0; }
+
+    private static int add(int a, int b) { return a + b; }
+    private static int subtract(int a, int b) { return a - b; }
+    private static int multiply(int a, int b) { return a * b; }
+    private static int divide(int a, int b) { return a / b; }
+    private static int remainder(int a, int b) { return a % b; }
+    private static int negate(int a) { return -a; }
+
+    private static long add(long a, long b) { return a + b; }
+    private static long subtract(long a, long b) { return a - b; }
+    private static long multiply(long a, long b) { return a * b; }
+    private static long divide(long a, long b) { return a / b; }
+    private static long remainder(long a, long b) { return a % b; }
+    private static long negate(long a) { return -a; }
+
+    private static float add(float a, float b) { return a + b; }
+    private static float subtract(float a, float b) { return a - b; }
+    private static float multiply(float a, float b) { return a * b; }
+    private static float divide(float a, float b) { return a / b; }
+    private static float remainder(float a, float b) { return a % b; }
+    private static float negate(float a) { return -a; }
+
+    private static long floor(float a) { return Math.round(Math.floor(a)); }
+    private static long ceil(float a) { return Math.round(Math.ceil(a)); }
+}
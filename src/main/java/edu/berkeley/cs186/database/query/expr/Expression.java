@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query.expr;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.cli.parser.ParseException;
 import edu.berkeley.cs186.database.cli.parser.RookieParser;
+import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.*;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
@@ -29,7 +30,7 @@ import java.util.function.Function;
  * - update(Record r): Used by aggregates to compute partial results
  * - Expression.fromString(String s): Creates an expression from a String!
  */
-public abstract class Expression {
+public abstract class Expression implements Cloneable {
     // The dependencies of an expression are the names of columns whose values
     // must be known in order into compute the expression. For example, the
     // dependencies of the expression `2 * int1 + int2` would be `int1` and
@@ -84,6 +85,15 @@ public abstract class Expression {
      */
     public abstract DataBox evaluate(Record record);
 
+    /**
+     * @return the index of the column in the schema if this expression only
+     * refers to a column, which lets batch operators copy the column's values
+     * without evaluating the expression for every record; -1 otherwise.
+     */
+    public int getColumnIndex() {
+        return -1;
+    }
+
     /**
      * Sets the Schema of this expression. This schema should match the schema
      * of the records that will be passed to the update() and evaluate()
@@ -138,6 +148,36 @@ public abstract class Expression {
         }
     }
 
+    /**
+     * @return a copy of this expression, with its own copies of subexpressions,
+     * and so its own aggregate state, which is reset. Useful to compute the
+     * aggregates of many groups at once, instead of one group after another.
+     */
+    public Expression copy() {
+        Expression copy;
+        try {
+            copy = (Expression) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        copy.children = new ArrayList<>();
+        for (Expression child: this.children) copy.children.add(child.copy());
+        copy.copySubexpressions();
+        // recomputes anything derived from the schema (column indices,
+        // evaluation functions), which may refer to the original expression
+        if (this.schema != null) copy.setSchema(this.schema);
+        copy.reset();
+        return copy;
+    }
+
+    /**
+     * Called on a copy of this expression made by copy(), to copy any
+     * subexpressions it keeps outside of its children.
+     */
+    protected void copySubexpressions() {
+        // Do nothing by default
+    }
+
     public final String toString() {
         if (this.needsParentheses) return "(" + subclassString() + ")";
         return subclassString();
@@ -250,6 +290,48 @@ public abstract class Expression {
         return Collections.singletonList(Expression.fromString(toString()));
     }
 
+    // Column comparisons //////////////////////////////////////////////////////
+
+    /**
+     * A comparison of a column with a value, e.g. `int1 >= 186`.
+     */
+    public static class ColumnComparison {
+        public final String columnName;
+        public final PredicateOperator operator;
+        public final DataBox value;
+
+        ColumnComparison(String columnName, PredicateOperator operator, DataBox value) {
+            this.columnName = columnName;
+            this.operator = operator;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @return this expression as a comparison of a column with a value, with
+     * the column on the left (so `186 <= int1` is `int1 >= 186`), or null if
+     * this expression isn't a comparison of a column with a literal.
+     */
+    public ColumnComparison toColumnComparison() {
+        PredicateOperator operator;
+        if (this instanceof EqualExpression) operator = PredicateOperator.EQUALS;
+        else if (this instanceof UnequalExpression) operator = PredicateOperator.NOT_EQUALS;
+        else if (this instanceof LessThanExpression) operator = PredicateOperator.LESS_THAN;
+        else if (this instanceof LessThanEqualExpression) operator = PredicateOperator.LESS_THAN_EQUALS;
+        else if (this instanceof GreaterThanExpression) operator = PredicateOperator.GREATER_THAN;
+        else if (this instanceof GreaterThanEqualExpression) operator = PredicateOperator.GREATER_THAN_EQUALS;
+        else return null;
+        Expression left = this.children.get(0);
+        Expression right = this.children.get(1);
+        if (left instanceof Column && right instanceof Literal) {
+            return new ColumnComparison(((Column) left).getColumnName(), operator, ((Literal) right).data);
+        }
+        if (left instanceof Literal && right instanceof Column) {
+            return new ColumnComparison(((Column) right).getColumnName(), operator.reverse(), ((Literal) left).data);
+        }
+        return null;
+    }
+
     // Static lookup methods ///////////////////////////////////////////////////
 
     public static Expression compare(String op, Expression a, Expression b) {
@@ -708,7 +790,7 @@ public abstract class Expression {
     }
 
     static abstract class ArithmeticExpression extends Expression {
-        private List<Character> ops;
+        List<Character> ops;
         private Type type;
         private Function<Record, DataBox> evalFunc;
 
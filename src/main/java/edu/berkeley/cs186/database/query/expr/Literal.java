@@ -5,7 +5,7 @@ import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.table.Record;
 
 class Literal extends Expression {
-    private DataBox data;
+    DataBox data;
 
     public Literal(DataBox data) {
         super();
@@ -38,7 +38,7 @@ public class BNLJOperator extends JoinOperator {
     public int estimateIOCost() {
         //This method implements the IO cost estimation of the Block Nested Loop Join
         int usableBuffers = numBuffers - 2;
-        int numLeftPages = getLeftSource().estimateStats().getNumPages();
+        int numLeftPages = getLeftSource().getStats().getNumPages();
         int numRightPages = getRightSource().estimateIOCost();
         return ((int) Math.ceil((double) numLeftPages / (double) usableBuffers)) * numRightPages +
                 getLeftSource().estimateIOCost();
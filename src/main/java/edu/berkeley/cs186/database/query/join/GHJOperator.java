@@ -8,6 +8,7 @@ import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.JoinOperator;
 import edu.berkeley.cs186.database.query.QueryOperator;
+import edu.berkeley.cs186.database.query.RuntimeFilter;
 import edu.berkeley.cs186.database.query.disk.Partition;
 import edu.berkeley.cs186.database.query.disk.Run;
 import edu.berkeley.cs186.database.table.Record;
@@ -18,6 +19,12 @@ import java.util.*;
 public class GHJOperator extends JoinOperator {
     private int numBuffers;
     private Run joinedRecords;
+    // filter on the right join column, built from the left records as they
+    // are partitioned in the first pass
+    private RuntimeFilter runtimeFilter;
+    // false if no scan under the right source took the filter, so that right
+    // records must be checked against it before they are partitioned
+    private boolean runtimeFilterPushedDown;
 
     public GHJOperator(QueryOperator leftSource,
                        QueryOperator rightSource,
@@ -47,7 +54,10 @@ public class GHJOperator extends JoinOperator {
             // instead we'll accumulate all of our joined records in this run
             // and return an iterator over it once the algorithm completes
             this.joinedRecords = new Run(getTransaction(), getSchema());
-            this.run(getLeftSource(), getRightSource(), 1);
+            this.runtimeFilter = createRuntimeFilter(this.numBuffers);
+            this.runtimeFilterPushedDown = this.runtimeFilter != null &&
+                                           getRightSource().pushDownRuntimeFilter(this.runtimeFilter);
+            this.run(batchedRecords(getLeftSource()), batchedRecords(getRightSource()), 1);
         };
         return joinedRecords.iterator();
     }
@@ -80,8 +90,19 @@ public class GHJOperator extends JoinOperator {
             colIndex = getRightColumnIndex();
         }
 
+        // the runtime filter only needs to be built and applied in the first
+        // pass, since later passes only see records that got through it
+        RuntimeFilter filter = pass == 1 ? this.runtimeFilter : null;
+
         for (Record record : records) {
             DataBox colValue = record.getValue(colIndex);
+            if (filter != null) {
+                if (left) {
+                    filter.add(colValue);
+                } else if (!this.runtimeFilterPushedDown && !filter.mightMatch(colValue)) {
+                    continue;
+                }
+            }
             int hash = HashFunc.hashDataBox(colValue, pass);
             // modulo to get which partition to use
             int partitionNum = hash % partitions.length;
@@ -173,6 +194,7 @@ public class GHJOperator extends JoinOperator {
 
         // Partition records into left and right
         this.partition(leftPartitions, leftRecords, true, pass);
+        if (pass == 1 && this.runtimeFilter != null) this.runtimeFilter.finish();
         this.partition(rightPartitions, rightRecords, false, pass);
 
         for (int i = 0; i < leftPartitions.length; i++) {
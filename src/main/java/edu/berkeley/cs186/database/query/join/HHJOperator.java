@@ -0,0 +1,297 @@
+package edu.berkeley.cs186.database.query.join;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.HashFunc;
+import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.query.JoinOperator;
+import edu.berkeley.cs186.database.query.QueryOperator;
+import edu.berkeley.cs186.database.query.RuntimeFilter;
+import edu.berkeley.cs186.database.query.disk.Partition;
+import edu.berkeley.cs186.database.query.disk.Run;
+import edu.berkeley.cs186.database.table.PageDirectory;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+import java.util.*;
+
+/**
+ * Hybrid hash join. Like grace hash join, the records of both relations are
+ * hashed into partitions, but one partition of the build (left) relation is
+ * kept in memory instead of being written out, and the probe (right) records
+ * that hash to it are joined as they are read. Only the other partitions are
+ * spilled to disk, along with the probe records that hash to them, and are
+ * joined in a later pass.
+ *
+ * The number of spilled partitions k is the fewest for which each of them is
+ * expected to fit in memory in the next pass, given the estimated size of the
+ * build relation; each needs a page of memory to write out records, and the
+ * partition kept in memory gets the rest of the B-2 pages, which is also the
+ * share of the records hashed to it. When the build relation fits in B-2
+ * pages, nothing is spilled at all, and the join reads each relation once. If
+ * the estimate is too low and the partition in memory outgrows its pages, it
+ * is spilled as well.
+ *
+ * Spilled partitions are joined by running the algorithm again on them with a
+ * different hash function, building on whichever side is smaller. A partition
+ * that repartitioning cannot split (e.g. one where every record has the same
+ * join value) is joined with block nested loops instead.
+ */
+public class HHJOperator extends JoinOperator {
+    // number of passes after which partitions are joined with block nested loops
+    private static final int MAX_PASSES = 5;
+
+    private int numBuffers;
+    private Run joinedRecords;
+    // filter on the right join column, built from the left records as they
+    // are partitioned in the first pass
+    private RuntimeFilter runtimeFilter;
+    // false if no scan under the right source took the filter, so that right
+    // records must be checked against it before they are partitioned
+    private boolean runtimeFilterPushedDown;
+
+    public HHJOperator(QueryOperator leftSource,
+                       QueryOperator rightSource,
+                       String leftColumnName,
+                       String rightColumnName,
+                       TransactionContext transaction) {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.HHJ);
+        this.numBuffers = transaction.getWorkMemSize();
+        this.stats = this.estimateStats();
+        this.joinedRecords = null;
+    }
+
+    /**
+     * Each relation is read once. The records that hash to spilled partitions
+     * are then written out and read back once more in every later pass they
+     * take part in.
+     */
+    @Override
+    public int estimateIOCost() {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+        double cost = (double) getLeftSource().estimateIOCost() + getRightSource().estimateIOCost() +
+                      this.spillIOCost(numLeftPages, numRightPages, 1);
+        return (int) Math.min(Math.ceil(cost), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the I/O cost of joining buildPages and probePages pages of
+     * records that have been read in, on top of reading them
+     */
+    private double spillIOCost(double buildPages, double probePages, int pass) {
+        int memoryPages = this.getMemoryPages();
+        if (buildPages <= memoryPages) return 0;
+        if (pass > MAX_PASSES) {
+            // block nested loops, reading the probe records once for each block
+            return (Math.ceil(buildPages / Math.max(1, memoryPages)) - 1) * probePages;
+        }
+        int numSpilled = this.getNumSpilledPartitions(buildPages);
+        double spilledFraction = 1 - this.getResidentFraction(buildPages, numSpilled);
+        double cost = 2 * spilledFraction * (buildPages + probePages);
+        return cost + numSpilled * this.spillIOCost(spilledFraction * buildPages / numSpilled,
+                                                    spilledFraction * probePages / numSpilled,
+                                                    pass + 1);
+    }
+
+    @Override
+    public boolean materialized() { return true; }
+
+    @Override
+    public BacktrackingIterator<Record> backtrackingIterator() {
+        if (joinedRecords == null) {
+            this.joinedRecords = new Run(getTransaction(), getSchema());
+            this.runtimeFilter = createRuntimeFilter(this.numBuffers);
+            this.runtimeFilterPushedDown = this.runtimeFilter != null &&
+                                           getRightSource().pushDownRuntimeFilter(this.runtimeFilter);
+            this.run(batchedRecords(getLeftSource()), batchedRecords(getRightSource()), true,
+                     getLeftSource().getStats().getNumPages(), 1);
+        }
+        return joinedRecords.iterator();
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return backtrackingIterator();
+    }
+
+    /**
+     * Joins buildRecords and probeRecords, keeping one partition of the build
+     * records in memory, and recursively joining the partitions that are
+     * spilled.
+     *
+     * @param buildIsLeft true if the build records are from the left relation
+     * @param buildPages the (estimated) number of pages of build records
+     * @param pass the current pass (used to pick a hash function)
+     */
+    private void run(Iterable<Record> buildRecords, Iterable<Record> probeRecords,
+                     boolean buildIsLeft, double buildPages, int pass) {
+        if (pass > MAX_PASSES) {
+            this.blockJoin(buildRecords, probeRecords, buildIsLeft);
+            return;
+        }
+        int buildColumnIndex = buildIsLeft ? getLeftColumnIndex() : getRightColumnIndex();
+        int probeColumnIndex = buildIsLeft ? getRightColumnIndex() : getLeftColumnIndex();
+        Schema buildSchema = buildIsLeft ? getLeftSource().getSchema() : getRightSource().getSchema();
+        Schema probeSchema = buildIsLeft ? getRightSource().getSchema() : getLeftSource().getSchema();
+        int recordsPerPage = Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, buildSchema);
+        int numSpilled = this.getNumSpilledPartitions(buildPages);
+        double residentFraction = this.getResidentFraction(buildPages, numSpilled);
+        // pages the partition in memory may take up
+        int residentPages = this.getMemoryPages() - numSpilled;
+        // the runtime filter only needs to be built and applied in the first
+        // pass, since later passes only see records that got through it
+        RuntimeFilter filter = pass == 1 ? this.runtimeFilter : null;
+
+        // Build stage: partition 0 is kept in memory unless it outgrows its
+        // pages, and the others are spilled
+        List<Record> resident = new ArrayList<>();
+        Partition[] buildPartitions = new Partition[numSpilled + 1];
+        int[] numRecords = new int[numSpilled + 1];
+        int numBuildRecords = 0;
+        for (Record record : buildRecords) {
+            DataBox value = record.getValue(buildColumnIndex);
+            if (filter != null) filter.add(value);
+            int i = partitionNum(value, numSpilled, residentFraction, pass);
+            ++numRecords[i];
+            ++numBuildRecords;
+            if (i == 0 && resident != null) {
+                resident.add(record);
+                if ((resident.size() + recordsPerPage - 1) / recordsPerPage > residentPages) {
+                    buildPartitions[0] = new Partition(getTransaction(), buildSchema);
+                    buildPartitions[0].addAll(resident);
+                    resident = null;
+                }
+                continue;
+            }
+            if (buildPartitions[i] == null) buildPartitions[i] = new Partition(getTransaction(), buildSchema);
+            buildPartitions[i].add(record);
+        }
+        if (filter != null) filter.finish();
+
+        Map<DataBox, List<Record>> hashTable = new HashMap<>();
+        if (resident != null) {
+            for (Record record : resident) {
+                DataBox value = record.getValue(buildColumnIndex);
+                hashTable.computeIfAbsent(value, k -> new ArrayList<>()).add(record);
+            }
+            resident = null;
+        }
+
+        // Probe stage: join the probe records that hash to the partition in
+        // memory, and spill the rest
+        Partition[] probePartitions = new Partition[numSpilled + 1];
+        for (Record record : probeRecords) {
+            DataBox value = record.getValue(probeColumnIndex);
+            if (filter != null && !this.runtimeFilterPushedDown && !filter.mightMatch(value)) continue;
+            int i = partitionNum(value, numSpilled, residentFraction, pass);
+            if (buildPartitions[i] != null) {
+                if (probePartitions[i] == null) probePartitions[i] = new Partition(getTransaction(), probeSchema);
+                probePartitions[i].add(record);
+                continue;
+            }
+            List<Record> matches = hashTable.get(value);
+            if (matches == null) continue;
+            for (Record buildRecord : matches) {
+                this.joinedRecords.add(joinRecords(buildRecord, record, buildIsLeft));
+            }
+        }
+        hashTable = null;
+
+        for (int i = 0; i < buildPartitions.length; ++i) {
+            // a spilled partition with no probe records has no matches
+            if (buildPartitions[i] == null || probePartitions[i] == null) continue;
+            Partition buildPartition = buildPartitions[i];
+            Partition probePartition = probePartitions[i];
+            int numBuildPages = buildPartition.getNumPages();
+            int numProbePages = probePartition.getNumPages();
+            if (pass > 1 && numRecords[i] == numBuildRecords) {
+                // repartitioning didn't split the records, and won't in later
+                // passes either
+                this.blockJoin(buildPartition, probePartition, buildIsLeft);
+            } else if (numProbePages < numBuildPages) {
+                this.run(probePartition, buildPartition, !buildIsLeft, numProbePages, pass + 1);
+            } else {
+                this.run(buildPartition, probePartition, buildIsLeft, numBuildPages, pass + 1);
+            }
+        }
+    }
+
+    /**
+     * Joins buildRecords and probeRecords with block nested loops, loading
+     * B-2 pages of build records into a hash table at a time and probing it
+     * with all of the probe records.
+     */
+    private void blockJoin(Iterable<Record> buildRecords, Iterable<Record> probeRecords, boolean buildIsLeft) {
+        int buildColumnIndex = buildIsLeft ? getLeftColumnIndex() : getRightColumnIndex();
+        int probeColumnIndex = buildIsLeft ? getRightColumnIndex() : getLeftColumnIndex();
+        Schema buildSchema = buildIsLeft ? getLeftSource().getSchema() : getRightSource().getSchema();
+        int blockSize = Math.max(1, this.getMemoryPages()) *
+                        Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, buildSchema);
+        Iterator<Record> buildIterator = buildRecords.iterator();
+        while (buildIterator.hasNext()) {
+            Map<DataBox, List<Record>> hashTable = new HashMap<>();
+            for (int n = 0; n < blockSize && buildIterator.hasNext(); ++n) {
+                Record record = buildIterator.next();
+                hashTable.computeIfAbsent(record.getValue(buildColumnIndex), k -> new ArrayList<>()).add(record);
+            }
+            for (Record record : probeRecords) {
+                List<Record> matches = hashTable.get(record.getValue(probeColumnIndex));
+                if (matches == null) continue;
+                for (Record buildRecord : matches) {
+                    this.joinedRecords.add(joinRecords(buildRecord, record, buildIsLeft));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the joined record, with the left record's values first
+     */
+    private static Record joinRecords(Record buildRecord, Record probeRecord, boolean buildIsLeft) {
+        return buildIsLeft ? buildRecord.concat(probeRecord) : probeRecord.concat(buildRecord);
+    }
+
+    /**
+     * @return the partition a value hashes to: 0 (the partition kept in
+     * memory) for residentFraction of the hash values, and one of the
+     * numSpilled others for the rest
+     */
+    private static int partitionNum(DataBox value, int numSpilled, double residentFraction, int pass) {
+        long hash = Integer.toUnsignedLong(HashFunc.hashDataBox(value, pass));
+        long residentHashes = (long) (residentFraction * (1L << 32));
+        if (hash < residentHashes || numSpilled == 0) return 0;
+        return 1 + (int) ((hash - residentHashes) * numSpilled / ((1L << 32) - residentHashes));
+    }
+
+    /**
+     * @return the number of pages that build records can be kept in: one page
+     * is used to read input, and one to write output
+     */
+    private int getMemoryPages() {
+        return Math.max(0, this.numBuffers - 2);
+    }
+
+    /**
+     * @return the number of partitions to spill when joining buildPages pages
+     * of build records: the fewest for which each is expected to fit in memory
+     * in the next pass, leaving at least a page for the partition in memory
+     */
+    private int getNumSpilledPartitions(double buildPages) {
+        int memoryPages = this.getMemoryPages();
+        if (buildPages <= memoryPages) return 0;
+        if (memoryPages <= 1) return 1;
+        int numSpilled = (int) Math.ceil((buildPages - memoryPages) / (memoryPages - 1));
+        return Math.min(numSpilled, memoryPages - 1);
+    }
+
+    /**
+     * @return the fraction of build records that are expected to fit in the
+     * pages left for the partition in memory
+     */
+    private double getResidentFraction(double buildPages, int numSpilled) {
+        if (numSpilled == 0) return 1;
+        return Math.max(0, Math.min(1, (this.getMemoryPages() - numSpilled) / buildPages));
+    }
+}
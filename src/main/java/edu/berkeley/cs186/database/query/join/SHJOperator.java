@@ -6,9 +6,11 @@ import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.JoinOperator;
 import edu.berkeley.cs186.database.query.QueryOperator;
+import edu.berkeley.cs186.database.query.RuntimeFilter;
 import edu.berkeley.cs186.database.query.disk.Partition;
 import edu.berkeley.cs186.database.query.disk.Run;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 
 import java.util.*;
@@ -16,6 +18,9 @@ import java.util.*;
 public class SHJOperator extends JoinOperator {
     private int numBuffers;
     private Run joinedRecords;
+    // filter on the right join column, pushed down to the scan under the right
+    // source and built from the left records as they are partitioned
+    private RuntimeFilter runtimeFilter;
 
     /**
      * This class represents a simple hash join. To join the two relations the
@@ -51,7 +56,11 @@ public class SHJOperator extends JoinOperator {
             // Accumulate all of our joined records in this run and return an
             // iterator over it once the algorithm completes
             this.joinedRecords = new Run(getTransaction(), getSchema());
-            this.run(getLeftSource(), getRightSource(), 1);
+            this.runtimeFilter = createRuntimeFilter(this.numBuffers);
+            if (this.runtimeFilter != null && !getRightSource().pushDownRuntimeFilter(this.runtimeFilter)) {
+                this.runtimeFilter = null;
+            }
+            this.run(batchedRecords(getLeftSource()), () -> getRightSource().batchIterator(), 1);
         };
         return joinedRecords.iterator();
     }
@@ -75,6 +84,7 @@ public class SHJOperator extends JoinOperator {
             if (partitionNum < 0)  // hash might be negative
                 partitionNum += partitions.length;
             partitions[partitionNum].add(record);
+            if (this.runtimeFilter != null) this.runtimeFilter.add(columnValue);
         }
     }
 
@@ -84,9 +94,9 @@ public class SHJOperator extends JoinOperator {
      * joinedRecords list.
      *
      * @param partition a partition
-     * @param rightRecords An iterable of records from the right relation
+     * @param rightBatches An iterable of batches of records from the right relation
      */
-    private void buildAndProbe(Partition partition, Iterable<Record> rightRecords) {
+    private void buildAndProbe(Partition partition, Iterable<RecordBatch> rightBatches) {
         if (partition.getNumPages() > this.numBuffers - 2) {
             throw new IllegalArgumentException(
                     "The records in this partition cannot fit in B-2 pages of memory."
@@ -106,16 +116,21 @@ public class SHJOperator extends JoinOperator {
             hashTable.get(leftJoinValue).add(leftRecord);
         }
 
-        // Probing stage
-        for (Record rightRecord: rightRecords) {
-            DataBox rightJoinValue = rightRecord.getValue(getRightColumnIndex());
-            if (!hashTable.containsKey(rightJoinValue)) continue;
-            // We have to join the right record with each left record with
-            // a matching key
-            for (Record lRecord : hashTable.get(rightJoinValue)) {
-                Record joinedRecord = lRecord.concat(rightRecord);
-                // Accumulate joined records in this.joinedRecords
-                this.joinedRecords.add(joinedRecord);
+        // Probing stage: only the join value of each right record is read
+        // from its batch, unless it has a match
+        for (RecordBatch batch: rightBatches) {
+            int[] rows = batch.getSelection();
+            for (int i = 0; i < batch.getNumSelected(); i++) {
+                DataBox rightJoinValue = batch.getValue(rows[i], getRightColumnIndex());
+                if (!hashTable.containsKey(rightJoinValue)) continue;
+                Record rightRecord = batch.getRecord(rows[i]);
+                // We have to join the right record with each left record with
+                // a matching key
+                for (Record lRecord : hashTable.get(rightJoinValue)) {
+                    Record joinedRecord = lRecord.concat(rightRecord);
+                    // Accumulate joined records in this.joinedRecords
+                    this.joinedRecords.add(joinedRecord);
+                }
             }
         }
     }
@@ -125,7 +140,7 @@ public class SHJOperator extends JoinOperator {
      * create an array of partitions. Then, build and probe with each hash
      * partitions records.
      */
-    private void run(Iterable<Record> leftRecords, Iterable<Record> rightRecords, int pass) {
+    private void run(Iterable<Record> leftRecords, Iterable<RecordBatch> rightBatches, int pass) {
         assert pass >= 1;
         if (pass > 5) throw new IllegalStateException("Reached the max number of passes");
 
@@ -134,9 +149,10 @@ public class SHJOperator extends JoinOperator {
 
         // Partition records into left and right
         this.partition(partitions, leftRecords);
+        if (this.runtimeFilter != null) this.runtimeFilter.finish();
 
         for (int i = 0; i < partitions.length; i++) {
-            buildAndProbe(partitions[i], rightRecords);
+            buildAndProbe(partitions[i], rightBatches);
         }
     }
 
@@ -31,8 +31,8 @@ public class SNLJOperator extends JoinOperator {
 
     @Override
     public int estimateIOCost() {
-        int numLeftRecords = getLeftSource().estimateStats().getNumRecords();
-        int numRightPages = getRightSource().estimateStats().getNumPages();
+        int numLeftRecords = getLeftSource().getStats().getNumRecords();
+        int numRightPages = getRightSource().getStats().getNumPages();
         return numLeftRecords * numRightPages + getLeftSource().estimateIOCost();
     }
 
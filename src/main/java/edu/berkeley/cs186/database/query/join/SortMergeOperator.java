@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.query.JoinOperator;
 import edu.berkeley.cs186.database.query.MaterializeOperator;
 import edu.berkeley.cs186.database.query.QueryOperator;
+import edu.berkeley.cs186.database.query.RuntimeFilter;
 import edu.berkeley.cs186.database.query.SortOperator;
 import edu.berkeley.cs186.database.table.Record;
 
@@ -67,10 +68,18 @@ public class SortMergeOperator extends JoinOperator {
         return Arrays.asList(getLeftColumnName(), getRightColumnName());
     }
 
+    /**
+     * The cost of the inputs, including sorting them if they weren't already
+     * sorted, plus reading back the sorted runs during the merge. Backtracking
+     * over the right records of a run of equal values is assumed to hit pages
+     * that are still in memory.
+     */
     @Override
     public int estimateIOCost() {
-        //does nothing
-        return 0;
+        long cost = (long) getLeftSource().estimateIOCost() + getRightSource().estimateIOCost();
+        if (getLeftSource() instanceof SortOperator) cost += getLeftSource().getStats().getNumPages();
+        if (getRightSource() instanceof SortOperator) cost += getRightSource().getStats().getNumPages();
+        return (int) Math.min(cost, Integer.MAX_VALUE);
     }
 
     /**
@@ -100,6 +109,16 @@ public class SortMergeOperator extends JoinOperator {
 
         private SortMergeIterator() {
             super();
+            // the left records are sorted first, so a filter built from them
+            // as they are sorted can be applied to the right records before
+            // they are sorted (a right source that is already sorted is
+            // backtracked over as it is, so it is not filtered)
+            if (getLeftSource() instanceof SortOperator && getRightSource() instanceof SortOperator) {
+                RuntimeFilter filter = createRuntimeFilter(getTransaction().getWorkMemSize());
+                if (filter != null && ((SortOperator) getLeftSource()).buildRuntimeFilter(filter, getLeftColumnIndex())) {
+                    getRightSource().pushDownRuntimeFilter(filter);
+                }
+            }
             leftIterator = getLeftSource().iterator();
             rightIterator = getRightSource().backtrackingIterator();
             rightIterator.markNext();
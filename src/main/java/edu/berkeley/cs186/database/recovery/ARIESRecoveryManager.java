@@ -414,6 +414,10 @@ public class ARIESRecoveryManager implements RecoveryManager {
         logManager.appendToLog(endRecord);
         // Ensure checkpoint is fully flushed before updating the master record
         flushToLSN(endRecord.getLSN());
+        // Pages leave the DPT as soon as they are written out, which (if syncs are
+        // deferred) may be before they are on disk; force them before recovery can
+        // start from this checkpoint.
+        diskSpaceManager.syncAll();
 
         // Update master record
         MasterLogRecord masterRecord = new MasterLogRecord(beginLSN);
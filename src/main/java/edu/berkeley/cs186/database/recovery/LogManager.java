@@ -40,7 +40,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     private Page logTail;
     private Buffer logTailBuffer;
     private boolean logTailPinned = false;
-    private long flushedLSN;
+    private volatile long flushedLSN;
 
     public static final int LOG_PARTITION = 0;
 
@@ -68,6 +68,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
         } finally {
             firstPage.unpin();
         }
+        bufferManager.sync(LOG_PARTITION);
     }
 
     /**
@@ -111,7 +112,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      */
     public LogRecord fetchLogRecord(long LSN) {
         try {
-            Page logPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), getLSNPage(LSN));
+            Page logPage = bufferManager.fetchPageShared(new DummyLockContext("_dummyLogPageRecord"), getLSNPage(LSN));
             try {
                 Buffer buf = logPage.getBuffer();
                 buf.position(getLSNIndex(LSN));
@@ -130,25 +131,37 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * Flushes the log to at least the specified record,
      * essentially flushing up to and including the page
      * that contains the record specified by the LSN.
+     *
+     * The pages are written out while holding the log manager's lock, but forced
+     * to disk after releasing it, so that transactions committing at the same
+     * time share a single sync of the log partition.
      * @param LSN LSN up to which the log should be flushed
      */
-    public synchronized void flushToLSN(long LSN) {
-        Iterator<Page> iter = unflushedLogTail.iterator();
+    public void flushToLSN(long LSN) {
         long pageNum = getLSNPage(LSN);
-        while (iter.hasNext()) {
-            Page page = iter.next();
-            if (page.getPageNum() > pageNum) {
-                break;
-            }
-            page.flush();
-            iter.remove();
+        if (flushedLSN >= maxLSN(pageNum)) {
+            return;
         }
-        flushedLSN = Math.max(flushedLSN, maxLSN(pageNum));
-        if (unflushedLogTail.size() == 0) {
-            if (!logTailPinned) {
-                logTail = null;
+        synchronized (this) {
+            Iterator<Page> iter = unflushedLogTail.iterator();
+            while (iter.hasNext()) {
+                Page page = iter.next();
+                if (page.getPageNum() > pageNum) {
+                    break;
+                }
+                page.flush();
+                iter.remove();
             }
-            logTailBuffer = null;
+            if (unflushedLogTail.size() == 0) {
+                if (!logTailPinned) {
+                    logTail = null;
+                }
+                logTailBuffer = null;
+            }
+        }
+        bufferManager.sync(LOG_PARTITION);
+        synchronized (this) {
+            flushedLSN = Math.max(flushedLSN, maxLSN(pageNum));
         }
     }
 
@@ -234,7 +247,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
         @Override
         protected int getNextNonEmpty(int currentIndex) {
-            logPage.pin();
+            logPage.pinShared();
             try {
                 Buffer buf = logPage.getBuffer();
                 if (currentIndex == -1) {
@@ -258,7 +271,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
         @Override
         protected LogRecord getValue(int index) {
-            logPage.pin();
+            logPage.pinShared();
             try {
                 Buffer buf = logPage.getBuffer();
                 buf.position(index);
@@ -278,7 +291,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
         private LogPagesIterator(long startLSN) {
             nextIndex = getLSNPage(startLSN);
             try {
-                Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
+                Page page = bufferManager.fetchPageShared(new DummyLockContext(), nextIndex);
                 nextIter = new LogPageIterator(page, getLSNIndex(startLSN));
             } catch (PageException e) {
                 nextIter = null;
@@ -315,7 +328,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
                 do {
                     ++nextIndex;
                     try {
-                        Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
+                        Page page = bufferManager.fetchPageShared(new DummyLockContext(), nextIndex);
                         nextIter = new LogPageIterator(page, 0);
                     } catch (PageException e) {
                         break;
@@ -14,6 +14,8 @@ import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -50,6 +52,9 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     // size of the header in data pages
     private static final short DATA_HEADER_SIZE = 10;
 
+    // number of data pages to prefetch at a time when iterating over the data pages
+    private static final int PREFETCH_ENTRIES = 8;
+
     // effective page size
     public static final short EFFECTIVE_PAGE_SIZE = BufferManager.EFFECTIVE_PAGE_SIZE -
             DATA_HEADER_SIZE;
@@ -73,6 +78,12 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     // page directory id
     private int pageDirectoryId;
 
+    // Guards the free space entries of the header pages, which are shared by every
+    // transaction using this heap file. Header page latches alone are not enough,
+    // since reserving space may walk (and extend) the whole chain of header pages.
+    // getPageWithSpace only latches the data page after releasing it.
+    private final Object spaceLock = new Object();
+
     /**
      * Creates a new heap file, or loads existing file if one already
      * exists at partNum.
@@ -104,6 +115,14 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         return new DataPage(pageDirectoryId, this.bufferManager.fetchPage(lockContext, pageNum));
     }
 
+    /**
+     * Like getPage, but the page is only latched in shared mode, so it must not
+     * be written to until it is unpinned.
+     */
+    public Page getPageShared(long pageNum) {
+        return new DataPage(pageDirectoryId, this.bufferManager.fetchPageShared(lockContext, pageNum));
+    }
+
     public Page getPageWithSpace(short requiredSpace) {
         if (requiredSpace <= 0) {
             throw new IllegalArgumentException("cannot request nonpositive amount of space");
@@ -112,7 +131,13 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             throw new IllegalArgumentException("requesting page with more space than the size of the page");
         }
 
-        Page page = this.firstHeader.loadPageWithSpace(requiredSpace);
+        long pageNum;
+        synchronized (spaceLock) {
+            pageNum = this.firstHeader.reservePageWithSpace(requiredSpace);
+        }
+        // The space we reserved keeps the page from being freed, so it is
+        // safe to latch it now that we are no longer holding spaceLock.
+        Page page = this.bufferManager.fetchPage(lockContext, pageNum);
         LockContext pageContext = lockContext.childContext(page.getPageNum());
         // TODO(proj4_part2): Update the following line
         LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
@@ -137,11 +162,51 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             page.unpin();
         }
 
+        synchronized (spaceLock) {
+            this.headerPage(headerIndex).updateSpace(page, offset, newFreeSpace);
+        }
+    }
+
+    /**
+     * Returns space that was reserved by getPageWithSpace, e.g. because a record
+     * on the page was deleted. Unlike updateFreeSpace, this adds to the page's
+     * free space rather than overwriting it, so it is not affected by space
+     * reserved on the page in the meantime. The page must not be pinned by the
+     * caller: header pages are latched before data pages, and the page is freed
+     * if it is now empty.
+     *
+     * @param page data page of this heap file
+     * @param space amount of space to return
+     */
+    public void releaseSpace(Page page, short space) {
+        if (space <= 0 || space > EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize) {
+            throw new IllegalArgumentException("bad amount of space to release");
+        }
+
+        int headerIndex;
+        short offset;
+        page.pinShared();
+        try {
+            Buffer b = ((DataPage) page).getFullBuffer();
+            b.position(4); // skip page directory id
+            headerIndex = b.getInt();
+            offset = b.getShort();
+        } finally {
+            page.unpin();
+        }
+
+        synchronized (spaceLock) {
+            this.headerPage(headerIndex).releaseSpace(page, offset, space);
+        }
+    }
+
+    // the header page at index headerIndex in the chain of header pages
+    private HeaderPage headerPage(int headerIndex) {
         HeaderPage headerPage = firstHeader;
         for (int i = 0; i < headerIndex; ++i) {
             headerPage = headerPage.nextPage;
         }
-        headerPage.updateSpace(page, offset, newFreeSpace);
+        return headerPage;
     }
 
     @Override
@@ -149,6 +214,20 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         return new ConcatBacktrackingIterator<>(new HeaderPageIterator());
     }
 
+    /**
+     * @return the page numbers of the data pages, in the order that iterator()
+     * returns them in. Only the header pages are read.
+     */
+    public List<Long> getDataPageNums() {
+        List<Long> pageNums = new ArrayList<>();
+        HeaderPage headerPage = firstHeader;
+        while (headerPage != null) {
+            headerPage.addDataPageNums(pageNums);
+            headerPage = headerPage.nextPage;
+        }
+        return pageNums;
+    }
+
     public int getNumDataPages() {
         int numDataPages = 0;
         HeaderPage headerPage = firstHeader;
@@ -235,15 +314,17 @@ public class PageDirectory implements BacktrackingIterable<Page> {
      * Represents a single header page.
      */
     private class HeaderPage implements BacktrackingIterable<Page> {
-        private HeaderPage nextPage;
+        // Both are only changed while holding spaceLock, but are read without it
+        // (e.g. by iterators and getNumDataPages)
+        private volatile HeaderPage nextPage;
         private Page page;
-        private short numDataPages;
+        private volatile short numDataPages;
         private int headerOffset;
 
         private HeaderPage(long pageNum, int headerOffset, boolean firstHeader) {
             this.page = bufferManager.fetchPage(lockContext, pageNum);
             // We do not lock header pages for the entirety of the transaction. Instead, we simply
-            // use the buffer frame lock (from pinning) to ensure that one transaction writes at a time.
+            // use the page latch (from pinning) to ensure that one transaction writes at a time.
             // This does mean that we do not have complete isolation in the header pages, but this does not
             // really matter, as the only observable effect is that a transaction may be told to use a different
             // data page, which is perfectly fine.
@@ -310,8 +391,9 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             }
         }
 
-        // gets and loads a page with the required free space
-        private Page loadPageWithSpace(short requiredSpace) {
+        // reserves space on a page with the required free space, and returns its
+        // page number. Must be called while holding spaceLock.
+        private long reservePageWithSpace(short requiredSpace) {
             this.page.pin();
             try {
                 Buffer b = this.page.getBuffer();
@@ -332,7 +414,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                         b.position(b.position() - DataPageEntry.SIZE);
                         dpe.toBytes(b);
 
-                        return bufferManager.fetchPage(lockContext, dpe.pageNum);
+                        return dpe.pageNum;
                     }
                 }
 
@@ -345,10 +427,14 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * unusedSlot);
                     dpe.toBytes(b);
 
-                    page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(unusedSlot);
+                    try {
+                        page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(unusedSlot);
+                    } finally {
+                        page.unpin();
+                    }
 
                     ++this.numDataPages;
-                    return page;
+                    return dpe.pageNum;
                 }
 
                 // if we have no next header page, make one
@@ -357,7 +443,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                 }
 
                 // no space on this header page, try next one
-                return this.nextPage.loadPageWithSpace(requiredSpace);
+                return this.nextPage.reservePageWithSpace(requiredSpace);
             } finally {
                 this.page.unpin();
             }
@@ -380,6 +466,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                     Buffer b = this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     (new DataPageEntry()).toBytes(b);
+                    --this.numDataPages;
                     bufferManager.freePage(dataPage);
                 }
             } finally {
@@ -387,6 +474,48 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             }
         }
 
+        // adds to the free space of a data page, freeing the page if it is now empty
+        private void releaseSpace(Page dataPage, short index, short space) {
+            this.page.pin();
+            try {
+                Buffer b = this.page.getBuffer();
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
+                DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                short newFreeSpace = (short) (dpe.freeSpace + space);
+                if (newFreeSpace < EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize) {
+                    this.updateSpace(dataPage, index, newFreeSpace);
+                    return;
+                }
+                // The caller no longer has the page pinned, so it may have been
+                // evicted. Data pages are always latched after header pages.
+                Page page = bufferManager.fetchPage(lockContext, dpe.pageNum);
+                try {
+                    this.updateSpace(page, index, newFreeSpace);
+                } finally {
+                    page.unpin();
+                }
+            } finally {
+                this.page.unpin();
+            }
+        }
+
+        // adds the page numbers of the data pages managed by this header page
+        private void addDataPageNums(List<Long> pageNums) {
+            this.page.pinShared();
+            try {
+                Buffer b = this.page.getBuffer();
+                b.position(HEADER_HEADER_SIZE);
+                for (int i = 0; i < HEADER_ENTRY_COUNT; ++i) {
+                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                    if (dpe.isValid()) {
+                        pageNums.add(dpe.pageNum);
+                    }
+                }
+            } finally {
+                this.page.unpin();
+            }
+        }
+
         @Override
         public BacktrackingIterator<Page> iterator() {
             return new HeaderPageIterator();
@@ -394,13 +523,16 @@ public class PageDirectory implements BacktrackingIterable<Page> {
 
         // iterator over the data pages managed by this header page
         private class HeaderPageIterator extends IndexBacktrackingIterator<Page> {
+            // Index of the last entry whose data page was passed to the buffer manager to prefetch
+            private int prefetchedUpTo = -1;
+
             private HeaderPageIterator() {
                 super(HEADER_ENTRY_COUNT);
             }
 
             @Override
             protected int getNextNonEmpty(int currentIndex) {
-                HeaderPage.this.page.pin();
+                HeaderPage.this.page.pinShared();
                 try {
                     Buffer b = HeaderPage.this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * ++currentIndex);
@@ -418,16 +550,37 @@ public class PageDirectory implements BacktrackingIterable<Page> {
 
             @Override
             protected Page getValue(int index) {
-                HeaderPage.this.page.pin();
+                HeaderPage.this.page.pinShared();
                 try {
                     Buffer b = HeaderPage.this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     DataPageEntry dpe = DataPageEntry.fromBytes(b);
-                    return new DataPage(pageDirectoryId, bufferManager.fetchPage(lockContext, dpe.pageNum));
+                    if (index >= prefetchedUpTo && bufferManager.isReadingAhead()) {
+                        prefetchDataPages(b, index);
+                    }
+                    return new DataPage(pageDirectoryId, bufferManager.fetchPageShared(lockContext, dpe.pageNum));
                 } finally {
                     HeaderPage.this.page.unpin();
                 }
             }
+
+            /**
+             * Asks the buffer manager to prefetch the data pages of the next
+             * PREFETCH_ENTRIES entries after index. The buffer must be positioned
+             * right after the entry at index.
+             */
+            private void prefetchDataPages(Buffer b, int index) {
+                List<Long> pageNums = new ArrayList<>();
+                int end = Math.min(index + PREFETCH_ENTRIES, HEADER_ENTRY_COUNT - 1);
+                for (int i = index + 1; i <= end; ++i) {
+                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                    if (dpe.isValid()) {
+                        pageNums.add(dpe.pageNum);
+                    }
+                }
+                bufferManager.prefetch(pageNums);
+                prefetchedUpTo = end;
+            }
         }
     }
 
@@ -0,0 +1,280 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.databox.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A batch of records stored by column, used by query operators that process
+ * records a batch at a time (see QueryOperator.batchIterator) instead of a
+ * record at a time.
+ *
+ * Columns of type int, long, float and bool are stored as arrays of primitives,
+ * so operators can work on them without boxing every value in a DataBox; other
+ * columns are stored as arrays of DataBoxes.
+ *
+ * Rows are only ever appended to a batch. Which of them are part of the batch's
+ * output is given by its selection vector: the indices of the selected rows, in
+ * increasing order. Appended rows are selected, and filters unselect rows by
+ * compacting the selection vector, e.g.
+ *
+ *   int[] rows = batch.getSelection();
+ *   int[] x = batch.getInts(0);
+ *   int n = 0;
+ *   for (int i = 0; i < batch.getNumSelected(); ++i) {
+ *       if (x[rows[i]] > 10) rows[n++] = rows[i];
+ *   }
+ *   batch.setNumSelected(n);
+ */
+public class RecordBatch {
+    // Number of rows in a batch, unless specified otherwise.
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private Schema schema;
+    private TypeId[] types;
+    // int[], long[], float[], boolean[] or DataBox[] per column
+    private Object[] columns;
+    private int numRows;
+    private int[] selection;
+    private int numSelected;
+
+    public RecordBatch(Schema schema) {
+        this(schema, DEFAULT_CAPACITY);
+    }
+
+    public RecordBatch(Schema schema, int capacity) {
+        this.schema = schema;
+        this.types = new TypeId[schema.size()];
+        this.columns = new Object[schema.size()];
+        for (int i = 0; i < schema.size(); ++i) {
+            this.types[i] = schema.getFieldType(i).getTypeId();
+            switch (this.types[i]) {
+                case INT: this.columns[i] = new int[capacity]; break;
+                case LONG: this.columns[i] = new long[capacity]; break;
+                case FLOAT: this.columns[i] = new float[capacity]; break;
+                case BOOL: this.columns[i] = new boolean[capacity]; break;
+                default: this.columns[i] = new DataBox[capacity]; break;
+            }
+        }
+        this.selection = new int[capacity];
+        this.numRows = 0;
+        this.numSelected = 0;
+    }
+
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    public int getCapacity() {
+        return this.selection.length;
+    }
+
+    /**
+     * @return number of rows appended to the batch, selected or not
+     */
+    public int getNumRows() {
+        return this.numRows;
+    }
+
+    public boolean isFull() {
+        return this.numRows == this.selection.length;
+    }
+
+    /**
+     * @return the selection vector: its first getNumSelected() entries are the
+     * indices of the selected rows, in increasing order
+     */
+    public int[] getSelection() {
+        return this.selection;
+    }
+
+    public int getNumSelected() {
+        return this.numSelected;
+    }
+
+    /**
+     * Sets the number of selected rows, after the selection vector was compacted.
+     */
+    public void setNumSelected(int numSelected) {
+        if (numSelected < 0 || numSelected > this.numSelected) {
+            throw new IllegalArgumentException("can only unselect rows");
+        }
+        this.numSelected = numSelected;
+    }
+
+    public int[] getInts(int column) {
+        return (int[]) this.getColumn(column, TypeId.INT);
+    }
+
+    public long[] getLongs(int column) {
+        return (long[]) this.getColumn(column, TypeId.LONG);
+    }
+
+    public float[] getFloats(int column) {
+        return (float[]) this.getColumn(column, TypeId.FLOAT);
+    }
+
+    public boolean[] getBools(int column) {
+        return (boolean[]) this.getColumn(column, TypeId.BOOL);
+    }
+
+    /**
+     * @return values of a column that is not stored as primitives (string or byte array)
+     */
+    public DataBox[] getDataBoxes(int column) {
+        if (this.columns[column] instanceof DataBox[]) {
+            return (DataBox[]) this.columns[column];
+        }
+        throw new IllegalArgumentException("column " + column + " is of type " + this.types[column]);
+    }
+
+    private Object getColumn(int column, TypeId type) {
+        if (this.types[column] != type) {
+            throw new IllegalArgumentException("column " + column + " is of type " + this.types[column]);
+        }
+        return this.columns[column];
+    }
+
+    /**
+     * Appends a row and selects it. The values of the row must then be set directly
+     * in the column arrays.
+     *
+     * @return index of the new row
+     */
+    public int addRow() {
+        if (this.isFull()) {
+            throw new IllegalStateException("batch is full");
+        }
+        int row = this.numRows++;
+        this.selection[this.numSelected++] = row;
+        return row;
+    }
+
+    /**
+     * Appends a record as a new, selected row.
+     */
+    public void addRecord(Record record) {
+        int row = this.addRow();
+        for (int i = 0; i < this.columns.length; ++i) {
+            this.setValue(row, i, record.getValue(i));
+        }
+    }
+
+    /**
+     * Sets a value of a row from a DataBox of the column's type.
+     */
+    public void setValue(int row, int column, DataBox value) {
+        switch (this.types[column]) {
+            case INT: ((int[]) this.columns[column])[row] = value.getInt(); break;
+            case LONG: ((long[]) this.columns[column])[row] = value.getLong(); break;
+            case FLOAT: ((float[]) this.columns[column])[row] = value.getFloat(); break;
+            case BOOL: ((boolean[]) this.columns[column])[row] = value.getBool(); break;
+            default: ((DataBox[]) this.columns[column])[row] = value; break;
+        }
+    }
+
+    /**
+     * @return a value of a row, boxed
+     */
+    public DataBox getValue(int row, int column) {
+        switch (this.types[column]) {
+            case INT: return new IntDataBox(((int[]) this.columns[column])[row]);
+            case LONG: return new LongDataBox(((long[]) this.columns[column])[row]);
+            case FLOAT: return new FloatDataBox(((float[]) this.columns[column])[row]);
+            case BOOL: return new BoolDataBox(((boolean[]) this.columns[column])[row]);
+            default: return ((DataBox[]) this.columns[column])[row];
+        }
+    }
+
+    /**
+     * @return a row of the batch as a record
+     */
+    public Record getRecord(int row) {
+        List<DataBox> values = new ArrayList<>(this.columns.length);
+        for (int i = 0; i < this.columns.length; ++i) {
+            values.add(this.getValue(row, i));
+        }
+        return new Record(values);
+    }
+
+    /**
+     * Copies a value from a row of another batch (with a column of the same type)
+     * to a row of this batch, without boxing it.
+     */
+    public void copyValue(RecordBatch from, int fromRow, int fromColumn, int row, int column) {
+        if (from.types[fromColumn] != this.types[column]) {
+            throw new IllegalArgumentException("column types do not match");
+        }
+        switch (this.types[column]) {
+            case INT: ((int[]) this.columns[column])[row] = ((int[]) from.columns[fromColumn])[fromRow]; break;
+            case LONG: ((long[]) this.columns[column])[row] = ((long[]) from.columns[fromColumn])[fromRow]; break;
+            case FLOAT: ((float[]) this.columns[column])[row] = ((float[]) from.columns[fromColumn])[fromRow]; break;
+            case BOOL: ((boolean[]) this.columns[column])[row] = ((boolean[]) from.columns[fromColumn])[fromRow]; break;
+            default: ((DataBox[]) this.columns[column])[row] = ((DataBox[]) from.columns[fromColumn])[fromRow]; break;
+        }
+    }
+
+    /**
+     * Adapts an iterator over records to an iterator over batches of the records.
+     * Batches are full except for the last one, and are never reused.
+     *
+     * @param records records to put into batches
+     * @param schema schema of the records
+     */
+    public static Iterator<RecordBatch> batches(Iterator<Record> records, Schema schema) {
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = new RecordBatch(schema);
+                while (!batch.isFull() && records.hasNext()) {
+                    batch.addRecord(records.next());
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Adapts an iterator over batches to an iterator over the selected rows of
+     * the batches, as records.
+     *
+     * @param batches batches to take records from
+     */
+    public static Iterator<Record> records(Iterator<RecordBatch> batches) {
+        return new Iterator<Record>() {
+            private RecordBatch batch = null;
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (this.batch == null || this.index == this.batch.getNumSelected()) {
+                    if (!batches.hasNext()) {
+                        return false;
+                    }
+                    this.batch = batches.next();
+                    this.index = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public Record next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.batch.getRecord(this.batch.getSelection()[this.index++]);
+            }
+        };
+    }
+}
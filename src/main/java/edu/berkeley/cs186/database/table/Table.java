@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.table;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.ConcatBacktrackingIterator;
@@ -10,13 +11,17 @@ import edu.berkeley.cs186.database.common.iterator.IndexBacktrackingIterator;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * # Overview
@@ -231,7 +236,7 @@ public class Table implements BacktrackingIterable<Record> {
         this.stats.get(name).refreshHistograms(buckets, this);
     }
 
-    private synchronized void insertRecord(Page page, int entryNum, Record record) {
+    private void insertRecord(Page page, int entryNum, Record record) {
         int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
         page.getBuffer().position(offset).put(record.toBytes(schema));
     }
@@ -244,7 +249,7 @@ public class Table implements BacktrackingIterable<Record> {
      * first free page has bitmap 0b11101000, then the record is inserted into
      * the page with index 3 and the bitmap is updated to 0b11111000.
      */
-    public synchronized RecordId addRecord(Record record) {
+    public RecordId addRecord(Record record) {
         record = schema.verify(record);
         Page page = pageDirectory.getPageWithSpace(schema.getSizeInBytes());
         try {
@@ -278,11 +283,12 @@ public class Table implements BacktrackingIterable<Record> {
 
     /**
      * Retrieves a record from the table, throwing an exception if no such record
-     * exists.
+     * exists. The page is only latched in shared mode, so concurrent readers of
+     * the same page do not block each other.
      */
-    public synchronized Record getRecord(RecordId rid) {
+    public Record getRecord(RecordId rid) {
         validateRecordId(rid);
-        Page page = fetchPage(rid.getPageNum());
+        Page page = fetchPageShared(rid.getPageNum());
         try {
             byte[] bitmap = getBitMap(page);
             if (Bits.getBit(bitmap, rid.getEntryNum()) == Bits.Bit.ZERO) {
@@ -304,7 +310,7 @@ public class Table implements BacktrackingIterable<Record> {
      * record. stats is updated accordingly. An exception is thrown if rid does
      * not correspond to an existing record in the table.
      */
-    public synchronized Record updateRecord(RecordId rid, Record updated) {
+    public Record updateRecord(RecordId rid, Record updated) {
         validateRecordId(rid);
         // If we're updating a record we'll need exclusive access to the page
         // its on.
@@ -332,7 +338,7 @@ public class Table implements BacktrackingIterable<Record> {
      * stats, freePageNums, and numRecords as necessary. An exception is thrown
      * if rid does not correspond to an existing record in the table.
      */
-    public synchronized Record deleteRecord(RecordId rid) {
+    public Record deleteRecord(RecordId rid) {
         validateRecordId(rid);
         LockContext pageContext = tableContext.childContext(rid.getPageNum());
 
@@ -340,21 +346,24 @@ public class Table implements BacktrackingIterable<Record> {
         LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
 
         Page page = fetchPage(rid.getPageNum());
+        Record record;
         try {
-            Record record = getRecord(rid);
+            record = getRecord(rid);
 
             byte[] bitmap = getBitMap(page);
             Bits.setBit(bitmap, rid.getEntryNum(), Bits.Bit.ZERO);
             writeBitMap(page, bitmap);
 
             stats.get(name).removeRecord(record);
-            int numRecords = numRecordsPerPage == 1 ? 0 : numRecordsOnPage(page);
-            pageDirectory.updateFreeSpace(page,
-                    (short) ((numRecordsPerPage - numRecords) * schema.getSizeInBytes()));
-            return record;
         } finally {
             page.unpin();
         }
+        // The space is returned rather than recounted from the page, since other
+        // transactions may have reserved space on the page since we latched it.
+        // This happens after unpinning: the page directory latches header pages
+        // before data pages, and frees the page if it is now empty.
+        pageDirectory.releaseSpace(page, schema.getSizeInBytes());
+        return record;
     }
 
     @Override
@@ -371,15 +380,12 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
-    private int numRecordsOnPage(Page page) {
-        byte[] bitmap = getBitMap(page);
-        int numRecords = 0;
-        for (int i = 0; i < numRecordsPerPage; ++i) {
-            if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
-                numRecords++;
-            }
+    private Page fetchPageShared(long pageNum) {
+        try {
+            return pageDirectory.getPageShared(pageNum);
+        } catch (PageException e) {
+            throw new DatabaseException(e);
         }
-        return numRecords;
     }
 
     private void validateRecordId(RecordId rid) {
@@ -434,6 +440,111 @@ public class Table implements BacktrackingIterable<Record> {
         return new RecordIterator(ridIterator());
     }
 
+    /**
+     * @return an iterator over all the records in this table, a batch at a time.
+     * Each page is read once and decoded a column at a time, rather than fetched
+     * again for every record as iterator() does.
+     */
+    public Iterator<RecordBatch> batchIterator() {
+        LockUtil.ensureSufficientLockHeld(tableContext, LockType.S);
+        return new BatchIterator(pageDirectory.iterator());
+    }
+
+    /**
+     * @return the page numbers of the data pages of this table, so that parts of
+     * the table can be scanned with batchIterator(Iterator)
+     */
+    public List<Long> getDataPageNums() {
+        LockUtil.ensureSufficientLockHeld(tableContext, LockType.S);
+        return pageDirectory.getDataPageNums();
+    }
+
+    /**
+     * Like batchIterator(), but only over the records on the given data pages.
+     * No locks are acquired, so this can be called from threads that are not
+     * running the transaction; the transaction must already hold a lock on the
+     * table (e.g. by calling getDataPageNums) for as long as the iterator is used.
+     *
+     * @param pageNums page numbers of data pages of this table
+     */
+    public Iterator<RecordBatch> batchIterator(Iterator<Long> pageNums) {
+        return new BatchIterator(new Iterator<Page>() {
+            @Override
+            public boolean hasNext() {
+                return pageNums.hasNext();
+            }
+
+            @Override
+            public Page next() {
+                return fetchPageShared(pageNums.next());
+            }
+        });
+    }
+
+    /**
+     * Appends the records on a page to a batch, which must have room for a
+     * page's worth of records. The page must be pinned.
+     */
+    private void decodePage(Page page, RecordBatch batch) {
+        int recordSize = schema.getSizeInBytes();
+        byte[] bytes = new byte[bitmapSizeInBytes + numRecordsPerPage * recordSize];
+        page.getBuffer().get(bytes, 0, bytes.length);
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(bytes);
+
+        int firstRow = batch.getNumRows();
+        int numRows = 0;
+        int[] offsets = new int[numRecordsPerPage];
+        for (int i = 0; i < numRecordsPerPage; ++i) {
+            if (bitmapSizeInBytes == 0 || Bits.getBit(bytes, i) == Bits.Bit.ONE) {
+                offsets[numRows++] = bitmapSizeInBytes + i * recordSize;
+                batch.addRow();
+            }
+        }
+        int fieldOffset = 0;
+        for (int col = 0; col < schema.size(); ++col) {
+            Type type = schema.getFieldType(col);
+            switch (type.getTypeId()) {
+                case INT: {
+                    int[] values = batch.getInts(col);
+                    for (int i = 0; i < numRows; ++i) {
+                        values[firstRow + i] = buf.getInt(offsets[i] + fieldOffset);
+                    }
+                    break;
+                }
+                case LONG: {
+                    long[] values = batch.getLongs(col);
+                    for (int i = 0; i < numRows; ++i) {
+                        values[firstRow + i] = buf.getLong(offsets[i] + fieldOffset);
+                    }
+                    break;
+                }
+                case FLOAT: {
+                    float[] values = batch.getFloats(col);
+                    for (int i = 0; i < numRows; ++i) {
+                        values[firstRow + i] = buf.getFloat(offsets[i] + fieldOffset);
+                    }
+                    break;
+                }
+                case BOOL: {
+                    boolean[] values = batch.getBools(col);
+                    for (int i = 0; i < numRows; ++i) {
+                        values[firstRow + i] = bytes[offsets[i] + fieldOffset] == 1;
+                    }
+                    break;
+                }
+                default: {
+                    DataBox[] values = batch.getDataBoxes(col);
+                    for (int i = 0; i < numRows; ++i) {
+                        Buffer field = ByteBuffer.wrap(bytes, offsets[i] + fieldOffset, type.getSizeInBytes());
+                        values[firstRow + i] = DataBox.fromBytes(field, type);
+                    }
+                    break;
+                }
+            }
+            fieldOffset += type.getSizeInBytes();
+        }
+    }
+
     /**
      * RIDPageIterator is a BacktrackingIterator over the RecordIds of a single
      * page of the table.
@@ -514,12 +625,54 @@ public class Table implements BacktrackingIterable<Record> {
 
             @Override
             public BacktrackingIterator<RecordId> iterator() {
-                baseObject.pin();
+                baseObject.pinShared();
                 return new RIDPageIterator(baseObject);
             }
         }
     }
 
+    /**
+     * Iterator over the records of the table, a batch of whole pages at a time.
+     */
+    private class BatchIterator implements Iterator<RecordBatch> {
+        private Iterator<Page> pages;
+        private RecordBatch nextBatch;
+
+        private BatchIterator(Iterator<Page> pages) {
+            this.pages = pages;
+            this.nextBatch = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.nextBatch == null && this.pages.hasNext()) {
+                RecordBatch batch = new RecordBatch(schema, Math.max(RecordBatch.DEFAULT_CAPACITY, numRecordsPerPage));
+                while (batch.getCapacity() - batch.getNumRows() >= numRecordsPerPage && this.pages.hasNext()) {
+                    Page page = this.pages.next();
+                    try {
+                        decodePage(page, batch);
+                    } finally {
+                        page.unpin();
+                    }
+                }
+                if (batch.getNumRows() > 0) {
+                    this.nextBatch = batch;
+                }
+            }
+            return this.nextBatch != null;
+        }
+
+        @Override
+        public RecordBatch next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RecordBatch batch = this.nextBatch;
+            this.nextBatch = null;
+            return batch;
+        }
+    }
+
     /**
      * Wraps an iterator of record ids to form an iterator over records.
      */
@@ -72,11 +72,13 @@ public class TableStats {
     }
 
     // Modifiers /////////////////////////////////////////////////////////////////
-    public void addRecord(Record record) {
+    // A table's stats are shared by every transaction writing to it, so the record
+    // count is only read and written while holding this object's monitor.
+    public synchronized void addRecord(Record record) {
         numRecords++;
     }
 
-    public void removeRecord(Record record) {
+    public synchronized void removeRecord(Record record) {
         numRecords = Math.max(numRecords - 1, 0);
     }
 
@@ -89,14 +91,16 @@ public class TableStats {
             newHistograms.add(h);
             totalRecords += h.getCount();
         }
-        this.histograms = newHistograms;
-        this.numRecords = Math.round(((float) totalRecords) / schema.size());
+        synchronized (this) {
+            this.histograms = newHistograms;
+            this.numRecords = Math.round(((float) totalRecords) / schema.size());
+        }
     }
 
     // Accessors /////////////////////////////////////////////////////////////////
     public Schema getSchema() { return schema; }
 
-    public int getNumRecords() {
+    public synchronized int getNumRecords() {
         return numRecords;
     }
 
@@ -104,12 +108,12 @@ public class TableStats {
      * Calculates the number of data pages required to store `numRecords` records
      * assuming that all records are stored as densely as possible in the pages.
      */
-    public int getNumPages() {
+    public synchronized int getNumPages() {
         if (numRecords % numRecordsPerPage == 0) return numRecords / numRecordsPerPage;
         return (numRecords / numRecordsPerPage) + 1;
     }
 
-    public List<Histogram> getHistograms() {
+    public synchronized List<Histogram> getHistograms() {
         return histograms;
     }
 
@@ -171,6 +175,27 @@ public class TableStats {
         return new TableStats(this.schema, this.numRecordsPerPage, numRecords, copyHistograms);
     }
 
+    /**
+     * Creates a new TableStats for the output of grouping this table into
+     * `numGroups` groups and computing a record with schema `outputSchema` for
+     * each. The output columns are expressions over the groups, so nothing is
+     * known about their values: their histograms are empty.
+     *
+     * @param outputSchema the schema of the output records
+     * @param numGroups the estimated number of groups
+     * @return new TableStats based off of this and params
+     */
+    public TableStats copyWithGroupBy(Schema outputSchema, int numGroups) {
+        List<Histogram> copyHistograms = new ArrayList<>();
+        for (int i = 0; i < outputSchema.size(); i++) {
+            copyHistograms.add(new Histogram());
+        }
+        int outputRecordsPerPage = Table.computeNumRecordsPerPage(
+                PageDirectory.EFFECTIVE_PAGE_SIZE, outputSchema);
+        int numRecords = Math.min(numGroups, this.getNumRecords());
+        return new TableStats(outputSchema, outputRecordsPerPage, numRecords, copyHistograms);
+    }
+
     /**
      * Creates a new TableStats which is the statistics for the table
      * that results from this TableStats joined with the given TableStats.
@@ -185,7 +210,7 @@ public class TableStats {
                                    int rightIndex) {
         // Compute the new schema.
         Schema joinedSchema = this.schema.concat(rightStats.schema);
-        int inputSize = this.numRecords * rightStats.numRecords;
+        int inputSize = this.getNumRecords() * rightStats.getNumRecords();
         int leftNumDistinct = 1;
         if (this.histograms.size() > 0) {
             leftNumDistinct = this.histograms.get(leftIndex).getNumDistinct() + 1;
@@ -19,7 +19,8 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
-import java.util.Iterator;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -306,4 +307,130 @@ public class TestDatabase {
             assertFalse(iter.hasNext());
         }
     }
+
+    @Test
+    public void testCatalogReflectsDropAndRecreate() {
+        try (Transaction t1 = db.beginTransaction()) {
+            Schema s = new Schema()
+                    .add("id", Type.intType())
+                    .add("name", Type.stringType(10));
+            t1.createTable(s, "table1");
+            t1.createIndex("table1", "id", false);
+            t1.insert("table1", 1, "Jane");
+            t1.commit();
+        }
+
+        try (Transaction t2 = db.beginTransaction()) {
+            // Lookups go through the cached catalog; dropping and recreating
+            // the table must not hand back the old table or index
+            assertEquals(new Record(1, "Jane"), t2.query("table1").execute().next());
+            t2.dropTable("table1");
+            t2.createTable(new Schema().add("id", Type.intType()), "table1");
+            t2.insert("table1", 2);
+            Iterator<Record> iter = t2.query("table1").execute();
+            assertEquals(new Record(2), iter.next());
+            assertFalse(iter.hasNext());
+            assertFalse(t2.getTransactionContext().indexExists("table1", "id"));
+        }
+    }
+
+    /**
+     * Runs `task` on several threads at once, each in its own transaction, and
+     * returns the record ids they returned.
+     */
+    private List<RecordId> runConcurrently(int numThreads, Callable<List<RecordId>> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<List<RecordId>>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; ++i) {
+                futures.add(executor.submit(task));
+            }
+            List<RecordId> rids = new ArrayList<>();
+            for (Future<List<RecordId>> future : futures) {
+                rids.addAll(future.get(1, TimeUnit.MINUTES));
+            }
+            return rids;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentInserts() throws Exception {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(s, "table1");
+        }
+
+        // Every transaction inserts through the same cached Table and PageDirectory
+        int numThreads = 4;
+        int numRecords = 2000;
+        List<RecordId> rids = runConcurrently(numThreads, () -> {
+            List<RecordId> inserted = new ArrayList<>();
+            try (Transaction t = db.beginTransaction()) {
+                for (int i = 0; i < numRecords; ++i) {
+                    inserted.add(t.getTransactionContext().addRecord("table1",
+                            TestUtils.createRecordWithAllTypesWithValue(i)));
+                }
+            }
+            return inserted;
+        });
+
+        assertEquals(numThreads * numRecords, new HashSet<>(rids).size());
+        Set<Long> pageNums = new HashSet<>();
+        for (RecordId rid : rids) pageNums.add(rid.getPageNum());
+        try (Transaction t = db.beginTransaction()) {
+            int count = 0;
+            Iterator<Record> records = t.getTransactionContext().getRecordIterator("table1");
+            while (records.hasNext()) {
+                records.next();
+                ++count;
+            }
+            assertEquals(numThreads * numRecords, count);
+            assertEquals(pageNums.size(), t.getTransactionContext().getNumDataPages("table1"));
+        }
+    }
+
+    @Test
+    public void testConcurrentInsertsAndDeletes() throws Exception {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(s, "table1");
+        }
+
+        // Each transaction inserts records and deletes every other one it inserted,
+        // so pages fill up, empty out and are reused while others insert into them
+        int numThreads = 4;
+        int numRecords = 2000;
+        List<RecordId> kept = runConcurrently(numThreads, () -> {
+            List<RecordId> inserted = new ArrayList<>();
+            try (Transaction t = db.beginTransaction()) {
+                TransactionContext context = t.getTransactionContext();
+                for (int i = 0; i < numRecords; ++i) {
+                    inserted.add(context.addRecord("table1", TestUtils.createRecordWithAllTypesWithValue(i)));
+                    if (i % 2 == 1) {
+                        context.deleteRecord("table1", inserted.remove(inserted.size() - 2));
+                    }
+                }
+            }
+            return inserted;
+        });
+
+        int expected = numThreads * numRecords / 2;
+        assertEquals(expected, new HashSet<>(kept).size());
+        try (Transaction t = db.beginTransaction()) {
+            TransactionContext context = t.getTransactionContext();
+            Set<RecordId> found = new HashSet<>();
+            Iterator<RecordId> rids = context.getTable("table1").ridIterator();
+            while (rids.hasNext()) {
+                found.add(rids.next());
+            }
+            assertEquals(new HashSet<>(kept), found);
+            assertEquals(expected, context.getStats("table1").getNumRecords());
+            // pages whose records were all deleted are freed
+            Set<Long> pageNums = new HashSet<>();
+            for (RecordId rid : found) pageNums.add(rid.getPageNum());
+            assertEquals(pageNums.size(), context.getNumDataPages("table1"));
+        }
+    }
 }
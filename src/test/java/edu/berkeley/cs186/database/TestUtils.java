@@ -6,6 +6,8 @@ import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 public class TestUtils {
@@ -39,4 +41,15 @@ public class TestUtils {
         for (int v : values) recordList.add(new Record(v));
         return new TestSourceOperator(recordList, schema);
     }
+
+    /**
+     * Returns the records as sorted strings, for comparing the output of
+     * operators that produce the same records in different orders.
+     */
+    public static List<String> sorted(Iterator<Record> records) {
+        List<String> result = new ArrayList<>();
+        records.forEachRemaining(r -> result.add(r.toString()));
+        Collections.sort(result);
+        return result;
+    }
 }
@@ -25,6 +25,8 @@ import java.util.Arrays;
 import java.util.Iterator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 @Category({Proj99Tests.class, SystemTests.class})
@@ -372,4 +374,61 @@ public class TestSelectClause {
             }
         }
     }
+
+    @Test
+    public void testOrderBy() {
+        SelectStatementVisitor v = parse(
+                "SELECT sid, major, gpa FROM Students ORDER BY major ASC, gpa DESC;"
+        );
+        try (Transaction t = db.beginTransaction()) {
+            QueryPlan queryPlan = v.getQueryPlan(t).get();
+            Iterator<Record> records = queryPlan.execute();
+            Record prev = records.next();
+            for (int i = 1; i < 200; i++) {
+                Record r = records.next();
+                int cmp = prev.getValue(1).compareTo(r.getValue(1));
+                assertTrue(cmp < 0 || (cmp == 0 && prev.getValue(2).compareTo(r.getValue(2)) >= 0));
+                prev = r;
+            }
+            assertFalse(records.hasNext());
+        }
+
+        v = parse("SELECT sid FROM Students ORDER BY sid desc LIMIT 3;");
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> records = v.getQueryPlan(t).get().execute();
+            for (int sid = 200; sid > 197; sid--) {
+                assertEquals(sid, records.next().getValue(0).getInt());
+            }
+            assertFalse(records.hasNext());
+        }
+
+        try {
+            parse("SELECT sid FROM Students ORDER BY sid sideways;");
+            fail("ORDER BY should only accept ASC or DESC");
+        } catch (RuntimeException e) {
+            // do nothing
+        }
+    }
+
+    @Test
+    public void testWhereExpression() {
+        SelectStatementVisitor v = parse(
+                "SELECT sid FROM Students WHERE sid < 4 OR sid * 2 = 300 AND NOT sid = 2;"
+        );
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> records = v.getQueryPlan(t).get().execute();
+            for (int sid : new int[]{1, 2, 3, 150}) {
+                assertEquals(sid, records.next().getValue(0).getInt());
+            }
+            assertFalse(records.hasNext());
+        }
+
+        v = parse("SELECT sid FROM Students WHERE sid >= 10 AND 13 > sid AND sid != 11;");
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> records = v.getQueryPlan(t).get().execute();
+            assertEquals(10, records.next().getValue(0).getInt());
+            assertEquals(12, records.next().getValue(0).getInt());
+            assertFalse(records.hasNext());
+        }
+    }
 }
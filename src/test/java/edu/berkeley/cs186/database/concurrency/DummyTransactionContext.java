@@ -12,7 +12,9 @@ import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
 
@@ -60,6 +62,11 @@ public class DummyTransactionContext extends TransactionContext {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public List<List<String>> getIndexColumns(String tableName) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public Iterator<Record> sortedScan(String tableName, String columnName) {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -77,6 +84,26 @@ public class DummyTransactionContext extends TransactionContext {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public Iterator<RecordId> lookupRange(String tableName, String columnName,
+                                          DataBox startValue, boolean startInclusive,
+                                          DataBox stopValue, boolean stopInclusive) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    @Override
+    public Iterator<RecordId> lookupRange(String tableName, List<String> columnNames,
+                                          List<DataBox> prefix,
+                                          DataBox startValue, boolean startInclusive,
+                                          DataBox stopValue, boolean stopInclusive) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    @Override
+    public Iterator<Record> getRecords(String tableName, Iterator<RecordId> rids) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public boolean contains(String tableName, String columnName, DataBox key) {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -92,6 +119,16 @@ public class DummyTransactionContext extends TransactionContext {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public int getDegreeOfParallelism() {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    @Override
+    public ExecutorService getQueryExecutor() {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public RecordId deleteRecord(String tableName, RecordId rid)  {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -10,6 +10,7 @@ import edu.berkeley.cs186.database.concurrency.DummyLockContext;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
@@ -27,6 +28,12 @@ import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.function.Supplier;
 
 import static org.junit.Assert.*;
@@ -470,6 +477,313 @@ public class TestBPlusTree {
         }
     }
 
+    @Test
+    @Category(SystemTests.class)
+    public void testScanRange() {
+        // keys 0, 2, 4, ..., 998, so that bounds fall both on and between keys
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        List<RecordId> sortedRids = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            tree.put(new IntDataBox(2 * i), new RecordId(2 * i, (short) 0));
+            sortedRids.add(new RecordId(2 * i, (short) 0));
+        }
+
+        // 100 <= key < 200 stops at the leaf holding 200
+        assertEquals(sortedRids.subList(50, 100), indexIteratorToList(() ->
+                tree.scanRange(new IntDataBox(100), true, new IntDataBox(200), false)));
+        // 100 < key <= 200
+        assertEquals(sortedRids.subList(51, 101), indexIteratorToList(() ->
+                tree.scanRange(new IntDataBox(100), false, new IntDataBox(200), true)));
+        // bounds between keys
+        assertEquals(sortedRids.subList(50, 100), indexIteratorToList(() ->
+                tree.scanRange(new IntDataBox(99), false, new IntDataBox(199), true)));
+        // unbounded on either side
+        assertEquals(sortedRids.subList(0, 5), indexIteratorToList(() ->
+                tree.scanRange(null, false, new IntDataBox(8), true)));
+        assertEquals(sortedRids.subList(495, 500), indexIteratorToList(() ->
+                tree.scanRange(new IntDataBox(989), true, null, false)));
+        assertEquals(sortedRids, indexIteratorToList(() -> tree.scanRange(null, false, null, false)));
+        // empty ranges
+        assertEquals(Collections.emptyList(), indexIteratorToList(() ->
+                tree.scanRange(new IntDataBox(100), false, new IntDataBox(100), true)));
+        assertEquals(Collections.emptyList(), indexIteratorToList(() ->
+                tree.scanRange(new IntDataBox(2000), true, null, false)));
+        assertEquals(Collections.singletonList(sortedRids.get(50)), indexIteratorToList(() ->
+                tree.scanRange(new IntDataBox(100), true, new IntDataBox(100), true)));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testInPlaceUpdates() {
+        // Random puts and removes, most of which modify leaves in place on
+        // their pages, checked against a TreeMap and against the nodes loaded
+        // back from the pages.
+        for (Type type : Arrays.asList(Type.intType(), Type.stringType(6))) {
+            BPlusTree tree = getBPlusTree(type, 3);
+            TreeMap<DataBox, RecordId> expected = new TreeMap<>();
+            Random random = new Random(186);
+            for (int i = 0; i < 3000; ++i) {
+                int k = random.nextInt(500);
+                DataBox key = type.equals(Type.intType()) ? new IntDataBox(k)
+                                                          : new StringDataBox(String.format("%05d", k), 6);
+                if (random.nextInt(3) == 0) {
+                    tree.remove(key);
+                    expected.remove(key);
+                } else if (!expected.containsKey(key)) {
+                    RecordId rid = new RecordId(k, (short) i);
+                    tree.put(key, rid);
+                    expected.put(key, rid);
+                } else {
+                    try {
+                        tree.put(key, new RecordId(k, (short) i));
+                        fail();
+                    } catch (BPlusTreeException e) { /* do nothing */ }
+                }
+            }
+
+            for (int k = 0; k < 500; ++k) {
+                DataBox key = type.equals(Type.intType()) ? new IntDataBox(k)
+                                                          : new StringDataBox(String.format("%05d", k), 6);
+                assertEquals(Optional.ofNullable(expected.get(key)), tree.get(key));
+            }
+            List<RecordId> rids = new ArrayList<>(expected.values());
+            assertEquals(rids, indexIteratorToList(tree::scanAll));
+            BPlusTree fromDisk = new BPlusTree(bufferManager, metadata, treeContext);
+            assertEquals(tree.toSexp(), fromDisk.toSexp());
+            assertEquals(rids, indexIteratorToList(fromDisk::scanAll));
+        }
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testBulkLoadAndAppend() {
+        // Bulk loads enough keys for several levels of inner nodes, appends
+        // more after them, and checks the tree against the keys and against
+        // the nodes loaded back from the pages.
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 2) {
+            RecordId rid = new RecordId(i, (short) i);
+            data.add(new Pair<>(new IntDataBox(i), rid));
+            rids.add(rid);
+        }
+        tree.bulkLoad(data.iterator(), 0.75f);
+        assertTrue(metadata.getHeight() >= 3);
+        assertEquals(rids, indexIteratorToList(tree::scanAll));
+        for (int i = 0; i < 1000; ++i) {
+            Optional<RecordId> expected = i % 2 == 0 ? Optional.of(new RecordId(i, (short) i))
+                                                     : Optional.empty();
+            assertEquals(expected, tree.get(new IntDataBox(i)));
+        }
+        try {
+            tree.bulkLoad(data.iterator(), 0.75f);
+            fail();
+        } catch (BPlusTreeException e) { /* do nothing */ }
+
+        // puts between the bulk loaded keys, then a sorted batch after them
+        for (int i = 1; i < 1000; i += 10) {
+            tree.put(new IntDataBox(i), new RecordId(i, (short) i));
+        }
+        data.clear();
+        for (int i = 1000; i < 1500; ++i) {
+            data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) i)));
+        }
+        tree.append(data.iterator(), 1f);
+        // a batch whose third key is out of order keeps the first two
+        data.clear();
+        for (int i : new int[] {1500, 1501, 1400, 1502}) {
+            data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) i)));
+        }
+        try {
+            tree.append(data.iterator(), 1f);
+            fail();
+        } catch (BPlusTreeException e) { /* do nothing */ }
+
+        rids.clear();
+        for (int i = 0; i < 1502; ++i) {
+            if (i % 2 == 0 || i % 10 == 1 || i >= 1000) {
+                rids.add(new RecordId(i, (short) i));
+            }
+        }
+        assertEquals(rids, indexIteratorToList(tree::scanAll));
+        assertEquals(Optional.of(new RecordId(1501, (short) 1501)), tree.get(new IntDataBox(1501)));
+        BPlusTree fromDisk = new BPlusTree(bufferManager, metadata, treeContext);
+        assertEquals(tree.toSexp(), fromDisk.toSexp());
+        assertEquals(rids, indexIteratorToList(fromDisk::scanAll));
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testAppendToRootLeaf() {
+        // The root is a leaf with a few keys, which moves off the root page
+        // once the appended keys no longer fit in it.
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        long rootPageNum = metadata.getRootPageNum();
+        tree.put(new IntDataBox(0), new RecordId(0, (short) 0));
+        tree.put(new IntDataBox(1), new RecordId(1, (short) 1));
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 2; i < 7; ++i) {
+            data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) i)));
+        }
+        tree.append(data.iterator(), 1f);
+        assertEquals(rootPageNum, metadata.getRootPageNum());
+        assertEquals(1, metadata.getHeight());
+        String leaf0 = "((0 (0 0)) (1 (1 1)) (2 (2 2)) (3 (3 3)))";
+        String leaf1 = "((4 (4 4)) (5 (5 5)) (6 (6 6)))";
+        assertEquals(String.format("(%s 4 %s)", leaf0, leaf1), tree.toSexp());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testCompressedKeys() {
+        // Long string keys that share most of their bytes: far more of them
+        // fit on a page than the size of their type allows for, and the inner
+        // nodes are keyed by short separators.
+        Type type = Type.stringType(255);
+        int order = BPlusTree.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, type);
+        int fixedOrder = (BufferManager.EFFECTIVE_PAGE_SIZE - 13) / (255 + 10) / 2;
+        assertTrue(order > 10 * fixedOrder);
+        BPlusTree tree = getBPlusTree(type, order);
+
+        List<Integer> ks = new ArrayList<>();
+        for (int k = 0; k < 3000; ++k) ks.add(k);
+        Collections.shuffle(ks, new Random(186));
+        TreeMap<DataBox, RecordId> expected = new TreeMap<>();
+        for (int k : ks) {
+            DataBox key = new StringDataBox(String.format("https://example.com/catalog/item-%06d", k), 255);
+            RecordId rid = new RecordId(k, (short) k);
+            tree.put(key, rid);
+            expected.put(key, rid);
+            if (k % 3 == 0) {
+                tree.remove(key);
+                expected.remove(key);
+            }
+        }
+        // keys at either end that don't share the prefix of their leaves
+        for (String s : Arrays.asList("", "a", "https://example.com/", "zzz")) {
+            DataBox key = new StringDataBox(s, 255);
+            RecordId rid = new RecordId(s.length(), (short) 0);
+            tree.put(key, rid);
+            expected.put(key, rid);
+        }
+        assertEquals(1, metadata.getHeight());
+        InnerNode root = InnerNode.fromBytes(metadata, bufferManager, treeContext, metadata.getRootPageNum());
+        for (DataBox separator : root.getKeys()) {
+            assertTrue(separator.getString().length() <= "https://example.com/catalog/item-000000".length());
+        }
+
+        for (Map.Entry<DataBox, RecordId> entry : expected.entrySet()) {
+            assertEquals(Optional.of(entry.getValue()), tree.get(entry.getKey()));
+        }
+        assertEquals(Optional.empty(), tree.get(new StringDataBox("https://example.com/catalog/item-000003", 255)));
+        List<RecordId> rids = new ArrayList<>(expected.values());
+        assertEquals(rids, indexIteratorToList(tree::scanAll));
+        DataBox start = new StringDataBox("https://example.com/catalog/item-001", 255);
+        assertEquals(new ArrayList<>(expected.tailMap(start).values()),
+                     indexIteratorToList(() -> tree.scanGreaterEqual(start)));
+        BPlusTree fromDisk = new BPlusTree(bufferManager, metadata, treeContext);
+        assertEquals(tree.toSexp(), fromDisk.toSexp());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testBulkLoadCompressedKeys() {
+        // Leaves of bulk loaded string keys are filled up to the fill factor
+        // of their pages rather than of their order.
+        Type type = Type.stringType(255);
+        BPlusTree tree = getBPlusTree(type, BPlusTree.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, type));
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int k = 0; k < 5000; ++k) {
+            RecordId rid = new RecordId(k, (short) k);
+            data.add(new Pair<>(new StringDataBox(String.format("customer-%08d", k), 255), rid));
+            rids.add(rid);
+        }
+        tree.bulkLoad(data.iterator(), 0.9f);
+        assertEquals(1, metadata.getHeight());
+        InnerNode root = InnerNode.fromBytes(metadata, bufferManager, treeContext, metadata.getRootPageNum());
+        // 5000 keys of about 20 bytes each in pages that are 90% full
+        assertTrue(root.getChildren().size() <= 5000 * 20 / (BufferManager.EFFECTIVE_PAGE_SIZE * 9 / 10) + 1);
+
+        assertEquals(rids, indexIteratorToList(tree::scanAll));
+        for (int k = 0; k < 5000; k += 7) {
+            assertEquals(Optional.of(new RecordId(k, (short) k)),
+                         tree.get(new StringDataBox(String.format("customer-%08d", k), 255)));
+        }
+        tree.put(new StringDataBox("customer-00000100x", 255), new RecordId(0, (short) 1));
+        assertEquals(Optional.of(new RecordId(0, (short) 1)),
+                     tree.get(new StringDataBox("customer-00000100x", 255)));
+        BPlusTree fromDisk = new BPlusTree(bufferManager, metadata, treeContext);
+        assertEquals(tree.toSexp(), fromDisk.toSexp());
+    }
+
+    @Test
+    @Category(SystemTests.class)
+    public void testConcurrentAccess() throws Exception {
+        // Writers put interleaved keys into the same leaves (splitting them,
+        // and the root, all the time) and then remove half of them, while
+        // readers look up keys that have been put and are never removed.
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        int numWriters = 4;
+        int numReaders = 4;
+        int keysPerWriter = 400;
+        AtomicIntegerArray numPut = new AtomicIntegerArray(numWriters);
+        AtomicBoolean done = new AtomicBoolean(false);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWriters + numReaders);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < numWriters; ++w) {
+                int writer = w;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < keysPerWriter; ++i) {
+                        int k = i * numWriters + writer;
+                        tree.put(new IntDataBox(k), new RecordId(k, (short) 0));
+                        numPut.set(writer, i + 1);
+                    }
+                    for (int i = 1; i < keysPerWriter; i += 2) {
+                        tree.remove(new IntDataBox(i * numWriters + writer));
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < numReaders; ++r) {
+                int seed = r;
+                readers.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    while (!done.get()) {
+                        int writer = random.nextInt(numWriters);
+                        int n = numPut.get(writer) / 2;
+                        if (n == 0) continue;
+                        int k = 2 * random.nextInt(n) * numWriters + writer;
+                        assertEquals(Optional.of(new RecordId(k, (short) 0)), tree.get(new IntDataBox(k)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : writers) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+            done.set(true);
+            for (Future<?> f : readers) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<RecordId> expected = new ArrayList<>();
+        for (int i = 0; i < keysPerWriter; i += 2) {
+            for (int w = 0; w < numWriters; ++w) {
+                int k = i * numWriters + w;
+                expected.add(new RecordId(k, (short) 0));
+            }
+        }
+        assertEquals(expected, indexIteratorToList(tree::scanAll));
+    }
+
     @Test
     @Category(SystemTests.class)
     public void testMaxOrder() {
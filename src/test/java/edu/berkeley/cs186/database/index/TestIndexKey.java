@@ -0,0 +1,179 @@
+package edu.berkeley.cs186.database.index;
+
+import edu.berkeley.cs186.database.categories.Proj2Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj2Tests.class, SystemTests.class})
+public class TestIndexKey {
+    private BufferManager bufferManager;
+
+    @Before
+    public void setup() {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        this.bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy());
+    }
+
+    @After
+    public void cleanup() {
+        this.bufferManager.close();
+    }
+
+    private BPlusTree getBPlusTree(IndexKey key, int order) {
+        BPlusTreeMetadata metadata = new BPlusTreeMetadata("test", "col", key.getType(), order,
+                0, DiskSpaceManager.INVALID_PAGE_NUM, -1);
+        return new BPlusTree(bufferManager, metadata, new DummyLockContext());
+    }
+
+    private static RecordId rid(int i) {
+        return new RecordId(i, (short) (i % 7));
+    }
+
+    private static List<RecordId> toList(Iterator<RecordId> iter) {
+        List<RecordId> list = new ArrayList<>();
+        iter.forEachRemaining(list::add);
+        return list;
+    }
+
+    /**
+     * Checks that the keys of `values`, which are in ascending order, are in
+     * ascending order too.
+     */
+    private static void checkAscending(IndexKey key, List<DataBox> values) {
+        for (int i = 1; i < values.size(); ++i) {
+            DataBox a = key.of(Collections.singletonList(values.get(i - 1)), rid(0));
+            DataBox b = key.of(Collections.singletonList(values.get(i)), rid(0));
+            assertTrue(values.get(i - 1) + " < " + values.get(i), a.compareTo(b) < 0);
+        }
+    }
+
+    @Test
+    public void testOrderOfValues() {
+        checkAscending(new IndexKey(Collections.singletonList(Type.intType()), false), Arrays.asList(
+                new IntDataBox(Integer.MIN_VALUE), new IntDataBox(-5), new IntDataBox(-1),
+                new IntDataBox(0), new IntDataBox(1), new IntDataBox(Integer.MAX_VALUE)));
+        checkAscending(new IndexKey(Collections.singletonList(Type.longType()), false), Arrays.asList(
+                new LongDataBox(Long.MIN_VALUE), new LongDataBox(-1L), new LongDataBox(0L),
+                new LongDataBox(1L << 40)));
+        checkAscending(new IndexKey(Collections.singletonList(Type.floatType()), false), Arrays.asList(
+                new FloatDataBox(Float.NEGATIVE_INFINITY), new FloatDataBox(-2.5f),
+                new FloatDataBox(-0.5f), new FloatDataBox(-0.0f), new FloatDataBox(0.0f),
+                new FloatDataBox(0.25f), new FloatDataBox(3f), new FloatDataBox(Float.POSITIVE_INFINITY)));
+        checkAscending(new IndexKey(Collections.singletonList(Type.boolType()), false), Arrays.asList(
+                new BoolDataBox(false), new BoolDataBox(true)));
+        // strings of any length up to the column's, shorter strings first
+        checkAscending(new IndexKey(Collections.singletonList(Type.stringType(5)), false), Arrays.asList(
+                new StringDataBox("", 1), new StringDataBox("a", 1), new StringDataBox("ab", 5),
+                new StringDataBox("abc", 3), new StringDataBox("b", 5), new StringDataBox("zzzzz", 5)));
+    }
+
+    @Test
+    public void testCompositeOrder() {
+        IndexKey key = new IndexKey(Arrays.asList(Type.intType(), Type.stringType(4)), false);
+        assertEquals(Type.byteArrayType(4 + 5 + IndexKey.RID_SIZE), key.getType());
+        DataBox k1 = key.of(Arrays.asList(new IntDataBox(1), new StringDataBox("b", 4)), rid(9));
+        DataBox k2 = key.of(Arrays.asList(new IntDataBox(1), new StringDataBox("c", 4)), rid(1));
+        DataBox k3 = key.of(Arrays.asList(new IntDataBox(2), new StringDataBox("a", 4)), rid(0));
+        assertTrue(k1.compareTo(k2) < 0);
+        assertTrue(k2.compareTo(k3) < 0);
+        // duplicate values are ordered by record id
+        DataBox k4 = key.of(Arrays.asList(new IntDataBox(1), new StringDataBox("c", 4)), rid(2));
+        assertTrue(k2.compareTo(k4) < 0);
+        assertTrue(k4.compareTo(k3) < 0);
+
+        // a unique index on a single column is keyed by the column's values
+        IndexKey plain = new IndexKey(Collections.singletonList(Type.intType()), true);
+        assertTrue(plain.isPlain());
+        assertEquals(new IntDataBox(3), plain.of(Collections.singletonList(new IntDataBox(3)), rid(0)));
+        // but a unique index on several columns isn't
+        IndexKey unique = new IndexKey(Arrays.asList(Type.intType(), Type.intType()), true);
+        assertEquals(Type.byteArrayType(8), unique.getType());
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        // every value appears 20 times, in a tree of several levels
+        IndexKey key = new IndexKey(Collections.singletonList(Type.intType()), false);
+        BPlusTree tree = getBPlusTree(key, 2);
+        for (int i = 0; i < 400; ++i) {
+            tree.put(key.of(Collections.singletonList(new IntDataBox(i % 20)), rid(i)), rid(i));
+        }
+        assertTrue(tree.getMetadata().getHeight() > 2);
+
+        List<DataBox> none = Collections.emptyList();
+        for (int v = 0; v < 20; ++v) {
+            IntDataBox value = new IntDataBox(v);
+            List<RecordId> expected = new ArrayList<>();
+            for (int i = v; i < 400; i += 20) expected.add(rid(i));
+            assertEquals(expected, toList(key.scanRange(tree, none, value, true, value, true)));
+        }
+        // exclusive bounds skip every record with the bound's value
+        List<RecordId> rids = toList(key.scanRange(tree, none, new IntDataBox(4), false,
+                                                   new IntDataBox(7), false));
+        assertEquals(40, rids.size());
+        for (RecordId r : rids) {
+            int v = (int) r.getPageNum() % 20;
+            assertTrue(v == 5 || v == 6);
+        }
+        assertEquals(400, toList(key.scanRange(tree, none, null, false, null, false)).size());
+
+        // removing a record removes only its own key
+        tree.remove(key.of(Collections.singletonList(new IntDataBox(3)), rid(43)));
+        IntDataBox three = new IntDataBox(3);
+        List<RecordId> left = toList(key.scanRange(tree, none, three, true, three, true));
+        assertEquals(19, left.size());
+        assertFalse(left.contains(rid(43)));
+    }
+
+    @Test
+    public void testPrefixRanges() {
+        // (a, b) with a in [0, 10) and b in [0, 30), each pair twice
+        IndexKey key = new IndexKey(Arrays.asList(Type.intType(), Type.intType()), false);
+        BPlusTree tree = getBPlusTree(key, 3);
+        int n = 0;
+        for (int copy = 0; copy < 2; ++copy) {
+            for (int b = 29; b >= 0; --b) {
+                for (int a = 0; a < 10; ++a) {
+                    tree.put(key.of(Arrays.asList(new IntDataBox(a), new IntDataBox(b)), rid(n)), rid(n));
+                    ++n;
+                }
+            }
+        }
+        List<DataBox> a4 = Collections.singletonList(new IntDataBox(4));
+        // the whole prefix
+        assertEquals(60, toList(key.scanRange(tree, a4, null, false, null, false)).size());
+        // a range on the next column: 10 <= b < 20
+        List<RecordId> rids = toList(key.scanRange(tree, a4, new IntDataBox(10), true,
+                                                   new IntDataBox(20), false));
+        assertEquals(20, rids.size());
+        // 10 < b <= 20
+        assertEquals(20, toList(key.scanRange(tree, a4, new IntDataBox(10), false,
+                                              new IntDataBox(20), true)).size());
+        // one side unbounded: b > 25
+        assertEquals(8, toList(key.scanRange(tree, a4, new IntDataBox(25), false,
+                                             null, false)).size());
+        // every column fixed
+        List<DataBox> both = Arrays.asList(new IntDataBox(9), new IntDataBox(0));
+        assertEquals(2, toList(key.scanRange(tree, both, null, false, null, false)).size());
+        // a value that isn't there
+        List<DataBox> missing = Collections.singletonList(new IntDataBox(10));
+        assertFalse(key.scanRange(tree, missing, null, false, null, false).hasNext());
+    }
+}
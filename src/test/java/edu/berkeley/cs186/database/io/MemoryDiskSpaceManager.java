@@ -1,5 +1,6 @@
 package edu.berkeley.cs186.database.io;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -105,6 +106,34 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
         System.arraycopy(buf, 0, pages.get(page), 0, DiskSpaceManager.PAGE_SIZE);
     }
 
+    @Override
+    public void readPages(long[] pages, ByteBuffer[] bufs) {
+        for (int i = 0; i < pages.length; ++i) {
+            byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+            readPage(pages[i], buf);
+            ByteBuffer dst = bufs[i].duplicate();
+            dst.clear();
+            dst.put(buf);
+        }
+    }
+
+    @Override
+    public void writePages(long[] pages, ByteBuffer[] bufs) {
+        for (int i = 0; i < pages.length; ++i) {
+            byte[] buf = new byte[bufs[i].capacity()];
+            ByteBuffer src = bufs[i].duplicate();
+            src.clear();
+            src.get(buf);
+            writePage(pages[i], buf);
+        }
+    }
+
+    @Override
+    public void sync(int partNum) {}
+
+    @Override
+    public void syncAll() {}
+
     @Override
     public boolean pageAllocated(long page) {
         return pages.containsKey(page);
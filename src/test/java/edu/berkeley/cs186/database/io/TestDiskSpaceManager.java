@@ -10,6 +10,7 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.NoSuchElementException;
 
@@ -21,14 +22,14 @@ public class TestDiskSpaceManager {
     public TemporaryFolder tempFolder = new TemporaryFolder();
 
     private DiskSpaceManager diskSpaceManager;
-    private Path managerRoot;
+    Path managerRoot;
 
     @Before
     public void beforeEach() throws IOException {
         managerRoot = tempFolder.newFolder("dsm-test").toPath();
     }
 
-    private DiskSpaceManager getDiskSpaceManager() {
+    DiskSpaceManager getDiskSpaceManager() {
         return new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
     }
 
@@ -298,5 +299,130 @@ public class TestDiskSpaceManager {
         diskSpaceManager.freePart(partNum2);
         diskSpaceManager.close();
     }
-}
 
+    @Test
+    public void testDeferredSync() {
+        DiskSpaceManagerImpl manager = (DiskSpaceManagerImpl) getDiskSpaceManager();
+        manager.setDeferSync(true);
+        int partNum = manager.allocPart();
+        long pageNum1 = manager.allocPage(partNum);
+        long pageNum2 = manager.allocPage(partNum);
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf[0] = 42;
+        manager.writePage(pageNum1, buf);
+        manager.writePage(pageNum2, buf);
+        assertEquals(0, manager.getNumSyncs());
+
+        // one sync covers every write so far
+        manager.sync(partNum);
+        assertEquals(1, manager.getNumSyncs());
+        manager.sync(partNum);
+        manager.syncAll();
+        assertEquals(1, manager.getNumSyncs());
+
+        manager.writePage(pageNum1, buf);
+        manager.close();
+        assertEquals(2, manager.getNumSyncs());
+
+        diskSpaceManager = getDiskSpaceManager();
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(buf, readbuf);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testImmediateSync() {
+        DiskSpaceManagerImpl manager = (DiskSpaceManagerImpl) getDiskSpaceManager();
+        int partNum = manager.allocPart();
+        long pageNum = manager.allocPage(partNum);
+        long syncs = manager.getNumSyncs();
+
+        manager.writePage(pageNum, new byte[DiskSpaceManager.PAGE_SIZE]);
+        assertEquals(syncs + 1, manager.getNumSyncs());
+        // nothing left to force
+        manager.sync(partNum);
+        assertEquals(syncs + 1, manager.getNumSyncs());
+        manager.close();
+    }
+
+    @Test
+    public void testReadWritePages() {
+        DiskSpaceManagerImpl manager = (DiskSpaceManagerImpl) getDiskSpaceManager();
+        int partNum1 = manager.allocPart();
+        int partNum2 = manager.allocPart();
+        // unordered, across two partitions, and across a header page
+        int lastOfHeader = DiskSpaceManagerImpl.DATA_PAGES_PER_HEADER - 1;
+        long[] pages = new long[] {
+            manager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum1, lastOfHeader + 1)),
+            manager.allocPage(partNum2),
+            manager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum1, lastOfHeader)),
+            manager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum1, lastOfHeader - 1)),
+            manager.allocPage(partNum2),
+        };
+        byte[][] bufs = new byte[pages.length][DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < pages.length; ++i) {
+            for (int j = 0; j < DiskSpaceManager.PAGE_SIZE; ++j) {
+                bufs[i][j] = (byte) (i * 31 + j);
+            }
+        }
+        long syncs = manager.getNumSyncs();
+        manager.writePages(pages, wrap(bufs));
+        // one sync per partition
+        assertEquals(syncs + 2, manager.getNumSyncs());
+
+        for (int i = 0; i < pages.length; ++i) {
+            byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+            manager.readPage(pages[i], readbuf);
+            assertArrayEquals(bufs[i], readbuf);
+        }
+        byte[][] readbufs = new byte[pages.length][DiskSpaceManager.PAGE_SIZE];
+        manager.readPages(pages, wrap(readbufs));
+        for (int i = 0; i < pages.length; ++i) {
+            assertArrayEquals(bufs[i], readbufs[i]);
+        }
+        manager.close();
+    }
+
+    @Test(expected = PageException.class)
+    public void testReadPagesNotAllocated() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum = diskSpaceManager.allocPage(partNum);
+        byte[][] bufs = new byte[2][DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPages(new long[] {pageNum, pageNum + 1}, wrap(bufs));
+    }
+
+    @Test
+    public void testReadWritePagesDirect() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long[] pages = new long[] {diskSpaceManager.allocPage(partNum), diskSpaceManager.allocPage(partNum)};
+        ByteBuffer[] bufs = new ByteBuffer[pages.length];
+        for (int i = 0; i < pages.length; ++i) {
+            bufs[i] = ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE);
+            bufs[i].putInt(0, i + 1);
+            // positions and limits are ignored
+            bufs[i].position(100);
+        }
+        diskSpaceManager.writePages(pages, bufs);
+
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pages[1], readbuf);
+        assertEquals(2, ByteBuffer.wrap(readbuf).getInt(0));
+        ByteBuffer[] readbufs = new ByteBuffer[] {ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE)};
+        diskSpaceManager.readPages(new long[] {pages[0]}, readbufs);
+        assertEquals(1, readbufs[0].getInt(0));
+        assertEquals(0, readbufs[0].position());
+        diskSpaceManager.close();
+    }
+
+    private static ByteBuffer[] wrap(byte[][] bufs) {
+        ByteBuffer[] buffers = new ByteBuffer[bufs.length];
+        for (int i = 0; i < bufs.length; ++i) {
+            buffers[i] = ByteBuffer.wrap(bufs[i]);
+        }
+        return buffers;
+    }
+}
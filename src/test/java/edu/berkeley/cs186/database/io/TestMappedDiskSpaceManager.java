@@ -0,0 +1,43 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the disk space manager tests against MappedDiskSpaceManager.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestMappedDiskSpaceManager extends TestDiskSpaceManager {
+    @Override
+    DiskSpaceManager getDiskSpaceManager() {
+        return new MappedDiskSpaceManager(managerRoot.toString(), new DummyRecoveryManager());
+    }
+
+    @Test
+    public void testFileGrowsBySegment() {
+        DiskSpaceManager manager = getDiskSpaceManager();
+        int partNum = manager.allocPart();
+        long pageNum = manager.allocPage(partNum);
+        assertEquals(MappedPartitionHandle.SEGMENT_SIZE,
+                     managerRoot.resolve(Integer.toString(partNum)).toFile().length());
+
+        // pages in a different segment are read and written through their own mapping
+        long segmentPages = MappedPartitionHandle.SEGMENT_SIZE / DiskSpaceManager.PAGE_SIZE;
+        long farPageNum = manager.allocPage(pageNum + 2 * segmentPages);
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf[0] = 1;
+        buf[buf.length - 1] = 2;
+        manager.writePage(farPageNum, buf);
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        manager.readPage(farPageNum, readbuf);
+        assertArrayEquals(buf, readbuf);
+        manager.readPage(pageNum, readbuf);
+        assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], readbuf);
+        manager.close();
+    }
+}
@@ -12,7 +12,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -330,4 +337,330 @@ public class TestBufferManager {
         int partNum = diskSpaceManager.allocPart(1);
         bufferManager.fetchPageFrame(DiskSpaceManager.getVirtualPageNum(partNum, 0));
     }
+
+    @Test
+    public void testConcurrentSharedLatches() throws Exception {
+        int partNum = diskSpaceManager.allocPart(1);
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        long pageNum = page.getPageNum();
+        page.unpin();
+
+        // Every reader holds the page while waiting on the barrier, so the
+        // barrier only trips if all of them hold the shared latch at once.
+        int numReaders = 4;
+        CyclicBarrier barrier = new CyclicBarrier(numReaders);
+        ExecutorService executor = Executors.newFixedThreadPool(numReaders);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numReaders; ++i) {
+                futures.add(executor.submit(() -> {
+                    Page p = bufferManager.fetchPageShared(new DummyLockContext(), pageNum);
+                    try {
+                        barrier.await(5, TimeUnit.SECONDS);
+                    } finally {
+                        p.unpin();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExclusiveLatchBlocksReaders() throws Exception {
+        int partNum = diskSpaceManager.allocPart(1);
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        long pageNum = page.getPageNum();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Byte> reader = executor.submit(() -> {
+                Page p = bufferManager.fetchPageShared(new DummyLockContext(), pageNum);
+                try {
+                    return p.getBuffer().get();
+                } finally {
+                    p.unpin();
+                }
+            });
+            try {
+                reader.get(200, TimeUnit.MILLISECONDS);
+                fail("reader acquired page while it was latched exclusively");
+            } catch (TimeoutException e) { /* expected */ }
+
+            page.getBuffer().put((byte) 42);
+            page.unpin();
+            assertEquals((byte) 42, (byte) reader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOptimisticRead() {
+        int partNum = diskSpaceManager.allocPart(1);
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        assertEquals(0L, page.tryOptimisticRead());
+        page.unpin();
+
+        long stamp = page.tryOptimisticRead();
+        assertNotEquals(0L, stamp);
+        assertTrue(page.validate(stamp));
+
+        page.pinShared();
+        page.unpin();
+        assertTrue(page.validate(stamp));
+
+        page.pin();
+        page.getBuffer().put((byte) 1);
+        page.unpin();
+        assertFalse(page.validate(stamp));
+    }
+
+    @Test
+    public void testSubPools() {
+        BufferManager pooled = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 8,
+                LRUEvictionPolicy::new, 4);
+        try {
+            int partNum = diskSpaceManager.allocPart(1);
+            long[] pageNums = new long[20];
+            for (int i = 0; i < pageNums.length; ++i) {
+                BufferFrame frame = pooled.fetchNewPageFrame(partNum);
+                frame.writeBytes((short) 0, (short) 1, new byte[] { (byte) i });
+                pageNums[i] = frame.getPageNum();
+                frame.unpin();
+            }
+            // most of the pages were evicted, so reading them back goes through
+            // eviction in every sub-pool
+            byte[] actual = new byte[1];
+            for (int i = 0; i < pageNums.length; ++i) {
+                BufferFrame frame = pooled.fetchPageFrame(pageNums[i]);
+                frame.readBytes((short) 0, (short) 1, actual);
+                frame.unpin();
+                assertEquals((byte) i, actual[0]);
+            }
+        } finally {
+            pooled.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentReadersLRU() throws Exception {
+        BufferManager pooled = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 8,
+                LRUEvictionPolicy::new, 1);
+        int numReaders = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numReaders);
+        try {
+            int partNum = diskSpaceManager.allocPart(1);
+            long[] pageNums = new long[24];
+            for (int i = 0; i < pageNums.length; ++i) {
+                Page page = pooled.fetchNewPage(new DummyLockContext(), partNum);
+                page.getBuffer().put((byte) i);
+                pageNums[i] = page.getPageNum();
+                page.unpin();
+            }
+
+            // readers holding shared latches on the same frames all hit them
+            // at once, while others evict frames to load the pages they read
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numReaders; ++i) {
+                int reader = i;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 5000; ++j) {
+                        int index = (reader * 7 + j * (j % 3 == 0 ? 1 : 5)) % pageNums.length;
+                        Page page = pooled.fetchPageShared(new DummyLockContext(), pageNums[index]);
+                        try {
+                            for (int k = 0; k < 8; ++k) {
+                                assertEquals((byte) index, page.getBuffer().get(0));
+                            }
+                        } finally {
+                            page.unpin();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(30, TimeUnit.SECONDS);
+            }
+
+            // eviction still works afterwards
+            for (int i = 0; i < pageNums.length; ++i) {
+                Page page = pooled.fetchPage(new DummyLockContext(), pageNums[i]);
+                assertEquals((byte) i, page.getBuffer().get(0));
+                page.unpin();
+            }
+        } finally {
+            executor.shutdownNow();
+            pooled.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManySubPools() {
+        new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 4, ClockEvictionPolicy::new, 5);
+    }
+
+    @Test
+    public void testHitSkipsAllocationCheck() {
+        AtomicInteger checks = new AtomicInteger();
+        DiskSpaceManager countingManager = new MemoryDiskSpaceManager() {
+            @Override
+            public boolean pageAllocated(long page) {
+                checks.incrementAndGet();
+                return super.pageAllocated(page);
+            }
+        };
+        BufferManager pooled = new BufferManager(countingManager, new DummyRecoveryManager(), 4,
+                ClockEvictionPolicy::new, 2);
+        try {
+            int partNum = countingManager.allocPart(1);
+            BufferFrame frame = pooled.fetchNewPageFrame(partNum);
+            frame.unpin();
+            int checksAfterLoad = checks.get();
+            for (int i = 0; i < 10; ++i) {
+                pooled.fetchPageFrame(frame.getPageNum()).unpin();
+            }
+            assertEquals(checksAfterLoad, checks.get());
+        } finally {
+            pooled.close();
+            countingManager.close();
+        }
+    }
+
+    @Test
+    public void testPageCleaner() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        long[] pageNums = new long[3];
+        for (int i = 0; i < pageNums.length; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            frame.writeBytes((short) 67, (short) 4, expected);
+            pageNums[i] = frame.getPageNum();
+            frame.unpin();
+        }
+
+        bufferManager.startCleaner(1, 1.0);
+        long deadline = System.currentTimeMillis() + 5000;
+        boolean[] anyDirty = new boolean[1];
+        do {
+            Thread.sleep(10);
+            anyDirty[0] = false;
+            bufferManager.iterPageNums((pageNum, dirty) -> anyDirty[0] |= dirty);
+        } while (anyDirty[0] && System.currentTimeMillis() < deadline);
+        bufferManager.stopCleaner();
+        assertFalse(anyDirty[0]);
+
+        byte[] actual = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (long pageNum : pageNums) {
+            diskSpaceManager.readPage(pageNum, actual);
+            assertArrayEquals(expected, Arrays.copyOfRange(actual, 67 + BufferManager.RESERVED_SPACE,
+                              71 + BufferManager.RESERVED_SPACE));
+        }
+    }
+
+    @Test
+    public void testStopCleanerDuringWrite() throws InterruptedException {
+        // Interrupting a thread inside a FileChannel write closes the channel, so
+        // the cleaner must let a write in progress finish without interrupting it.
+        CountDownLatch writing = new CountDownLatch(1);
+        AtomicInteger interruptedWrites = new AtomicInteger();
+        DiskSpaceManager slowDisk = new MemoryDiskSpaceManager() {
+            @Override
+            public void writePages(long[] pages, ByteBuffer[] bufs) {
+                writing.countDown();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    interruptedWrites.incrementAndGet();
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    interruptedWrites.incrementAndGet();
+                }
+                super.writePages(pages, bufs);
+            }
+        };
+        BufferManager slowBufferManager = new BufferManager(slowDisk, new DummyRecoveryManager(), 5,
+                new ClockEvictionPolicy());
+        try {
+            int partNum = slowDisk.allocPart(1);
+            BufferFrame frame = slowBufferManager.fetchNewPageFrame(partNum);
+            frame.writeBytes((short) 0, (short) 1, new byte[] { 1 });
+            frame.unpin();
+
+            slowBufferManager.startCleaner(1, 1.0);
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            slowBufferManager.stopCleaner();
+            assertEquals(0, interruptedWrites.get());
+        } finally {
+            slowBufferManager.close();
+            slowDisk.close();
+        }
+    }
+
+    /**
+     * Waits for the given pages to be loaded into the buffer manager.
+     * @return whether all the pages were loaded within a few seconds
+     */
+    private boolean awaitLoaded(List<Long> pageNums) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            Set<Long> loaded = new HashSet<>();
+            bufferManager.iterPageNums((pageNum, dirty) -> loaded.add(pageNum));
+            if (loaded.containsAll(pageNums)) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    @Test
+    public void testPrefetch() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        List<Long> pageNums = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            pageNums.add(diskSpaceManager.allocPage(partNum));
+        }
+
+        // does nothing unless read-ahead is running
+        bufferManager.prefetch(pageNums);
+        bufferManager.startReadAhead(1, 4);
+        bufferManager.prefetch(pageNums);
+        assertTrue(awaitLoaded(pageNums));
+
+        long numIOs = bufferManager.getNumIOs();
+        for (long pageNum : pageNums) {
+            BufferFrame frame = bufferManager.fetchPageFrame(pageNum);
+            assertTrue(frame.isValid());
+            frame.unpin();
+        }
+        assertEquals(numIOs, bufferManager.getNumIOs());
+    }
+
+    @Test
+    public void testSequentialReadAhead() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        List<Long> pageNums = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            pageNums.add(diskSpaceManager.allocPage(partNum));
+        }
+        bufferManager.startReadAhead(1, 4);
+
+        // two consecutive pages start a sequential run
+        bufferManager.fetchPageShared(new DummyLockContext(), pageNums.get(0)).unpin();
+        bufferManager.fetchPageShared(new DummyLockContext(), pageNums.get(1)).unpin();
+        assertTrue(awaitLoaded(pageNums.subList(2, 5)));
+
+        long numIOs = bufferManager.getNumIOs();
+        for (long pageNum : pageNums.subList(2, 5)) {
+            bufferManager.fetchPageShared(new DummyLockContext(), pageNum).unpin();
+        }
+        bufferManager.stopReadAhead();
+        assertEquals(numIOs, bufferManager.getNumIOs());
+    }
 }
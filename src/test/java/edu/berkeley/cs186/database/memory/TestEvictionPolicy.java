@@ -6,6 +6,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -193,4 +195,39 @@ public class TestEvictionPolicy {
         assertEquals(frames[2], policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[2], placeholderFrames[3]}));
         policy.cleanup(frames[2]);
     }
+
+    @Test
+    public void testLRUUpcomingVictims() {
+        EvictionPolicy policy = new LRUEvictionPolicy();
+        BufferFrame[] pool = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        for (BufferFrame frame : pool) {
+            policy.init(frame); policy.hit(frame);
+        }
+        policy.hit(frames[0]);
+        frames[2].pin();
+
+        assertEquals(Arrays.asList(frames[1], frames[3]), policy.upcomingVictims(pool, 2));
+        assertEquals(Arrays.asList(frames[1], frames[3], frames[0]), policy.upcomingVictims(pool, 4));
+        // the policy is unchanged
+        assertEquals(frames[1], policy.evict(pool));
+        frames[2].unpin();
+    }
+
+    @Test
+    public void testClockUpcomingVictims() {
+        EvictionPolicy policy = new ClockEvictionPolicy();
+        BufferFrame[] pool = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        for (BufferFrame frame : pool) {
+            policy.init(frame);
+        }
+        policy.hit(frames[0]);
+        policy.hit(frames[2]);
+        frames[3].pin();
+
+        // frames with bit 0 first, then the ones the arm clears on its first pass
+        assertEquals(Arrays.asList(frames[1], frames[0], frames[2]), policy.upcomingVictims(pool, 4));
+        assertEquals(Arrays.asList(frames[1]), policy.upcomingVictims(pool, 1));
+        assertEquals(frames[1], policy.evict(pool));
+        frames[3].unpin();
+    }
 }
@@ -0,0 +1,75 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestPageTable {
+    @Test
+    public void testPutGetRemove() {
+        PageTable table = new PageTable(4);
+        long page1 = DiskSpaceManager.getVirtualPageNum(1, 0);
+        long page2 = DiskSpaceManager.getVirtualPageNum(1, 1);
+
+        assertEquals(-1, table.get(page1));
+        table.put(page1, 0);
+        table.put(page2, 3);
+        assertEquals(0, table.get(page1));
+        assertEquals(3, table.get(page2));
+        assertEquals(2, table.size());
+
+        // only removes the mapping if it is to the given frame
+        assertFalse(table.remove(page1, 1));
+        assertTrue(table.containsKey(page1));
+        assertTrue(table.remove(page1, 0));
+        assertFalse(table.containsKey(page1));
+        assertEquals(3, table.get(page2));
+        assertEquals(1, table.size());
+
+        table.put(page2, 2);
+        assertEquals(2, table.get(page2));
+        assertEquals(1, table.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFull() {
+        PageTable table = new PageTable(2);
+        table.put(1L, 0);
+        table.put(2L, 1);
+        table.put(3L, 2);
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        // random workload with the table kept full, so that deletions have to
+        // repair long probe sequences
+        int capacity = 64;
+        PageTable table = new PageTable(capacity);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(186);
+        for (int i = 0; i < 20000; ++i) {
+            long pageNum = DiskSpaceManager.getVirtualPageNum(random.nextInt(4), random.nextInt(100));
+            if (expected.containsKey(pageNum)) {
+                int frameIndex = expected.remove(pageNum);
+                assertTrue(table.remove(pageNum, frameIndex));
+            } else if (expected.size() < capacity) {
+                int frameIndex = random.nextInt(capacity);
+                expected.put(pageNum, frameIndex);
+                table.put(pageNum, frameIndex);
+            }
+            assertEquals(expected.size(), table.size());
+            for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+                assertEquals((int) e.getValue(), table.get(e.getKey()));
+            }
+        }
+    }
+}
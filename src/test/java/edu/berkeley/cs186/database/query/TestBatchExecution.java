@@ -0,0 +1,209 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.query.join.SHJOperator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestBatchExecution {
+    private Database db;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("batchTest");
+        this.db = new Database(testDir.getAbsolutePath(), 32);
+        this.db.setWorkMem(5);
+        try (Transaction t = this.db.beginTransaction()) {
+            t.dropAllTables();
+            t.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+            // enough records for several pages and several batches
+            for (int i = 0; i < 3000; ++i) {
+                t.insert("table", new Record(i % 2 == 0, i, "" + (char) ('a' + i % 26), i / 2.0f));
+            }
+        }
+        this.db.waitAllTransactions();
+    }
+
+    @After
+    public void afterEach() {
+        this.db.waitAllTransactions();
+        this.db.close();
+    }
+
+    private static List<Record> toList(Iterator<Record> records) {
+        List<Record> list = new ArrayList<>();
+        records.forEachRemaining(list::add);
+        return list;
+    }
+
+    private static List<Record> batchesToList(QueryOperator operator) {
+        return toList(RecordBatch.records(operator.batchIterator()));
+    }
+
+    @Test
+    public void testAdapters() {
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 2500; ++i) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        List<RecordBatch> batches = new ArrayList<>();
+        RecordBatch.batches(records.iterator(), schema).forEachRemaining(batches::add);
+        assertEquals(3, batches.size());
+        assertEquals(RecordBatch.DEFAULT_CAPACITY, batches.get(0).getNumSelected());
+        assertEquals(2499, batches.get(2).getInts(1)[2500 - 2 * RecordBatch.DEFAULT_CAPACITY - 1]);
+        assertEquals(records, toList(RecordBatch.records(batches.iterator())));
+    }
+
+    @Test
+    public void testSelectionVector() {
+        RecordBatch batch = new RecordBatch(new Schema().add("int", edu.berkeley.cs186.database.databox.Type.intType()), 4);
+        for (int i = 0; i < 4; ++i) {
+            batch.addRecord(new Record(i));
+        }
+        int[] rows = batch.getSelection();
+        rows[0] = 1;
+        rows[1] = 3;
+        batch.setNumSelected(2);
+        assertEquals(Arrays.asList(new Record(1), new Record(3)),
+                     toList(RecordBatch.records(Collections.singletonList(batch).iterator())));
+        assertTrue(batch.isFull());
+    }
+
+    @Test
+    public void testSequentialScan() {
+        try (Transaction t = this.db.beginTransaction()) {
+            // leave holes on the pages
+            TransactionContext transaction = t.getTransactionContext();
+            List<RecordId> rids = new ArrayList<>();
+            transaction.getTable("table").ridIterator().forEachRemaining(rids::add);
+            for (int i = 0; i < rids.size(); i += 7) {
+                transaction.deleteRecord("table", rids.get(i));
+            }
+            QueryOperator scan = new SequentialScanOperator(transaction, "table");
+            assertEquals(toList(scan.iterator()), batchesToList(scan));
+        }
+    }
+
+    @Test
+    public void testSelect() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            QueryOperator scan = new SequentialScanOperator(transaction, "table");
+            QueryOperator[] selects = new QueryOperator[] {
+                new SelectOperator(scan, "int", PredicateOperator.LESS_THAN_EQUALS, new IntDataBox(1500)),
+                new SelectOperator(scan, "int", PredicateOperator.NOT_EQUALS, new IntDataBox(3)),
+                new SelectOperator(scan, "float", PredicateOperator.EQUALS, new FloatDataBox(10.5f)),
+                new SelectOperator(scan, "float", PredicateOperator.GREATER_THAN, new FloatDataBox(1000f)),
+                new SelectOperator(scan, "float", PredicateOperator.LESS_THAN, new IntDataBox(20)),
+                new SelectOperator(scan, "string", PredicateOperator.EQUALS, new StringDataBox("q", 1)),
+            };
+            for (QueryOperator select : selects) {
+                List<Record> expected = toList(select.iterator());
+                assertFalse(expected.isEmpty());
+                assertEquals(expected, batchesToList(select));
+            }
+            // selects on top of each other
+            QueryOperator both = new SelectOperator(selects[0], "bool", PredicateOperator.EQUALS,
+                                                    new edu.berkeley.cs186.database.databox.BoolDataBox(true));
+            assertEquals(750 + 1, batchesToList(both).size());
+        }
+    }
+
+    @Test
+    public void testProject() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            QueryOperator select = new SelectOperator(new SequentialScanOperator(transaction, "table"),
+                                                      "int", PredicateOperator.GREATER_THAN, new IntDataBox(100));
+            QueryOperator project = new ProjectOperator(select, Arrays.asList("float", "int * 2", "string"),
+                                                        Collections.emptyList());
+            List<Record> records = batchesToList(project);
+            assertEquals(toList(project.iterator()), records);
+            assertEquals(new Record(50.5f, 202, "x"), records.get(0));
+        }
+    }
+
+    @Test
+    public void testGroupBy() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            QueryOperator groupBy = new GroupByOperator(new SequentialScanOperator(transaction, "table"),
+                                                        transaction, Collections.singletonList("string"));
+            // split the records of iterator() into groups at the markers
+            List<List<Record>> expected = new ArrayList<>();
+            expected.add(new ArrayList<>());
+            for (Record record : toList(groupBy.iterator())) {
+                if (record == GroupByOperator.MARKER) expected.add(new ArrayList<>());
+                else expected.get(expected.size() - 1).add(record);
+            }
+            assertEquals(26, expected.size());
+
+            // ... and the batches at the empty batches
+            List<List<Record>> actual = new ArrayList<>();
+            actual.add(new ArrayList<>());
+            Iterator<RecordBatch> batches = groupBy.batchIterator();
+            while (batches.hasNext()) {
+                RecordBatch batch = batches.next();
+                if (batch.getNumSelected() == 0) {
+                    actual.add(new ArrayList<>());
+                    continue;
+                }
+                List<Record> group = actual.get(actual.size() - 1);
+                for (int i = 0; i < batch.getNumSelected(); ++i) {
+                    group.add(batch.getRecord(batch.getSelection()[i]));
+                }
+                // a batch only holds records of one group
+                assertEquals(group.get(0).getValue(2), group.get(group.size() - 1).getValue(2));
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testHashJoin() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            QueryOperator left = new SelectOperator(new SequentialScanOperator(transaction, "table"),
+                                                    "int", PredicateOperator.LESS_THAN, new IntDataBox(20));
+            QueryOperator right = new SequentialScanOperator(transaction, "table");
+            QueryOperator join = new SHJOperator(left, right, "int", "int", transaction);
+            List<Record> records = toList(join.iterator());
+            assertEquals(20, records.size());
+            for (Record r : records) {
+                assertEquals(r.getValue(1), r.getValue(5));
+            }
+            assertEquals(records, batchesToList(join));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static edu.berkeley.cs186.database.TestUtils.sorted;
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestCompositeIndex {
+    private Database d;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        File tempDir = tempFolder.newFolder("compositeIndexTest");
+        d = new Database(tempDir.getAbsolutePath(), 256);
+        d.setWorkMem(5); // B = 5
+        d.waitAllTransactions();
+    }
+
+    @After
+    public void cleanup() {
+        d.close();
+    }
+
+    /**
+     * Creates a table with n records (a, b, c, s), where a goes from 0 to
+     * n - 1, b is a % 50 and c is a / 50. The records are wide enough that only
+     * about 20 fit on a page.
+     */
+    private void createTable(Transaction t, String tableName, int n) {
+        Schema schema = new Schema()
+                .add("a", Type.intType())
+                .add("b", Type.intType())
+                .add("c", Type.intType())
+                .add("s", Type.stringType(200));
+        t.createTable(schema, tableName);
+        for (int i = 0; i < n; ++i) {
+            t.insert(tableName, i, i % 50, i / 50, "!");
+        }
+    }
+
+    private static List<Integer> values(Transaction t, String tableName, Iterator<RecordId> rids) {
+        List<Integer> result = new ArrayList<>();
+        while (rids.hasNext()) {
+            result.add(t.getTransactionContext().getRecord(tableName, rids.next()).getValue(0).getInt());
+        }
+        return result;
+    }
+
+    @Test
+    public void testDuplicateValues() {
+        try (Transaction t = d.beginTransaction()) {
+            createTable(t, "t", 1000);
+            t.createIndex("t", Collections.singletonList("b"), false, false);
+            TransactionContext context = t.getTransactionContext();
+
+            // every record with b = 7, in the order of their record ids
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 7; i < 1000; i += 50) expected.add(i);
+            IntDataBox seven = new IntDataBox(7);
+            assertEquals(expected, values(t, "t", context.lookupRange("t", "b", seven, true, seven, true)));
+
+            // deletes and updates change only the key of their own record
+            t.delete("t", "a", PredicateOperator.EQUALS, new IntDataBox(57));
+            t.update("t", "b", r -> new IntDataBox(8), "a", PredicateOperator.EQUALS, new IntDataBox(107));
+            expected.remove(Integer.valueOf(57));
+            expected.remove(Integer.valueOf(107));
+            assertEquals(expected, values(t, "t", context.lookupRange("t", "b", seven, true, seven, true)));
+            IntDataBox eight = new IntDataBox(8);
+            assertTrue(values(t, "t", context.lookupRange("t", "b", eight, true, eight, true)).contains(107));
+
+            // a range of duplicate values
+            List<Integer> range = values(t, "t", context.lookupRange("t", "b", new IntDataBox(10), false,
+                                                                     new IntDataBox(12), true));
+            assertEquals(40, range.size());
+            for (int a : range) assertTrue(a % 50 == 11 || a % 50 == 12);
+        }
+    }
+
+    @Test
+    public void testPrefixRangeScan() {
+        try (Transaction t = d.beginTransaction()) {
+            createTable(t, "t", 2000);
+            t.createIndex("t", Arrays.asList("c", "b"), false, false);
+            t.getTransactionContext().getTable("t").buildStatistics(10);
+
+            QueryPlan query = t.query("t");
+            query.select("c", PredicateOperator.EQUALS, 13);
+            query.select("b", PredicateOperator.GREATER_THAN_EQUALS, 20);
+            query.select("b", PredicateOperator.LESS_THAN, 30);
+            QueryOperator op = query.minCostSingleAccess("t");
+            // the equality on c and both bounds on b are in the scan
+            assertTrue(op.isIndexScan());
+            assertTrue(op.str().contains("c=13, b>=20, b<30"));
+            List<Integer> values = new ArrayList<>();
+            op.iterator().forEachRemaining(r -> values.add(r.getValue(0).getInt()));
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 13 * 50 + 20; i < 13 * 50 + 30; ++i) expected.add(i);
+            assertEquals(expected, values);
+
+            // equality on every column
+            query = t.query("t");
+            query.select("b", PredicateOperator.EQUALS, 5);
+            query.select("c", PredicateOperator.EQUALS, 2);
+            op = query.minCostSingleAccess("t");
+            assertTrue(op.isIndexScan());
+            List<String> records = sorted(op.iterator());
+            assertEquals(1, records.size());
+            assertTrue(records.get(0).startsWith("(105,"));
+
+            // an equality on the second column alone can't use the index
+            query = t.query("t");
+            query.select("b", PredicateOperator.EQUALS, 5);
+            assertFalse(query.minCostSingleAccess("t").isIndexScan());
+        }
+    }
+
+    @Test
+    public void testBulkLoad() {
+        try (Transaction t = d.beginTransaction()) {
+            // the entries don't fit in the 5 pages of memory, so the sort
+            // merges several runs
+            createTable(t, "t", 3000);
+            t.createIndex("t", Arrays.asList("b", "c"), false, true);
+            t.createIndex("t", "a", true);
+            TransactionContext context = t.getTransactionContext();
+            assertTrue(context.getTreeHeight("t", "a") > 0);
+
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 3000; ++i) expected.add(i);
+            assertEquals(expected, values(t, "t", context.lookupRange("t", "a", null, false, null, false)));
+
+            // b = 7 and c from 10 through 12, in order of c
+            List<DataBox> prefix = Collections.singletonList(new IntDataBox(7));
+            List<Integer> values = values(t, "t", context.lookupRange("t", Arrays.asList("b", "c"), prefix,
+                    new IntDataBox(10), true, new IntDataBox(12), true));
+            assertEquals(Arrays.asList(507, 557, 607), values);
+
+            // the bulk loaded indexes are kept up to date like any other
+            t.insert("t", 3000, 7, 11, "!");
+            t.delete("t", "a", PredicateOperator.EQUALS, new IntDataBox(557));
+            values = values(t, "t", context.lookupRange("t", Arrays.asList("b", "c"), prefix,
+                    new IntDataBox(10), true, new IntDataBox(12), true));
+            assertEquals(Arrays.asList(507, 3000, 607), values);
+            assertFalse(context.contains("t", "a", new IntDataBox(557)));
+            assertTrue(context.contains("t", "a", new IntDataBox(3000)));
+        }
+    }
+
+    @Test
+    public void testCreateIndexStatement() {
+        try (Transaction t = d.beginTransaction()) {
+            createTable(t, "t", 500);
+            t.execute("CREATE INDEX ON t (c, b);");
+            t.getTransactionContext().getTable("t").buildStatistics(10);
+            assertEquals(Collections.singletonList(Arrays.asList("c", "b")),
+                         t.getTransactionContext().getIndexColumns("t"));
+
+            List<DataBox> prefix = Collections.singletonList(new IntDataBox(3));
+            List<Integer> values = values(t, "t", t.getTransactionContext().lookupRange(
+                    "t", Arrays.asList("c", "b"), prefix, null, false, new IntDataBox(2), true));
+            assertEquals(Arrays.asList(150, 151, 152), values);
+
+            QueryPlan query = t.execute("SELECT * FROM t WHERE c = 4 AND b > 47;").get();
+            List<String> records = sorted(query.execute());
+            assertEquals(2, records.size());
+            assertTrue(query.getFinalOperator().toString().contains("c=4, b>47"));
+
+            t.execute("DROP INDEX t(c, b);");
+            assertTrue(t.getTransactionContext().getIndexColumns("t").isEmpty());
+        }
+    }
+}
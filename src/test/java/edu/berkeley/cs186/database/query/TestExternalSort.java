@@ -0,0 +1,207 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.disk.Run;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestExternalSort {
+    private Database d;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        File tempDir = tempFolder.newFolder("externalSortTest");
+        d = new Database(tempDir.getAbsolutePath(), 256);
+        d.setWorkMem(3); // B = 3, 400 records per page
+        d.waitAllTransactions();
+    }
+
+    @After
+    public void cleanup() {
+        d.close();
+    }
+
+    private static List<Record> shuffledRecords(int numRecords) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        Collections.shuffle(records, new Random(186));
+        return records;
+    }
+
+    private static List<Record> toList(Iterator<Record> records) {
+        List<Record> result = new ArrayList<>();
+        records.forEachRemaining(result::add);
+        return result;
+    }
+
+    private static void checkSorted(List<Record> expected, Comparator<Record> comparator, List<Record> actual) {
+        List<Record> sorted = new ArrayList<>(expected);
+        sorted.sort(comparator);
+        assertEquals(sorted.size(), actual.size());
+        for (int i = 0; i < sorted.size(); ++i) {
+            assertEquals("mismatch at record " + i, 0, comparator.compare(sorted.get(i), actual.get(i)));
+        }
+    }
+
+    @Test
+    public void testNormalizedKeys() {
+        Schema schema = new Schema()
+                .add("bool", Type.boolType())
+                .add("int", Type.intType())
+                .add("long", Type.longType())
+                .add("float", Type.floatType())
+                .add("string", Type.stringType(4));
+        List<Record> records = new ArrayList<>();
+        Random random = new Random(186);
+        float[] floats = {0.0f, -0.0f, 1.5f, -1.5f, Float.MAX_VALUE, -Float.MAX_VALUE,
+                          Float.MIN_VALUE, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NaN};
+        String[] strings = {"", "a", "ab", "abc", "b", "~", "é", "aé", "中", "A"};
+        int[] ints = {0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        long[] longs = {0L, 1L, -1L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (int i = 0; i < 500; ++i) {
+            records.add(new Record(random.nextBoolean(), ints[random.nextInt(ints.length)],
+                                   longs[random.nextInt(longs.length)], floats[random.nextInt(floats.length)],
+                                   new StringDataBox(strings[random.nextInt(strings.length)], 4)));
+        }
+        List<List<String>> keys = Arrays.asList(
+                Collections.singletonList("bool"),
+                Collections.singletonList("int"),
+                Collections.singletonList("long"),
+                Collections.singletonList("float"),
+                Collections.singletonList("string"),
+                Arrays.asList("string", "int"),
+                Arrays.asList("float", "string", "long", "bool")
+        );
+        for (List<String> columns : keys) {
+            for (boolean descending : new boolean[]{false, true}) {
+                // alternate the order of the columns after the first
+                List<Boolean> orders = new ArrayList<>();
+                for (int i = 0; i < columns.size(); ++i) orders.add(descending ^ (i % 2 == 1));
+                SortKey key = new SortKey(schema, columns, orders);
+                Comparator<Record> comparator = key.comparator();
+                for (int i = 0; i < records.size(); ++i) {
+                    Record r1 = records.get(i);
+                    Record r2 = records.get((i * 7919) % records.size());
+                    int expected = Integer.signum(comparator.compare(r1, r2));
+                    int actual = Integer.signum(SortKey.compareKeys(key.normalize(r1), key.normalize(r2)));
+                    assertEquals(key + ": " + r1 + " vs " + r2, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReplacementSelection() {
+        try (Transaction t = d.beginTransaction()) {
+            // 10 times as many records as fit in memory
+            List<Record> records = shuffledRecords(400 * 3 * 10);
+            SortOperator s = new SortOperator(t.getTransactionContext(),
+                    new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes()), "int");
+            List<Run> runs = s.generateRuns(records.iterator());
+            // runs average about twice the size of memory on random input
+            assertTrue(runs.size() > 1);
+            assertTrue(runs.size() <= 7);
+            List<Record> all = new ArrayList<>();
+            for (Run run : runs) {
+                List<Record> runRecords = toList(run.iterator());
+                checkSorted(runRecords, s.comparator, runRecords);
+                all.addAll(runRecords);
+            }
+            checkSorted(records, s.comparator, toList(s.sort().iterator()));
+            assertEquals(records.size(), all.size());
+
+            // sorted input is a single run, however large it is
+            records.sort(s.comparator);
+            assertEquals(1, s.generateRuns(records.iterator()).size());
+        }
+    }
+
+    @Test
+    public void testMultiColumnDescending() {
+        try (Transaction t = d.beginTransaction()) {
+            Schema schema = new Schema().add("a", Type.intType()).add("b", Type.stringType(5));
+            List<Record> records = new ArrayList<>();
+            Random random = new Random(186);
+            for (int i = 0; i < 5000; ++i) {
+                records.add(new Record(random.nextInt(20), "s" + random.nextInt(1000)));
+            }
+            SortOperator s = new SortOperator(t.getTransactionContext(),
+                    new TestSourceOperator(records, schema), Arrays.asList("a", "b"), Arrays.asList(true, false));
+            Comparator<Record> expected = Comparator.<Record>comparingInt(r -> -r.getValue(0).getInt())
+                    .thenComparing(r -> r.getValue(1).getString());
+            checkSorted(records, expected, toList(s.iterator()));
+            // a descending sort isn't sorted in the sense of sortedBy
+            assertEquals(Collections.emptyList(), s.sortedBy());
+
+            s = new SortOperator(t.getTransactionContext(),
+                    new TestSourceOperator(records, schema), Arrays.asList("b", "a"), Arrays.asList(false, true));
+            assertEquals(Collections.singletonList("b"), s.sortedBy());
+            checkSorted(records, s.comparator, toList(s.iterator()));
+        }
+    }
+
+    @Test
+    public void testParallelRunGeneration() {
+        d.setDegreeOfParallelism(4);
+        try (Transaction t = d.beginTransaction()) {
+            List<Record> records = shuffledRecords(400 * 3 * 10 + 5);
+            SortOperator s = new SortOperator(t.getTransactionContext(),
+                    new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes()), "int");
+            // one run for each block of B pages
+            List<Run> runs = s.generateRuns(records.iterator());
+            assertEquals(11, runs.size());
+            for (Run run : runs) {
+                List<Record> runRecords = toList(run.iterator());
+                checkSorted(runRecords, s.comparator, runRecords);
+            }
+            checkSorted(records, s.comparator, toList(s.sort().iterator()));
+        }
+    }
+
+    @Test
+    public void testMergeSortedRuns() {
+        try (Transaction t = d.beginTransaction()) {
+            d.setWorkMem(7); // B = 7, so up to 6 runs are merged at once
+            TransactionContext context = t.getTransactionContext();
+            List<Record> records = shuffledRecords(3000);
+            SortOperator s = new SortOperator(context,
+                    new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes()), "int");
+            // runs of different sizes, including an empty one
+            List<Run> runs = new ArrayList<>();
+            int start = 0;
+            for (int size : new int[]{1000, 0, 1, 1500, 499}) {
+                List<Record> run = new ArrayList<>(records.subList(start, start + size));
+                run.sort(s.comparator);
+                runs.add(s.makeRun(run));
+                start += size;
+            }
+            checkSorted(records, s.comparator, toList(s.mergeSortedRuns(runs).iterator()));
+            assertFalse(s.mergeSortedRuns(Collections.singletonList(s.makeRun())).iterator().hasNext());
+        }
+    }
+}
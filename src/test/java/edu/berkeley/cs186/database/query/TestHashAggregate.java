@@ -0,0 +1,146 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.table.Record;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static edu.berkeley.cs186.database.TestUtils.sorted;
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestHashAggregate {
+    private Database db;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("hashAggTest");
+        this.db = new Database(testDir.getAbsolutePath(), 32);
+        this.db.setWorkMem(5);
+        try (Transaction t = this.db.beginTransaction()) {
+            t.dropAllTables();
+            t.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        }
+        this.db.waitAllTransactions();
+    }
+
+    @After
+    public void afterEach() {
+        this.db.waitAllTransactions();
+        this.db.close();
+    }
+
+    /**
+     * Inserts records with `int` in [0, numGroups), in no particular order.
+     */
+    private void insert(Transaction t, int numRecords, int numGroups) {
+        Random random = new Random(186);
+        for (int i = 0; i < numRecords; ++i) {
+            int group = random.nextInt(numGroups);
+            t.insert("table", new Record(i % 3 == 0, group, "" + (char) ('a' + group % 26), (float) i));
+        }
+    }
+
+    /**
+     * Checks that hash aggregation outputs the same groups as a group by
+     * followed by a project.
+     */
+    private void checkSameAsGroupBy(TransactionContext transaction, List<String> columns, List<String> groupBy) {
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        QueryOperator expected = new ProjectOperator(new GroupByOperator(scan, transaction, groupBy),
+                                                     columns, groupBy);
+        QueryOperator actual = new HashAggregateOperator(scan, transaction, columns, null, groupBy);
+        assertEquals(sorted(expected.iterator()), sorted(actual.iterator()));
+    }
+
+    @Test
+    public void testInMemory() {
+        try (Transaction t = this.db.beginTransaction()) {
+            insert(t, 1000, 10);
+            checkSameAsGroupBy(t.getTransactionContext(),
+                               Arrays.asList("int", "COUNT(*)", "SUM(float)", "MIN(string)", "MAX(float) - MIN(float)",
+                                             "AVG(int)", "STDDEV(float)", "RANGE(float)", "int * 2 + SUM(int)"),
+                               Collections.singletonList("int"));
+        }
+    }
+
+    @Test
+    public void testMultipleColumns() {
+        try (Transaction t = this.db.beginTransaction()) {
+            insert(t, 1000, 50);
+            checkSameAsGroupBy(t.getTransactionContext(),
+                               Arrays.asList("bool", "string", "COUNT(*)", "SUM(int)", "LAST(int) >= 0"),
+                               Arrays.asList("bool", "string"));
+        }
+    }
+
+    @Test
+    public void testSpill() {
+        try (Transaction t = this.db.beginTransaction()) {
+            // more groups than fit in the pages left over by the partitions (about
+            // 40 with B = 5), so groups are partitioned, and with B = 3 partitions
+            // are partitioned again
+            insert(t, 3000, 300);
+            TransactionContext transaction = t.getTransactionContext();
+            List<String> columns = Arrays.asList("int", "COUNT(*)", "SUM(float)", "MAX(string)");
+            List<String> groupBy = Collections.singletonList("int");
+            checkSameAsGroupBy(transaction, columns, groupBy);
+            this.db.setWorkMem(3);
+            checkSameAsGroupBy(transaction, columns, groupBy);
+        }
+    }
+
+    @Test
+    public void testCopyHasOwnState() {
+        try (Transaction t = this.db.beginTransaction()) {
+            insert(t, 100, 1);
+            TransactionContext transaction = t.getTransactionContext();
+            QueryOperator scan = new SequentialScanOperator(transaction, "table");
+            // every record in one group
+            QueryOperator aggregate = new HashAggregateOperator(scan, transaction,
+                    Arrays.asList("COUNT(*)", "AVG(int)", "RANGE(float)"), null, Collections.singletonList("int"));
+            Iterator<Record> records = aggregate.iterator();
+            assertEquals(new Record(100, 0.0f, 99.0f), records.next());
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    public void testQueryPlanChoosesByCost() {
+        try (Transaction t = this.db.beginTransaction()) {
+            insert(t, 2000, 10);
+            t.getTransactionContext().getTable("table").buildStatistics(10);
+
+            // few groups: they fit in memory, so hashing reads the table once,
+            // whereas sorting reads and writes it several times
+            QueryPlan query = t.query("table");
+            query.groupBy("int");
+            query.project("int", "COUNT(*)");
+            List<String> output = sorted(query.execute());
+            assertTrue(query.getFinalOperator().toString().startsWith("Hash Aggregate"));
+            assertEquals(10, output.size());
+            // the output is estimated from the distinct values of `int`, not the input size
+            assertEquals(10, query.getFinalOperator().estimateStats().getNumRecords());
+            int total = 0;
+            for (String record : output) {
+                total += Integer.parseInt(record.substring(record.indexOf(',') + 1, record.length() - 1));
+            }
+            assertEquals(2000, total);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.join.BNLJOperator;
+import edu.berkeley.cs186.database.query.join.HHJOperator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static edu.berkeley.cs186.database.TestUtils.sorted;
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestHybridHashJoin {
+    private Database d;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        File tempDir = tempFolder.newFolder("hhjTest");
+        d = new Database(tempDir.getAbsolutePath(), 256);
+        d.setWorkMem(6); // B = 6
+        d.waitAllTransactions();
+    }
+
+    @After
+    public void cleanup() {
+        d.close();
+    }
+
+    // 8 records per page
+    private static Schema wideSchema() {
+        return new Schema().add("int", Type.intType()).add("string", Type.stringType(500));
+    }
+
+    private static Record wideRecord(int val) {
+        return new Record(val, new String(new char[500]));
+    }
+
+    /**
+     * Checks that HHJ outputs the same records as BNLJ on the inputs.
+     */
+    private void checkSameAsBNLJ(TransactionContext t, Schema leftSchema, List<Record> left,
+                                 Schema rightSchema, List<Record> right) {
+        QueryOperator bnlj = new BNLJOperator(new TestSourceOperator(left, leftSchema),
+                                              new TestSourceOperator(right, rightSchema),
+                                              "int", "int", t);
+        QueryOperator hhj = new HHJOperator(new TestSourceOperator(left, leftSchema),
+                                            new TestSourceOperator(right, rightSchema),
+                                            "int", "int", t);
+        List<String> expected = sorted(bnlj.iterator());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, sorted(hhj.iterator()));
+    }
+
+    @Test
+    public void testInMemory() {
+        try (Transaction t = d.beginTransaction()) {
+            List<Record> left = new ArrayList<>();
+            List<Record> right = new ArrayList<>();
+            for (int i = 0; i < 10; ++i) left.add(TestUtils.createRecordWithAllTypesWithValue(i));
+            for (int i = 5; i < 15; ++i) right.add(TestUtils.createRecordWithAllTypesWithValue(i));
+            Schema schema = TestUtils.createSchemaWithAllTypes();
+            checkSameAsBNLJ(t.getTransactionContext(), schema, left, schema, right);
+        }
+    }
+
+    @Test
+    public void testSpill() {
+        try (Transaction t = d.beginTransaction()) {
+            // 50 pages on each side, far more than fit in memory
+            List<Record> left = new ArrayList<>();
+            List<Record> right = new ArrayList<>();
+            for (int i = 0; i < 400; ++i) left.add(wideRecord(i));
+            for (int i = 200; i < 600; ++i) right.add(wideRecord(i));
+            checkSameAsBNLJ(t.getTransactionContext(), wideSchema(), left, wideSchema(), right);
+        }
+    }
+
+    @Test
+    public void testDifferentSchemasAndDuplicates() {
+        try (Transaction t = d.beginTransaction()) {
+            d.setWorkMem(3); // B = 3
+            Schema leftSchema = new Schema().add("int", Type.intType()).add("string", Type.stringType(10));
+            List<Record> left = new ArrayList<>();
+            List<Record> right = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i) left.add(new Record(i % 300, "left"));
+            for (int i = 0; i < 3000; ++i) right.add(TestUtils.createRecordWithAllTypesWithValue(i % 500));
+            checkSameAsBNLJ(t.getTransactionContext(), leftSchema, left,
+                            TestUtils.createSchemaWithAllTypes(), right);
+        }
+    }
+
+    @Test
+    public void testSkew() {
+        try (Transaction t = d.beginTransaction()) {
+            // every record has the same join value, so no amount of
+            // repartitioning gets the left records to fit in memory
+            List<Record> left = new ArrayList<>();
+            List<Record> right = new ArrayList<>();
+            for (int i = 0; i < 200; ++i) left.add(wideRecord(7));
+            for (int i = 0; i < 60; ++i) right.add(wideRecord(7));
+            right.add(wideRecord(8));
+            checkSameAsBNLJ(t.getTransactionContext(), wideSchema(), left, wideSchema(), right);
+        }
+    }
+
+    @Test
+    public void testSmallRight() {
+        try (Transaction t = d.beginTransaction()) {
+            // spilled partitions are joined by building on the right records
+            List<Record> left = new ArrayList<>();
+            List<Record> right = new ArrayList<>();
+            for (int i = 0; i < 800; ++i) left.add(wideRecord(i % 20));
+            for (int i = 0; i < 20; ++i) right.add(wideRecord(i));
+            checkSameAsBNLJ(t.getTransactionContext(), wideSchema(), left, wideSchema(), right);
+        }
+    }
+
+    @Test
+    public void testCostAndOptimizer() {
+        try (Transaction t = d.beginTransaction()) {
+            t.createTable(wideSchema(), "a");
+            t.createTable(wideSchema(), "b");
+            for (int i = 0; i < 100; ++i) t.insert("a", wideRecord(i));
+            for (int i = 0; i < 400; ++i) t.insert("b", wideRecord(i));
+            TransactionContext context = t.getTransactionContext();
+
+            QueryOperator a = new SequentialScanOperator(context, "a");
+            QueryOperator b = new SequentialScanOperator(context, "b");
+            int hhjCost = new HHJOperator(a, b, "a.int", "b.int", context).estimateIOCost();
+            int bnljCost = new BNLJOperator(a, b, "a.int", "b.int", context).estimateIOCost();
+            // reads both tables, and spills at most part of them
+            int numPages = a.estimateIOCost() + b.estimateIOCost();
+            assertTrue(hhjCost > numPages);
+            assertTrue(hhjCost < 3 * numPages);
+            assertTrue(hhjCost < bnljCost);
+
+            // with enough memory for the left table, each table is read once
+            d.setWorkMem(20);
+            QueryOperator hhj = new HHJOperator(a, b, "a.int", "b.int", context);
+            assertEquals(numPages, hhj.estimateIOCost());
+            d.setWorkMem(6);
+
+            QueryPlan query = t.query("a");
+            query.join("b", "a.int", "b.int");
+            assertEquals(100, sorted(query.execute()).size());
+            assertTrue(query.getFinalOperator().toString().contains("HHJ"));
+        }
+    }
+}
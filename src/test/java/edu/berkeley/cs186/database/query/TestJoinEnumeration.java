@@ -0,0 +1,144 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.query.join.SortMergeOperator;
+import edu.berkeley.cs186.database.table.Record;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static edu.berkeley.cs186.database.TestUtils.sorted;
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestJoinEnumeration {
+    private Database d;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        File tempDir = tempFolder.newFolder("joinEnumerationTest");
+        d = new Database(tempDir.getAbsolutePath(), 256);
+        d.setWorkMem(5); // B = 5
+        d.waitAllTransactions();
+    }
+
+    @After
+    public void cleanup() {
+        d.close();
+    }
+
+    /**
+     * Creates tables t0, t1, ... where table i has sizes[i] records with the
+     * int values 0, 1, ..., sizes[i] - 1.
+     */
+    private void createTables(Transaction t, int... sizes) {
+        for (int i = 0; i < sizes.length; ++i) {
+            t.createTable(TestUtils.createSchemaWithAllTypes(), "t" + i);
+            for (int j = 0; j < sizes[i]; ++j) {
+                t.insert("t" + i, TestUtils.createRecordWithAllTypesWithValue(j));
+            }
+            t.getTransactionContext().getTable("t" + i).buildStatistics(10);
+        }
+    }
+
+    /**
+     * Checks that the optimized plan for a query outputs the same records as
+     * the naive plan, and returns the optimized plan.
+     */
+    private QueryOperator checkSameAsNaive(Transaction t, String[][] joins) {
+        QueryPlan naive = t.query("t0");
+        QueryPlan optimized = t.query("t0");
+        for (String[] join : joins) {
+            naive.join(join[0], join[1], join[2]);
+            optimized.join(join[0], join[1], join[2]);
+        }
+        List<String> expected = sorted(naive.executeNaive());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, sorted(optimized.execute()));
+        return optimized.getFinalOperator();
+    }
+
+    @Test
+    public void testChain() {
+        try (Transaction t = d.beginTransaction()) {
+            createTables(t, 40, 300, 20, 500, 60);
+            QueryOperator plan = checkSameAsNaive(t, new String[][]{
+                    {"t1", "t0.int", "t1.int"},
+                    {"t2", "t1.int", "t2.int"},
+                    {"t3", "t2.int", "t3.int"},
+                    {"t4", "t3.int", "t4.int"},
+            });
+            for (int i = 0; i < 5; ++i) assertTrue(plan.toString().contains("Seq Scan on t" + i));
+        }
+    }
+
+    @Test
+    public void testStarAndTree() {
+        try (Transaction t = d.beginTransaction()) {
+            createTables(t, 100, 30, 400, 50, 200);
+            // every table joins with t0
+            checkSameAsNaive(t, new String[][]{
+                    {"t1", "t0.int", "t1.int"},
+                    {"t2", "t0.int", "t2.int"},
+                    {"t3", "t0.int", "t3.int"},
+                    {"t4", "t0.int", "t4.int"},
+            });
+            // t0 - t1 - t2 - t3, with t4 joined to t2 as well
+            checkSameAsNaive(t, new String[][]{
+                    {"t1", "t0.int", "t1.int"},
+                    {"t2", "t1.int", "t2.int"},
+                    {"t3", "t2.int", "t3.int"},
+                    {"t4", "t2.int", "t4.int"},
+            });
+        }
+    }
+
+    @Test
+    public void testManyTables() {
+        try (Transaction t = d.beginTransaction()) {
+            // a star of 10 tables
+            createTables(t, 20, 10, 15, 20, 10, 15, 20, 10, 15, 20);
+            QueryPlan query = t.query("t0");
+            for (int i = 1; i < 10; ++i) query.join("t" + i, "t0.int", "t" + i + ".int");
+            Iterator<Record> records = query.execute();
+            // only values 0 through 9 are in every table
+            assertEquals(10, sorted(records).size());
+        }
+    }
+
+    @Test
+    public void testSortMergeCost() {
+        try (Transaction t = d.beginTransaction()) {
+            createTables(t, 1000, 1000);
+            TransactionContext context = t.getTransactionContext();
+            QueryOperator left = new SequentialScanOperator(context, "t0");
+            QueryOperator right = new SequentialScanOperator(context, "t1");
+            SortMergeOperator smj = new SortMergeOperator(left, right, "t0.int", "t1.int", context);
+            int sortCosts = new SortOperator(context, left, "t0.int").estimateIOCost() +
+                            new SortOperator(context, right, "t1.int").estimateIOCost();
+            int numPages = left.getStats().getNumPages() + right.getStats().getNumPages();
+            assertEquals(sortCosts + numPages, smj.estimateIOCost());
+
+            // an input that is already sorted isn't sorted again
+            SortMergeOperator smj2 = new SortMergeOperator(smj, right, "t0.int", "t1.int", context);
+            int rightSortCost = new SortOperator(context, right, "t1.int").estimateIOCost();
+            assertEquals(smj.estimateIOCost() + rightSortCost + right.getStats().getNumPages(),
+                         smj2.estimateIOCost());
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.LoggingLockManager;
+import edu.berkeley.cs186.database.table.Record;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static edu.berkeley.cs186.database.TestUtils.sorted;
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestParallelQuery {
+    private Database db;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("parallelTest");
+        this.db = new Database(testDir.getAbsolutePath(), 64);
+        this.db.setWorkMem(10);
+        try (Transaction t = this.db.beginTransaction()) {
+            t.dropAllTables();
+            t.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+            t.createTable(TestUtils.createSchemaWithAllTypes(), "other");
+            // many more pages than workers times the morsel size
+            for (int i = 0; i < 10000; ++i) {
+                t.insert("table", new Record(i % 2 == 0, i, "" + (char) ('a' + i % 26), i / 2.0f));
+            }
+            for (int i = 0; i < 100; ++i) {
+                t.insert("other", new Record(true, i * 7, "x", 0.0f));
+            }
+        }
+        this.db.waitAllTransactions();
+    }
+
+    @After
+    public void afterEach() {
+        this.db.waitAllTransactions();
+        this.db.close();
+    }
+
+    /**
+     * Runs a query with one worker and with four, and checks that the results
+     * are the same (up to order).
+     *
+     * @return the plan of the query with four workers
+     */
+    private QueryOperator checkSameAsSerial(Transaction t, Consumer<QueryPlan> query) {
+        QueryPlan serial = t.query("table");
+        query.accept(serial);
+        List<String> expected = sorted(serial.execute());
+        assertFalse(serial.getFinalOperator().toString().contains("Gather"));
+
+        QueryPlan parallel = t.query("table");
+        parallel.setDegreeOfParallelism(4);
+        query.accept(parallel);
+        assertEquals(expected, sorted(parallel.execute()));
+        return parallel.getFinalOperator();
+    }
+
+    @Test
+    public void testScan() {
+        try (Transaction t = this.db.beginTransaction()) {
+            QueryOperator plan = checkSameAsSerial(t, q -> {});
+            assertTrue(plan instanceof GatherOperator);
+            assertTrue(plan.toString().contains("Parallel Seq Scan on table"));
+            assertEquals(10000, sorted(plan.iterator()).size());
+        }
+    }
+
+    @Test
+    public void testSelectProject() {
+        try (Transaction t = this.db.beginTransaction()) {
+            QueryOperator plan = checkSameAsSerial(t, q -> {
+                q.select("int", PredicateOperator.GREATER_THAN_EQUALS, 1000);
+                q.select("bool", PredicateOperator.EQUALS, true);
+                q.project("int * 2", "string", "float");
+            });
+            // the projection runs on the workers
+            assertTrue(plan instanceof GatherOperator);
+            assertTrue(plan.getSource().isProject());
+            assertTrue(plan.toString().startsWith("Gather (workers=4"));
+        }
+    }
+
+    @Test
+    public void testAggregate() {
+        try (Transaction t = this.db.beginTransaction()) {
+            QueryOperator plan = checkSameAsSerial(t, q -> q.project("COUNT(*)", "SUM(int)", "MAX(float)"));
+            // aggregates are computed over the gathered records
+            assertTrue(plan.isProject());
+            assertTrue(plan.getSource() instanceof GatherOperator);
+            assertEquals(Collections.singletonList(new Record(10000, 49995000, 4999.5f).toString()),
+                         sorted(plan.iterator()));
+
+            checkSameAsSerial(t, q -> {
+                q.groupBy("string");
+                q.project("string", "COUNT(*)", "MIN(int)");
+            });
+        }
+    }
+
+    @Test
+    public void testJoin() {
+        try (Transaction t = this.db.beginTransaction()) {
+            QueryOperator plan = checkSameAsSerial(t, q -> {
+                q.join("other", "table.int", "other.int");
+                q.select("table.float", PredicateOperator.LESS_THAN, 300.0f);
+            });
+            assertTrue(plan.toString().contains("Gather"));
+        }
+    }
+
+    @Test
+    public void testLimit() {
+        try (Transaction t = this.db.beginTransaction()) {
+            // the consumer stops early, leaving the workers blocked until it is gone
+            for (int i = 0; i < 10; ++i) {
+                QueryPlan query = t.query("table");
+                query.setDegreeOfParallelism(4);
+                query.limit(5);
+                assertEquals(5, sorted(query.execute()).size());
+            }
+        }
+    }
+
+    @Test
+    public void testDatabaseDefault() {
+        this.db.setDegreeOfParallelism(3);
+        try (Transaction t = this.db.beginTransaction()) {
+            QueryPlan query = t.query("table");
+            query.execute();
+            assertTrue(query.getFinalOperator().toString().startsWith("Gather (workers=3"));
+        }
+    }
+
+    @Test
+    public void testLocking() throws Exception {
+        // workers lock nothing themselves, and read under the table lock
+        // acquired on the transaction's thread
+        LoggingLockManager lockManager = new LoggingLockManager();
+        File testDir = tempFolder.newFolder("parallelLockingTest");
+        Database db = new Database(testDir.getAbsolutePath(), 64, lockManager);
+        try {
+            db.setWorkMem(10);
+            try (Transaction t = db.beginTransaction()) {
+                t.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+                for (int i = 0; i < 10000; ++i) {
+                    t.insert("table", new Record(i % 2 == 0, i, "" + (char) ('a' + i % 26), i / 2.0f));
+                }
+            }
+            db.waitAllTransactions();
+
+            lockManager.startLog();
+            try (Transaction t = db.beginTransaction()) {
+                // run a parallel query first, so that the table lock is not
+                // acquired by a serial scan
+                QueryPlan query = t.query("table");
+                query.setDegreeOfParallelism(4);
+                assertEquals(10000, sorted(query.execute()).size());
+                assertTrue(query.getFinalOperator() instanceof GatherOperator);
+                assertTrue(lockManager.log.contains("acquire " + t.getTransNum() + " database/table S"));
+
+                checkSameAsSerial(t, q -> q.select("int", PredicateOperator.LESS_THAN, 5000));
+                checkSameAsSerial(t, q -> q.project("COUNT(*)", "MAX(int)"));
+                for (String entry : lockManager.log) {
+                    assertFalse(entry, entry.contains("database/table/"));
+                }
+            }
+        } finally {
+            if (TransactionContext.getTransaction() != null) {
+                TransactionContext.unsetTransaction();
+            }
+            db.waitAllTransactions();
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.expr.Expression;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static edu.berkeley.cs186.database.TestUtils.sorted;
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestPredicatePushdown {
+    private Database d;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        File tempDir = tempFolder.newFolder("predicatePushdownTest");
+        d = new Database(tempDir.getAbsolutePath(), 256);
+        d.setWorkMem(5); // B = 5
+        d.waitAllTransactions();
+    }
+
+    @After
+    public void cleanup() {
+        d.close();
+    }
+
+    /**
+     * Creates a table with n records (a, b, s), where a goes from 0 to n - 1
+     * and b is a permutation of the same values, with indexes on a and b. The
+     * records are wide enough that only about 20 fit on a page.
+     */
+    private void createTable(Transaction t, String tableName, int n) {
+        Schema schema = new Schema()
+                .add("a", Type.intType())
+                .add("b", Type.intType())
+                .add("s", Type.stringType(200));
+        t.createTable(schema, tableName);
+        t.createIndex(tableName, "a", false);
+        t.createIndex(tableName, "b", false);
+        for (int i = 0; i < n; ++i) {
+            t.insert(tableName, i, (i * 7919) % n, "!");
+        }
+        t.getTransactionContext().getTable(tableName).buildStatistics(10);
+    }
+
+    @Test
+    public void testRangeScan() {
+        try (Transaction t = d.beginTransaction()) {
+            createTable(t, "t", 2000);
+            QueryPlan query = t.query("t");
+            query.select("a", PredicateOperator.GREATER_THAN_EQUALS, 500);
+            query.select("a", PredicateOperator.LESS_THAN, 510);
+            query.select("a", PredicateOperator.LESS_THAN, 600);
+            QueryOperator op = query.minCostSingleAccess("t");
+            // both bounds are in the scan, and no select is left on top of it
+            assertTrue(op.isIndexScan());
+            assertTrue(op.str().contains("a>=500, a<510"));
+
+            List<Integer> values = new ArrayList<>();
+            op.iterator().forEachRemaining(r -> values.add(r.getValue(0).getInt()));
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 500; i < 510; ++i) expected.add(i);
+            assertEquals(expected, values);
+
+            // a range that no value is in
+            query = t.query("t");
+            query.select("a", PredicateOperator.GREATER_THAN, 700);
+            query.select("a", PredicateOperator.LESS_THAN_EQUALS, 700);
+            assertFalse(query.execute().hasNext());
+        }
+    }
+
+    @Test
+    public void testIndexIntersection() {
+        try (Transaction t = d.beginTransaction()) {
+            createTable(t, "t", 2000);
+            QueryPlan query = t.query("t");
+            query.select("a", PredicateOperator.LESS_THAN, 200);
+            query.select("b", PredicateOperator.GREATER_THAN_EQUALS, 1800);
+            QueryOperator op = query.minCostSingleAccess("t");
+            // each range has 200 records, but only about 20 are in both
+            assertTrue(op.isIndexScan());
+            assertTrue(op.str().startsWith("Index Intersection"));
+
+            QueryPlan naive = t.query("t");
+            naive.select("a", PredicateOperator.LESS_THAN, 200);
+            naive.select("b", PredicateOperator.GREATER_THAN_EQUALS, 1800);
+            List<String> expected = sorted(naive.executeNaive());
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, sorted(op.iterator()));
+            assertEquals(expected, sorted(query.execute()));
+        }
+    }
+
+    @Test
+    public void testExpressionPushdown() {
+        try (Transaction t = d.beginTransaction()) {
+            createTable(t, "t0", 500);
+            createTable(t, "t1", 500);
+            Expression where = Expression.fromString(
+                    "t0.a % 10 = 7 AND (t1.b < 100 OR t1.b >= 400) AND t0.b + t1.a > 250");
+            QueryPlan query = t.query("t0");
+            query.join("t1", "t0.a", "t1.a");
+            query.select(where);
+            QueryPlan naive = t.query("t0");
+            naive.join("t1", "t0.a", "t1.a");
+            naive.select(where);
+
+            // the predicates on a single table are checked when it is scanned
+            QueryOperator access = query.minCostSingleAccess("t0");
+            assertTrue(access.isSelect());
+            assertTrue(access.str().contains("t0.a % 10 = 7"));
+            access = query.minCostSingleAccess("t1");
+            assertTrue(access.isSelect());
+            assertTrue(access.str().contains("t1.b < 100 OR t1.b >= 400"));
+
+            List<String> expected = sorted(naive.executeNaive());
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, sorted(query.execute()));
+            // the predicate on both tables is checked after joining them
+            QueryOperator root = query.getFinalOperator();
+            assertTrue(root.isSelect());
+            assertTrue(root.str().contains("t0.b + t1.a > 250"));
+            assertTrue(root.getSource().isJoin());
+        }
+    }
+
+    @Test
+    public void testColumnComparisonsUseIndexes() {
+        try (Transaction t = d.beginTransaction()) {
+            createTable(t, "t", 2000);
+            QueryPlan query = t.query("t");
+            // comparisons of a column with a value are index predicates,
+            // whichever side the column is on
+            query.select(Expression.fromString("10 > a AND a >= 5"));
+            QueryOperator op = query.minCostSingleAccess("t");
+            assertTrue(op.isIndexScan());
+            assertTrue(op.str().contains("a>=5, a<10"));
+            assertEquals(5, sorted(query.execute()).size());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.BloomFilter;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.query.join.BNLJOperator;
+import edu.berkeley.cs186.database.query.join.GHJOperator;
+import edu.berkeley.cs186.database.query.join.SHJOperator;
+import edu.berkeley.cs186.database.query.join.SortMergeOperator;
+import edu.berkeley.cs186.database.table.Record;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static edu.berkeley.cs186.database.TestUtils.sorted;
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestRuntimeFilter {
+    private Database db;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("runtimeFilterTest");
+        this.db = new Database(testDir.getAbsolutePath(), 64);
+        this.db.setWorkMem(6);
+        try (Transaction t = this.db.beginTransaction()) {
+            t.dropAllTables();
+            t.createTable(TestUtils.createSchemaWithAllTypes(), "small");
+            t.createTable(TestUtils.createSchemaWithAllTypes(), "big");
+            // only 100 of the 5000 records of big have a match in small
+            for (int i = 0; i < 100; ++i) {
+                t.insert("small", new Record(true, i * 50, "s", 0.0f));
+            }
+            for (int i = 0; i < 5000; ++i) {
+                t.insert("big", new Record(false, i, "b", (float) i));
+            }
+        }
+        this.db.waitAllTransactions();
+    }
+
+    @After
+    public void afterEach() {
+        this.db.waitAllTransactions();
+        this.db.close();
+    }
+
+    private static int count(Iterator<Record> records) {
+        int count = 0;
+        for (; records.hasNext(); records.next()) ++count;
+        return count;
+    }
+
+    private List<String> expected(TransactionContext t, String column) {
+        return sorted(new BNLJOperator(new SequentialScanOperator(t, "small"),
+                                       new SequentialScanOperator(t, "big"),
+                                       "small." + column, "big." + column, t).iterator());
+    }
+
+    @Test
+    public void testBloomFilter() {
+        BloomFilter filter = BloomFilter.create(1000, 0.01, 1 << 20);
+        for (int i = 0; i < 1000; ++i) {
+            filter.add(new IntDataBox(i * 3));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 3000; ++i) {
+            boolean contains = filter.mightContain(new IntDataBox(i));
+            if (i % 3 == 0) {
+                assertTrue(contains);
+            } else if (contains) {
+                ++falsePositives;
+            }
+        }
+        // about 1% of the 2000 values that were not added
+        assertTrue(falsePositives < 100);
+    }
+
+    @Test
+    public void testUnbuiltFilter() {
+        RuntimeFilter filter = new RuntimeFilter("int", 1, 10, 1 << 10);
+        filter.add(new IntDataBox(1));
+        // everything gets through until the filter is built
+        assertTrue(filter.mightMatch(new IntDataBox(2)));
+        filter.finish();
+        assertTrue(filter.mightMatch(new IntDataBox(1)));
+        try {
+            filter.add(new IntDataBox(3));
+            fail();
+        } catch (IllegalStateException e) {
+            /* do nothing */
+        }
+    }
+
+    @Test
+    public void testBuild() {
+        RuntimeFilter filter = new RuntimeFilter("int", 1, 10, 1 << 10);
+        List<Record> records = Arrays.asList(new Record(true, 4, "a", 0.0f), new Record(true, 8, "a", 0.0f));
+        Iterator<Record> iter = filter.build(records.iterator(), 1);
+        assertEquals(2, count(iter));
+        assertTrue(filter.isBuilt());
+        List<DataBox> matches = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            if (filter.mightMatch(new IntDataBox(i))) matches.add(new IntDataBox(i));
+        }
+        assertTrue(matches.contains(new IntDataBox(4)));
+        assertTrue(matches.contains(new IntDataBox(8)));
+    }
+
+    @Test
+    public void testSHJ() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext context = t.getTransactionContext();
+            SequentialScanOperator big = new SequentialScanOperator(context, "big");
+            JoinOperator join = new SHJOperator(new SequentialScanOperator(context, "small"), big,
+                                                "small.int", "big.int", context);
+            assertEquals(expected(context, "int"), sorted(join.iterator()));
+            assertTrue(big.str().contains("runtime filter on big.int"));
+            // the probe scan now drops the records without matches
+            assertTrue(count(big.iterator()) < 500);
+        }
+    }
+
+    @Test
+    public void testGHJ() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext context = t.getTransactionContext();
+            SequentialScanOperator big = new SequentialScanOperator(context, "big");
+            QueryOperator select = new SelectOperator(big, "big.bool", PredicateOperator.EQUALS,
+                                                      new BoolDataBox(false));
+            JoinOperator join = new GHJOperator(new SequentialScanOperator(context, "small"), select,
+                                                "small.int", "big.int", context);
+            assertEquals(expected(context, "int"), sorted(join.iterator()));
+            // pushed through the select
+            assertTrue(big.str().contains("runtime filter on big.int"));
+            assertTrue(count(select.iterator()) < 500);
+        }
+    }
+
+    @Test
+    public void testGHJNotPushedDown() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext context = t.getTransactionContext();
+            List<Record> records = new ArrayList<>();
+            new SequentialScanOperator(context, "big").iterator().forEachRemaining(records::add);
+            // the filter is checked by the join itself
+            JoinOperator join = new GHJOperator(new SequentialScanOperator(context, "small"),
+                                                new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes()),
+                                                "small.int", "int", context);
+            assertEquals(expected(context, "int"), sorted(join.iterator()));
+        }
+    }
+
+    @Test
+    public void testSortMerge() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext context = t.getTransactionContext();
+            SequentialScanOperator big = new SequentialScanOperator(context, "big");
+            JoinOperator join = new SortMergeOperator(new SequentialScanOperator(context, "small"), big,
+                                                      "small.int", "big.int", context);
+            assertEquals(expected(context, "int"), sorted(join.iterator()));
+            assertTrue(big.str().contains("runtime filter on big.int"));
+            // running the join again gives the same results
+            assertEquals(expected(context, "int"), sorted(join.iterator()));
+        }
+    }
+
+    @Test
+    public void testNoMatches() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext context = t.getTransactionContext();
+            // no string in big is "s", so the probe side can be filtered down
+            // to nothing
+            JoinOperator join = new SortMergeOperator(new SequentialScanOperator(context, "small"),
+                                                      new SequentialScanOperator(context, "big"),
+                                                      "small.string", "big.string", context);
+            assertFalse(join.iterator().hasNext());
+            join = new SHJOperator(new SequentialScanOperator(context, "small"),
+                                   new SequentialScanOperator(context, "big"),
+                                   "small.string", "big.string", context);
+            assertFalse(join.iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void testFloatNotFiltered() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext context = t.getTransactionContext();
+            SequentialScanOperator big = new SequentialScanOperator(context, "big");
+            JoinOperator join = new SHJOperator(new SequentialScanOperator(context, "small"), big,
+                                                "small.float", "big.float", context);
+            assertEquals(expected(context, "float"), sorted(join.iterator()));
+            assertFalse(big.str().contains("runtime filter"));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestTopNOperator {
+    private Database d;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        File tempDir = tempFolder.newFolder("topNTest");
+        d = new Database(tempDir.getAbsolutePath(), 256);
+        d.setWorkMem(3); // B = 3
+        d.waitAllTransactions();
+    }
+
+    @After
+    public void cleanup() {
+        d.close();
+    }
+
+    private static List<Record> shuffledRecords(int numRecords) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            // duplicate values, in no particular order
+            records.add(TestUtils.createRecordWithAllTypesWithValue((i * 7919) % (numRecords / 2)));
+        }
+        return records;
+    }
+
+    private static List<Integer> ints(Iterator<Record> records) {
+        List<Integer> result = new ArrayList<>();
+        records.forEachRemaining(r -> result.add(r.getValue(1).getInt()));
+        return result;
+    }
+
+    /**
+     * Checks that the top-n operator outputs the first n records that sorting
+     * does.
+     */
+    private void checkSameAsSort(TransactionContext t, List<Record> records, int n) {
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        SortOperator sort = new SortOperator(t, new TestSourceOperator(records, schema), "int");
+        List<Integer> expected = ints(new LimitOperator(sort, n, 0).iterator());
+        TopNOperator topN = new TopNOperator(t, new TestSourceOperator(records, schema), "int", n);
+        assertEquals(expected, ints(topN.iterator()));
+        assertEquals(Collections.singletonList("int"), topN.sortedBy());
+        // the records are kept around
+        assertEquals(expected, ints(topN.backtrackingIterator()));
+    }
+
+    @Test
+    public void testInMemory() {
+        try (Transaction t = d.beginTransaction()) {
+            List<Record> records = shuffledRecords(5000);
+            checkSameAsSort(t.getTransactionContext(), records, 0);
+            checkSameAsSort(t.getTransactionContext(), records, 1);
+            checkSameAsSort(t.getTransactionContext(), records, 50);
+            checkSameAsSort(t.getTransactionContext(), records.subList(0, 10), 50);
+        }
+    }
+
+    @Test
+    public void testSpill() {
+        try (Transaction t = d.beginTransaction()) {
+            // more records than fit in B pages
+            List<Record> records = shuffledRecords(5000);
+            TopNOperator topN = new TopNOperator(t.getTransactionContext(),
+                    new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes()), "int", 2000);
+            assertTrue(topN.estimateIOCost() > 0);
+            checkSameAsSort(t.getTransactionContext(), records, 2000);
+            checkSameAsSort(t.getTransactionContext(), records, 4999);
+            checkSameAsSort(t.getTransactionContext(), records, 6000);
+        }
+    }
+
+    @Test
+    public void testQueryPlan() {
+        try (Transaction t = d.beginTransaction()) {
+            t.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+            for (Record record : shuffledRecords(1000)) t.insert("table", record);
+
+            QueryPlan query = t.query("table");
+            query.sort("int");
+            query.limit(10, 5);
+            List<Integer> result = ints(query.execute());
+            assertEquals(Arrays.asList(2, 3, 3, 4, 4, 5, 5, 6, 6, 7), result);
+            String plan = query.getFinalOperator().toString();
+            assertTrue(plan.startsWith("Limit"));
+            assertTrue(plan.contains("Top-N Sort (n=15"));
+
+            // without a limit, the whole table is sorted
+            query = t.query("table");
+            query.sort("int");
+            result = ints(query.execute());
+            assertEquals(1000, result.size());
+            List<Integer> sorted = new ArrayList<>(result);
+            Collections.sort(sorted);
+            assertEquals(sorted, result);
+            assertTrue(query.getFinalOperator().toString().startsWith("Sort"));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package edu.berkeley.cs186.database.query.expr;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that compiled expressions evaluate to the same values as the
+ * interpreter, and fail in the same way.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestCompiledExpression {
+    private static final Schema SCHEMA = new Schema()
+            .add("i", Type.intType())
+            .add("l", Type.longType())
+            .add("f", Type.floatType())
+            .add("b", Type.boolType())
+            .add("s", Type.stringType(5));
+
+    private static List<Record> records() {
+        List<Record> records = new ArrayList<>();
+        int[] ints = {0, 1, -7, 42, Integer.MAX_VALUE};
+        float[] floats = {0.0f, 1.0f, -2.5f, 42.0f, Float.NaN};
+        String[] strings = {"b", "a", "abc", "ABC", "zz"};
+        for (int x = 0; x < ints.length; ++x) {
+            for (int y = 0; y < floats.length; ++y) {
+                records.add(new Record(ints[x], (long) ints[y] * 3, floats[y], (x + y) % 2 == 0, strings[(x + y) % 5]));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return the type and value of the expression on the record (as a string,
+     * since NaN float data boxes are not equal to themselves), or the class of
+     * the exception it threw
+     */
+    private static Object interpret(Expression e, Record record) {
+        try {
+            return value(e.evaluate(record));
+        } catch (RuntimeException ex) {
+            return ex.getClass();
+        }
+    }
+
+    private static Object compiled(CompiledExpression e, Record record) {
+        try {
+            return value(e.evaluate(record));
+        } catch (RuntimeException ex) {
+            return ex.getClass();
+        }
+    }
+
+    private static String value(DataBox d) {
+        return d.getTypeId() + " " + d;
+    }
+
+    private static void checkSameAsInterpreter(String s) {
+        Expression e = Expression.fromString(s);
+        e.setSchema(SCHEMA);
+        CompiledExpression compiled = CompiledExpression.compile(e);
+        for (Record record : records()) {
+            Object expected = interpret(e, record);
+            assertEquals(s + " on " + record, expected, compiled(compiled, record));
+            if (expected instanceof String && e.getType().getTypeId() != TypeId.BYTE_ARRAY) {
+                assertEquals(s + " on " + record, Expression.toBool(e.evaluate(record)), compiled.test(record));
+            }
+        }
+    }
+
+    @Test
+    public void testArithmetic() {
+        checkSameAsInterpreter("i + 1");
+        checkSameAsInterpreter("i * 2 - i / 3 + i % 5");
+        checkSameAsInterpreter("i + l");
+        checkSameAsInterpreter("l * f - i");
+        checkSameAsInterpreter("f / 2 + 1.5");
+        checkSameAsInterpreter("f % 2");
+        checkSameAsInterpreter("b + i");
+        checkSameAsInterpreter("-i");
+        checkSameAsInterpreter("-(f * 2)");
+        checkSameAsInterpreter("-b");
+        // division by zero
+        checkSameAsInterpreter("l / (i - i)");
+        checkSameAsInterpreter("f / (i - i)");
+    }
+
+    @Test
+    public void testComparisons() {
+        String[] ops = {"<", "<=", ">", ">=", "=", "!="};
+        String[][] operands = {
+            {"i", "3"}, {"i", "l"}, {"l", "i"}, {"i", "f"}, {"f", "l"}, {"f", "f"},
+            {"f", "1.0"}, {"b", "b"}, {"s", "'abc'"}, {"i * 2", "l + 1"},
+            // comparisons between types that do not compare
+            {"b", "i"}, {"s", "1"}, {"i", "s"},
+        };
+        for (String[] operand : operands) {
+            for (String op : ops) {
+                checkSameAsInterpreter(operand[0] + " " + op + " " + operand[1]);
+            }
+        }
+    }
+
+    @Test
+    public void testBooleans() {
+        checkSameAsInterpreter("i > 0 AND f > 0");
+        checkSameAsInterpreter("i > 0 OR f > 0 OR b");
+        checkSameAsInterpreter("NOT (i > 0 AND NOT b)");
+        checkSameAsInterpreter("i AND l");
+        checkSameAsInterpreter("f OR s");
+        checkSameAsInterpreter("NOT s");
+        // short circuit: the division is not evaluated if i = 0
+        checkSameAsInterpreter("i != 0 AND 10 / i > 1");
+        checkSameAsInterpreter("i = 0 OR 10 / i > 1");
+    }
+
+    @Test
+    public void testFunctions() {
+        checkSameAsInterpreter("FLOOR(f)");
+        checkSameAsInterpreter("CEIL(f * i)");
+        checkSameAsInterpreter("CEIL(b)");
+        checkSameAsInterpreter("FLOOR(f) + ROUND(i)");
+        checkSameAsInterpreter("ROUND(f)");
+        checkSameAsInterpreter("UPPER(s) = 'ABC'");
+        checkSameAsInterpreter("NEGATE(l)");
+        checkSameAsInterpreter("REPLACE(s, 'b', 'x')");
+    }
+
+    @Test
+    public void testBatch() {
+        String[] expressions = {"i * 2 + l", "f / 2", "i > 3 AND NOT b", "UPPER(s)", "FLOOR(f)"};
+        List<Record> records = records();
+        RecordBatch in = new RecordBatch(SCHEMA);
+        for (Record record : records) {
+            in.addRecord(record);
+        }
+        for (String s : expressions) {
+            Expression e = Expression.fromString(s);
+            e.setSchema(SCHEMA);
+            CompiledExpression compiled = CompiledExpression.compile(e);
+            RecordBatch out = new RecordBatch(new Schema().add("x", e.getType()));
+            for (int i = 0; i < records.size(); ++i) {
+                compiled.evaluate(in, i, out, out.addRow(), 0);
+            }
+            for (int i = 0; i < records.size(); ++i) {
+                assertEquals(s, value(e.evaluate(records.get(i))), value(out.getValue(i, 0)));
+            }
+        }
+    }
+}
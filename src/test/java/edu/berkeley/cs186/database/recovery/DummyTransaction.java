@@ -13,10 +13,13 @@ import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
 
@@ -92,6 +95,9 @@ class DummyTransaction extends Transaction {
     @Override
     public void createIndex(String tableName, String columnName, boolean bulkLoad) {}
 
+    @Override
+    public void createIndex(String tableName, List<String> columnNames, boolean unique, boolean bulkLoad) {}
+
     @Override
     public void dropIndex(String tableName, String columnName) {}
 
@@ -155,6 +161,16 @@ class DummyTransaction extends Transaction {
             return 0;
         }
 
+        @Override
+        public int getDegreeOfParallelism() {
+            return 1;
+        }
+
+        @Override
+        public ExecutorService getQueryExecutor() {
+            return null;
+        }
+
         @Override
         public void close() {}
 
@@ -177,6 +193,11 @@ class DummyTransaction extends Transaction {
             return false;
         }
 
+        @Override
+        public List<List<String>> getIndexColumns(String tableName) {
+            return Collections.emptyList();
+        }
+
         @Override
         public void updateIndexMetadata(BPlusTreeMetadata metadata) {}
 
@@ -195,6 +216,26 @@ class DummyTransaction extends Transaction {
             return null;
         }
 
+        @Override
+        public Iterator<RecordId> lookupRange(String tableName, String columnName,
+                                              DataBox startValue, boolean startInclusive,
+                                              DataBox stopValue, boolean stopInclusive) {
+            return null;
+        }
+
+        @Override
+        public Iterator<RecordId> lookupRange(String tableName, List<String> columnNames,
+                                              List<DataBox> prefix,
+                                              DataBox startValue, boolean startInclusive,
+                                              DataBox stopValue, boolean stopInclusive) {
+            return null;
+        }
+
+        @Override
+        public Iterator<Record> getRecords(String tableName, Iterator<RecordId> rids) {
+            return null;
+        }
+
         @Override
         public BacktrackingIterator<Record> getRecordIterator(String tableName) {
             return null;